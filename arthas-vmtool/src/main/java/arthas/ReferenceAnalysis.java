@@ -0,0 +1,127 @@
+package arthas;
+
+/**
+ * {@link VmToolMXBean#referenceAnalysis(Class, int, int, long)} 的结果，每个实例的路径格式是：
+ * [GC root 类型, 实例的类, 直接引用者的类, 引用者的引用者的类, ...]
+ * 引用者是 Class 对象（通过静态变量引用）时，记录的是 -(类的下标 + 2)
+ */
+public class ReferenceAnalysis {
+
+    /**
+     * 路径没有记录完整，遍历的对象数量达到上限后不再记录新的引用者
+     */
+    public static final int PATH_INCOMPLETE = 0;
+
+    /**
+     * 没有从 GC root 遍历到，比如只被其它分析的实例引用，或者遍历超时
+     */
+    public static final int PATH_UNREACHED = -1;
+
+    private final Class<?>[] classes;
+    private final int[][] paths;
+    private final long[] retainedSizes;
+    private final boolean retainedSizeTruncated;
+    private final boolean timeout;
+
+    ReferenceAnalysis(Class<?>[] classes, int[][] paths, long[] retainedSizes, boolean retainedSizeTruncated,
+            boolean timeout) {
+        this.classes = classes;
+        this.paths = paths;
+        this.retainedSizes = retainedSizes;
+        this.retainedSizeTruncated = retainedSizeTruncated;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return 大于 0 时是 GC root 的类型 jvmtiHeapReferenceKind ，否则是 {@link #PATH_INCOMPLETE} 或者
+     *         {@link #PATH_UNREACHED}
+     */
+    public int getRootKind(int index) {
+        return paths[index][0];
+    }
+
+    public Class<?> getInstanceClass(int index) {
+        return classAt(paths[index][1]);
+    }
+
+    /**
+     * @return 到 GC root 的路径上每个对象的类，第一个是直接引用者，最后一个最靠近 GC root 。
+     *         引用者是 Class 对象时返回这个类本身，找不到类时为 null
+     */
+    public Class<?>[] getReferrerClasses(int index) {
+        int[] path = paths[index];
+        Class<?>[] result = new Class<?>[path.length - 2];
+        for (int i = 2; i < path.length; i++) {
+            result[i - 2] = classAt(path[i] < -1 ? -path[i] - 2 : path[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return 路径上第 position 个引用者是否是 Class 对象，也就是通过静态变量引用
+     */
+    public boolean isClassReferrer(int index, int position) {
+        return paths[index][position + 2] < -1;
+    }
+
+    private Class<?> classAt(int classIndex) {
+        return classIndex >= 0 && classIndex < classes.length ? classes[classIndex] : null;
+    }
+
+    /**
+     * 只能通过这个实例访问到的对象的 shallow size 之和，加上实例自己的大小，单位：Byte 。
+     * 同时被多个分析的实例引用的对象只计入其中一个
+     */
+    public long getRetainedSize(int index) {
+        return retainedSizes[index];
+    }
+
+    public long getTotalRetainedSize() {
+        long total = 0;
+        for (long size : retainedSizes) {
+            total += size;
+        }
+        return total;
+    }
+
+    public int size() {
+        return paths.length;
+    }
+
+    /**
+     * @return 从分析的实例遍历的对象数量达到上限， retained size 偏小
+     */
+    public boolean isRetainedSizeTruncated() {
+        return retainedSizeTruncated;
+    }
+
+    /**
+     * @return 从 GC root 遍历超时提前结束， retained size 偏大，部分路径缺失
+     */
+    public boolean isTimeout() {
+        return timeout;
+    }
+
+    public static String rootKindName(int rootKind) {
+        switch (rootKind) {
+        case 21:
+            return "jni-global";
+        case 22:
+            return "system-class";
+        case 23:
+            return "monitor";
+        case 24:
+            return "stack-local";
+        case 25:
+            return "jni-local";
+        case 26:
+            return "thread";
+        case 27:
+            return "other";
+        case PATH_INCOMPLETE:
+            return "incomplete";
+        default:
+            return "unreached";
+        }
+    }
+}
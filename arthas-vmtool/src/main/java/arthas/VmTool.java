@@ -1,5 +1,10 @@
 package arthas;
 
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -14,6 +19,11 @@ public class VmTool implements VmToolMXBean {
      */
     public final static String JNI_LIBRARY_NAME = "ArthasJniLibrary";
 
+    /**
+     * referenceAnalysis 每个遍历到的对象需要约 30 Byte 的 native 内存
+     */
+    private final static int MAX_REFERENCE_ANALYSIS_OBJECTS = 50000000;
+
     private static VmTool instance;
 
     private VmTool() {
@@ -67,6 +77,32 @@ public class VmTool implements VmToolMXBean {
      */
     private static synchronized native Class<?>[] getAllLoadedClasses0(Class<?> klass);
 
+    /**
+     * 遍历一次堆，统计多个class在jvm中当前所有存活实例的个数和总占用内存
+     * @param counts 返回每个class的实例个数
+     * @param sizes 返回每个class的实例总占用内存，单位：Byte
+     * @return JVMTI 错误码，0 表示成功
+     */
+    private static synchronized native int classHistogram0(Class<?>[] classes, long[] counts, long[] sizes);
+
+    /**
+     * 遍历一次堆，获取多个class在jvm中当前的存活实例，只包含类型正好是这个class的实例，不包含子类的实例
+     * @param limit 每个class最多获取的实例个数，如果小于 0 ，则不限制
+     * @param result 返回每个class的实例，和 classes 一一对应
+     * @return JVMTI 错误码，0 表示成功
+     */
+    private static synchronized native int getInstancesOfClasses0(Class<?>[] classes, int limit, Object[][] result);
+
+    /**
+     * 分析某个class前 limit 个实例的 retained size 和到 GC root 的路径
+     * @param classes 所有已加载的类，路径里的类用在这个数组里的下标表示
+     * @param paths 返回每个实例到 GC root 的路径
+     * @param retainedSizes 返回每个实例的 retained size
+     * @return 小于 0 时是 JVMTI 错误码的相反数，否则是 (实例个数 << 2) ， bit 1 表示 retained 的遍历达到 maxObjects ， bit 2 表示超时
+     */
+    private static synchronized native int referenceAnalysis0(Class<?> klass, int limit, Class<?>[] classes,
+            int maxObjects, long timeoutMillis, int[][] paths, long[] retainedSizes);
+
     @Override
     public void forceGc() {
         forceGc0();
@@ -96,6 +132,59 @@ public class VmTool implements VmToolMXBean {
         return getInstances0(klass, limit);
     }
 
+    @Override
+    public Object[][] getInstances(Class<?>[] classes, boolean includeSubclasses, int limit) {
+        if (limit == 0) {
+            throw new IllegalArgumentException("limit can not be 0");
+        }
+        for (Class<?> klass : classes) {
+            if (klass == null || klass.isPrimitive()) {
+                throw new IllegalArgumentException("classes can not contain null or primitive class");
+            }
+        }
+        if (!includeSubclasses) {
+            return getInstancesOfClasses(classes, limit);
+        }
+
+        // 找出所有已加载的子类，一起遍历一次堆，再按传入的 class 合并
+        Map<Class<?>, Integer> indexes = new LinkedHashMap<Class<?>, Integer>();
+        for (Class<?> loaded : getAllLoadedClasses0(Class.class)) {
+            for (Class<?> klass : classes) {
+                if (klass.isAssignableFrom(loaded) && !indexes.containsKey(loaded)) {
+                    indexes.put(loaded, indexes.size());
+                }
+            }
+        }
+        Class<?>[] subclasses = indexes.keySet().toArray(new Class<?>[0]);
+        Object[][] subclassInstances = getInstancesOfClasses(subclasses, limit);
+
+        Object[][] result = new Object[classes.length][];
+        List<Object> instances = new ArrayList<Object>();
+        for (int i = 0; i < classes.length; i++) {
+            instances.clear();
+            for (int j = 0; j < subclasses.length; j++) {
+                if (classes[i].isAssignableFrom(subclasses[j])) {
+                    instances.addAll(Arrays.asList(subclassInstances[j]));
+                }
+                if (limit > 0 && instances.size() >= limit) {
+                    break;
+                }
+            }
+            int size = limit > 0 ? Math.min(limit, instances.size()) : instances.size();
+            result[i] = instances.subList(0, size).toArray((Object[]) Array.newInstance(classes[i], size));
+        }
+        return result;
+    }
+
+    private static Object[][] getInstancesOfClasses(Class<?>[] classes, int limit) {
+        Object[][] result = new Object[classes.length][];
+        int error = getInstancesOfClasses0(classes, limit, result);
+        if (error != 0) {
+            throw new IllegalStateException("JVMTI get instances failed, error: " + error);
+        }
+        return result;
+    }
+
     @Override
     public long sumInstanceSize(Class<?> klass) {
         return sumInstanceSize0(klass);
@@ -116,4 +205,36 @@ public class VmTool implements VmToolMXBean {
         return getAllLoadedClasses0(Class.class);
     }
 
+    @Override
+    public long[][] classHistogram(Class<?>[] classes) {
+        long[] counts = new long[classes.length];
+        long[] sizes = new long[classes.length];
+        int error = classHistogram0(classes, counts, sizes);
+        if (error != 0) {
+            throw new IllegalStateException("JVMTI IterateThroughHeap failed, error: " + error);
+        }
+        return new long[][] { counts, sizes };
+    }
+
+    @Override
+    public ReferenceAnalysis referenceAnalysis(Class<?> klass, int limit, int maxObjects, long timeoutMillis) {
+        if (limit <= 0 || maxObjects <= 0 || (long) limit + maxObjects > MAX_REFERENCE_ANALYSIS_OBJECTS) {
+            throw new IllegalArgumentException(
+                    "limit and maxObjects must be positive, and limit + maxObjects can not exceed " + MAX_REFERENCE_ANALYSIS_OBJECTS);
+        }
+        Class<?>[] classes = getAllLoadedClasses0(Class.class);
+        int[][] paths = new int[limit][];
+        long[] retainedSizes = new long[limit];
+        int result = referenceAnalysis0(klass, limit, classes, maxObjects, timeoutMillis, paths, retainedSizes);
+        if (result < 0) {
+            throw new IllegalStateException("JVMTI reference analysis failed, error: " + (-result));
+        }
+        int count = result >>> 2;
+        if (count < limit) {
+            paths = Arrays.copyOf(paths, count);
+            retainedSizes = Arrays.copyOf(retainedSizes, count);
+        }
+        return new ReferenceAnalysis(classes, paths, retainedSizes, (result & 1) != 0, (result & 2) != 0);
+    }
+
 }
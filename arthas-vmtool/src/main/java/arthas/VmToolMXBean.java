@@ -38,6 +38,15 @@ public interface VmToolMXBean {
      */
     public <T> T[] getInstances(Class<T> klass, int limit);
 
+    /**
+     * 遍历一次堆，获取多个class在jvm中当前的存活实例，比对每个class分别调用 getInstances 快很多
+     * @param classes
+     * @param includeSubclasses 为 false 时只获取类型正好是这个class的实例，为 true 时包含所有已加载的子类/实现类的实例
+     * @param limit 每个class最多获取的实例个数，如果小于 0 ，则不限制
+     * @return 和 classes 一一对应的实例数组
+     */
+    public Object[][] getInstances(Class<?>[] classes, boolean includeSubclasses, int limit);
+
     /**
      * 统计某个class在jvm中当前所有存活实例的总占用内存，单位：Byte
      */
@@ -57,4 +66,23 @@ public interface VmToolMXBean {
      * 获取所有已加载的类
      */
     public Class<?>[] getAllLoadedClasses();
+
+    /**
+     * 遍历一次堆，统计多个class在jvm中当前所有存活实例的个数和总占用内存，
+     * 比对每个class分别调用 countInstances/sumInstanceSize 快很多
+     *
+     * @param classes 需要统计的class
+     * @return 长度为 2 的数组，[0] 是每个class的实例个数，[1] 是每个class的实例总占用内存，单位：Byte ，顺序和 classes 相同
+     */
+    public long[][] classHistogram(Class<?>[] classes);
+
+    /**
+     * 计算某个class前 limit 个实例的近似 retained size ，并查找到 GC root 的路径。
+     * 会遍历一次从这些实例可达的对象，以及一次从 GC root 可达的对象，遍历期间所有 Java 线程都会暂停（STW），需要限制遍历的数量和时间
+     *
+     * @param limit 最多分析的实例个数
+     * @param maxObjects 最多记录的对象数量，超过后 retained size 偏小，路径可能不完整
+     * @param timeoutMillis 两次遍历共用的超时时间，也就是应用暂停时间的上限，超时后 retained size 不准确，路径可能缺失
+     */
+    public ReferenceAnalysis referenceAnalysis(Class<?> klass, int limit, int maxObjects, long timeoutMillis);
 }
@@ -1,4 +1,6 @@
 #include <stdio.h>
+#include <string.h>
+#include <sys/time.h>
 #include <jni.h>
 #include <jni_md.h>
 #include <jvmti.h>
@@ -204,4 +206,526 @@ JNIEXPORT jobjectArray JNICALL Java_arthas_VmTool_getAllLoadedClasses0
     }
     jvmti->Deallocate(reinterpret_cast<unsigned char *>(classes));
     return array;
-}
\ No newline at end of file
+}
+
+// classHistogram0 的统计结果，class tag 在 [baseTag, baseTag + length) 范围内的类才统计
+struct HistogramData {
+    jlong baseTag;
+    jint length;
+    jlong *counts;
+    jlong *sizes;
+};
+
+extern "C"
+jint JNICALL
+HeapHistogramCallback(jlong class_tag, jlong size, jlong *tag_ptr, jint length, void *user_data) {
+    HistogramData *data = static_cast<HistogramData *>(user_data);
+    jlong index = class_tag - data->baseTag;
+    if (index >= 0 && index < data->length) {
+        data->counts[index]++;
+        data->sizes[index] += size;
+    }
+    return JVMTI_VISIT_OBJECTS;
+}
+
+extern "C"
+void setClassTags(JNIEnv *env, jobjectArray classes, jint length, jlong baseTag) {
+    for (int i = 0; i < length; i++) {
+        jobject klass = env->GetObjectArrayElement(classes, i);
+        if (klass != NULL) {
+            jvmti->SetTag(klass, baseTag == 0 ? 0 : baseTag + i);
+            env->DeleteLocalRef(klass);
+        }
+    }
+}
+
+/**
+ * 给要统计的类打上连续的 tag ，然后用 IterateThroughHeap 遍历一次堆，按对象所属类的 tag 累加个数和大小。
+ * JVMTI_HEAP_FILTER_CLASS_UNTAGGED 过滤掉了不需要统计的类的对象，不会回调。
+ */
+extern "C"
+JNIEXPORT jint JNICALL
+Java_arthas_VmTool_classHistogram0(JNIEnv *env, jclass thisClass, jobjectArray classes, jlongArray counts, jlongArray sizes) {
+    jint length = env->GetArrayLength(classes);
+    if (length == 0) {
+        return 0;
+    }
+    jlong baseTag = tagCounter + 1;
+    tagCounter += length;
+    setClassTags(env, classes, length, baseTag);
+
+    HistogramData data;
+    data.baseTag = baseTag;
+    data.length = length;
+    data.counts = new jlong[length]();
+    data.sizes = new jlong[length]();
+
+    jvmtiHeapCallbacks callbacks;
+    memset(&callbacks, 0, sizeof(callbacks));
+    callbacks.heap_iteration_callback = &HeapHistogramCallback;
+    jvmtiError error = jvmti->IterateThroughHeap(JVMTI_HEAP_FILTER_CLASS_UNTAGGED, NULL, &callbacks, &data);
+    // 清除类上的 tag ，避免影响下次统计
+    setClassTags(env, classes, length, 0);
+    if (error) {
+        printf("ERROR: JVMTI IterateThroughHeap failed!%u\n", error);
+    } else {
+        env->SetLongArrayRegion(counts, 0, length, data.counts);
+        env->SetLongArrayRegion(sizes, 0, length, data.sizes);
+    }
+    delete[] data.counts;
+    delete[] data.sizes;
+    return error;
+}
+
+// getInstancesOfClasses0 的状态，class tag 是 baseClassTag + i 的类的对象打上 tag baseObjectTag + i
+struct InstancesData {
+    jlong baseClassTag;
+    jlong baseObjectTag;
+    jint length;
+    jint limit;
+    jint *counts;
+    // 还没有达到 limit 的类的个数，为 0 时提前结束遍历
+    jint remaining;
+};
+
+extern "C"
+jint JNICALL
+InstancesCallback(jlong class_tag, jlong size, jlong *tag_ptr, jint length, void *user_data) {
+    InstancesData *data = static_cast<InstancesData *>(user_data);
+    jlong index = class_tag - data->baseClassTag;
+    if (index < 0 || index >= data->length) {
+        return JVMTI_VISIT_OBJECTS;
+    }
+    if (data->limit >= 0 && data->counts[index] >= data->limit) {
+        return JVMTI_VISIT_OBJECTS;
+    }
+    *tag_ptr = data->baseObjectTag + index;
+    data->counts[index]++;
+    if (data->limit >= 0 && data->counts[index] == data->limit) {
+        data->remaining--;
+        if (data->remaining == 0) {
+            return JVMTI_VISIT_ABORT;
+        }
+    }
+    return JVMTI_VISIT_OBJECTS;
+}
+
+/**
+ * 遍历一次堆，获取多个class的存活实例，和 getInstances0 不同，只获取类型正好是这个class的实例，不包含子类。
+ * 给每个类打上不同的 tag ，遍历时按对象所属类的 tag 给对象打上对应的 tag ，最后按 tag 分组取出对象。
+ */
+extern "C"
+JNIEXPORT jint JNICALL
+Java_arthas_VmTool_getInstancesOfClasses0(JNIEnv *env, jclass thisClass, jobjectArray classes, jint limit, jobjectArray result) {
+    jint length = env->GetArrayLength(classes);
+    if (length == 0) {
+        return 0;
+    }
+    jlong baseClassTag = tagCounter + 1;
+    jlong baseObjectTag = baseClassTag + length;
+    tagCounter += 2 * (jlong) length;
+    setClassTags(env, classes, length, baseClassTag);
+
+    InstancesData data;
+    data.baseClassTag = baseClassTag;
+    data.baseObjectTag = baseObjectTag;
+    data.length = length;
+    data.limit = limit;
+    data.counts = new jint[length]();
+    data.remaining = length;
+
+    jvmtiHeapCallbacks callbacks;
+    memset(&callbacks, 0, sizeof(callbacks));
+    callbacks.heap_iteration_callback = &InstancesCallback;
+    jvmtiError error = jvmti->IterateThroughHeap(JVMTI_HEAP_FILTER_CLASS_UNTAGGED, NULL, &callbacks, &data);
+    setClassTags(env, classes, length, 0);
+    delete[] data.counts;
+    if (error) {
+        printf("ERROR: JVMTI IterateThroughHeap failed!%u\n", error);
+        return error;
+    }
+
+    jlong *tags = new jlong[length];
+    for (int i = 0; i < length; i++) {
+        tags[i] = baseObjectTag + i;
+    }
+    jint count = 0;
+    jobject *instances;
+    jlong *instanceTags;
+    error = jvmti->GetObjectsWithTags(length, tags, &count, &instances, &instanceTags);
+    delete[] tags;
+    if (error) {
+        printf("ERROR: JVMTI GetObjectsWithTags failed!%u\n", error);
+        return error;
+    }
+
+    // 按 tag 分组，先统计每组的个数再创建数组
+    jint *groupSizes = new jint[length]();
+    for (int i = 0; i < count; i++) {
+        groupSizes[instanceTags[i] - baseObjectTag]++;
+    }
+    jobjectArray *arrays = new jobjectArray[length];
+    for (int i = 0; i < length; i++) {
+        jclass klass = (jclass) env->GetObjectArrayElement(classes, i);
+        arrays[i] = env->NewObjectArray(groupSizes[i], klass, NULL);
+        env->SetObjectArrayElement(result, i, arrays[i]);
+        env->DeleteLocalRef(klass);
+        groupSizes[i] = 0;
+    }
+    for (int i = 0; i < count; i++) {
+        jlong index = instanceTags[i] - baseObjectTag;
+        env->SetObjectArrayElement(arrays[index], groupSizes[index]++, instances[i]);
+        // 清除对象上的 tag ，这些 tag 不会再被使用
+        jvmti->SetTag(instances[i], 0);
+        env->DeleteLocalRef(instances[i]);
+    }
+    for (int i = 0; i < length; i++) {
+        env->DeleteLocalRef(arrays[i]);
+    }
+    delete[] arrays;
+    delete[] groupSizes;
+    jvmti->Deallocate(reinterpret_cast<unsigned char *>(instances));
+    jvmti->Deallocate(reinterpret_cast<unsigned char *>(instanceTags));
+    return 0;
+}
+
+// referenceAnalysis0 的状态。id = tag - baseTag ，[0, classCount) 是类，[classCount, classCount + targetCount) 是需要分析的对象，
+// 之后是遍历过程中分配的对象
+#define REF_ROOT -1
+#define REF_UNKNOWN -2
+#define DEPTH_UNREACHED 0x7fffffff
+#define DEPTH_UNKNOWN 0x40000000
+#define MAX_PATH_LENGTH 1024
+
+struct ReferenceAnalysis {
+    jlong baseTag;
+    jint classCount;
+    jint targetCount;
+    jint capacity;
+    jint limit;
+    jint nextId;
+    jint currentTarget;
+    jlong deadline;
+    jlong callbackCount;
+    bool truncated;
+    bool timeout;
+
+    jint *parent;
+    jint *parentClass;
+    jint *depth;
+    jint *classIndex;
+    jint *owner;
+    jlong *size;
+    jbyte *rootKind;
+    jbyte *reachable;
+
+    jint idOf(jlong tag) {
+        jlong id = tag - baseTag;
+        return id >= 0 && id < nextId ? (jint) id : -1;
+    }
+
+    jint classOf(jlong classTag) {
+        jlong id = classTag - baseTag;
+        return id >= 0 && id < classCount ? (jint) id : -1;
+    }
+
+    bool isTarget(jint id) {
+        return id >= classCount && id < classCount + targetCount;
+    }
+
+    jint newId(jlong *tag_ptr, jlong class_tag, jlong objectSize) {
+        if (nextId >= capacity) {
+            return -1;
+        }
+        jint id = nextId++;
+        *tag_ptr = baseTag + id;
+        classIndex[id] = classOf(class_tag);
+        size[id] = objectSize;
+        return id;
+    }
+};
+
+/**
+ * 给需要分析的实例打上 [classCount, classCount + limit) 范围内的 tag
+ */
+extern "C"
+jvmtiIterationControl JNICALL
+ReferenceTargetCallback(jlong class_tag, jlong size, jlong *tag_ptr, void *user_data) {
+    ReferenceAnalysis *analysis = static_cast<ReferenceAnalysis *>(user_data);
+    analysis->newId(tag_ptr, class_tag, size);
+    analysis->targetCount++;
+    if (analysis->targetCount < analysis->limit) {
+        return JVMTI_ITERATION_CONTINUE;
+    }
+    return JVMTI_ITERATION_ABORT;
+}
+
+extern "C"
+jlong currentTimeMillis() {
+    struct timeval tv;
+    gettimeofday(&tv, NULL);
+    return (jlong) tv.tv_sec * 1000 + tv.tv_usec / 1000;
+}
+
+/**
+ * 每 4096 次回调检查一次是否超过了 deadline ，两次遍历共用同一个 deadline
+ */
+extern "C"
+bool isTimeout(ReferenceAnalysis *analysis) {
+    if ((++analysis->callbackCount & 0xfff) == 0 && currentTimeMillis() > analysis->deadline) {
+        analysis->timeout = true;
+    }
+    return analysis->timeout;
+}
+
+/**
+ * 从需要分析的对象出发遍历，分配到的对象组成 retained 的候选集合，不进入 Class 对象和其它需要分析的对象
+ */
+extern "C"
+jint JNICALL
+RetainedReferenceCallback(jvmtiHeapReferenceKind reference_kind, const jvmtiHeapReferenceInfo *reference_info,
+                          jlong class_tag, jlong referrer_class_tag, jlong size, jlong *tag_ptr,
+                          jlong *referrer_tag_ptr, jint length, void *user_data) {
+    ReferenceAnalysis *analysis = static_cast<ReferenceAnalysis *>(user_data);
+    if (isTimeout(analysis)) {
+        return JVMTI_VISIT_ABORT;
+    }
+    if (reference_kind == JVMTI_HEAP_REFERENCE_CLASS || analysis->idOf(*tag_ptr) >= 0) {
+        return 0;
+    }
+    jint id = analysis->newId(tag_ptr, class_tag, size);
+    if (id < 0) {
+        analysis->truncated = true;
+        return JVMTI_VISIT_ABORT;
+    }
+    analysis->owner[id] = analysis->currentTarget;
+    return JVMTI_VISIT_OBJECTS;
+}
+
+/**
+ * 从 GC root 出发遍历，不进入需要分析的对象：
+ * 1. 遍历到的 retained 候选对象不经过需要分析的对象也可达，不计入 retained size
+ * 2. 记录深度最小的引用者，得到到 GC root 的路径，容量用完后只记录引用者的类
+ */
+extern "C"
+jint JNICALL
+RootReferenceCallback(jvmtiHeapReferenceKind reference_kind, const jvmtiHeapReferenceInfo *reference_info,
+                      jlong class_tag, jlong referrer_class_tag, jlong size, jlong *tag_ptr,
+                      jlong *referrer_tag_ptr, jint length, void *user_data) {
+    ReferenceAnalysis *analysis = static_cast<ReferenceAnalysis *>(user_data);
+    if (isTimeout(analysis)) {
+        return JVMTI_VISIT_ABORT;
+    }
+
+    jint referrer = REF_ROOT;
+    jint referrerDepth = 0;
+    if (referrer_tag_ptr != NULL) {
+        referrer = analysis->idOf(*referrer_tag_ptr);
+        if (referrer < 0 || analysis->depth[referrer] == DEPTH_UNREACHED) {
+            referrer = REF_UNKNOWN;
+            referrerDepth = DEPTH_UNKNOWN;
+        } else {
+            referrerDepth = analysis->depth[referrer];
+        }
+    }
+
+    jint id = analysis->idOf(*tag_ptr);
+    if (id < 0) {
+        id = analysis->newId(tag_ptr, class_tag, size);
+    } else {
+        analysis->reachable[id] = 1;
+    }
+    if (id >= 0 && referrerDepth + 1 < analysis->depth[id]) {
+        analysis->depth[id] = referrerDepth + 1;
+        analysis->parent[id] = referrer;
+        // 引用者是 Class 对象时（静态变量）记录类本身，用 -(classIndex + 2) 区分
+        analysis->parentClass[id] = referrer >= 0 && referrer < analysis->classCount ? -referrer - 2
+                                                                                   : analysis->classOf(referrer_class_tag);
+        analysis->rootKind[id] = referrer == REF_ROOT ? (jbyte) reference_kind : 0;
+    }
+    if (id >= 0 && analysis->isTarget(id)) {
+        return 0;
+    }
+    return JVMTI_VISIT_OBJECTS;
+}
+
+extern "C"
+jint JNICALL
+ClearTagCallback(jlong class_tag, jlong size, jlong *tag_ptr, jint length, void *user_data) {
+    ReferenceAnalysis *analysis = static_cast<ReferenceAnalysis *>(user_data);
+    jlong id = *tag_ptr - analysis->baseTag;
+    if (id >= 0 && id < analysis->capacity) {
+        *tag_ptr = 0;
+    }
+    return JVMTI_VISIT_OBJECTS;
+}
+
+/**
+ * 路径格式： [状态, 实例的类, 直接引用者的类, 引用者的引用者的类, ...] ，引用者是 Class 对象时是 -(类的下标 + 2)
+ * 状态大于 0 时是 GC root 的 jvmtiHeapReferenceKind ，0 表示路径没有记录完整，-1 表示没有从 GC root 遍历到
+ */
+extern "C"
+jintArray buildPath(JNIEnv *env, ReferenceAnalysis *analysis, jint target, jint *buffer) {
+    jint length = 2;
+    jint status = 0;
+    buffer[1] = analysis->classIndex[target];
+    jint current = target;
+    if (analysis->depth[current] == DEPTH_UNREACHED) {
+        status = -1;
+    } else {
+        while (length < MAX_PATH_LENGTH) {
+            if (analysis->parent[current] == REF_ROOT) {
+                status = analysis->rootKind[current];
+                break;
+            }
+            buffer[length++] = analysis->parentClass[current];
+            if (analysis->parent[current] == REF_UNKNOWN) {
+                break;
+            }
+            current = analysis->parent[current];
+        }
+    }
+    buffer[0] = status;
+    jintArray path = env->NewIntArray(length);
+    env->SetIntArrayRegion(path, 0, length, buffer);
+    return path;
+}
+
+/**
+ * 1. 从 klass 的前 limit 个实例出发遍历，得到 retained 的候选对象
+ * 2. 从 GC root 出发遍历，排除掉不经过这些实例也可达的候选对象，同时记录到 GC root 的路径
+ * 实例不会放到 Java 数组里，避免调用者持有的引用出现在路径上
+ * FollowReferences 期间 JVM 停在 safepoint 上，两次遍历共用 timeoutMillis ，超时后不再继续遍历
+ *
+ * @return 小于 0 时是 JVMTI 错误码的相反数，否则是 (实例数量 << 2) | 1 retained 的遍历达到 maxObjects | 2 超时
+ */
+extern "C"
+JNIEXPORT jint JNICALL
+Java_arthas_VmTool_referenceAnalysis0(JNIEnv *env, jclass thisClass, jclass klass, jint limit, jobjectArray classes,
+                                      jint maxObjects, jlong timeoutMillis, jobjectArray paths, jlongArray retainedSizes) {
+    jint classCount = env->GetArrayLength(classes);
+
+    ReferenceAnalysis analysis;
+    memset(&analysis, 0, sizeof(analysis));
+    analysis.classCount = classCount;
+    analysis.limit = limit;
+    analysis.capacity = classCount + limit + maxObjects;
+    analysis.baseTag = tagCounter + 1;
+    tagCounter += analysis.capacity;
+    analysis.deadline = currentTimeMillis() + timeoutMillis;
+
+    jint capacity = analysis.capacity;
+    analysis.parent = new jint[capacity];
+    analysis.parentClass = new jint[capacity];
+    analysis.depth = new jint[capacity];
+    analysis.classIndex = new jint[capacity];
+    analysis.owner = new jint[capacity];
+    analysis.size = new jlong[capacity]();
+    analysis.rootKind = new jbyte[capacity]();
+    analysis.reachable = new jbyte[capacity]();
+    for (jint i = 0; i < capacity; i++) {
+        analysis.parent[i] = REF_UNKNOWN;
+        analysis.parentClass[i] = -1;
+        analysis.depth[i] = DEPTH_UNREACHED;
+        analysis.classIndex[i] = -1;
+        analysis.owner[i] = -1;
+    }
+
+    for (jint i = 0; i < classCount; i++) {
+        jobject loadedClass = env->GetObjectArrayElement(classes, i);
+        if (loadedClass != NULL) {
+            jvmti->SetTag(loadedClass, analysis.baseTag + i);
+            env->DeleteLocalRef(loadedClass);
+        }
+    }
+    analysis.nextId = classCount;
+    jvmtiError error = jvmti->IterateOverInstancesOfClass(klass, JVMTI_HEAP_OBJECT_EITHER,
+                                                          ReferenceTargetCallback, &analysis);
+    jint targetCount = analysis.targetCount;
+    jint found = 0;
+    jint *targetTags = NULL;
+    jobject *targets = NULL;
+    if (!error && targetCount > 0) {
+        // 按 tag 取回实例作为 FollowReferences 的起点，顺序和 id 无关
+        jlong *tags = new jlong[targetCount];
+        for (jint i = 0; i < targetCount; i++) {
+            tags[i] = analysis.baseTag + classCount + i;
+        }
+        jlong *resultTags = NULL;
+        error = jvmti->GetObjectsWithTags(targetCount, tags, &found, &targets, &resultTags);
+        delete[] tags;
+        if (!error) {
+            targetTags = new jint[found];
+            for (jint i = 0; i < found; i++) {
+                targetTags[i] = (jint) (resultTags[i] - analysis.baseTag);
+            }
+            jvmti->Deallocate(reinterpret_cast<unsigned char *>(resultTags));
+        }
+    }
+
+    jvmtiHeapCallbacks callbacks;
+    memset(&callbacks, 0, sizeof(callbacks));
+    callbacks.heap_reference_callback = &RetainedReferenceCallback;
+    for (jint i = 0; i < found && !error && !analysis.truncated && !analysis.timeout; i++) {
+        analysis.currentTarget = targetTags[i] - classCount;
+        error = jvmti->FollowReferences(0, NULL, targets[i], &callbacks, &analysis);
+    }
+    // JNI local 引用也是 GC root ，从 GC root 遍历前要先删除
+    if (targets != NULL) {
+        for (jint i = 0; i < found; i++) {
+            env->DeleteLocalRef(targets[i]);
+        }
+        jvmti->Deallocate(reinterpret_cast<unsigned char *>(targets));
+    }
+    delete[] targetTags;
+
+    if (!error && !analysis.timeout) {
+        // 候选集合之外的对象只在容量没用完时记录路径
+        callbacks.heap_reference_callback = &RootReferenceCallback;
+        error = jvmti->FollowReferences(0, NULL, NULL, &callbacks, &analysis);
+    }
+
+    if (!error) {
+        jlong *retained = new jlong[targetCount];
+        for (jint i = 0; i < targetCount; i++) {
+            retained[i] = analysis.size[classCount + i];
+        }
+        for (jint id = classCount + targetCount; id < analysis.nextId; id++) {
+            if (analysis.owner[id] >= 0 && !analysis.reachable[id]) {
+                retained[analysis.owner[id]] += analysis.size[id];
+            }
+        }
+        env->SetLongArrayRegion(retainedSizes, 0, targetCount, retained);
+        delete[] retained;
+
+        jint *buffer = new jint[MAX_PATH_LENGTH];
+        for (jint i = 0; i < targetCount; i++) {
+            jintArray path = buildPath(env, &analysis, classCount + i, buffer);
+            env->SetObjectArrayElement(paths, i, path);
+            env->DeleteLocalRef(path);
+        }
+        delete[] buffer;
+    } else {
+        printf("ERROR: JVMTI reference analysis failed!%u\n", error);
+    }
+
+    // 清除这次分析打上的 tag
+    jvmtiHeapCallbacks clearCallbacks;
+    memset(&clearCallbacks, 0, sizeof(clearCallbacks));
+    clearCallbacks.heap_iteration_callback = &ClearTagCallback;
+    jvmti->IterateThroughHeap(JVMTI_HEAP_FILTER_UNTAGGED, NULL, &clearCallbacks, &analysis);
+
+    delete[] analysis.parent;
+    delete[] analysis.parentClass;
+    delete[] analysis.depth;
+    delete[] analysis.classIndex;
+    delete[] analysis.owner;
+    delete[] analysis.size;
+    delete[] analysis.rootKind;
+    delete[] analysis.reachable;
+
+    if (error) {
+        return -error;
+    }
+    return (targetCount << 2) | (analysis.truncated ? 1 : 0) | (analysis.timeout ? 2 : 0);
+}
@@ -166,6 +166,95 @@ public class VmToolTest {
         Assertions.assertThat(instances3).hasSize(1);
     }
 
+    class HistogramTest {
+    }
+
+    @Test
+    public void test_classHistogram() {
+        VmTool vmtool = initVmTool();
+
+        ArrayList<HistogramTest> list = new ArrayList<HistogramTest>();
+        for (int i = 0; i < 10; ++i) {
+            list.add(new HistogramTest());
+        }
+        Class<?>[] classes = new Class<?>[] { HistogramTest.class, VmTool.class };
+        long[][] histogram = vmtool.classHistogram(classes);
+        Assertions.assertThat(histogram[0]).containsExactly(10, 1);
+        Assertions.assertThat(histogram[1][0]).isEqualTo(vmtool.sumInstanceSize(HistogramTest.class));
+        Assertions.assertThat(histogram[1][1]).isEqualTo(vmtool.getInstanceSize(vmtool));
+
+        // 统计结束后清除了 class 上的 tag ，再次统计结果不变
+        Assertions.assertThat(vmtool.classHistogram(classes)[0][0]).isEqualTo(10);
+        Assertions.assertThat(vmtool.classHistogram(new Class<?>[0])[0]).isEmpty();
+    }
+
+    static class ReferenceTest {
+        byte[] data = new byte[1024];
+    }
+
+    static class ReferenceHolder {
+        static ArrayList<ReferenceTest> list = new ArrayList<ReferenceTest>();
+    }
+
+    @Test
+    public void test_referenceAnalysis() {
+        VmTool vmtool = initVmTool();
+
+        for (int i = 0; i < 10; ++i) {
+            ReferenceHolder.list.add(new ReferenceTest());
+        }
+        ReferenceAnalysis analysis = vmtool.referenceAnalysis(ReferenceTest.class, 10, 100000, 10000);
+        Assertions.assertThat(analysis.size()).isEqualTo(10);
+        Assertions.assertThat(analysis.isRetainedSizeTruncated()).isFalse();
+        Assertions.assertThat(analysis.isTimeout()).isFalse();
+        for (int i = 0; i < analysis.size(); ++i) {
+            Assertions.assertThat(analysis.getInstanceClass(i)).isEqualTo(ReferenceTest.class);
+            // retained size 包含了 byte[] 字段
+            Assertions.assertThat(analysis.getRetainedSize(i)).isGreaterThan(1024);
+            Assertions.assertThat(analysis.getRootKind(i)).isGreaterThan(0);
+            Assertions.assertThat(analysis.getReferrerClasses(i)).contains(ArrayList.class, ReferenceHolder.class);
+        }
+
+        // 分析结束后清除了 tag ，不影响其它 action
+        Assertions.assertThat(vmtool.countInstances(ReferenceTest.class)).isEqualTo(10);
+        ReferenceHolder.list.clear();
+    }
+
+    interface BatchInterface {
+    }
+
+    class BatchA implements BatchInterface {
+    }
+
+    class BatchB extends BatchA {
+    }
+
+    @Test
+    public void test_getInstances_batch() {
+        VmTool vmtool = initVmTool();
+        ArrayList<Object> list = new ArrayList<Object>();
+        for (int i = 0; i < 3; ++i) {
+            list.add(new BatchA());
+        }
+        for (int i = 0; i < 2; ++i) {
+            list.add(new BatchB());
+        }
+
+        // 只获取类型正好是这个类的实例
+        Object[][] instances = vmtool.getInstances(new Class<?>[] { BatchA.class, BatchB.class, BatchInterface.class }, false, -1);
+        Assertions.assertThat(instances[0]).hasSize(3).isInstanceOf(BatchA[].class);
+        Assertions.assertThat(instances[1]).hasSize(2).isInstanceOf(BatchB[].class);
+        Assertions.assertThat(instances[2]).isEmpty();
+
+        // 包含子类/实现类的实例
+        instances = vmtool.getInstances(new Class<?>[] { BatchA.class, BatchInterface.class }, true, -1);
+        Assertions.assertThat(instances[0]).hasSize(5);
+        Assertions.assertThat(instances[1]).hasSize(5).isInstanceOf(BatchInterface[].class);
+
+        instances = vmtool.getInstances(new Class<?>[] { BatchInterface.class }, true, 4);
+        Assertions.assertThat(instances[0]).hasSize(4);
+    }
+
     interface III {
     }
 
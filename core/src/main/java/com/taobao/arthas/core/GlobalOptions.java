@@ -50,6 +50,27 @@ public class GlobalOptions {
     )
     public static volatile boolean isBatchReTransform = true;
 
+    /**
+     * 批量增强时每批的类数量，小于等于0表示一次全部增强
+     */
+    @Option(level = 1,
+            name = "batch-re-transform-size",
+            summary = "Option to set the number of classes in each reTransform batch",
+            description = "This option sets the max number of classes retransformed in one batch, default value 200. "
+                    + "0 means retransform all matched classes in one batch."
+    )
+    public static volatile int batchReTransformSize = 200;
+
+    /**
+     * 批量增强时两批之间的间隔，单位 ms
+     */
+    @Option(level = 1,
+            name = "batch-re-transform-interval",
+            summary = "Option to set the pause between reTransform batches",
+            description = "This option sets the pause in milliseconds between two reTransform batches, default value 0."
+    )
+    public static volatile long batchReTransformInterval = 0;
+
     /**
      * 是否支持json格式化输出<br/>
      * 这个开关打开后，使用json格式输出目标对象，配合-x参数使用
@@ -72,6 +93,56 @@ public class GlobalOptions {
     )
     public static volatile boolean isDisableSubClass = false;
 
+    /**
+     * 是否使用类索引搜索类
+     * @see com.taobao.arthas.core.util.ClassIndex
+     */
+    @Option(
+            level = 1,
+            name = "class-index",
+            summary = "Option to search classes by class index",
+            description = "This option enables to search classes by an incrementally maintained class index "
+                    + "instead of scanning all loaded classes every time, default value true."
+    )
+    public static volatile boolean isUsingClassIndex = true;
+
+    /**
+     * trace 每次调用最多创建的节点数量
+     * @see com.taobao.arthas.core.command.model.TraceTree
+     */
+    @Option(
+            level = 1,
+            name = "trace-max-node",
+            summary = "Option to limit the number of nodes in one trace result",
+            description = "The max number of distinct call nodes in one trace result. New calls beyond this limit "
+                    + "are collapsed into an aggregate node of their parent, 0 means unlimited, default value 10000."
+    )
+    public static volatile int traceMaxNode = 10000;
+
+    /**
+     * 后台采样线程 cpu 历史，thread --since 和 dashboard 使用
+     * @see com.taobao.arthas.core.command.monitor200.ThreadCpuHistory
+     */
+    @Option(
+            level = 1,
+            name = "thread-cpu-history",
+            summary = "Option to sample thread cpu usage in background",
+            description = "This option enables a low frequency background sampler which keeps the recent thread cpu usage, "
+                    + "used by `thread --since` and the dashboard, default value false."
+    )
+    public static volatile boolean threadCpuHistory = false;
+
+    /**
+     * 后台采样线程 cpu 历史的间隔
+     */
+    @Option(
+            level = 1,
+            name = "thread-cpu-history-interval",
+            summary = "Option to set the interval of the thread cpu history sampler",
+            description = "The interval (in ms) between two background thread cpu samples, default value 5000."
+    )
+    public static volatile long threadCpuHistoryInterval = 5000;
+
     /**
      * 是否在interface类里搜索函数
      * https://github.com/alibaba/arthas/issues/1105
@@ -136,4 +207,82 @@ public class GlobalOptions {
             description = STRICT_MESSAGE
     )
     public static volatile boolean strict = true;
+
+    /**
+     * tt 命令最多保存的记录数，超过时按 tt-eviction 淘汰
+     */
+    @Option(level = 1,
+            name = "tt-capacity",
+            summary = "Option to limit the number of tt records",
+            description = "This option limits the number of time fragments kept by tt, default value 1000. "
+                    + "Old records are evicted according to tt-eviction."
+    )
+    public static volatile int ttCapacity = 1000;
+
+    /**
+     * tt 命令保存的记录估算占用内存的上限，小于等于0表示不限制
+     */
+    @Option(level = 1,
+            name = "tt-max-bytes",
+            summary = "Option to limit the estimated memory of tt records",
+            description = "This option limits the estimated retained size in bytes of time fragments kept by tt, "
+                    + "default value 64MB, 0 means no limit."
+    )
+    public static volatile long ttMaxBytes = 64L * 1024 * 1024;
+
+    /**
+     * tt 记录的淘汰策略，fifo 或者 lru
+     */
+    @Option(level = 1,
+            name = "tt-eviction",
+            summary = "Option to set the eviction policy of tt records",
+            description = "This option sets the eviction policy of time fragments, fifo or lru, default value fifo."
+    )
+    public static volatile String ttEviction = "fifo";
+
+    /**
+     * tt 记录持有入参/返回值/异常/target 的引用类型，strong, soft 或者 weak
+     */
+    @Option(level = 1,
+            name = "tt-reference",
+            summary = "Option to set the reference type of tt records",
+            description = "This option sets how time fragments reference the captured objects, "
+                    + "strong, soft or weak, default value strong. Soft or weak referenced objects may be garbage collected, "
+                    + "the records themselves are kept."
+    )
+    public static volatile String ttReference = "strong";
+
+    /**
+     * tt --off-heap 使用的 spill 文件大小，在第一次使用时创建，修改后 tt --delete-all 删除文件才会生效
+     */
+    @Option(level = 1,
+            name = "tt-off-heap-bytes",
+            summary = "Option to set the size of tt off-heap file",
+            description = "This option sets the size in bytes of the memory-mapped ring file used by tt --off-heap, "
+                    + "default value 64MB. A change takes effect after the file is deleted by tt --delete-all."
+    )
+    public static volatile long ttOffHeapBytes = 64L * 1024 * 1024;
+
+    /**
+     * tt --off-heap 最多保存的记录数，和 tt-capacity 分开计算
+     */
+    @Option(level = 1,
+            name = "tt-off-heap-capacity",
+            summary = "Option to limit the count of tt off-heap records",
+            description = "This option limits the count of time fragments recorded by tt --off-heap, "
+                    + "independent of tt-capacity, default value 100000, 0 means limited only by tt-off-heap-bytes."
+    )
+    public static volatile int ttOffHeapCapacity = 100000;
+
+    /**
+     * 命令结果消费者（web console/http api 的会话）的结果队列满时的处理策略，drop, sample 或者 coalesce
+     */
+    @Option(level = 1,
+            name = "result-overflow-policy",
+            summary = "Option to set the overflow policy of command result queues",
+            description = "This option sets how a slow result consumer handles a full result queue, "
+                    + "drop (discard the oldest result), sample (keep one of every N results) "
+                    + "or coalesce (merge monitor cycles), default value drop. The command is never interrupted."
+    )
+    public static volatile String resultOverflowPolicy = "drop";
 }
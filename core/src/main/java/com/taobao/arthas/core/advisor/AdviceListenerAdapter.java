@@ -1,5 +1,6 @@
 package com.taobao.arthas.core.advisor;
 
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.taobao.arthas.core.command.express.ExpressException;
@@ -22,6 +23,23 @@ public abstract class AdviceListenerAdapter implements AdviceListener, ProcessAw
 
     private boolean verbose;
 
+    /**
+     * 采样配置，默认不采样，每次调用都处理
+     */
+    private double sampleRate = 1.0;
+    private int sampleEvery = 1;
+    private final ThreadLocal<SampleState> sampleState = new ThreadLocal<SampleState>() {
+        @Override
+        protected SampleState initialValue() {
+            return new SampleState();
+        }
+    };
+    /**
+     * 进程被挂起时 SpyImpl 会跳过这个 listener ，正在执行的调用的 after 可能丢失，各线程的 depth 无法回到 0 。
+     * 每次跳过都会改变 sampleGeneration ，线程下次进入时发现不一致就重置采样状态
+     */
+    private volatile int sampleGeneration;
+
     @Override
     public long id() {
         return id;
@@ -48,12 +66,18 @@ public abstract class AdviceListenerAdapter implements AdviceListener, ProcessAw
     @Override
     final public void before(Class<?> clazz, String methodName, String methodDesc, Object target, Object[] args)
             throws Throwable {
+        if (isSampling() && !sampleState().enter(this)) {
+            return;
+        }
         before(clazz.getClassLoader(), clazz, new ArthasMethod(clazz, methodName, methodDesc), target, args);
     }
 
     @Override
     final public void afterReturning(Class<?> clazz, String methodName, String methodDesc, Object target, Object[] args,
             Object returnObject) throws Throwable {
+        if (isSampling() && !sampleState().exit()) {
+            return;
+        }
         afterReturning(clazz.getClassLoader(), clazz, new ArthasMethod(clazz, methodName, methodDesc), target, args,
                 returnObject);
     }
@@ -61,6 +85,9 @@ public abstract class AdviceListenerAdapter implements AdviceListener, ProcessAw
     @Override
     final public void afterThrowing(Class<?> clazz, String methodName, String methodDesc, Object target, Object[] args,
             Throwable throwable) throws Throwable {
+        if (isSampling() && !sampleState().exit()) {
+            return;
+        }
         afterThrowing(clazz.getClassLoader(), clazz, new ArthasMethod(clazz, methodName, methodDesc), target, args,
                 throwable);
     }
@@ -146,6 +173,97 @@ public abstract class AdviceListenerAdapter implements AdviceListener, ProcessAw
         process.end();
     }
 
+    /**
+     * 设置采样，在创建 Advice/TraceEntity 等对象之前就判断是否跳过本次调用
+     * 
+     * @param sampleRate  按概率采样，取值范围 (0, 1]
+     * @param sampleEvery 每 N 次调用采样一次（按线程计数）
+     */
+    public void setSample(double sampleRate, int sampleEvery) {
+        this.sampleRate = sampleRate;
+        this.sampleEvery = sampleEvery;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getSampleEvery() {
+        return sampleEvery;
+    }
+
+    private boolean isSampling() {
+        return sampleRate < 1.0 || sampleEvery > 1;
+    }
+
+    /**
+     * 当前线程是否处在一个没有被采样的调用里。trace 命令在方法内部插入的 invoke 回调需要用这个来判断是否跳过。
+     */
+    protected boolean isSampledOut() {
+        return isSampling() && sampleState().isSampledOut();
+    }
+
+    /**
+     * SpyImpl 因为进程不是运行状态跳过了这个 listener
+     */
+    void onSkipped() {
+        if (isSampling()) {
+            sampleGeneration++;
+        }
+    }
+
+    private SampleState sampleState() {
+        SampleState state = sampleState.get();
+        int generation = sampleGeneration;
+        if (state.generation != generation) {
+            state.generation = generation;
+            state.depth = 0;
+        }
+        return state;
+    }
+
+    private boolean sample(SampleState state) {
+        if (sampleEvery > 1 && ++state.count % sampleEvery != 0) {
+            return false;
+        }
+        return sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    /**
+     * <pre>
+     * 每个线程的采样状态。只在最外层的调用上做采样判断，嵌套的调用（比如递归，或者 trace 时方法内部的调用）跟随最外层的结果，
+     * 保证 before/after 成对处理，trace 的调用树也是完整的。
+     * 没有对应 before 的 after （比如增强时方法已经在执行）会被跳过。
+     * 进程挂起期间丢失的 after 通过 generation 处理，恢复之后重新从最外层开始判断。
+     * </pre>
+     */
+    private static class SampleState {
+        private int generation;
+        private int depth;
+        private boolean sampled;
+        private long count;
+
+        boolean enter(AdviceListenerAdapter listener) {
+            if (depth == 0) {
+                sampled = listener.sample(this);
+            }
+            depth++;
+            return sampled;
+        }
+
+        boolean exit() {
+            if (depth == 0) {
+                return false;
+            }
+            depth--;
+            return sampled;
+        }
+
+        boolean isSampledOut() {
+            return depth > 0 && !sampled;
+        }
+    }
+
     public boolean isVerbose() {
         return verbose;
     }
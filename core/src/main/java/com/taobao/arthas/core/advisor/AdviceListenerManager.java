@@ -1,6 +1,9 @@
 package com.taobao.arthas.core.advisor;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
@@ -81,12 +84,18 @@ public class AdviceListenerManager {
                                 }
 
                                 if (newResult.size() != listeners.size()) {
-                                    adviceListenerManager.map.put(eee.getKey(), newResult);
+                                    if (newResult.isEmpty()) {
+                                        adviceListenerManager.map.remove(eee.getKey());
+                                    } else {
+                                        adviceListenerManager.map.put(eee.getKey(), newResult);
+                                    }
+                                    adviceListenerManager.updateMethodAdvice(eee.getKey(), newResult);
                                 }
 
                             }
                         }
                     }
+                    cleanMethodAdvices();
                 } catch (Throwable e) {
                     try {
                         logger.error("clean AdviceListener error", e);
@@ -100,8 +109,63 @@ public class AdviceListenerManager {
 
     private static final ConcurrentWeakKeyHashMap<ClassLoader, ClassLoaderAdviceListenerManager> adviceListenerMap = new ConcurrentWeakKeyHashMap<ClassLoader, ClassLoaderAdviceListenerManager>();
 
+    /**
+     * 以 adviceId 为下标的 MethodAdvice 数组，分配新的 adviceId 时才会扩容。
+     * 写入元素之后会重新赋值一次，保证 SpyImpl 读取时的可见性。
+     * ClassLoader 被回收之后，增强的类也已经卸载，对应的位置会被清空，adviceId 放回 freeAdviceIds 里重新分配。
+     */
+    private static volatile MethodAdvice[] methodAdvices = new MethodAdvice[64];
+    private static int adviceIdCount = 0;
+    private static final ArrayDeque<Integer> freeAdviceIds = new ArrayDeque<Integer>();
+
+    /**
+     * 一个被增强函数的 enter/exit/exception 共用一个 adviceId ，listener 数组在变化时整体替换（copy-on-write）
+     */
+    public static class MethodAdvice {
+        private static final AdviceListener[] EMPTY_LISTENERS = new AdviceListener[0];
+
+        // 不能强引用 ClassLoader ，否则 adviceListenerMap 里的 ClassLoader 永远不会被回收
+        private final WeakReference<ClassLoader> classLoaderRef;
+        private final String className;
+        private final String methodName;
+        private final String methodDesc;
+        private volatile AdviceListener[] listeners = EMPTY_LISTENERS;
+
+        MethodAdvice(ClassLoader classLoader, String className, String methodName, String methodDesc) {
+            this.classLoaderRef = new WeakReference<ClassLoader>(classLoader);
+            this.className = className;
+            this.methodName = methodName;
+            this.methodDesc = methodDesc;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getMethodName() {
+            return methodName;
+        }
+
+        public String getMethodDesc() {
+            return methodDesc;
+        }
+
+        public AdviceListener[] getListeners() {
+            return listeners;
+        }
+
+        void setListeners(List<AdviceListener> listeners) {
+            if (listeners == null || listeners.isEmpty()) {
+                this.listeners = EMPTY_LISTENERS;
+            } else {
+                this.listeners = listeners.toArray(new AdviceListener[listeners.size()]);
+            }
+        }
+    }
+
     static class ClassLoaderAdviceListenerManager {
         private ConcurrentHashMap<String, List<AdviceListener>> map = new ConcurrentHashMap<String, List<AdviceListener>>();
+        private ConcurrentHashMap<String, Integer> adviceIds = new ConcurrentHashMap<String, Integer>();
 
         private String key(String className, String methodName, String methodDesc) {
             return className + methodName + methodDesc;
@@ -125,6 +189,32 @@ public class AdviceListenerManager {
                 if (!listeners.contains(listener)) {
                     listeners.add(listener);
                 }
+                updateMethodAdvice(key, listeners);
+            }
+        }
+
+        /**
+         * @param classLoader 这个 manager 对应的 ClassLoader ，manager 本身不能引用它
+         */
+        public int adviceId(ClassLoader classLoader, String className, String methodName, String methodDesc) {
+            synchronized (this) {
+                className = className.replace('/', '.');
+                String key = key(className, methodName, methodDesc);
+
+                Integer adviceId = adviceIds.get(key);
+                if (adviceId == null) {
+                    adviceId = newMethodAdvice(classLoader, className, methodName, methodDesc);
+                    adviceIds.put(key, adviceId);
+                    updateMethodAdvice(key, map.get(key));
+                }
+                return adviceId;
+            }
+        }
+
+        private void updateMethodAdvice(String key, List<AdviceListener> listeners) {
+            Integer adviceId = adviceIds.get(key);
+            if (adviceId != null) {
+                methodAdvices[adviceId].setListeners(listeners);
             }
         }
 
@@ -169,12 +259,7 @@ public class AdviceListenerManager {
         classLoader = wrap(classLoader);
         className = className.replace('/', '.');
 
-        ClassLoaderAdviceListenerManager manager = adviceListenerMap.get(classLoader);
-
-        if (manager == null) {
-            manager = new ClassLoaderAdviceListenerManager();
-            adviceListenerMap.put(classLoader, manager);
-        }
+        ClassLoaderAdviceListenerManager manager = getOrCreateManager(classLoader);
         manager.registerAdviceListener(className, methodName, methodDesc, listener);
     }
 
@@ -182,6 +267,58 @@ public class AdviceListenerManager {
 
     }
 
+    /**
+     * 为被增强的函数分配 adviceId ，同一个 ClassLoader 里的同一个函数总是返回同一个 adviceId
+     */
+    public static int adviceId(ClassLoader classLoader, String className, String methodName, String methodDesc) {
+        classLoader = wrap(classLoader);
+        className = className.replace('/', '.');
+
+        ClassLoaderAdviceListenerManager manager = getOrCreateManager(classLoader);
+        return manager.adviceId(classLoader, className, methodName, methodDesc);
+    }
+
+    public static MethodAdvice queryMethodAdvice(int adviceId) {
+        MethodAdvice[] advices = methodAdvices;
+        if (adviceId >= 0 && adviceId < advices.length) {
+            return advices[adviceId];
+        }
+        return null;
+    }
+
+    private static synchronized int newMethodAdvice(ClassLoader classLoader, String className, String methodName,
+            String methodDesc) {
+        MethodAdvice[] advices = methodAdvices;
+        Integer freeAdviceId = freeAdviceIds.poll();
+        int adviceId = freeAdviceId != null ? freeAdviceId : adviceIdCount++;
+        if (adviceId >= advices.length) {
+            advices = Arrays.copyOf(advices, advices.length * 2);
+        }
+        advices[adviceId] = new MethodAdvice(classLoader, className, methodName, methodDesc);
+        methodAdvices = advices;
+        return adviceId;
+    }
+
+    /**
+     * 清空 ClassLoader 已经被回收的 MethodAdvice ，释放其中的 listener ，adviceId 留给之后增强的函数
+     */
+    static synchronized void cleanMethodAdvices() {
+        MethodAdvice[] advices = methodAdvices;
+        boolean changed = false;
+        for (int i = 0; i < adviceIdCount; ++i) {
+            MethodAdvice advice = advices[i];
+            if (advice != null && advice.classLoaderRef.get() == null) {
+                advice.setListeners(null);
+                advices[i] = null;
+                freeAdviceIds.add(i);
+                changed = true;
+            }
+        }
+        if (changed) {
+            methodAdvices = advices;
+        }
+    }
+
     public static List<AdviceListener> queryAdviceListeners(ClassLoader classLoader, String className,
             String methodName, String methodDesc) {
         classLoader = wrap(classLoader);
@@ -200,12 +337,7 @@ public class AdviceListenerManager {
         classLoader = wrap(classLoader);
         className = className.replace('/', '.');
 
-        ClassLoaderAdviceListenerManager manager = adviceListenerMap.get(classLoader);
-
-        if (manager == null) {
-            manager = new ClassLoaderAdviceListenerManager();
-            adviceListenerMap.put(classLoader, manager);
-        }
+        ClassLoaderAdviceListenerManager manager = getOrCreateManager(classLoader);
         manager.registerTraceAdviceListener(className, owner, methodName, methodDesc, listener);
     }
 
@@ -222,6 +354,19 @@ public class AdviceListenerManager {
         return null;
     }
 
+    private static ClassLoaderAdviceListenerManager getOrCreateManager(ClassLoader classLoader) {
+        ClassLoaderAdviceListenerManager manager = adviceListenerMap.get(classLoader);
+
+        if (manager == null) {
+            manager = new ClassLoaderAdviceListenerManager();
+            ClassLoaderAdviceListenerManager old = adviceListenerMap.putIfAbsent(classLoader, manager);
+            if (old != null) {
+                manager = old;
+            }
+        }
+        return manager;
+    }
+
     private static ClassLoader wrap(ClassLoader classLoader) {
         if (classLoader != null) {
             return classLoader;
@@ -26,6 +26,7 @@ import com.alibaba.deps.org.objectweb.asm.Opcodes;
 import com.alibaba.deps.org.objectweb.asm.Type;
 import com.alibaba.deps.org.objectweb.asm.tree.AbstractInsnNode;
 import com.alibaba.deps.org.objectweb.asm.tree.ClassNode;
+import com.alibaba.deps.org.objectweb.asm.tree.LdcInsnNode;
 import com.alibaba.deps.org.objectweb.asm.tree.MethodInsnNode;
 import com.alibaba.deps.org.objectweb.asm.tree.MethodNode;
 import com.alibaba.arthas.deps.org.slf4j.Logger;
@@ -44,9 +45,9 @@ import com.alibaba.bytekit.utils.AsmOpUtils;
 import com.alibaba.bytekit.utils.AsmUtils;
 import com.taobao.arthas.common.Pair;
 import com.taobao.arthas.core.GlobalOptions;
-import com.taobao.arthas.core.advisor.SpyInterceptors.SpyInterceptor1;
-import com.taobao.arthas.core.advisor.SpyInterceptors.SpyInterceptor2;
-import com.taobao.arthas.core.advisor.SpyInterceptors.SpyInterceptor3;
+import com.taobao.arthas.core.advisor.SpyInterceptors.SpyAdviceInterceptor1;
+import com.taobao.arthas.core.advisor.SpyInterceptors.SpyAdviceInterceptor2;
+import com.taobao.arthas.core.advisor.SpyInterceptors.SpyAdviceInterceptor3;
 import com.taobao.arthas.core.advisor.SpyInterceptors.SpyTraceExcludeJDKInterceptor1;
 import com.taobao.arthas.core.advisor.SpyInterceptors.SpyTraceExcludeJDKInterceptor2;
 import com.taobao.arthas.core.advisor.SpyInterceptors.SpyTraceExcludeJDKInterceptor3;
@@ -140,9 +141,9 @@ public class Enhancer implements ClassFileTransformer {
 
             final List<InterceptorProcessor> interceptorProcessors = new ArrayList<InterceptorProcessor>();
 
-            interceptorProcessors.addAll(defaultInterceptorClassParser.parse(SpyInterceptor1.class));
-            interceptorProcessors.addAll(defaultInterceptorClassParser.parse(SpyInterceptor2.class));
-            interceptorProcessors.addAll(defaultInterceptorClassParser.parse(SpyInterceptor3.class));
+            interceptorProcessors.addAll(defaultInterceptorClassParser.parse(SpyAdviceInterceptor1.class));
+            interceptorProcessors.addAll(defaultInterceptorClassParser.parse(SpyAdviceInterceptor2.class));
+            interceptorProcessors.addAll(defaultInterceptorClassParser.parse(SpyAdviceInterceptor3.class));
 
             if (this.isTracing) {
                 if (!this.skipJDKTrace) {
@@ -222,6 +223,10 @@ public class Enhancer implements ClassFileTransformer {
                         }
                     }
                 }else {
+                    // 分配 adviceId ，插入的 spy 函数直接通过 adviceId 找到 listener
+                    int adviceId = AdviceListenerManager.adviceId(inClassLoader, className, methodNode.name,
+                            methodNode.desc);
+                    List<LdcInsnNode> originPlaceholders = findAdviceIdPlaceholders(methodNode);
                     MethodProcessor methodProcessor = new MethodProcessor(classNode, methodNode, groupLocationFilter);
                     for (InterceptorProcessor interceptor : interceptorProcessors) {
                         try {
@@ -240,6 +245,11 @@ public class Enhancer implements ClassFileTransformer {
                             logger.error("enhancer error, class: {}, method: {}, interceptor: {}", classNode.name, methodNode.name, interceptor.getClass().getName(), e);
                         }
                     }
+                    for (LdcInsnNode placeholder : findAdviceIdPlaceholders(methodNode)) {
+                        if (!originPlaceholders.contains(placeholder)) {
+                            placeholder.cst = adviceId;
+                        }
+                    }
                 }
 
                 // enter/exist 总是要插入 listener
@@ -273,6 +283,24 @@ public class Enhancer implements ClassFileTransformer {
         return null;
     }
 
+    /**
+     * 查找 SpyAdviceInterceptor 内联进来的 adviceId 占位常量
+     */
+    private static List<LdcInsnNode> findAdviceIdPlaceholders(MethodNode methodNode) {
+        List<LdcInsnNode> result = new ArrayList<LdcInsnNode>();
+        for (AbstractInsnNode insnNode = methodNode.instructions.getFirst(); insnNode != null; insnNode = insnNode
+                .getNext()) {
+            if (insnNode instanceof LdcInsnNode) {
+                LdcInsnNode ldcInsnNode = (LdcInsnNode) insnNode;
+                if (ldcInsnNode.cst instanceof Integer
+                        && (Integer) ldcInsnNode.cst == SpyInterceptors.ADVICE_ID_PLACEHOLDER) {
+                    result.add(ldcInsnNode);
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * 是否抽象属性
      */
@@ -413,6 +441,21 @@ public class Enhancer implements ClassFileTransformer {
      * @throws UnmodifiableClassException 增强失败
      */
     public synchronized EnhancerAffect enhance(final Instrumentation inst, int maxNumOfMatchedClass) throws UnmodifiableClassException {
+        return enhance(inst, maxNumOfMatchedClass, null);
+    }
+
+    /**
+     * 对象增强，匹配的类按 batch-re-transform-size 分批 retransform ，两批之间间隔 batch-re-transform-interval ms ，
+     * 避免一次 retransform 几千个类时应用长时间停在 safepoint 上
+     *
+     * @param inst                 inst
+     * @param maxNumOfMatchedClass 匹配的class最大数量
+     * @param progressListener     分批增强的进度回调，可以为 null
+     * @return 增强影响范围
+     * @throws UnmodifiableClassException 增强失败
+     */
+    public synchronized EnhancerAffect enhance(final Instrumentation inst, int maxNumOfMatchedClass,
+            ProgressListener progressListener) throws UnmodifiableClassException {
         // 获取需要增强的类集合
         this.matchingClasses = GlobalOptions.isDisableSubClass
                 ? SearchUtils.searchClass(inst, classNameMatcher)
@@ -442,9 +485,20 @@ public class Enhancer implements ClassFileTransformer {
                 final int size = matchingClasses.size();
                 final Class<?>[] classArray = new Class<?>[size];
                 arraycopy(matchingClasses.toArray(), 0, classArray, 0, size);
-                if (classArray.length > 0) {
-                    inst.retransformClasses(classArray);
-                    logger.info("Success to batch transform classes: " + Arrays.toString(classArray));
+                int batchSize = GlobalOptions.batchReTransformSize > 0 ? GlobalOptions.batchReTransformSize : size;
+                for (int from = 0; from < size; from += batchSize) {
+                    if (from > 0 && !pauseBetweenBatches()) {
+                        // 只增强了一部分类，由调用者按失败处理并且 reset 已经增强的类
+                        String msg = "enhance is interrupted, transformed classes: " + from + "/" + size;
+                        logger.warn(msg);
+                        affect.setThrowable(new InterruptedException(msg));
+                        break;
+                    }
+                    Class<?>[] batch = Arrays.copyOfRange(classArray, from, Math.min(from + batchSize, size));
+                    retransformBatch(inst, batch);
+                    if (progressListener != null && size > batchSize) {
+                        progressListener.onProgress(from + batch.length, size);
+                    }
                 }
             } else {
                 // for each 增强
@@ -472,6 +526,57 @@ public class Enhancer implements ClassFileTransformer {
         return affect;
     }
 
+    /**
+     * retransform 一批类，失败时逐个重试，单个类失败不影响其它类的增强
+     */
+    private void retransformBatch(Instrumentation inst, Class<?>[] batch) {
+        try {
+            inst.retransformClasses(batch);
+            logger.info("Success to batch transform classes: " + Arrays.toString(batch));
+            return;
+        } catch (Throwable t) {
+            logger.warn("batch retransform failed, try to retransform classes one by one.", t);
+        }
+        for (Class<?> clazz : batch) {
+            try {
+                inst.retransformClasses(clazz);
+                logger.info("Success to transform class: " + clazz);
+            } catch (Throwable t) {
+                logger.warn("retransform {} failed.", clazz, t);
+                if (affect.getThrowable() == null) {
+                    affect.setThrowable(t);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 线程被中断时返回 false ，不再继续增强剩下的类
+     */
+    private static boolean pauseBetweenBatches() {
+        long interval = GlobalOptions.batchReTransformInterval;
+        if (interval > 0) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * 分批增强的进度回调
+     */
+    public interface ProgressListener {
+        /**
+         * @param transformed 已经 retransform 的类数量
+         * @param total       需要 retransform 的类总数
+         */
+        void onProgress(int transformed, int total);
+    }
+
     /**
      * 重置指定的Class
      *
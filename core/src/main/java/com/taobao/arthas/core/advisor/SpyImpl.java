@@ -5,6 +5,7 @@ import java.util.List;
 
 import com.alibaba.arthas.deps.org.slf4j.Logger;
 import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
+import com.taobao.arthas.core.advisor.AdviceListenerManager.MethodAdvice;
 import com.taobao.arthas.core.shell.system.ExecStatus;
 import com.taobao.arthas.core.shell.system.ProcessAware;
 import com.taobao.arthas.core.util.StringUtils;
@@ -96,6 +97,71 @@ public class SpyImpl extends AbstractSpy {
         }
     }
 
+    @Override
+    public void atEnter(Class<?> clazz, int adviceId, Object target, Object[] args) {
+        MethodAdvice methodAdvice = AdviceListenerManager.queryMethodAdvice(adviceId);
+        if (methodAdvice == null) {
+            return;
+        }
+        AdviceListener[] listeners = methodAdvice.getListeners();
+        for (int i = 0; i < listeners.length; ++i) {
+            AdviceListener adviceListener = listeners[i];
+            try {
+                if (skipAdviceListener(adviceListener)) {
+                    continue;
+                }
+                adviceListener.before(clazz, methodAdvice.getMethodName(), methodAdvice.getMethodDesc(), target, args);
+            } catch (Throwable e) {
+                logger.error("class: {}, method: {}, desc: {}", clazz.getName(), methodAdvice.getMethodName(),
+                        methodAdvice.getMethodDesc(), e);
+            }
+        }
+    }
+
+    @Override
+    public void atExit(Class<?> clazz, int adviceId, Object target, Object[] args, Object returnObject) {
+        MethodAdvice methodAdvice = AdviceListenerManager.queryMethodAdvice(adviceId);
+        if (methodAdvice == null) {
+            return;
+        }
+        AdviceListener[] listeners = methodAdvice.getListeners();
+        for (int i = 0; i < listeners.length; ++i) {
+            AdviceListener adviceListener = listeners[i];
+            try {
+                if (skipAdviceListener(adviceListener)) {
+                    continue;
+                }
+                adviceListener.afterReturning(clazz, methodAdvice.getMethodName(), methodAdvice.getMethodDesc(),
+                        target, args, returnObject);
+            } catch (Throwable e) {
+                logger.error("class: {}, method: {}, desc: {}", clazz.getName(), methodAdvice.getMethodName(),
+                        methodAdvice.getMethodDesc(), e);
+            }
+        }
+    }
+
+    @Override
+    public void atExceptionExit(Class<?> clazz, int adviceId, Object target, Object[] args, Throwable throwable) {
+        MethodAdvice methodAdvice = AdviceListenerManager.queryMethodAdvice(adviceId);
+        if (methodAdvice == null) {
+            return;
+        }
+        AdviceListener[] listeners = methodAdvice.getListeners();
+        for (int i = 0; i < listeners.length; ++i) {
+            AdviceListener adviceListener = listeners[i];
+            try {
+                if (skipAdviceListener(adviceListener)) {
+                    continue;
+                }
+                adviceListener.afterThrowing(clazz, methodAdvice.getMethodName(), methodAdvice.getMethodDesc(),
+                        target, args, throwable);
+            } catch (Throwable e) {
+                logger.error("class: {}, method: {}, desc: {}", clazz.getName(), methodAdvice.getMethodName(),
+                        methodAdvice.getMethodDesc(), e);
+            }
+        }
+    }
+
     @Override
     public void atBeforeInvoke(Class<?> clazz, String invokeInfo, Object target) {
         ClassLoader classLoader = clazz.getClassLoader();
@@ -179,6 +245,9 @@ public class SpyImpl extends AbstractSpy {
             ProcessAware processAware = (ProcessAware) adviceListener;
             ExecStatus status = processAware.getProcess().status();
             if (status.equals(ExecStatus.TERMINATED) || status.equals(ExecStatus.STOPPED)) {
+                if (adviceListener instanceof AdviceListenerAdapter) {
+                    ((AdviceListenerAdapter) adviceListener).onSkipped();
+                }
                 return true;
             }
         }
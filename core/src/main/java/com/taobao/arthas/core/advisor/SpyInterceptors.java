@@ -16,6 +16,36 @@ import com.alibaba.bytekit.asm.interceptor.annotation.AtInvokeException;
  */
 public class SpyInterceptors {
 
+    /**
+     * SpyAdviceInterceptor 里 adviceId 的占位值，增强时由 Enhancer 替换为真正分配的 adviceId
+     */
+    public static final int ADVICE_ID_PLACEHOLDER = 0x5A7D1CE0;
+
+    public static class SpyAdviceInterceptor1 {
+
+        @AtEnter(inline = true)
+        public static void atEnter(@Binding.This Object target, @Binding.Class Class<?> clazz,
+                @Binding.Args Object[] args) {
+            SpyAPI.atEnter(clazz, ADVICE_ID_PLACEHOLDER, target, args);
+        }
+    }
+
+    public static class SpyAdviceInterceptor2 {
+        @AtExit(inline = true)
+        public static void atExit(@Binding.This Object target, @Binding.Class Class<?> clazz,
+                @Binding.Args Object[] args, @Binding.Return Object returnObj) {
+            SpyAPI.atExit(clazz, ADVICE_ID_PLACEHOLDER, target, args, returnObj);
+        }
+    }
+
+    public static class SpyAdviceInterceptor3 {
+        @AtExceptionExit(inline = true)
+        public static void atExceptionExit(@Binding.This Object target, @Binding.Class Class<?> clazz,
+                @Binding.Args Object[] args, @Binding.Throwable Throwable throwable) {
+            SpyAPI.atExceptionExit(clazz, ADVICE_ID_PLACEHOLDER, target, args, throwable);
+        }
+    }
+
     public static class SpyInterceptor1 {
 
         @AtEnter(inline = true)
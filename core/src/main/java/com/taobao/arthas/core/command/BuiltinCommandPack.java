@@ -28,6 +28,7 @@ import com.taobao.arthas.core.command.monitor200.MemoryCommand;
 import com.taobao.arthas.core.command.monitor200.MonitorCommand;
 import com.taobao.arthas.core.command.monitor200.PerfCounterCommand;
 import com.taobao.arthas.core.command.monitor200.ProfilerCommand;
+import com.taobao.arthas.core.command.monitor200.SlowProfileCommand;
 import com.taobao.arthas.core.command.monitor200.StackCommand;
 import com.taobao.arthas.core.command.monitor200.ThreadCommand;
 import com.taobao.arthas.core.command.monitor200.TimeTunnelCommand;
@@ -68,6 +69,7 @@ public class BuiltinCommandPack implements CommandResolver {
         commandClassList.add(GetStaticCommand.class);
         commandClassList.add(MonitorCommand.class);
         commandClassList.add(StackCommand.class);
+        commandClassList.add(SlowProfileCommand.class);
         commandClassList.add(ThreadCommand.class);
         commandClassList.add(TraceCommand.class);
         commandClassList.add(WatchCommand.class);
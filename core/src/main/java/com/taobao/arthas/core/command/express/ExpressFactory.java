@@ -23,6 +23,10 @@ public class ExpressFactory {
         return expressRef.get().reset().bind(object);
     }
 
+    /**
+     * 每次创建新的 OgnlContext ，用完即可回收，不会让线程一直持有用户的 ClassLoader 。
+     * 只在 ognl/vmtool/tt -i -w 等命令里执行一次，解析后的表达式在 {@link OgnlExpress} 里共享
+     */
     public static Express unpooledExpress(ClassLoader classloader) {
         if (classloader == null) {
             classloader = ClassLoader.getSystemClassLoader();
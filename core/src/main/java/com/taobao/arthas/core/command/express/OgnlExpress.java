@@ -1,5 +1,7 @@
 package com.taobao.arthas.core.command.express;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 import com.alibaba.arthas.deps.org.slf4j.Logger;
 import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
 
@@ -7,6 +9,7 @@ import ognl.ClassResolver;
 import ognl.MemberAccess;
 import ognl.Ognl;
 import ognl.OgnlContext;
+import ognl.OgnlException;
 import ognl.OgnlRuntime;
 
 /**
@@ -18,6 +21,14 @@ public class OgnlExpress implements Express {
     private static final Logger logger = LoggerFactory.getLogger(OgnlExpress.class);
     private static final ArthasObjectPropertyAccessor OBJECT_PROPERTY_ACCESSOR = new ArthasObjectPropertyAccessor();
 
+    /**
+     * 解析后的表达式缓存，watch/monitor/trace/tt 等命令每次调用都会对同一个表达式求值，避免重复解析。
+     * 解析结果和 ClassLoader 无关，类是在求值时通过 OgnlContext 里的 ClassResolver 加载的，所以只用表达式做 key 。
+     * 超过上限时直接清空，防止 ognl 命令等执行大量不同表达式时缓存无限增长。
+     */
+    private static final int MAX_PARSED_EXPRESS_CACHE_SIZE = 1024;
+    private static final ConcurrentHashMap<String, Object> PARSED_EXPRESS_CACHE = new ConcurrentHashMap<String, Object>();
+
     private Object bindObject;
     private final OgnlContext context;
 
@@ -33,13 +44,25 @@ public class OgnlExpress implements Express {
     @Override
     public Object get(String express) throws ExpressException {
         try {
-            return Ognl.getValue(express, context, bindObject);
+            return Ognl.getValue(parseExpression(express), context, bindObject);
         } catch (Exception e) {
             logger.error("Error during evaluating the expression:", e);
             throw new ExpressException(express, e);
         }
     }
 
+    static Object parseExpression(String express) throws OgnlException {
+        Object tree = PARSED_EXPRESS_CACHE.get(express);
+        if (tree == null) {
+            tree = Ognl.parseExpression(express);
+            if (PARSED_EXPRESS_CACHE.size() >= MAX_PARSED_EXPRESS_CACHE_SIZE) {
+                PARSED_EXPRESS_CACHE.clear();
+            }
+            PARSED_EXPRESS_CACHE.put(express, tree);
+        }
+        return tree;
+    }
+
     @Override
     public boolean is(String express) throws ExpressException {
         final Object ret = get(express);
@@ -0,0 +1,39 @@
+package com.taobao.arthas.core.command.model;
+
+/**
+ * <pre>
+ * trace 的节点数量达到 trace-max-node 之后，同一个父节点下新出现的调用都合并到这个节点里统计耗时，
+ * 这些调用内部的调用也不再展开。
+ * </pre>
+ */
+public class AggregateNode extends MethodNode {
+
+    /**
+     * 合并节点的 className/methodName ，不会和真实的调用点相同
+     */
+    static final String AGGREGATE_NAME = "";
+
+    /**
+     * 正在合并的调用深度，只在最外层的调用开始/结束时计算耗时
+     */
+    private int depth;
+
+    public AggregateNode() {
+        super(AGGREGATE_NAME, AGGREGATE_NAME, -1, true);
+        setType("aggregate");
+    }
+
+    /**
+     * @return 是否是最外层的调用
+     */
+    boolean enter() {
+        return depth++ == 0;
+    }
+
+    /**
+     * @return 是否是最外层的调用结束
+     */
+    boolean exit() {
+        return --depth <= 0;
+    }
+}
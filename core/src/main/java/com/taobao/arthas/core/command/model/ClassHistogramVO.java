@@ -0,0 +1,53 @@
+package com.taobao.arthas.core.command.model;
+
+/**
+ * vmtool --action classHistogram 每个class的统计结果
+ */
+public class ClassHistogramVO {
+    private String className;
+    private String classLoaderHash;
+    private long instances;
+    private long bytes;
+
+    public ClassHistogramVO() {
+    }
+
+    public ClassHistogramVO(String className, String classLoaderHash, long instances, long bytes) {
+        this.className = className;
+        this.classLoaderHash = classLoaderHash;
+        this.instances = instances;
+        this.bytes = bytes;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public void setClassName(String className) {
+        this.className = className;
+    }
+
+    public String getClassLoaderHash() {
+        return classLoaderHash;
+    }
+
+    public void setClassLoaderHash(String classLoaderHash) {
+        this.classLoaderHash = classLoaderHash;
+    }
+
+    public long getInstances() {
+        return instances;
+    }
+
+    public void setInstances(long instances) {
+        this.instances = instances;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+}
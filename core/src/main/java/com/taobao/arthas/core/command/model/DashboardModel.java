@@ -13,6 +13,10 @@ public class DashboardModel extends ResultModel {
     private List<GcInfoVO> gcInfos;
     private RuntimeInfoVO runtimeInfo;
     private TomcatInfoVO tomcatInfo;
+    /**
+     * 线程 id 到最近几次后台采样的 cpu 占用，打开 thread-cpu-history 时才有
+     */
+    private Map<Long, double[]> threadCpuHistory;
 
     @Override
     public String getType() {
@@ -27,6 +31,14 @@ public class DashboardModel extends ResultModel {
         this.threads = threads;
     }
 
+    public Map<Long, double[]> getThreadCpuHistory() {
+        return threadCpuHistory;
+    }
+
+    public void setThreadCpuHistory(Map<Long, double[]> threadCpuHistory) {
+        this.threadCpuHistory = threadCpuHistory;
+    }
+
     public Map<String, List<MemoryEntryVO>> getMemoryInfo() {
         return memoryInfo;
     }
@@ -0,0 +1,73 @@
+package com.taobao.arthas.core.command.model;
+
+/**
+ * profiler diff 里一个栈帧的 self 样本在两次采样之间的变化
+ */
+public class FrameDeltaVO {
+    private String frame;
+    private long baseSamples;
+    private long targetSamples;
+    /**
+     * 占各自总样本数的百分比
+     */
+    private double basePercent;
+    private double targetPercent;
+
+    public FrameDeltaVO() {
+    }
+
+    public FrameDeltaVO(String frame, long baseSamples, long targetSamples, double basePercent, double targetPercent) {
+        this.frame = frame;
+        this.baseSamples = baseSamples;
+        this.targetSamples = targetSamples;
+        this.basePercent = basePercent;
+        this.targetPercent = targetPercent;
+    }
+
+    public String getFrame() {
+        return frame;
+    }
+
+    public void setFrame(String frame) {
+        this.frame = frame;
+    }
+
+    public long getBaseSamples() {
+        return baseSamples;
+    }
+
+    public void setBaseSamples(long baseSamples) {
+        this.baseSamples = baseSamples;
+    }
+
+    public long getTargetSamples() {
+        return targetSamples;
+    }
+
+    public void setTargetSamples(long targetSamples) {
+        this.targetSamples = targetSamples;
+    }
+
+    public double getBasePercent() {
+        return basePercent;
+    }
+
+    public void setBasePercent(double basePercent) {
+        this.basePercent = basePercent;
+    }
+
+    public double getTargetPercent() {
+        return targetPercent;
+    }
+
+    public void setTargetPercent(double targetPercent) {
+        this.targetPercent = targetPercent;
+    }
+
+    /**
+     * @return targetPercent - basePercent
+     */
+    public double getDeltaPercent() {
+        return targetPercent - basePercent;
+    }
+}
@@ -0,0 +1,107 @@
+package com.taobao.arthas.core.command.model;
+
+/**
+ * vmtool --action heapDiff 每个class的增长情况
+ */
+public class HeapDiffVO {
+    private String className;
+    private String classLoaderHash;
+    private long instances;
+    private long bytes;
+    /**
+     * 相对第一次快照（基线）的增长
+     */
+    private long instancesGrowth;
+    private long bytesGrowth;
+    /**
+     * 相对上一次快照的变化
+     */
+    private long instancesDelta;
+    private long bytesDelta;
+    /**
+     * 连续增长的次数
+     */
+    private int growingCycles;
+
+    public HeapDiffVO() {
+    }
+
+    public HeapDiffVO(String className, String classLoaderHash, long instances, long bytes) {
+        this.className = className;
+        this.classLoaderHash = classLoaderHash;
+        this.instances = instances;
+        this.bytes = bytes;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public void setClassName(String className) {
+        this.className = className;
+    }
+
+    public String getClassLoaderHash() {
+        return classLoaderHash;
+    }
+
+    public void setClassLoaderHash(String classLoaderHash) {
+        this.classLoaderHash = classLoaderHash;
+    }
+
+    public long getInstances() {
+        return instances;
+    }
+
+    public void setInstances(long instances) {
+        this.instances = instances;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public long getInstancesGrowth() {
+        return instancesGrowth;
+    }
+
+    public void setInstancesGrowth(long instancesGrowth) {
+        this.instancesGrowth = instancesGrowth;
+    }
+
+    public long getBytesGrowth() {
+        return bytesGrowth;
+    }
+
+    public void setBytesGrowth(long bytesGrowth) {
+        this.bytesGrowth = bytesGrowth;
+    }
+
+    public long getInstancesDelta() {
+        return instancesDelta;
+    }
+
+    public void setInstancesDelta(long instancesDelta) {
+        this.instancesDelta = instancesDelta;
+    }
+
+    public long getBytesDelta() {
+        return bytesDelta;
+    }
+
+    public void setBytesDelta(long bytesDelta) {
+        this.bytesDelta = bytesDelta;
+    }
+
+    public int getGrowingCycles() {
+        return growingCycles;
+    }
+
+    public void setGrowingCycles(int growingCycles) {
+        this.growingCycles = growingCycles;
+    }
+}
@@ -0,0 +1,113 @@
+package com.taobao.arthas.core.command.model;
+
+/**
+ * thread --contention 统计的一个锁的竞争情况
+ */
+public class LockContentionVO {
+    private String lockClassName;
+    private int lockIdentityHashCode;
+    /**
+     * true: AbstractOwnableSynchronizer, false: synchronized 的 monitor
+     */
+    private boolean synchronizer;
+    /**
+     * 所有线程等待这个锁的时间之和（按采样估算），单位毫秒
+     */
+    private long waitTime;
+    /**
+     * 采样到线程在等待这个锁的次数，同一次采样里每个等待的线程算一次
+     */
+    private long waitSamples;
+    /**
+     * 一次采样里同时等待这个锁的最大线程数
+     */
+    private int maxWaiters;
+
+    /**
+     * 采样到次数最多的持有者
+     */
+    private long ownerThreadId;
+    private String ownerThreadName;
+    private long ownerSamples;
+    private StackTraceElement[] ownerStackTrace;
+
+    public String getLockClassName() {
+        return lockClassName;
+    }
+
+    public void setLockClassName(String lockClassName) {
+        this.lockClassName = lockClassName;
+    }
+
+    public int getLockIdentityHashCode() {
+        return lockIdentityHashCode;
+    }
+
+    public void setLockIdentityHashCode(int lockIdentityHashCode) {
+        this.lockIdentityHashCode = lockIdentityHashCode;
+    }
+
+    public boolean isSynchronizer() {
+        return synchronizer;
+    }
+
+    public void setSynchronizer(boolean synchronizer) {
+        this.synchronizer = synchronizer;
+    }
+
+    public long getWaitTime() {
+        return waitTime;
+    }
+
+    public void setWaitTime(long waitTime) {
+        this.waitTime = waitTime;
+    }
+
+    public long getWaitSamples() {
+        return waitSamples;
+    }
+
+    public void setWaitSamples(long waitSamples) {
+        this.waitSamples = waitSamples;
+    }
+
+    public int getMaxWaiters() {
+        return maxWaiters;
+    }
+
+    public void setMaxWaiters(int maxWaiters) {
+        this.maxWaiters = maxWaiters;
+    }
+
+    public long getOwnerThreadId() {
+        return ownerThreadId;
+    }
+
+    public void setOwnerThreadId(long ownerThreadId) {
+        this.ownerThreadId = ownerThreadId;
+    }
+
+    public String getOwnerThreadName() {
+        return ownerThreadName;
+    }
+
+    public void setOwnerThreadName(String ownerThreadName) {
+        this.ownerThreadName = ownerThreadName;
+    }
+
+    public long getOwnerSamples() {
+        return ownerSamples;
+    }
+
+    public void setOwnerSamples(long ownerSamples) {
+        this.ownerSamples = ownerSamples;
+    }
+
+    public StackTraceElement[] getOwnerStackTrace() {
+        return ownerStackTrace;
+    }
+
+    public void setOwnerStackTrace(StackTraceElement[] ownerStackTrace) {
+        this.ownerStackTrace = ownerStackTrace;
+    }
+}
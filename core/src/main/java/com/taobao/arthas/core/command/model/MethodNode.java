@@ -44,6 +44,31 @@ public class MethodNode extends TraceNode {
         this.isInvoking = isInvoking;
     }
 
+    /**
+     * 复用 {@link TraceNodePool} 里的节点
+     */
+    void reset(String className, String methodName, int lineNumber, boolean isInvoking) {
+        reset();
+        this.className = className;
+        this.methodName = methodName;
+        this.lineNumber = lineNumber;
+        this.isInvoking = isInvoking;
+        this.isThrow = null;
+        this.throwExp = null;
+        this.beginTimestamp = 0;
+        this.endTimestamp = 0;
+        this.minCost = Long.MAX_VALUE;
+        this.maxCost = Long.MIN_VALUE;
+        this.totalCost = 0;
+        this.times = 0;
+    }
+
+    boolean isSameCall(String className, String methodName, int lineNumber) {
+        if (lineNumber != this.lineNumber) return false;
+        if (className != null ? !className.equals(this.className) : this.className != null) return false;
+        return methodName != null ? methodName.equals(this.methodName) : this.methodName == null;
+    }
+
     public void begin() {
         beginTimestamp = System.nanoTime();
     }
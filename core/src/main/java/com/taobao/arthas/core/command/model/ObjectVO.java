@@ -1,5 +1,7 @@
 package com.taobao.arthas.core.command.model;
 
+import com.taobao.arthas.core.util.StringUtils;
+
 /**
  * <pre>
  * 包装一层，解决json输出问题
@@ -52,4 +54,9 @@ public class ObjectVO {
     public void setExpand(Integer expand) {
         this.expand = expand;
     }
+
+    @Override
+    public String toString() {
+        return StringUtils.objectToString(object);
+    }
 }
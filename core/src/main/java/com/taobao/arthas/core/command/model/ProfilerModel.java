@@ -1,6 +1,7 @@
 package com.taobao.arthas.core.command.model;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Data model of ProfilerCommand
@@ -14,6 +15,9 @@ public class ProfilerModel extends ResultModel {
     private Collection<String> supportedActions;
     private String outputFile;
     private Long duration;
+    private List<ProfilerWindowVO> windows;
+    private String diffFoldedFile;
+    private List<FrameDeltaVO> frameDeltas;
 
     public ProfilerModel() {
     }
@@ -67,6 +71,30 @@ public class ProfilerModel extends ResultModel {
         this.outputFile = outputFile;
     }
 
+    public List<ProfilerWindowVO> getWindows() {
+        return windows;
+    }
+
+    public void setWindows(List<ProfilerWindowVO> windows) {
+        this.windows = windows;
+    }
+
+    public String getDiffFoldedFile() {
+        return diffFoldedFile;
+    }
+
+    public void setDiffFoldedFile(String diffFoldedFile) {
+        this.diffFoldedFile = diffFoldedFile;
+    }
+
+    public List<FrameDeltaVO> getFrameDeltas() {
+        return frameDeltas;
+    }
+
+    public void setFrameDeltas(List<FrameDeltaVO> frameDeltas) {
+        this.frameDeltas = frameDeltas;
+    }
+
     public Long getDuration() {
         return duration;
     }
@@ -0,0 +1,59 @@
+package com.taobao.arthas.core.command.model;
+
+/**
+ * profiler continuous 保存的一个窗口
+ */
+public class ProfilerWindowVO {
+    /**
+     * 窗口的时间戳，格式是 yyyyMMdd-HHmmss ，也是文件名
+     */
+    private String id;
+    private String file;
+    /**
+     * 窗口结束（文件写入）的时间
+     */
+    private long endTime;
+    private long size;
+
+    public ProfilerWindowVO() {
+    }
+
+    public ProfilerWindowVO(String id, String file, long endTime, long size) {
+        this.id = id;
+        this.file = file;
+        this.endTime = endTime;
+        this.size = size;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(long endTime) {
+        this.endTime = endTime;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+}
@@ -0,0 +1,65 @@
+package com.taobao.arthas.core.command.model;
+
+import java.util.List;
+
+/**
+ * vmtool --action referenceAnalysis 的结果，相同 GC root 路径的实例合并在一起
+ */
+public class ReferencePathVO {
+    /**
+     * GC root 的类型，比如 stack-local, jni-global, system-class ，
+     * 路径不完整时是 incomplete ，没有从 GC root 遍历到时是 unreached
+     */
+    private String rootKind;
+    /**
+     * 从最靠近 GC root 的对象到实例自己，每个对象的类名，通过静态变量引用时是 className.class
+     */
+    private List<String> path;
+    private int instances;
+    private long retainedSize;
+
+    public ReferencePathVO() {
+    }
+
+    public ReferencePathVO(String rootKind, List<String> path) {
+        this.rootKind = rootKind;
+        this.path = path;
+    }
+
+    public String getRootKind() {
+        return rootKind;
+    }
+
+    public void setRootKind(String rootKind) {
+        this.rootKind = rootKind;
+    }
+
+    public List<String> getPath() {
+        return path;
+    }
+
+    public void setPath(List<String> path) {
+        this.path = path;
+    }
+
+    public int getInstances() {
+        return instances;
+    }
+
+    public void setInstances(int instances) {
+        this.instances = instances;
+    }
+
+    public long getRetainedSize() {
+        return retainedSize;
+    }
+
+    public void setRetainedSize(long retainedSize) {
+        this.retainedSize = retainedSize;
+    }
+
+    public void add(long retainedSize) {
+        this.instances++;
+        this.retainedSize += retainedSize;
+    }
+}
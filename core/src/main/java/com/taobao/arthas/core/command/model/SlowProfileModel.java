@@ -0,0 +1,84 @@
+package com.taobao.arthas.core.command.model;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * slowprofile 每个统计周期的输出
+ */
+public class SlowProfileModel extends ResultModel {
+    private LocalDateTime ts;
+    /**
+     * 超过阈值，样本被保留的调用次数
+     */
+    private long slowInvocations;
+    /**
+     * 没有超过阈值，样本被丢弃的调用次数
+     */
+    private long discardedInvocations;
+    /**
+     * 保留下来的样本数
+     */
+    private long samples;
+    /**
+     * collapsed 格式的结果文件
+     */
+    private String outputFile;
+    /**
+     * 栈顶方法 -> self 样本数
+     */
+    private Map<String, Long> topFrames;
+
+    @Override
+    public String getType() {
+        return "slowprofile";
+    }
+
+    public LocalDateTime getTs() {
+        return ts;
+    }
+
+    public void setTs(LocalDateTime ts) {
+        this.ts = ts;
+    }
+
+    public long getSlowInvocations() {
+        return slowInvocations;
+    }
+
+    public void setSlowInvocations(long slowInvocations) {
+        this.slowInvocations = slowInvocations;
+    }
+
+    public long getDiscardedInvocations() {
+        return discardedInvocations;
+    }
+
+    public void setDiscardedInvocations(long discardedInvocations) {
+        this.discardedInvocations = discardedInvocations;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public void setSamples(long samples) {
+        this.samples = samples;
+    }
+
+    public String getOutputFile() {
+        return outputFile;
+    }
+
+    public void setOutputFile(String outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    public Map<String, Long> getTopFrames() {
+        return topFrames;
+    }
+
+    public void setTopFrames(Map<String, Long> topFrames) {
+        this.topFrames = topFrames;
+    }
+}
@@ -20,6 +20,11 @@ public class ThreadModel extends ResultModel {
     //thread -n 5
     private List<BusyThreadInfo> busyThreads;
 
+    //thread --contention
+    private List<LockContentionVO> lockContentions;
+    private int contentionSamples;
+    private long contentionDuration;
+
     //thread stats
     private List<ThreadVO> threadStats;
     private Map<Thread.State, Integer> threadStateCount;
@@ -75,6 +80,30 @@ public class ThreadModel extends ResultModel {
         this.busyThreads = busyThreads;
     }
 
+    public List<LockContentionVO> getLockContentions() {
+        return lockContentions;
+    }
+
+    public void setLockContentions(List<LockContentionVO> lockContentions) {
+        this.lockContentions = lockContentions;
+    }
+
+    public int getContentionSamples() {
+        return contentionSamples;
+    }
+
+    public void setContentionSamples(int contentionSamples) {
+        this.contentionSamples = contentionSamples;
+    }
+
+    public long getContentionDuration() {
+        return contentionDuration;
+    }
+
+    public void setContentionDuration(long contentionDuration) {
+        this.contentionDuration = contentionDuration;
+    }
+
     public List<ThreadVO> getThreadStats() {
         return threadStats;
     }
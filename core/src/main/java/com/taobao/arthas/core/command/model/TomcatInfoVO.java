@@ -3,18 +3,30 @@ package com.taobao.arthas.core.command.model;
 import java.util.List;
 
 /**
- * Tomcat info of 'dashboard' command
+ * Web container (Tomcat/Jetty/Undertow) info of 'dashboard' command
  *
  * @author gongdewei 2020/4/23
  */
 public class TomcatInfoVO {
 
+    private String server;
     private List<ConnectorStats> connectorStats;
     private List<ThreadPool> threadPools;
 
     public TomcatInfoVO() {
     }
 
+    /**
+     * 容器的名字，比如 Tomcat, Jetty, Undertow
+     */
+    public String getServer() {
+        return server;
+    }
+
+    public void setServer(String server) {
+        this.server = server;
+    }
+
     public List<ConnectorStats> getConnectorStats() {
         return connectorStats;
     }
@@ -9,9 +9,21 @@ import java.util.List;
  */
 public abstract class TraceNode {
 
+    /**
+     * 子节点超过这个数量时建立索引
+     */
+    private static final int CHILD_INDEX_THRESHOLD = 8;
+
     protected TraceNode parent;
     protected List<TraceNode> children;
 
+    /**
+     * (className, methodName, lineNumber) -> MethodNode 的开放寻址索引，
+     * 循环里调用很多不同方法时，避免每次 begin 都遍历所有子节点
+     */
+    private MethodNode[] childIndex;
+    private int childIndexSize;
+
     /**
      * node type: method,
      */
@@ -36,6 +48,92 @@ public abstract class TraceNode {
         }
         this.children.add(child);
         child.setParent(this);
+        if (childIndex != null) {
+            if (child instanceof MethodNode) {
+                // 装载因子不超过 0.5 ，扩容时重建的索引已经包含了新的子节点
+                if ((childIndexSize + 1) * 2 > childIndex.length) {
+                    buildChildIndex(childIndex.length * 2);
+                } else {
+                    indexChild((MethodNode) child);
+                }
+            }
+        } else if (children.size() > CHILD_INDEX_THRESHOLD) {
+            buildChildIndex(CHILD_INDEX_THRESHOLD * 4);
+        }
+    }
+
+    /**
+     * 查找相同调用点的子节点
+     */
+    public MethodNode findChild(String className, String methodName, int lineNumber) {
+        if (childIndex == null) {
+            if (children != null) {
+                //less memory than foreach/iterator
+                for (int i = 0; i < children.size(); i++) {
+                    TraceNode child = children.get(i);
+                    if (child instanceof MethodNode && ((MethodNode) child).isSameCall(className, methodName, lineNumber)) {
+                        return (MethodNode) child;
+                    }
+                }
+            }
+            return null;
+        }
+        int mask = childIndex.length - 1;
+        int i = hash(className, methodName, lineNumber) & mask;
+        MethodNode child;
+        while ((child = childIndex[i]) != null) {
+            if (child.isSameCall(className, methodName, lineNumber)) {
+                return child;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    private void buildChildIndex(int capacity) {
+        childIndex = new MethodNode[capacity];
+        childIndexSize = 0;
+        for (int i = 0; i < children.size(); i++) {
+            TraceNode child = children.get(i);
+            if (child instanceof MethodNode) {
+                indexChild((MethodNode) child);
+            }
+        }
+    }
+
+    private void indexChild(MethodNode child) {
+        int mask = childIndex.length - 1;
+        int i = hash(child.getClassName(), child.getMethodName(), child.getLineNumber()) & mask;
+        while (childIndex[i] != null) {
+            i = (i + 1) & mask;
+        }
+        childIndex[i] = child;
+        childIndexSize++;
+    }
+
+    int childIndexSize() {
+        return childIndexSize;
+    }
+
+    private static int hash(String className, String methodName, int lineNumber) {
+        int h = className == null ? 0 : className.hashCode();
+        h = 31 * h + (methodName == null ? 0 : methodName.hashCode());
+        h = 31 * h + lineNumber;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 回收到 {@link TraceNodePool} 之前清空节点的状态，保留 children 列表以便复用
+     */
+    protected void reset() {
+        parent = null;
+        if (children != null) {
+            children.clear();
+        }
+        childIndex = null;
+        childIndexSize = 0;
+        mark = null;
+        marks = 0;
     }
 
     public void setMark(String mark) {
@@ -0,0 +1,68 @@
+package com.taobao.arthas.core.command.model;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * <pre>
+ * 缓存 MethodNode 对象，减少 trace 循环调用很多方法时的对象分配。
+ *
+ * 只有没有输出的 trace 结果（比如不满足条件表达式）才能回收，
+ * 已经 appendResult 的结果会被异步渲染/序列化，不能再复用它的节点。
+ *
+ * 非线程安全，每个线程使用自己的 pool 。
+ * </pre>
+ */
+public class TraceNodePool {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final MethodNode[] nodes;
+    private int size = 0;
+
+    public TraceNodePool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TraceNodePool(int capacity) {
+        this.nodes = new MethodNode[capacity];
+    }
+
+    MethodNode obtain(String className, String methodName, int lineNumber, boolean isInvoking) {
+        if (size == 0) {
+            return new MethodNode(className, methodName, lineNumber, isInvoking);
+        }
+        MethodNode node = nodes[--size];
+        nodes[size] = null;
+        node.reset(className, methodName, lineNumber, isInvoking);
+        return node;
+    }
+
+    /**
+     * 回收 root 下面所有的 MethodNode ，pool 满了之后剩下的节点交给 GC
+     */
+    void recycle(TraceNode root) {
+        ArrayDeque<TraceNode> stack = new ArrayDeque<TraceNode>();
+        pushChildren(stack, root);
+        while (!stack.isEmpty() && size < nodes.length) {
+            TraceNode node = stack.pop();
+            pushChildren(stack, node);
+            if (node instanceof MethodNode && !(node instanceof AggregateNode)) {
+                node.reset();
+                nodes[size++] = (MethodNode) node;
+            }
+        }
+    }
+
+    private static void pushChildren(ArrayDeque<TraceNode> stack, TraceNode node) {
+        List<TraceNode> children = node.getChildren();
+        if (children != null) {
+            for (int i = 0; i < children.size(); i++) {
+                stack.push(children.get(i));
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -14,10 +14,24 @@ public class TraceTree {
 
     private TraceNode current;
     private int nodeCount = 0;
+    private int methodNodeCount = 0;
+
+    private final TraceNodePool pool;
+    private final int maxNodes;
 
     public TraceTree(ThreadNode root) {
+        this(root, null, 0);
+    }
+
+    /**
+     * @param pool     复用 MethodNode 的 pool ，可以为 null
+     * @param maxNodes 最多创建的调用节点数量，超过后新的调用合并到 {@link AggregateNode} ，0 表示不限制
+     */
+    public TraceTree(ThreadNode root, TraceNodePool pool, int maxNodes) {
         this.root = root;
         this.current = root;
+        this.pool = pool;
+        this.maxNodes = maxNodes;
     }
 
     /**
@@ -28,41 +42,46 @@ public class TraceTree {
      * @param isInvoking Whether to invoke this method in other classes
      */
     public void begin(String className, String methodName, int lineNumber, boolean isInvoking) {
-        TraceNode child = findChild(current, className, methodName, lineNumber);
+        nodeCount += 1;
+        if (current instanceof AggregateNode) {
+            // 合并节点内部的调用不再展开
+            ((AggregateNode) current).enter();
+            return;
+        }
+        MethodNode child = current.findChild(className, methodName, lineNumber);
         if (child == null) {
-            child = new MethodNode(className, methodName, lineNumber, isInvoking);
-            current.addChild(child);
+            if (maxNodes > 0 && methodNodeCount >= maxNodes) {
+                child = aggregateChild(current);
+            } else {
+                child = pool != null ? pool.obtain(className, methodName, lineNumber, isInvoking)
+                        : new MethodNode(className, methodName, lineNumber, isInvoking);
+                current.addChild(child);
+                methodNodeCount += 1;
+            }
+        }
+        if (child instanceof AggregateNode) {
+            ((AggregateNode) child).enter();
         }
         child.begin();
         current = child;
-        nodeCount += 1;
     }
 
-    private TraceNode findChild(TraceNode node, String className, String methodName, int lineNumber) {
-        List<TraceNode> childList = node.getChildren();
-        if (childList != null) {
-            //less memory than foreach/iterator
-            for (int i = 0; i < childList.size(); i++) {
-                TraceNode child = childList.get(i);
-                if (matchNode(child, className, methodName, lineNumber)) {
-                    return child;
-                }
-            }
-        }
-        return null;
-    }
-
-    private boolean matchNode(TraceNode node, String className, String methodName, int lineNumber) {
-        if (node instanceof MethodNode) {
-            MethodNode methodNode = (MethodNode) node;
-            if (lineNumber != methodNode.getLineNumber()) return false;
-            if (className != null ? !className.equals(methodNode.getClassName()) : methodNode.getClassName() != null) return false;
-            return methodName != null ? methodName.equals(methodNode.getMethodName()) : methodNode.getMethodName() == null;
+    /**
+     * 每个父节点下最多一个合并节点
+     */
+    private MethodNode aggregateChild(TraceNode parent) {
+        MethodNode aggregateNode = parent.findChild(AggregateNode.AGGREGATE_NAME, AggregateNode.AGGREGATE_NAME, -1);
+        if (aggregateNode == null) {
+            aggregateNode = new AggregateNode();
+            parent.addChild(aggregateNode);
         }
-        return false;
+        return aggregateNode;
     }
 
     public void end() {
+        if (current instanceof AggregateNode && !((AggregateNode) current).exit()) {
+            return;
+        }
         current.end();
         if (current.parent() != null) {
             //TODO 为什么会到达这里？ 调用end次数比begin多？
@@ -71,6 +90,10 @@ public class TraceTree {
     }
 
     public void end(Throwable throwable, int lineNumber) {
+        if (current instanceof AggregateNode) {
+            this.end(true);
+            return;
+        }
         ThrowNode throwNode = new ThrowNode();
         throwNode.setException(throwable.getClass().getName());
         throwNode.setMessage(throwable.getMessage());
@@ -90,6 +113,15 @@ public class TraceTree {
         this.end();
     }
 
+    /**
+     * 没有输出的 trace 结果，把节点回收到 pool 里，之后不能再使用这个 tree
+     */
+    public void recycle() {
+        if (pool != null) {
+            pool.recycle(root);
+        }
+    }
+
     /**
      * 修整树结点
      */
@@ -129,4 +161,11 @@ public class TraceTree {
     public int getNodeCount() {
         return nodeCount;
     }
+
+    /**
+     * @return 创建的调用节点数量，不包括合并节点
+     */
+    public int getMethodNodeCount() {
+        return methodNodeCount;
+    }
 }
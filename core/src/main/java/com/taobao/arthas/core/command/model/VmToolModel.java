@@ -1,6 +1,7 @@
 package com.taobao.arthas.core.command.model;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * 
@@ -13,6 +14,18 @@ public class VmToolModel extends ResultModel {
     private Collection<ClassLoaderVO> matchedClassLoaders;
     private String classLoaderClass;
 
+    private List<ClassHistogramVO> classHistogram;
+    private long totalInstances;
+    private long totalBytes;
+
+    private List<ReferencePathVO> referencePaths;
+    private boolean retainedSizeTruncated;
+    private boolean timeout;
+
+    private List<HeapDiffVO> heapDiff;
+    private int cycle;
+    private long elapsed;
+
 
     @Override
     public String getType() {
@@ -37,6 +50,60 @@ public class VmToolModel extends ResultModel {
         return this;
     }
 
+    public List<ClassHistogramVO> getClassHistogram() {
+        return classHistogram;
+    }
+
+    public VmToolModel setClassHistogram(List<ClassHistogramVO> classHistogram) {
+        this.classHistogram = classHistogram;
+        return this;
+    }
+
+    public long getTotalInstances() {
+        return totalInstances;
+    }
+
+    public VmToolModel setTotalInstances(long totalInstances) {
+        this.totalInstances = totalInstances;
+        return this;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public VmToolModel setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+        return this;
+    }
+
+    public List<ReferencePathVO> getReferencePaths() {
+        return referencePaths;
+    }
+
+    public VmToolModel setReferencePaths(List<ReferencePathVO> referencePaths) {
+        this.referencePaths = referencePaths;
+        return this;
+    }
+
+    public boolean isRetainedSizeTruncated() {
+        return retainedSizeTruncated;
+    }
+
+    public VmToolModel setRetainedSizeTruncated(boolean retainedSizeTruncated) {
+        this.retainedSizeTruncated = retainedSizeTruncated;
+        return this;
+    }
+
+    public boolean isTimeout() {
+        return timeout;
+    }
+
+    public VmToolModel setTimeout(boolean timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
     public Collection<ClassLoaderVO> getMatchedClassLoaders() {
         return matchedClassLoaders;
     }
@@ -45,4 +112,31 @@ public class VmToolModel extends ResultModel {
         this.matchedClassLoaders = matchedClassLoaders;
         return this;
     }
+
+    public List<HeapDiffVO> getHeapDiff() {
+        return heapDiff;
+    }
+
+    public VmToolModel setHeapDiff(List<HeapDiffVO> heapDiff) {
+        this.heapDiff = heapDiff;
+        return this;
+    }
+
+    public int getCycle() {
+        return cycle;
+    }
+
+    public VmToolModel setCycle(int cycle) {
+        this.cycle = cycle;
+        return this;
+    }
+
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    public VmToolModel setElapsed(long elapsed) {
+        this.elapsed = elapsed;
+        return this;
+    }
 }
@@ -5,6 +5,7 @@ import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
 import com.taobao.arthas.core.advisor.Advice;
 import com.taobao.arthas.core.advisor.AdviceListenerAdapter;
 import com.taobao.arthas.core.advisor.ArthasMethod;
+import com.taobao.arthas.core.command.model.TraceNodePool;
 import com.taobao.arthas.core.shell.command.CommandProcess;
 import com.taobao.arthas.core.util.LogUtil;
 import com.taobao.arthas.core.util.ThreadLocalWatch;
@@ -19,6 +20,7 @@ public class AbstractTraceAdviceListener extends AdviceListenerAdapter {
     protected CommandProcess process;
 
     protected final ThreadLocal<TraceEntity> threadBoundEntity = new ThreadLocal<TraceEntity>();
+    protected final ThreadLocal<TraceNodePool> threadBoundNodePool = new ThreadLocal<TraceNodePool>();
 
     /**
      * Constructor
@@ -31,7 +33,12 @@ public class AbstractTraceAdviceListener extends AdviceListenerAdapter {
     protected TraceEntity threadLocalTraceEntity(ClassLoader loader) {
         TraceEntity traceEntity = threadBoundEntity.get();
         if (traceEntity == null) {
-            traceEntity = new TraceEntity(loader);
+            TraceNodePool pool = threadBoundNodePool.get();
+            if (pool == null) {
+                pool = new TraceNodePool();
+                threadBoundNodePool.set(pool);
+            }
+            traceEntity = new TraceEntity(loader, pool);
             threadBoundEntity.set(traceEntity);
         }
         return traceEntity;
@@ -40,6 +47,7 @@ public class AbstractTraceAdviceListener extends AdviceListenerAdapter {
     @Override
     public void destroy() {
         threadBoundEntity.remove();
+        threadBoundNodePool.remove();
     }
 
     @Override
@@ -102,6 +110,9 @@ public class AbstractTraceAdviceListener extends AdviceListenerAdapter {
                         // TODO: concurrency issue to abort process
                         abortProcess(process, command.getNumberOfLimit());
                     }
+                } else {
+                    // 没有输出的结果，节点可以复用
+                    traceEntity.recycle();
                 }
             } catch (Throwable e) {
                 logger.warn("trace failed.", e);
@@ -0,0 +1,115 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+
+import com.taobao.arthas.core.command.model.TomcatInfoVO;
+import com.taobao.arthas.core.command.monitor200.ContainerMetricsProvider.ConnectorCounters;
+
+/**
+ * <pre>
+ * dashboard 的 web 容器信息，每个 dashboard 一个实例，在 dashboard 的 timer 线程里调用。
+ *
+ * 1. 每隔 DISCOVERY_INTERVAL_MILLIS 让所有 provider 重新查找容器，中间的刷新只读取已经找到的容器
+ * 2. 按顺序使用第一个找到的容器
+ * 3. provider 返回的是累计计数，这里和上一次刷新的计数相减，算出这段时间每秒的请求数、错误数、流量和平均 RT
+ * </pre>
+ */
+class ContainerMetrics {
+    static final long DISCOVERY_INTERVAL_MILLIS = 60 * 1000;
+
+    private final MBeanServer mBeanServer;
+    private final List<ContainerMetricsProvider> providers;
+    private long lastDiscoveryTime = -1;
+
+    // 连接器名字 -> 上一次刷新的计数
+    private Map<String, ConnectorCounters> lastCounters = new HashMap<String, ConnectorCounters>();
+    private long lastSampleTime;
+
+    ContainerMetrics() {
+        this(ManagementFactory.getPlatformMBeanServer(), defaultProviders());
+    }
+
+    ContainerMetrics(MBeanServer mBeanServer, List<ContainerMetricsProvider> providers) {
+        this.mBeanServer = mBeanServer;
+        this.providers = providers;
+    }
+
+    static List<ContainerMetricsProvider> defaultProviders() {
+        List<ContainerMetricsProvider> providers = new ArrayList<ContainerMetricsProvider>();
+        providers.add(MBeanContainerMetricsProvider.tomcat());
+        providers.add(MBeanContainerMetricsProvider.jetty());
+        providers.add(MBeanContainerMetricsProvider.undertow());
+        return providers;
+    }
+
+    /**
+     * @return 没有找到容器时返回 null
+     */
+    TomcatInfoVO sample() {
+        long now = System.currentTimeMillis();
+        if (lastDiscoveryTime < 0 || now - lastDiscoveryTime >= DISCOVERY_INTERVAL_MILLIS) {
+            for (ContainerMetricsProvider provider : providers) {
+                provider.discover(mBeanServer);
+            }
+            lastDiscoveryTime = now;
+        }
+
+        for (ContainerMetricsProvider provider : providers) {
+            if (provider.isAvailable()) {
+                return sample(provider, now);
+            }
+        }
+        return null;
+    }
+
+    private TomcatInfoVO sample(ContainerMetricsProvider provider, long now) {
+        TomcatInfoVO tomcatInfoVO = new TomcatInfoVO();
+        tomcatInfoVO.setServer(provider.getName());
+
+        double seconds = (now - lastSampleTime) / 1000.0;
+        Map<String, ConnectorCounters> currentCounters = new HashMap<String, ConnectorCounters>();
+        List<TomcatInfoVO.ConnectorStats> connectorStats = new ArrayList<TomcatInfoVO.ConnectorStats>();
+        for (ConnectorCounters current : provider.readConnectors(mBeanServer)) {
+            currentCounters.put(current.name, current);
+            ConnectorCounters last = lastCounters.get(current.name);
+
+            TomcatInfoVO.ConnectorStats connectorStat = new TomcatInfoVO.ConnectorStats();
+            connectorStat.setName(current.name);
+            if (last == null || seconds <= 0) {
+                // 第一次刷新只有启动以来的平均 RT
+                connectorStat.setRt(current.requestCount > 0 && current.processingTime >= 0
+                        ? current.processingTime / (double) current.requestCount : 0);
+            } else {
+                long requests = delta(current.requestCount, last.requestCount);
+                connectorStat.setQps(requests / seconds);
+                connectorStat.setRt(requests > 0 ? delta(current.processingTime, last.processingTime) / (double) requests : 0);
+                connectorStat.setError(delta(current.errorCount, last.errorCount) / seconds);
+                connectorStat.setReceived((long) (delta(current.bytesReceived, last.bytesReceived) / seconds));
+                connectorStat.setSent((long) (delta(current.bytesSent, last.bytesSent) / seconds));
+            }
+            connectorStats.add(connectorStat);
+        }
+        lastCounters = currentCounters;
+        lastSampleTime = now;
+
+        tomcatInfoVO.setConnectorStats(connectorStats);
+        tomcatInfoVO.setThreadPools(provider.readThreadPools(mBeanServer));
+        return tomcatInfoVO;
+    }
+
+    /**
+     * 不支持的计数，或者容器重启后计数变小时返回 0
+     */
+    private static long delta(long current, long last) {
+        if (current < 0 || last < 0 || current < last) {
+            return 0;
+        }
+        return current - last;
+    }
+}
@@ -0,0 +1,60 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.util.List;
+
+import javax.management.MBeanServer;
+
+import com.taobao.arthas.core.command.model.TomcatInfoVO;
+
+/**
+ * dashboard 里 web 容器（Tomcat/Jetty/Undertow 等）的连接器和线程池信息的来源，在目标进程内直接读取，不发起 http 请求。
+ *
+ * @see ContainerMetrics
+ */
+interface ContainerMetricsProvider {
+
+    /**
+     * 容器的名字，显示在 dashboard 上
+     */
+    String getName();
+
+    /**
+     * 重新查找容器的连接器和线程池，结果缓存到下一次 discover
+     */
+    void discover(MBeanServer server);
+
+    /**
+     * @return 上一次 discover 是否找到了这个容器
+     */
+    boolean isAvailable();
+
+    /**
+     * 读取每个连接器的累计计数
+     */
+    List<ConnectorCounters> readConnectors(MBeanServer server);
+
+    List<TomcatInfoVO.ThreadPool> readThreadPools(MBeanServer server);
+
+    /**
+     * 连接器从启动开始的累计计数，容器不支持的计数是 -1
+     */
+    class ConnectorCounters {
+        final String name;
+        final long requestCount;
+        final long errorCount;
+        // 单位是 ms
+        final long processingTime;
+        final long bytesReceived;
+        final long bytesSent;
+
+        ConnectorCounters(String name, long requestCount, long errorCount, long processingTime, long bytesReceived,
+                long bytesSent) {
+            this.name = name;
+            this.requestCount = requestCount;
+            this.errorCount = errorCount;
+            this.processingTime = processingTime;
+            this.bytesReceived = bytesReceived;
+            this.bytesSent = bytesSent;
+        }
+    }
+}
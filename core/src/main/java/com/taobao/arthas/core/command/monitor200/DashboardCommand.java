@@ -10,24 +10,18 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import com.alibaba.arthas.deps.org.slf4j.Logger;
 import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
-import com.alibaba.fastjson2.JSON;
-import com.alibaba.fastjson2.JSONObject;
 import com.taobao.arthas.core.command.Constants;
 import com.taobao.arthas.core.command.model.DashboardModel;
 import com.taobao.arthas.core.command.model.GcInfoVO;
 import com.taobao.arthas.core.command.model.RuntimeInfoVO;
 import com.taobao.arthas.core.command.model.ThreadVO;
-import com.taobao.arthas.core.command.model.TomcatInfoVO;
 import com.taobao.arthas.core.shell.command.AnnotatedCommand;
 import com.taobao.arthas.core.shell.command.CommandProcess;
 import com.taobao.arthas.core.shell.handlers.Handler;
 import com.taobao.arthas.core.shell.handlers.shell.QExitHandler;
 import com.taobao.arthas.core.shell.session.Session;
-import com.taobao.arthas.core.util.NetUtils;
-import com.taobao.arthas.core.util.NetUtils.Response;
 import com.taobao.arthas.core.util.StringUtils;
 import com.taobao.arthas.core.util.ThreadUtil;
-import com.taobao.arthas.core.util.metrics.SumRateCounter;
 import com.taobao.middleware.cli.annotations.Description;
 import com.taobao.middleware.cli.annotations.Name;
 import com.taobao.middleware.cli.annotations.Option;
@@ -37,7 +31,7 @@ import com.taobao.middleware.cli.annotations.Summary;
  * @author hengyunabc 2015年11月19日 上午11:57:21
  */
 @Name("dashboard")
-@Summary("Overview of target jvm's thread, memory, gc, vm, tomcat info.")
+@Summary("Overview of target jvm's thread, memory, gc, vm, web container info.")
 @Description(Constants.EXAMPLE +
         "  dashboard\n" +
         "  dashboard -n 10\n" +
@@ -47,10 +41,10 @@ public class DashboardCommand extends AnnotatedCommand {
 
     private static final Logger logger = LoggerFactory.getLogger(DashboardCommand.class);
 
-    private SumRateCounter tomcatRequestCounter = new SumRateCounter();
-    private SumRateCounter tomcatErrorCounter = new SumRateCounter();
-    private SumRateCounter tomcatReceivedBytesCounter = new SumRateCounter();
-    private SumRateCounter tomcatSentBytesCounter = new SumRateCounter();
+    // dashboard 线程列表里 cpu 趋势显示的采样次数
+    private static final int CPU_HISTORY_POINTS = 10;
+
+    private final ContainerMetrics containerMetrics = new ContainerMetrics();
 
     private int numOfExecutions = Integer.MAX_VALUE;
 
@@ -157,62 +151,8 @@ public class DashboardCommand extends AnnotatedCommand {
     }
 
     private void addTomcatInfo(DashboardModel dashboardModel) {
-        // 如果请求tomcat信息失败，则不显示tomcat信息
-        if (!NetUtils.request("http://localhost:8006").isSuccess()) {
-            return;
-        }
-
-        TomcatInfoVO tomcatInfoVO = new TomcatInfoVO();
-        dashboardModel.setTomcatInfo(tomcatInfoVO);
-        String threadPoolPath = "http://localhost:8006/connector/threadpool";
-        String connectorStatPath = "http://localhost:8006/connector/stats";
-        Response connectorStatResponse = NetUtils.request(connectorStatPath);
-        if (connectorStatResponse.isSuccess()) {
-            List<TomcatInfoVO.ConnectorStats> connectorStats = new ArrayList<TomcatInfoVO.ConnectorStats>();
-            List<JSONObject> tomcatConnectorStats = JSON.parseArray(connectorStatResponse.getContent(), JSONObject.class);
-            for (JSONObject stat : tomcatConnectorStats) {
-                String connectorName = stat.getString("name").replace("\"", "");
-                long bytesReceived = stat.getLongValue("bytesReceived");
-                long bytesSent = stat.getLongValue("bytesSent");
-                long processingTime = stat.getLongValue("processingTime");
-                long requestCount = stat.getLongValue("requestCount");
-                long errorCount = stat.getLongValue("errorCount");
-
-                tomcatRequestCounter.update(requestCount);
-                tomcatErrorCounter.update(errorCount);
-                tomcatReceivedBytesCounter.update(bytesReceived);
-                tomcatSentBytesCounter.update(bytesSent);
-
-                double qps = tomcatRequestCounter.rate();
-                double rt = processingTime / (double) requestCount;
-                double errorRate = tomcatErrorCounter.rate();
-                long receivedBytesRate = Double.valueOf(tomcatReceivedBytesCounter.rate()).longValue();
-                long sentBytesRate = Double.valueOf(tomcatSentBytesCounter.rate()).longValue();
-
-                TomcatInfoVO.ConnectorStats connectorStat = new TomcatInfoVO.ConnectorStats();
-                connectorStat.setName(connectorName);
-                connectorStat.setQps(qps);
-                connectorStat.setRt(rt);
-                connectorStat.setError(errorRate);
-                connectorStat.setReceived(receivedBytesRate);
-                connectorStat.setSent(sentBytesRate);
-                connectorStats.add(connectorStat);
-            }
-            tomcatInfoVO.setConnectorStats(connectorStats);
-        }
-
-        Response threadPoolResponse = NetUtils.request(threadPoolPath);
-        if (threadPoolResponse.isSuccess()) {
-            List<TomcatInfoVO.ThreadPool> threadPools = new ArrayList<TomcatInfoVO.ThreadPool>();
-            List<JSONObject> threadPoolInfos = JSON.parseArray(threadPoolResponse.getContent(), JSONObject.class);
-            for (JSONObject info : threadPoolInfos) {
-                String name = info.getString("name").replace("\"", "");
-                long busy = info.getLongValue("threadBusy");
-                long total = info.getLongValue("threadCount");
-                threadPools.add(new TomcatInfoVO.ThreadPool(name, busy, total));
-            }
-            tomcatInfoVO.setThreadPools(threadPools);
-        }
+        // 没有找到 web 容器时不显示容器信息
+        dashboardModel.setTomcatInfo(containerMetrics.sample());
     }
 
     private class DashboardTimerTask extends TimerTask {
@@ -240,6 +180,9 @@ public class DashboardCommand extends AnnotatedCommand {
                 //thread sample
                 List<ThreadVO> threads = ThreadUtil.getThreads();
                 dashboardModel.setThreads(threadSampler.sample(threads));
+                if (ThreadCpuHistory.isEnabled()) {
+                    dashboardModel.setThreadCpuHistory(ThreadCpuHistory.getInstance().recentCpuUsages(CPU_HISTORY_POINTS));
+                }
 
                 //memory
                 dashboardModel.setMemoryInfo(MemoryCommand.memoryInfo());
@@ -250,11 +193,11 @@ public class DashboardCommand extends AnnotatedCommand {
                 //runtime
                 addRuntimeInfo(dashboardModel);
 
-                //tomcat
+                //web container
                 try {
                     addTomcatInfo(dashboardModel);
                 } catch (Throwable e) {
-                    logger.error("try to read tomcat info error", e);
+                    logger.error("try to read web container info error", e);
                 }
 
                 process.appendResult(dashboardModel);
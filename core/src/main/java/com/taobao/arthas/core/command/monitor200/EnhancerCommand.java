@@ -7,6 +7,7 @@ import java.util.List;
 import com.alibaba.arthas.deps.org.slf4j.Logger;
 import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
 import com.taobao.arthas.core.advisor.AdviceListener;
+import com.taobao.arthas.core.advisor.AdviceListenerAdapter;
 import com.taobao.arthas.core.advisor.AdviceWeaver;
 import com.taobao.arthas.core.advisor.Enhancer;
 import com.taobao.arthas.core.advisor.InvokeTraceable;
@@ -49,6 +50,10 @@ public abstract class EnhancerCommand extends AnnotatedCommand {
 
     protected int maxNumOfMatchedClass;
 
+    protected Double sampleRate;
+
+    protected Integer sampleEvery;
+
     @Option(longName = "exclude-class-pattern")
     @Description("exclude class name pattern, use either '.' or '/' as separator")
     public void setExcludeClassPattern(String excludeClassPattern) {
@@ -74,6 +79,18 @@ public abstract class EnhancerCommand extends AnnotatedCommand {
         this.maxNumOfMatchedClass = maxNumOfMatchedClass;
     }
 
+    @Option(longName = "sample-rate")
+    @Description("Only process sampled invocations, the sampling probability is in (0, 1]. Nested invocations follow the outermost one.")
+    public void setSampleRate(Double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Option(longName = "sample-every")
+    @Description("Only process one of every N invocations, counted per thread. Nested invocations follow the outermost one.")
+    public void setSampleEvery(Integer sampleEvery) {
+        this.sampleEvery = sampleEvery;
+    }
+
     /**
      * 类名匹配
      *
@@ -143,6 +160,18 @@ public abstract class EnhancerCommand extends AnnotatedCommand {
     }
 
     protected void enhance(CommandProcess process) {
+        if (sampleRate != null && (sampleRate <= 0 || sampleRate > 1)) {
+            String msg = "sample-rate must be in (0, 1], but is " + sampleRate;
+            process.appendResult(new EnhancerModel(null, false, msg));
+            process.end(-1, msg);
+            return;
+        }
+        if (sampleEvery != null && sampleEvery < 1) {
+            String msg = "sample-every must be greater than 0, but is " + sampleEvery;
+            process.appendResult(new EnhancerModel(null, false, msg));
+            process.end(-1, msg);
+            return;
+        }
         Session session = process.session();
         if (!session.tryLock()) {
             String msg = "someone else is enhancing classes, pls. wait.";
@@ -162,6 +191,10 @@ public abstract class EnhancerCommand extends AnnotatedCommand {
                 process.end(-1, msg);
                 return;
             }
+            if (listener instanceof AdviceListenerAdapter && (sampleRate != null || sampleEvery != null)) {
+                ((AdviceListenerAdapter) listener).setSample(sampleRate == null ? 1.0 : sampleRate,
+                        sampleEvery == null ? 1 : sampleEvery);
+            }
             boolean skipJDKTrace = false;
             if(listener instanceof AbstractTraceAdviceListener) {
                 skipJDKTrace = ((AbstractTraceAdviceListener) listener).getCommand().isSkipJDKTrace();
@@ -170,7 +203,14 @@ public abstract class EnhancerCommand extends AnnotatedCommand {
             Enhancer enhancer = new Enhancer(listener, listener instanceof InvokeTraceable, skipJDKTrace, getClassNameMatcher(), getClassNameExcludeMatcher(), getMethodNameMatcher());
             // 注册通知监听器
             process.register(listener, enhancer);
-            effect = enhancer.enhance(inst, this.maxNumOfMatchedClass);
+            effect = enhancer.enhance(inst, this.maxNumOfMatchedClass, new Enhancer.ProgressListener() {
+                @Override
+                public void onProgress(int transformed, int total) {
+                    if (process.isForeground()) {
+                        process.echoTips("Enhancing classes: " + transformed + "/" + total + "\n");
+                    }
+                }
+            });
 
             if (effect.getThrowable() != null) {
                 String msg = "error happens when enhancing class: "+effect.getThrowable().getMessage();
@@ -0,0 +1,355 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.taobao.arthas.core.command.model.FrameDeltaVO;
+
+/**
+ * <pre>
+ * profiler diff 的差分火焰图。
+ *
+ * 逐行读取两份 collapsed 格式（frame1;frame2;...;frameN count）的结果，合并到同一棵调用树里，
+ * 每个节点分别记录 base 和 target 的样本数。栈帧名字去重后编号，节点只保存编号，
+ * 内存只和不同的调用路径数量有关，不需要把几百 MB 的文件读到内存里。
+ *
+ * 1. writeFolded 输出 difffolded 格式（stack base target），可以交给 flamegraph.pl 渲染
+ * 2. writeSvg 直接输出差分火焰图，宽度是 target 的样本数，红色表示占比增加，蓝色表示占比减少
+ * 3. topFrames 按 self 样本占比的变化排序
+ *
+ * 非线程安全。
+ * </pre>
+ */
+class FlameGraphDiff {
+    static final int BASE = 0;
+    static final int TARGET = 1;
+
+    private static final int SVG_WIDTH = 1200;
+    private static final int FRAME_HEIGHT = 16;
+    private static final double CHAR_WIDTH = 7;
+
+    private final Map<String, Integer> frameIds = new HashMap<String, Integer>();
+    private final List<String> frames = new ArrayList<String>();
+    private final Node root = new Node(-1);
+    private final long[] totals = new long[2];
+
+    /**
+     * 读入一份 collapsed 格式的结果
+     *
+     * @param side {@link #BASE} 或者 {@link #TARGET}
+     */
+    void add(Reader reader, int side) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            int space = line.lastIndexOf(' ');
+            if (space <= 0) {
+                continue;
+            }
+            long count;
+            try {
+                count = Long.parseLong(line.substring(space + 1).trim());
+            } catch (NumberFormatException e) {
+                // 不是 collapsed 格式的行
+                continue;
+            }
+            if (count <= 0) {
+                continue;
+            }
+            totals[side] += count;
+            Node node = root;
+            node.total[side] += count;
+            int start = 0;
+            while (start < space) {
+                int end = line.indexOf(';', start);
+                if (end < 0 || end > space) {
+                    end = space;
+                }
+                node = node.child(frameIdOf(line.substring(start, end)));
+                node.total[side] += count;
+                start = end + 1;
+            }
+            node.self[side] += count;
+        }
+    }
+
+    long getTotal(int side) {
+        return totals[side];
+    }
+
+    private int frameIdOf(String frame) {
+        Integer id = frameIds.get(frame);
+        if (id == null) {
+            id = frames.size();
+            frameIds.put(frame, id);
+            frames.add(frame);
+        }
+        return id;
+    }
+
+    /**
+     * @param topN 小于 0 时返回所有栈帧
+     * @return 按 self 样本占比变化的绝对值从大到小排序
+     */
+    List<FrameDeltaVO> topFrames(int topN) {
+        long[][] selfSamples = new long[2][frames.size()];
+        collectSelf(root, selfSamples);
+
+        List<FrameDeltaVO> result = new ArrayList<FrameDeltaVO>();
+        for (int id = 0; id < frames.size(); id++) {
+            long base = selfSamples[BASE][id];
+            long target = selfSamples[TARGET][id];
+            if (base == 0 && target == 0) {
+                continue;
+            }
+            result.add(new FrameDeltaVO(frames.get(id), base, target, percent(base, BASE), percent(target, TARGET)));
+        }
+        Collections.sort(result, new Comparator<FrameDeltaVO>() {
+            @Override
+            public int compare(FrameDeltaVO o1, FrameDeltaVO o2) {
+                return Double.compare(Math.abs(o2.getDeltaPercent()), Math.abs(o1.getDeltaPercent()));
+            }
+        });
+        if (topN >= 0 && result.size() > topN) {
+            result = new ArrayList<FrameDeltaVO>(result.subList(0, topN));
+        }
+        return result;
+    }
+
+    private static void collectSelf(Node node, long[][] selfSamples) {
+        if (node.frameId >= 0) {
+            selfSamples[BASE][node.frameId] += node.self[BASE];
+            selfSamples[TARGET][node.frameId] += node.self[TARGET];
+        }
+        for (Node child : node.children()) {
+            collectSelf(child, selfSamples);
+        }
+    }
+
+    private double percent(long samples, int side) {
+        return totals[side] == 0 ? 0 : Math.rint(samples * 10000.0 / totals[side]) / 100.0;
+    }
+
+    /**
+     * 输出 difffolded 格式：每个有 self 样本的调用路径一行，stack base target
+     */
+    void writeFolded(Writer writer) throws IOException {
+        StringBuilder stack = new StringBuilder();
+        for (Node child : root.children()) {
+            writeFolded(writer, child, stack);
+        }
+        writer.flush();
+    }
+
+    private void writeFolded(Writer writer, Node node, StringBuilder stack) throws IOException {
+        int length = stack.length();
+        if (length > 0) {
+            stack.append(';');
+        }
+        stack.append(frames.get(node.frameId));
+        if (node.self[BASE] > 0 || node.self[TARGET] > 0) {
+            writer.write(stack.toString());
+            writer.write(' ');
+            writer.write(Long.toString(node.self[BASE]));
+            writer.write(' ');
+            writer.write(Long.toString(node.self[TARGET]));
+            writer.write('\n');
+        }
+        for (Node child : node.children()) {
+            writeFolded(writer, child, stack);
+        }
+        stack.setLength(length);
+    }
+
+    /**
+     * 输出 svg 格式的差分火焰图
+     *
+     * @param minWidthPercent 宽度小于总宽度这个百分比的栈帧不输出
+     */
+    void writeSvg(Writer writer, String title, double minWidthPercent) throws IOException {
+        long total = root.total[TARGET];
+        double minSamples = total * minWidthPercent / 100;
+        int depth = total == 0 ? 0 : maxDepth(root, minSamples, 0);
+        double maxDelta = maxDelta(root, minSamples);
+        int height = (depth + 2) * FRAME_HEIGHT + 24;
+
+        writer.write("<?xml version=\"1.0\" standalone=\"no\"?>\n");
+        writer.write("<svg version=\"1.1\" width=\"" + SVG_WIDTH + "\" height=\"" + height
+                + "\" xmlns=\"http://www.w3.org/2000/svg\" font-family=\"Verdana\" font-size=\"12\">\n");
+        writer.write("<rect x=\"0\" y=\"0\" width=\"100%\" height=\"100%\" fill=\"#ffffff\"/>\n");
+        writer.write("<text x=\"" + SVG_WIDTH / 2 + "\" y=\"18\" text-anchor=\"middle\" font-size=\"15\">"
+                + escape(title) + "</text>\n");
+        if (total > 0) {
+            writeSvgNode(writer, root, 0, 0, (double) SVG_WIDTH / total, height, minSamples, maxDelta);
+        }
+        writer.write("</svg>\n");
+        writer.flush();
+    }
+
+    private void writeSvgNode(Writer writer, Node node, double x, int level, double scale, int height,
+            double minSamples, double maxDelta) throws IOException {
+        double width = node.total[TARGET] * scale;
+        double y = height - (level + 1) * FRAME_HEIGHT;
+        String name = node.frameId < 0 ? "all" : frames.get(node.frameId);
+        double basePercent = percentOf(node.total[BASE], BASE);
+        double targetPercent = percentOf(node.total[TARGET], TARGET);
+
+        writer.write("<g><title>");
+        writer.write(escape(name));
+        writer.write(String.format(" (base %d samples %.2f%%, target %d samples %.2f%%, %+.2f%%)", node.total[BASE],
+                basePercent, node.total[TARGET], targetPercent, targetPercent - basePercent));
+        writer.write("</title><rect x=\"" + format(x) + "\" y=\"" + format(y) + "\" width=\"" + format(width)
+                + "\" height=\"" + (FRAME_HEIGHT - 1) + "\" fill=\"" + color(targetPercent - basePercent, maxDelta)
+                + "\" rx=\"2\" ry=\"2\"/>");
+        int chars = (int) ((width - 6) / CHAR_WIDTH);
+        if (chars >= 3) {
+            String text = name.length() <= chars ? name : name.substring(0, chars - 2) + "..";
+            writer.write("<text x=\"" + format(x + 3) + "\" y=\"" + format(y + FRAME_HEIGHT - 4) + "\">" + escape(text)
+                    + "</text>");
+        }
+        writer.write("</g>\n");
+
+        double childX = x;
+        for (Node child : sortedChildren(node)) {
+            if (child.total[TARGET] > 0 && child.total[TARGET] >= minSamples) {
+                writeSvgNode(writer, child, childX, level + 1, scale, height, minSamples, maxDelta);
+            }
+            childX += child.total[TARGET] * scale;
+        }
+    }
+
+    /**
+     * 和 flamegraph.pl 一样，同一层的栈帧按名字排序
+     */
+    private List<Node> sortedChildren(Node node) {
+        List<Node> children = new ArrayList<Node>();
+        for (Node child : node.children()) {
+            children.add(child);
+        }
+        Collections.sort(children, new Comparator<Node>() {
+            @Override
+            public int compare(Node o1, Node o2) {
+                return frames.get(o1.frameId).compareTo(frames.get(o2.frameId));
+            }
+        });
+        return children;
+    }
+
+    private int maxDepth(Node node, double minSamples, int level) {
+        int depth = level;
+        for (Node child : node.children()) {
+            if (child.total[TARGET] > 0 && child.total[TARGET] >= minSamples) {
+                depth = Math.max(depth, maxDepth(child, minSamples, level + 1));
+            }
+        }
+        return depth;
+    }
+
+    private double maxDelta(Node node, double minSamples) {
+        double max = Math.abs(percentOf(node.total[TARGET], TARGET) - percentOf(node.total[BASE], BASE));
+        for (Node child : node.children()) {
+            if (child.total[TARGET] > 0 && child.total[TARGET] >= minSamples) {
+                max = Math.max(max, maxDelta(child, minSamples));
+            }
+        }
+        return max;
+    }
+
+    private double percentOf(long samples, int side) {
+        return totals[side] == 0 ? 0 : samples * 100.0 / totals[side];
+    }
+
+    /**
+     * 占比增加是红色，减少是蓝色，变化越大颜色越深，没有变化是白色
+     */
+    private static String color(double delta, double maxDelta) {
+        int level = maxDelta == 0 ? 0 : (int) Math.round(Math.min(Math.abs(delta) / maxDelta, 1) * 200);
+        int light = 255 - level;
+        if (delta > 0) {
+            return "rgb(255," + light + "," + light + ")";
+        } else if (delta < 0) {
+            return "rgb(" + light + "," + light + ",255)";
+        }
+        return "rgb(255,255,255)";
+    }
+
+    private static String format(double value) {
+        return String.format("%.1f", value);
+    }
+
+    private static String escape(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '<':
+                sb.append("&lt;");
+                break;
+            case '>':
+                sb.append("&gt;");
+                break;
+            case '&':
+                sb.append("&amp;");
+                break;
+            case '"':
+                sb.append("&quot;");
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static class Node {
+        final int frameId;
+        final long[] total = new long[2];
+        final long[] self = new long[2];
+        // 大部分节点只有一个子节点，第二个子节点出现时才创建 map
+        private Node onlyChild;
+        private Map<Integer, Node> children;
+
+        Node(int frameId) {
+            this.frameId = frameId;
+        }
+
+        Node child(int frameId) {
+            if (children == null) {
+                if (onlyChild == null) {
+                    onlyChild = new Node(frameId);
+                    return onlyChild;
+                }
+                if (onlyChild.frameId == frameId) {
+                    return onlyChild;
+                }
+                children = new HashMap<Integer, Node>();
+                children.put(onlyChild.frameId, onlyChild);
+                onlyChild = null;
+            }
+            Node child = children.get(frameId);
+            if (child == null) {
+                child = new Node(frameId);
+                children.put(frameId, child);
+            }
+            return child;
+        }
+
+        Iterable<Node> children() {
+            if (children != null) {
+                return children.values();
+            }
+            if (onlyChild != null) {
+                return Collections.singletonList(onlyChild);
+            }
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.taobao.arthas.core.command.model.HeapDiffVO;
+import com.taobao.arthas.core.util.ClassUtils;
+import com.taobao.arthas.core.util.StringUtils;
+
+/**
+ * <pre>
+ * vmtool --action heapDiff 的类直方图快照表。
+ *
+ * 每个类第一次出现时分配一个递增的 id ，快照只是以 id 为下标的 long 数组，
+ * 不持有 Class 的引用，也不需要每次都创建 VO 。
+ * 第一次 update 的结果作为基线，之后每次 update 和上一次快照以及基线做差，返回增长最多的类。
+ *
+ * 非线程安全，由 heapDiff 的 timer 线程调用。
+ * </pre>
+ */
+class HeapHistogramDiffer {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Map<Class<?>, Integer> classIds = new WeakHashMap<Class<?>, Integer>();
+    private String[] classNames = new String[INITIAL_CAPACITY];
+    private String[] classLoaderHashes = new String[INITIAL_CAPACITY];
+    private int classCount = 0;
+
+    private long[] baselineInstances;
+    private long[] baselineBytes;
+    private long[] lastInstances;
+    private long[] lastBytes;
+    // 每个类连续增长的次数，增长停止时归零
+    private int[] growingCycles = new int[INITIAL_CAPACITY];
+    private int cycles = 0;
+
+    /**
+     * @return 已经做过的 diff 次数，基线不算
+     */
+    int getCycles() {
+        return cycles;
+    }
+
+    boolean hasBaseline() {
+        return baselineInstances != null;
+    }
+
+    /**
+     * 记录一次直方图快照
+     *
+     * @param classes 统计的类
+     * @param counts  每个类的实例个数，和 classes 一一对应
+     * @param sizes   每个类的实例占用内存，和 classes 一一对应
+     * @param limit   最多返回的类个数，小于 0 时不限制
+     * @return 第一次调用时返回 null ，之后返回相对基线增长的类，按增长的内存从大到小排序
+     */
+    List<HeapDiffVO> update(Class<?>[] classes, long[] counts, long[] sizes, int limit) {
+        int[] ids = new int[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            ids[i] = idOf(classes[i]);
+        }
+        long[] instances = new long[classCount];
+        long[] bytes = new long[classCount];
+        for (int i = 0; i < classes.length; i++) {
+            instances[ids[i]] += counts[i];
+            bytes[ids[i]] += sizes[i];
+        }
+
+        if (!hasBaseline()) {
+            baselineInstances = instances;
+            baselineBytes = bytes;
+            lastInstances = instances;
+            lastBytes = bytes;
+            return null;
+        }
+
+        cycles++;
+        List<HeapDiffVO> result = new ArrayList<HeapDiffVO>();
+        for (int id = 0; id < classCount; id++) {
+            long bytesDelta = bytes[id] - valueOf(lastBytes, id);
+            if (bytesDelta > 0) {
+                growingCycles[id]++;
+            } else {
+                growingCycles[id] = 0;
+            }
+
+            long instancesGrowth = instances[id] - valueOf(baselineInstances, id);
+            long bytesGrowth = bytes[id] - valueOf(baselineBytes, id);
+            if (instancesGrowth <= 0 && bytesGrowth <= 0) {
+                continue;
+            }
+            HeapDiffVO vo = new HeapDiffVO(classNames[id], classLoaderHashes[id], instances[id], bytes[id]);
+            vo.setInstancesGrowth(instancesGrowth);
+            vo.setBytesGrowth(bytesGrowth);
+            vo.setInstancesDelta(instances[id] - valueOf(lastInstances, id));
+            vo.setBytesDelta(bytesDelta);
+            vo.setGrowingCycles(growingCycles[id]);
+            result.add(vo);
+        }
+        lastInstances = instances;
+        lastBytes = bytes;
+
+        Collections.sort(result, new Comparator<HeapDiffVO>() {
+            @Override
+            public int compare(HeapDiffVO o1, HeapDiffVO o2) {
+                if (o1.getBytesGrowth() != o2.getBytesGrowth()) {
+                    return Long.compare(o2.getBytesGrowth(), o1.getBytesGrowth());
+                }
+                return Long.compare(o2.getInstancesGrowth(), o1.getInstancesGrowth());
+            }
+        });
+        if (limit >= 0 && result.size() > limit) {
+            result = new ArrayList<HeapDiffVO>(result.subList(0, limit));
+        }
+        return result;
+    }
+
+    private int idOf(Class<?> clazz) {
+        Integer id = classIds.get(clazz);
+        if (id != null) {
+            return id;
+        }
+        if (classCount == classNames.length) {
+            int newCapacity = classNames.length * 2;
+            classNames = Arrays.copyOf(classNames, newCapacity);
+            classLoaderHashes = Arrays.copyOf(classLoaderHashes, newCapacity);
+            growingCycles = Arrays.copyOf(growingCycles, newCapacity);
+        }
+        classNames[classCount] = StringUtils.classname(clazz);
+        classLoaderHashes[classCount] = ClassUtils.classLoaderHash(clazz);
+        classIds.put(clazz, classCount);
+        return classCount++;
+    }
+
+    /**
+     * 快照之后新出现的类在旧快照里没有对应的值，当作 0
+     */
+    private static long valueOf(long[] snapshot, int id) {
+        return id < snapshot.length ? snapshot[id] : 0;
+    }
+}
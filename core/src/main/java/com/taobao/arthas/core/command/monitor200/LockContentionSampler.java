@@ -0,0 +1,233 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.taobao.arthas.core.command.model.LockContentionVO;
+
+/**
+ * <pre>
+ * thread --contention 的锁竞争采样器。
+ *
+ * 和 thread -b 每次 dumpAllThreads 带上 monitor 和 synchronizer 不同，每次采样只用 maxDepth 为 0 的
+ * getThreadInfo 取线程状态和等待的锁，不需要抓所有线程的栈；只有存在竞争时，才抓锁持有者的栈。
+ *
+ * 1. BLOCKED 的线程算作在等待 synchronized 的 monitor
+ * 2. WAITING/TIMED_WAITING 并且等待的锁有持有者的线程，算作在等待 AbstractOwnableSynchronizer （Object.wait 没有持有者）
+ *
+ * 按锁的 identityHashCode 聚合等待时间，持有者的栈按前 ownerStackDepth 帧去重后编号，每个锁只保存编号和次数。
+ *
+ * 非线程安全，由执行 thread --contention 的线程调用。
+ * </pre>
+ */
+class LockContentionSampler {
+    private static ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final int ownerStackDepth;
+    private final Map<Integer, LockStat> locks = new HashMap<Integer, LockStat>();
+    // 持有者的栈去重之后的编号
+    private final Map<List<StackTraceElement>, Integer> stackIds = new HashMap<List<StackTraceElement>, Integer>();
+    private final List<StackTraceElement[]> stacks = new ArrayList<StackTraceElement[]>();
+    private int samples = 0;
+
+    LockContentionSampler(int ownerStackDepth) {
+        this.ownerStackDepth = ownerStackDepth;
+    }
+
+    int getSamples() {
+        return samples;
+    }
+
+    /**
+     * 采样一次所有线程
+     *
+     * @param elapsedMillis 距离上一次采样的时间，每个等待的线程按这个时间累加等待时间
+     */
+    void sample(long elapsedMillis) {
+        ThreadInfo[] infos = threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds(), 0);
+        List<ThreadInfo> waiters = new ArrayList<ThreadInfo>();
+        Set<Long> ownerIds = new LinkedHashSet<Long>();
+        for (ThreadInfo info : infos) {
+            if (isContending(info)) {
+                waiters.add(info);
+                if (info.getLockOwnerId() != -1) {
+                    ownerIds.add(info.getLockOwnerId());
+                }
+            }
+        }
+
+        Map<Long, ThreadInfo> owners = new HashMap<Long, ThreadInfo>();
+        if (!ownerIds.isEmpty()) {
+            long[] ids = new long[ownerIds.size()];
+            int index = 0;
+            for (Long ownerId : ownerIds) {
+                ids[index++] = ownerId;
+            }
+            for (ThreadInfo owner : threadMXBean.getThreadInfo(ids, ownerStackDepth)) {
+                if (owner != null) {
+                    owners.put(owner.getThreadId(), owner);
+                }
+            }
+        }
+        record(waiters, owners, elapsedMillis);
+    }
+
+    static boolean isContending(ThreadInfo info) {
+        if (info == null || info.getLockInfo() == null) {
+            return false;
+        }
+        Thread.State state = info.getThreadState();
+        if (state == Thread.State.BLOCKED) {
+            return true;
+        }
+        return (state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING) && info.getLockOwnerId() != -1;
+    }
+
+    /**
+     * @param waiters 正在等待锁的线程
+     * @param owners  线程 id 到锁持有者的 ThreadInfo（带栈）
+     */
+    void record(List<ThreadInfo> waiters, Map<Long, ThreadInfo> owners, long elapsedMillis) {
+        samples++;
+        Map<Integer, Integer> waitersPerLock = new HashMap<Integer, Integer>();
+        for (ThreadInfo waiter : waiters) {
+            LockInfo lockInfo = waiter.getLockInfo();
+            int identity = lockInfo.getIdentityHashCode();
+            LockStat stat = locks.get(identity);
+            if (stat == null) {
+                stat = new LockStat(lockInfo.getClassName(), identity,
+                        waiter.getThreadState() != Thread.State.BLOCKED);
+                locks.put(identity, stat);
+            }
+            stat.waitSamples++;
+            stat.waitTime += elapsedMillis;
+
+            Integer count = waitersPerLock.get(identity);
+            count = count == null ? 1 : count + 1;
+            waitersPerLock.put(identity, count);
+            // 同一个锁的多个等待者只统计一次持有者
+            if (count == 1) {
+                ThreadInfo owner = owners.get(waiter.getLockOwnerId());
+                if (owner != null) {
+                    stat.addOwner(owner.getThreadId(), owner.getThreadName(), stackIdOf(owner.getStackTrace()));
+                }
+            }
+        }
+        for (Map.Entry<Integer, Integer> entry : waitersPerLock.entrySet()) {
+            LockStat stat = locks.get(entry.getKey());
+            stat.maxWaiters = Math.max(stat.maxWaiters, entry.getValue());
+        }
+    }
+
+    /**
+     * @param topN 小于 0 时返回所有锁
+     * @return 按等待时间从高到低排序的锁
+     */
+    List<LockContentionVO> top(int topN) {
+        List<LockStat> stats = new ArrayList<LockStat>(locks.values());
+        Collections.sort(stats, new Comparator<LockStat>() {
+            @Override
+            public int compare(LockStat o1, LockStat o2) {
+                if (o1.waitTime != o2.waitTime) {
+                    return Long.compare(o2.waitTime, o1.waitTime);
+                }
+                return Long.compare(o2.waitSamples, o1.waitSamples);
+            }
+        });
+        int limit = topN < 0 ? stats.size() : Math.min(topN, stats.size());
+        List<LockContentionVO> result = new ArrayList<LockContentionVO>(limit);
+        for (int i = 0; i < limit; i++) {
+            result.add(stats.get(i).toVO());
+        }
+        return result;
+    }
+
+    private int stackIdOf(StackTraceElement[] stackTrace) {
+        List<StackTraceElement> key = Arrays.asList(stackTrace);
+        Integer id = stackIds.get(key);
+        if (id == null) {
+            id = stacks.size();
+            stackIds.put(key, id);
+            stacks.add(stackTrace);
+        }
+        return id;
+    }
+
+    private class LockStat {
+        private final String className;
+        private final int identityHashCode;
+        private final boolean synchronizer;
+        private long waitTime;
+        private long waitSamples;
+        private int maxWaiters;
+
+        // 采样到的持有者，一般只有几个
+        private int ownerCount = 0;
+        private int[] ownerStackIds = new int[2];
+        private long[] ownerIds = new long[2];
+        private String[] ownerNames = new String[2];
+        private long[] ownerSamples = new long[2];
+
+        LockStat(String className, int identityHashCode, boolean synchronizer) {
+            this.className = className;
+            this.identityHashCode = identityHashCode;
+            this.synchronizer = synchronizer;
+        }
+
+        void addOwner(long threadId, String threadName, int stackId) {
+            for (int i = 0; i < ownerCount; i++) {
+                if (ownerStackIds[i] == stackId && ownerIds[i] == threadId) {
+                    ownerSamples[i]++;
+                    return;
+                }
+            }
+            if (ownerCount == ownerStackIds.length) {
+                int newCapacity = ownerCount * 2;
+                ownerStackIds = Arrays.copyOf(ownerStackIds, newCapacity);
+                ownerIds = Arrays.copyOf(ownerIds, newCapacity);
+                ownerNames = Arrays.copyOf(ownerNames, newCapacity);
+                ownerSamples = Arrays.copyOf(ownerSamples, newCapacity);
+            }
+            ownerStackIds[ownerCount] = stackId;
+            ownerIds[ownerCount] = threadId;
+            ownerNames[ownerCount] = threadName;
+            ownerSamples[ownerCount++] = 1;
+        }
+
+        LockContentionVO toVO() {
+            LockContentionVO vo = new LockContentionVO();
+            vo.setLockClassName(className);
+            vo.setLockIdentityHashCode(identityHashCode);
+            vo.setSynchronizer(synchronizer);
+            vo.setWaitTime(waitTime);
+            vo.setWaitSamples(waitSamples);
+            vo.setMaxWaiters(maxWaiters);
+            int top = -1;
+            for (int i = 0; i < ownerCount; i++) {
+                if (top < 0 || ownerSamples[i] > ownerSamples[top]) {
+                    top = i;
+                }
+            }
+            if (top >= 0) {
+                vo.setOwnerThreadId(ownerIds[top]);
+                vo.setOwnerThreadName(ownerNames[top]);
+                vo.setOwnerSamples(ownerSamples[top]);
+                vo.setOwnerStackTrace(stacks.get(ownerStackIds[top]));
+            } else {
+                vo.setOwnerThreadId(-1);
+            }
+            return vo;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import com.alibaba.arthas.deps.org.slf4j.Logger;
+import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
+import com.taobao.arthas.core.command.model.TomcatInfoVO;
+
+/**
+ * <pre>
+ * 从容器自己注册的 MBean 读取连接器和线程池信息。
+ *
+ * 1. Tomcat ：*:type=GlobalRequestProcessor 和 *:type=ThreadPool ，独立部署的 domain 是 Catalina ，嵌入式的是 Tomcat ；
+ *    Spring Boot 2.2 之后嵌入式 Tomcat 默认不注册 MBean ，需要配置 server.tomcat.mbeanregistry.enabled=true
+ * 2. Jetty ：StatisticsHandler 和 QueuedThreadPool ，需要应用注册了 Jetty 的 MBeanContainer
+ * 3. Undertow ：XNIO worker 的线程池，Undertow 没有通过 MBean 暴露请求统计
+ *
+ * 查找到的 ObjectName 缓存到下一次 discover ，每次刷新只读取属性。
+ * </pre>
+ */
+class MBeanContainerMetricsProvider implements ContainerMetricsProvider {
+    private static final Logger logger = LoggerFactory.getLogger(MBeanContainerMetricsProvider.class);
+
+    private final String name;
+    private final Query connectorQuery;
+    // requestCount, errorCount, processingTime, bytesReceived, bytesSent 对应的属性名，容器不支持的是 null
+    private final String[] connectorAttributes;
+    private final Query threadPoolQuery;
+    // busy, total 对应的属性名
+    private final String[] threadPoolAttributes;
+
+    private volatile List<ObjectName> connectors = Collections.emptyList();
+    private volatile List<ObjectName> threadPools = Collections.emptyList();
+
+    MBeanContainerMetricsProvider(String name, Query connectorQuery, String[] connectorAttributes,
+            Query threadPoolQuery, String[] threadPoolAttributes) {
+        this.name = name;
+        this.connectorQuery = connectorQuery;
+        this.connectorAttributes = connectorAttributes;
+        this.threadPoolQuery = threadPoolQuery;
+        this.threadPoolAttributes = threadPoolAttributes;
+    }
+
+    static MBeanContainerMetricsProvider tomcat() {
+        return new MBeanContainerMetricsProvider("Tomcat",
+                new Query("*:type=GlobalRequestProcessor,*", "name", false, null),
+                new String[] { "requestCount", "errorCount", "processingTime", "bytesReceived", "bytesSent" },
+                new Query("*:type=ThreadPool,*", "name", false, "subType"),
+                new String[] { "currentThreadsBusy", "currentThreadCount" });
+    }
+
+    static MBeanContainerMetricsProvider jetty() {
+        return new MBeanContainerMetricsProvider("Jetty",
+                new Query("org.eclipse.jetty.server.handler:type=statisticshandler,*", "name", false, null),
+                new String[] { "requests", "responses5xx", "requestTimeTotal", null, "responsesBytesTotal" },
+                new Query("org.eclipse.jetty.util.thread:type=queuedthreadpool,*", "name", false, null),
+                new String[] { "busyThreads", "threads" });
+    }
+
+    static MBeanContainerMetricsProvider undertow() {
+        return new MBeanContainerMetricsProvider("Undertow", null, null,
+                // provider 级别的 MBean 没有 worker ，worker 下面每个监听地址还有一个带 address 的 MBean
+                new Query("org.xnio:type=Xnio,*", "worker", true, "address"),
+                new String[] { "BusyWorkerThreadCount", "WorkerPoolSize" });
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void discover(MBeanServer server) {
+        connectors = connectorQuery == null ? Collections.<ObjectName>emptyList() : connectorQuery.find(server);
+        threadPools = threadPoolQuery.find(server);
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return !connectors.isEmpty() || !threadPools.isEmpty();
+    }
+
+    @Override
+    public List<ConnectorCounters> readConnectors(MBeanServer server) {
+        List<ConnectorCounters> result = new ArrayList<ConnectorCounters>();
+        for (ObjectName objectName : connectors) {
+            Map<String, Long> values = readAttributes(server, objectName, connectorAttributes);
+            if (values == null) {
+                continue;
+            }
+            result.add(new ConnectorCounters(connectorQuery.nameOf(objectName), valueOf(values, connectorAttributes[0]),
+                    valueOf(values, connectorAttributes[1]), valueOf(values, connectorAttributes[2]),
+                    valueOf(values, connectorAttributes[3]), valueOf(values, connectorAttributes[4])));
+        }
+        return result;
+    }
+
+    @Override
+    public List<TomcatInfoVO.ThreadPool> readThreadPools(MBeanServer server) {
+        List<TomcatInfoVO.ThreadPool> result = new ArrayList<TomcatInfoVO.ThreadPool>();
+        for (ObjectName objectName : threadPools) {
+            Map<String, Long> values = readAttributes(server, objectName, threadPoolAttributes);
+            if (values == null) {
+                continue;
+            }
+            result.add(new TomcatInfoVO.ThreadPool(threadPoolQuery.nameOf(objectName),
+                    valueOf(values, threadPoolAttributes[0]), valueOf(values, threadPoolAttributes[1])));
+        }
+        return result;
+    }
+
+    /**
+     * @return MBean 已经被注销时返回 null
+     */
+    private static Map<String, Long> readAttributes(MBeanServer server, ObjectName objectName, String[] attributes) {
+        List<String> names = new ArrayList<String>();
+        for (String attribute : attributes) {
+            if (attribute != null) {
+                names.add(attribute);
+            }
+        }
+        AttributeList attributeList;
+        try {
+            // 不存在的属性不会返回，也不会抛出异常
+            attributeList = server.getAttributes(objectName, names.toArray(new String[0]));
+        } catch (Exception e) {
+            logger.debug("read container mbean {} error", objectName, e);
+            return null;
+        }
+        Map<String, Long> values = new HashMap<String, Long>();
+        for (Object item : attributeList) {
+            Attribute attribute = (Attribute) item;
+            if (attribute.getValue() instanceof Number) {
+                values.put(attribute.getName(), ((Number) attribute.getValue()).longValue());
+            }
+        }
+        return values;
+    }
+
+    private static long valueOf(Map<String, Long> values, String attribute) {
+        Long value = attribute == null ? null : values.get(attribute);
+        return value == null ? -1 : value;
+    }
+
+    static class Query {
+        private final String pattern;
+        // 作为显示名字的 key ，没有这个 key 时显示整个 key property list
+        private final String nameKey;
+        // 为 true 时没有 nameKey 的 MBean 不是要找的
+        private final boolean nameRequired;
+        // 有这个 key 的 MBean 不是要找的，比如 Tomcat ThreadPool 的 subType=SocketProperties
+        private final String excludedKey;
+
+        Query(String pattern, String nameKey, boolean nameRequired, String excludedKey) {
+            this.pattern = pattern;
+            this.nameKey = nameKey;
+            this.nameRequired = nameRequired;
+            this.excludedKey = excludedKey;
+        }
+
+        List<ObjectName> find(MBeanServer server) {
+            List<ObjectName> result = new ArrayList<ObjectName>();
+            Set<ObjectName> objectNames;
+            try {
+                objectNames = server.queryNames(new ObjectName(pattern), null);
+            } catch (MalformedObjectNameException e) {
+                throw new IllegalArgumentException(pattern, e);
+            }
+            for (ObjectName objectName : objectNames) {
+                if (excludedKey != null && objectName.getKeyProperty(excludedKey) != null) {
+                    continue;
+                }
+                if (nameRequired && objectName.getKeyProperty(nameKey) == null) {
+                    continue;
+                }
+                result.add(objectName);
+            }
+            return result;
+        }
+
+        String nameOf(ObjectName objectName) {
+            String name = objectName.getKeyProperty(nameKey);
+            if (name == null) {
+                return objectName.getKeyPropertyListString();
+            }
+            return name.replace("\"", "");
+        }
+    }
+}
@@ -11,12 +11,8 @@ import com.taobao.arthas.core.shell.command.CommandProcess;
 import com.taobao.arthas.core.util.StringUtils;
 import com.taobao.arthas.core.util.ThreadLocalWatch;
 
-import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicReference;
-
-import static com.taobao.arthas.core.util.ArthasCheckUtils.isEquals;
 
 /**
  * 输出的内容格式为:<br/>
@@ -68,8 +64,8 @@ class MonitorAdviceListener extends AdviceListenerAdapter {
     // 输出定时任务
     private Timer timer;
     private static final Logger logger = LoggerFactory.getLogger(MonitorAdviceListener.class);
-    // 监控数据
-    private ConcurrentHashMap<Key, AtomicReference<MonitorData>> monitorData = new ConcurrentHashMap<Key, AtomicReference<MonitorData>>();
+    // 监控数据 className -> methodName -> MonitorStats ，两级查找避免每次调用都创建 Key
+    private ConcurrentHashMap<String, ConcurrentHashMap<String, MonitorStats>> monitorData = new ConcurrentHashMap<String, ConcurrentHashMap<String, MonitorStats>>();
     private final ThreadLocalWatch threadLocalWatch = new ThreadLocalWatch();
     private final ThreadLocal<Boolean> conditionResult = new ThreadLocal<Boolean>() {
         @Override
@@ -119,17 +115,27 @@ class MonitorAdviceListener extends AdviceListenerAdapter {
     @Override
     public void afterReturning(ClassLoader loader, Class<?> clazz, ArthasMethod method, Object target,
                                Object[] args, Object returnObject) throws Throwable {
-        finishing(clazz, method, false, Advice.newForAfterReturning(loader, clazz, method, target, args, returnObject));
+        Advice advice = isConditionAfter() ? Advice.newForAfterReturning(loader, clazz, method, target, args, returnObject) : null;
+        finishing(clazz, method, false, advice);
     }
 
     @Override
     public void afterThrowing(ClassLoader loader, Class<?> clazz, ArthasMethod method, Object target,
                               Object[] args, Throwable throwable) {
-        finishing(clazz, method, true, Advice.newForAfterThrowing(loader, clazz, method, target, args, throwable));
+        Advice advice = isConditionAfter() ? Advice.newForAfterThrowing(loader, clazz, method, target, args, throwable) : null;
+        finishing(clazz, method, true, advice);
+    }
+
+    /**
+     * 只有在方法结束后才计算 condition-express 时，才需要创建 Advice
+     */
+    private boolean isConditionAfter() {
+        return !command.isBefore() && !StringUtils.isEmpty(this.command.getConditionExpress());
     }
 
     private void finishing(Class<?> clazz, ArthasMethod method, boolean isThrowing, Advice advice) {
-        double cost = threadLocalWatch.costInMillis();
+        long costInNanos = threadLocalWatch.cost();
+        double cost = costInNanos / 1000000.0;
 
         if (command.isBefore()) {
             if (!this.conditionResult.get()) {
@@ -148,42 +154,35 @@ class MonitorAdviceListener extends AdviceListenerAdapter {
             }
         }
 
-        final Key key = new Key(clazz.getName(), method.getName());
+        findMonitorStats(clazz.getName(), method.getName()).record(isThrowing, costInNanos);
+    }
 
-        while (true) {
-            AtomicReference<MonitorData> value = monitorData.get(key);
-            if (null == value) {
-                monitorData.putIfAbsent(key, new AtomicReference<MonitorData>(new MonitorData()));
-                continue;
+    private MonitorStats findMonitorStats(String className, String methodName) {
+        ConcurrentHashMap<String, MonitorStats> methodStats = monitorData.get(className);
+        if (methodStats == null) {
+            methodStats = new ConcurrentHashMap<String, MonitorStats>();
+            ConcurrentHashMap<String, MonitorStats> old = monitorData.putIfAbsent(className, methodStats);
+            if (old != null) {
+                methodStats = old;
             }
-
-            while (true) {
-                MonitorData oData = value.get();
-                MonitorData nData = new MonitorData();
-                nData.setCost(oData.getCost() + cost);
-                nData.setTimestamp(LocalDateTime.now());
-                if (isThrowing) {
-                    nData.setFailed(oData.getFailed() + 1);
-                    nData.setSuccess(oData.getSuccess());
-                } else {
-                    nData.setFailed(oData.getFailed());
-                    nData.setSuccess(oData.getSuccess() + 1);
-                }
-                nData.setTotal(oData.getTotal() + 1);
-                if (value.compareAndSet(oData, nData)) {
-                    break;
-                }
+        }
+        MonitorStats stats = methodStats.get(methodName);
+        if (stats == null) {
+            stats = new MonitorStats(className, methodName);
+            MonitorStats old = methodStats.putIfAbsent(methodName, stats);
+            if (old != null) {
+                stats = old;
             }
-            break;
         }
+        return stats;
     }
 
     private class MonitorTimer extends TimerTask {
-        private Map<Key, AtomicReference<MonitorData>> monitorData;
+        private Map<String, ConcurrentHashMap<String, MonitorStats>> monitorData;
         private CommandProcess process;
         private int limit;
 
-        MonitorTimer(Map<Key, AtomicReference<MonitorData>> monitorData, CommandProcess process, int limit) {
+        MonitorTimer(Map<String, ConcurrentHashMap<String, MonitorStats>> monitorData, CommandProcess process, int limit) {
             this.monitorData = monitorData;
             this.process = process;
             this.limit = limit;
@@ -202,22 +201,9 @@ class MonitorAdviceListener extends AdviceListenerAdapter {
             }
 
             List<MonitorData> monitorDataList = new ArrayList<MonitorData>(monitorData.size());
-            for (Map.Entry<Key, AtomicReference<MonitorData>> entry : monitorData.entrySet()) {
-                final AtomicReference<MonitorData> value = entry.getValue();
-
-                MonitorData data;
-                while (true) {
-                    data = value.get();
-                    //swap monitor data to new instance
-                    if (value.compareAndSet(data, new MonitorData())) {
-                        break;
-                    }
-                }
-
-                if (null != data) {
-                    data.setClassName(entry.getKey().getClassName());
-                    data.setMethodName(entry.getKey().getMethodName());
-                    monitorDataList.add(data);
+            for (ConcurrentHashMap<String, MonitorStats> methodStats : monitorData.values()) {
+                for (MonitorStats stats : methodStats.values()) {
+                    monitorDataList.add(stats.snapshotAndReset());
                 }
             }
             process.appendResult(new MonitorModel(monitorDataList));
@@ -225,42 +211,4 @@ class MonitorAdviceListener extends AdviceListenerAdapter {
 
     }
 
-    /**
-     * 数据监控用的Key
-     *
-     * @author vlinux
-     */
-    private static class Key {
-        private final String className;
-        private final String methodName;
-
-        Key(String className, String behaviorName) {
-            this.className = className;
-            this.methodName = behaviorName;
-        }
-
-        public String getClassName() {
-            return className;
-        }
-
-        public String getMethodName() {
-            return methodName;
-        }
-
-        @Override
-        public int hashCode() {
-            return className.hashCode() + methodName.hashCode();
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (!(obj instanceof Key)) {
-                return false;
-            }
-            Key okey = (Key) obj;
-            return isEquals(okey.className, className) && isEquals(okey.methodName, methodName);
-        }
-
-    }
-
 }
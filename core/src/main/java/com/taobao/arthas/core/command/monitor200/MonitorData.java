@@ -14,6 +14,14 @@ public class MonitorData {
     private int success;
     private int failed;
     private double cost;
+    /**
+     * 耗时的百分位和最大值，单位都是 ms
+     */
+    private double p50;
+    private double p90;
+    private double p99;
+    private double p999;
+    private double max;
     private LocalDateTime timestamp;
 
     public String getClassName() {
@@ -64,6 +72,46 @@ public class MonitorData {
         this.cost = cost;
     }
 
+    public double getP50() {
+        return p50;
+    }
+
+    public void setP50(double p50) {
+        this.p50 = p50;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public void setP90(double p90) {
+        this.p90 = p90;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public void setP99(double p99) {
+        this.p99 = p99;
+    }
+
+    public double getP999() {
+        return p999;
+    }
+
+    public void setP999(double p999) {
+        this.p999 = p999;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public void setMax(double max) {
+        this.max = max;
+    }
+
     public LocalDateTime getTimestamp() {
         if (timestamp == null) {
             timestamp = LocalDateTime.now();
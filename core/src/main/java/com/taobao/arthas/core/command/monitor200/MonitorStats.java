@@ -0,0 +1,64 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.taobao.arthas.core.util.metrics.LatencyHistogram;
+
+/**
+ * 单个被监控方法的统计计数，使用分段的 LongAdder 记录，多线程并发时没有 CAS 竞争，记录时不产生对象。
+ * 耗时同时记录到 LatencyHistogram 里，用于计算百分位。
+ * <p>
+ * 每个统计周期结束时由 MonitorTimer 调用 {@link #snapshotAndReset()} 取出数据并清零。
+ * 各个计数器分别清零，周期边界上正在记录的调用可能会被计入下一个周期。
+ */
+class MonitorStats {
+    private final String className;
+    private final String methodName;
+
+    private final LongAdder success = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder costInNanos = new LongAdder();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    MonitorStats(String className, String methodName) {
+        this.className = className;
+        this.methodName = methodName;
+    }
+
+    void record(boolean isThrowing, long costInNanos) {
+        if (isThrowing) {
+            failed.increment();
+        } else {
+            success.increment();
+        }
+        this.costInNanos.add(costInNanos);
+        histogram.record(costInNanos);
+    }
+
+    MonitorData snapshotAndReset() {
+        MonitorData data = new MonitorData();
+        data.setClassName(className);
+        data.setMethodName(methodName);
+        data.setTimestamp(LocalDateTime.now());
+
+        int successCount = (int) success.sumThenReset();
+        int failedCount = (int) failed.sumThenReset();
+        data.setSuccess(successCount);
+        data.setFailed(failedCount);
+        data.setTotal(successCount + failedCount);
+        data.setCost(toMillis(costInNanos.sumThenReset()));
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+        data.setP50(toMillis(snapshot.getValueAtPercentile(50)));
+        data.setP90(toMillis(snapshot.getValueAtPercentile(90)));
+        data.setP99(toMillis(snapshot.getValueAtPercentile(99)));
+        data.setP999(toMillis(snapshot.getValueAtPercentile(99.9)));
+        data.setMax(toMillis(snapshot.getMax()));
+        return data;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+}
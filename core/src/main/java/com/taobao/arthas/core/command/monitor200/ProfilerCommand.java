@@ -4,6 +4,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.security.CodeSource;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -20,6 +24,7 @@ import com.taobao.arthas.common.IOUtils;
 import com.taobao.arthas.common.OSUtils;
 import com.taobao.arthas.core.command.Constants;
 import com.taobao.arthas.core.command.model.ProfilerModel;
+import com.taobao.arthas.core.command.model.ProfilerWindowVO;
 import com.taobao.arthas.core.server.ArthasBootstrap;
 import com.taobao.arthas.core.shell.cli.CliToken;
 import com.taobao.arthas.core.shell.cli.Completion;
@@ -62,6 +67,10 @@ import one.profiler.Counter;
         + "  profiler dumpCollapsed       # Dump profile in 'collapsed stacktraces' format\n"
         + "  profiler dumpTraces          # Dump collected stack traces\n"
         + "  profiler execute 'stop,file=/tmp/result.html'   # Execute an agent-compatible profiling command\n"
+        + "  profiler continuous --window 60 --keep 10   # Rotate collapsed-stack windows, keep the last 10\n"
+        + "  profiler windows             # List the windows of continuous profiling\n"
+        + "  profiler window latest       # Get the collapsed-stack file of a window\n"
+        + "  profiler diff --base 20240101-100000 --target latest   # Differential flame graph of two windows or collapsed files\n"
         + Constants.WIKI + Constants.WIKI_HOME + "profiler")
 //@formatter:on
 public class ProfilerCommand extends AnnotatedCommand {
@@ -229,6 +238,22 @@ public class ProfilerCommand extends AnnotatedCommand {
      */
     private String timeout;
 
+    /**
+     * window length in seconds of continuous profiling
+     */
+    private int window = 60;
+
+    /**
+     * number of windows to keep in continuous profiling
+     */
+    private int keep = 10;
+
+    /**
+     * base/target of diff, profiler window id or collapsed file
+     */
+    private String base;
+    private String target;
+
     private static String libPath;
     private static AsyncProfiler profiler = null;
 
@@ -486,6 +511,29 @@ public class ProfilerCommand extends AnnotatedCommand {
         }
     }
 
+    @Option(longName = "window")
+    @Description("window length in seconds of continuous profiling (default: 60)")
+    public void setWindow(int window) {
+        this.window = window;
+    }
+
+    @Option(longName = "keep")
+    @Description("number of windows to keep in continuous profiling (default: 10)")
+    public void setKeep(int keep) {
+        this.keep = keep;
+    }
+
+    @Option(longName = "base")
+    @Description("the base profile of diff, a profiler window id or a collapsed file")
+    public void setBase(String base) {
+        this.base = base;
+    }
+
+    @Option(longName = "target")
+    @Description("the target profile of diff, a profiler window id or a collapsed file")
+    public void setTarget(String target) {
+        this.target = target;
+    }
 
     private AsyncProfiler profilerInstance() {
         if (profiler != null) {
@@ -539,6 +587,7 @@ public class ProfilerCommand extends AnnotatedCommand {
         load,
         execute,
         dumpCollapsed, dumpFlat, dumpTraces, getSamples,
+        continuous, windows, window, diff,
         actions
     }
 
@@ -672,6 +721,41 @@ public class ProfilerCommand extends AnnotatedCommand {
                 return;
             }
 
+            if (ProfilerAction.windows.equals(profilerAction)) {
+                ProfilerModel profilerModel = createProfilerModel(null);
+                profilerModel.setWindows(ProfilerWindowStore.getInstance().list());
+                process.appendResult(profilerModel);
+                process.end();
+                return;
+            }
+
+            if (ProfilerAction.window.equals(profilerAction)) {
+                String windowId = actionArg == null ? ProfilerWindowStore.LATEST : actionArg;
+                ProfilerWindowVO profilerWindow = ProfilerWindowStore.getInstance().find(windowId);
+                if (profilerWindow == null) {
+                    process.end(1, "Can not find profiler window: " + windowId + ", please check `profiler windows`.");
+                    return;
+                }
+                ProfilerModel profilerModel = createProfilerModel(null);
+                profilerModel.setOutputFile(profilerWindow.getFile());
+                process.appendResult(profilerModel);
+                process.end();
+                return;
+            }
+
+            if (ProfilerAction.diff.equals(profilerAction)) {
+                processDiff(process);
+                return;
+            }
+
+            // 连续采样时 async-profiler 由 ProfilerWindowStore 滚动，其它 start/stop 会让下一次滚动失败
+            if (ProfilerWindowStore.getInstance().isRunning() && (ProfilerAction.start.equals(profilerAction)
+                    || ProfilerAction.resume.equals(profilerAction) || ProfilerAction.dump.equals(profilerAction)
+                    || ProfilerAction.collect.equals(profilerAction))) {
+                process.end(1, "Continuous profiling is running, please use `profiler stop` to stop it first.");
+                return;
+            }
+
             final AsyncProfiler asyncProfiler = this.profilerInstance();
 
             if (ProfilerAction.execute.equals(profilerAction)) {
@@ -712,8 +796,23 @@ public class ProfilerCommand extends AnnotatedCommand {
                 String executeArgs = executeArgs(ProfilerAction.start);
                 String result = execute(asyncProfiler, executeArgs);
                 appendExecuteResult(process, result);
+            } else if (ProfilerAction.continuous.equals(profilerAction)) {
+                if (window <= 0 || keep <= 0) {
+                    process.end(1, "window and keep should be greater than 0.");
+                    return;
+                }
+                ProfilerModel profilerModel = processContinuous(asyncProfiler);
+                process.appendResult(profilerModel);
             } else if (ProfilerAction.stop.equals(profilerAction)) {
-                ProfilerModel profilerModel = processStop(asyncProfiler, profilerAction);
+                ProfilerModel profilerModel;
+                if (ProfilerWindowStore.getInstance().isRunning()) {
+                    // 连续采样时，最后一个窗口也保存到窗口目录
+                    ProfilerWindowVO lastWindow = ProfilerWindowStore.getInstance().stop();
+                    profilerModel = createProfilerModel("OK\n");
+                    profilerModel.setOutputFile(lastWindow != null ? lastWindow.getFile() : null);
+                } else {
+                    profilerModel = processStop(asyncProfiler, profilerAction);
+                }
                 process.appendResult(profilerModel);
             } else if (ProfilerAction.dump.equals(profilerAction)) {
                 ProfilerModel profilerModel = processStop(asyncProfiler, profilerAction);
@@ -781,6 +880,92 @@ public class ProfilerCommand extends AnnotatedCommand {
         return profilerModel;
     }
 
+    /**
+     * 每个窗口结束时把 collapsed 结果写到窗口目录里单独的文件，由 ProfilerWindowStore 滚动和清理
+     */
+    private ProfilerModel processContinuous(AsyncProfiler asyncProfiler) throws IOException {
+        File outputPath = ArthasBootstrap.getInstance().getOutputPath();
+        File directory = outputPath != null ? new File(outputPath, "profiler-continuous")
+                : new File(System.getProperty("java.io.tmpdir"), "arthas-profiler-continuous");
+
+        // 输出文件和格式由每个窗口 stop 时指定
+        this.file = null;
+        this.format = null;
+        ProfilerWindowStore.getInstance().start(asyncProfiler, executeArgs(ProfilerAction.start), directory, window,
+                keep, ArthasBootstrap.getInstance().getScheduledExecutorService());
+        ProfilerModel profilerModel = createProfilerModel("Continuous profiling started\n");
+        profilerModel.setOutputFile(directory.getAbsolutePath());
+        return profilerModel;
+    }
+
+    private void processDiff(CommandProcess process) throws IOException {
+        if (base == null || target == null) {
+            process.end(1, "Please specify --base and --target.");
+            return;
+        }
+        File baseFile = collapsedFile(base);
+        if (baseFile == null) {
+            process.end(1, "Can not find profiler window or file: " + base);
+            return;
+        }
+        File targetFile = collapsedFile(target);
+        if (targetFile == null) {
+            process.end(1, "Can not find profiler window or file: " + target);
+            return;
+        }
+        int topN = actionArg == null ? 20 : Integer.parseInt(actionArg);
+        double minWidthPercent = minwidth == null ? 0.1 : Double.parseDouble(minwidth);
+
+        FlameGraphDiff diff = new FlameGraphDiff();
+        addCollapsedFile(diff, baseFile, FlameGraphDiff.BASE);
+        addCollapsedFile(diff, targetFile, FlameGraphDiff.TARGET);
+
+        if (this.file == null) {
+            this.format = "svg";
+        }
+        String svgFile = outputFile();
+        String foldedFile = svgFile.replaceFirst("(\\.[^./\\\\]*)?$", "-folded.txt");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(svgFile), "UTF-8");
+            diff.writeSvg(writer, "Differential Flame Graph: " + base + " -> " + target, minWidthPercent);
+            IOUtils.close(writer);
+            writer = new OutputStreamWriter(new FileOutputStream(foldedFile), "UTF-8");
+            diff.writeFolded(writer);
+        } finally {
+            IOUtils.close(writer);
+        }
+
+        ProfilerModel profilerModel = createProfilerModel(null);
+        profilerModel.setOutputFile(svgFile);
+        profilerModel.setDiffFoldedFile(foldedFile);
+        profilerModel.setFrameDeltas(diff.topFrames(topN));
+        process.appendResult(profilerModel);
+        process.end();
+    }
+
+    /**
+     * @param name profiler window id ，或者 collapsed 文件路径
+     */
+    private static File collapsedFile(String name) {
+        ProfilerWindowVO profilerWindow = ProfilerWindowStore.getInstance().find(name);
+        if (profilerWindow != null) {
+            return new File(profilerWindow.getFile());
+        }
+        File file = new File(name);
+        return file.isFile() ? file : null;
+    }
+
+    private static void addCollapsedFile(FlameGraphDiff diff, File file, int side) throws IOException {
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            diff.add(reader, side);
+        } finally {
+            IOUtils.close(reader);
+        }
+    }
+
     private String outputFile() throws IOException {
         if (this.file == null) {
             String fileExt = outputFileExt();
@@ -810,6 +995,8 @@ public class ProfilerCommand extends AnnotatedCommand {
             fileExt = "html";
         } else if (this.format.equals("jfr")) {
             fileExt = "jfr";
+        } else if (this.format.equals("svg")) {
+            fileExt = "svg";
         } else {
             // illegal -o option makes async-profiler use flat
             fileExt = "txt";
@@ -0,0 +1,205 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.alibaba.arthas.deps.org.slf4j.Logger;
+import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
+import com.taobao.arthas.core.command.model.ProfilerWindowVO;
+
+import one.profiler.AsyncProfiler;
+
+/**
+ * <pre>
+ * profiler continuous 的滚动窗口。
+ *
+ * async-profiler 的 loop 参数只能在 jvm 启动时以 agent 方式加载才能使用，attach 之后 execute 会返回 Invalid loop duration ，
+ * 所以这里在 arthas 的定时线程里滚动：每个窗口结束时 stop 并把 collapsed 格式的结果写到 目录/窗口开始时间.collapsed ，
+ * 然后马上用同样的参数 start 下一个窗口，只保留最近 keep 个窗口文件。
+ * 窗口的 id 是 yyyyMMdd-HHmmss 格式的开始时间，文件名按时间排序。
+ * </pre>
+ */
+public class ProfilerWindowStore {
+    private static final Logger logger = LoggerFactory.getLogger(ProfilerWindowStore.class);
+
+    static final String WINDOW_FILE_SUFFIX = ".collapsed";
+    public static final String LATEST = "latest";
+
+    private static final ProfilerWindowStore INSTANCE = new ProfilerWindowStore();
+
+    private File directory;
+    private int keep;
+
+    private AsyncProfiler profiler;
+    private String startArgs;
+    private long windowStartTime;
+    private ScheduledFuture<?> future;
+
+    ProfilerWindowStore() {
+    }
+
+    public static ProfilerWindowStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 清空目录里上一次的窗口，开始第一个窗口，并且每隔 windowSeconds 秒滚动一次
+     *
+     * @param startArgs async-profiler 的 start 参数，不能包含 file 和输出格式
+     */
+    public synchronized void start(AsyncProfiler profiler, String startArgs, File directory, int windowSeconds,
+            int keep, ScheduledExecutorService executorService) throws IOException {
+        if (isRunning()) {
+            throw new IllegalStateException("continuous profiling is already running.");
+        }
+        init(directory, keep);
+        for (File file : windowFiles(directory)) {
+            if (!file.delete()) {
+                logger.warn("can not delete profiler window file: {}", file);
+            }
+        }
+        profiler.execute(startArgs);
+        this.profiler = profiler;
+        this.startArgs = startArgs;
+        this.windowStartTime = System.currentTimeMillis();
+        future = executorService.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    rotate();
+                } catch (Throwable e) {
+                    logger.error("rotate profiler window error, stop continuous profiling", e);
+                    cancel();
+                }
+            }
+        }, windowSeconds, windowSeconds, TimeUnit.SECONDS);
+    }
+
+    synchronized void init(File directory, int keep) {
+        directory.mkdirs();
+        this.directory = directory;
+        this.keep = keep;
+    }
+
+    /**
+     * 结束当前窗口并开始下一个窗口
+     */
+    synchronized void rotate() throws IOException {
+        if (!isRunning()) {
+            return;
+        }
+        finishWindow();
+        profiler.execute(startArgs);
+        windowStartTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 停止连续采样，当前窗口也保存下来，已经保存的窗口仍然可以查看，直到下一次 start
+     *
+     * @return 最后一个窗口，没有在连续采样时返回 null
+     */
+    public synchronized ProfilerWindowVO stop() throws IOException {
+        if (!isRunning()) {
+            return null;
+        }
+        cancel();
+        String id = finishWindow();
+        return find(id);
+    }
+
+    public synchronized boolean isRunning() {
+        return future != null;
+    }
+
+    private synchronized void cancel() {
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+    }
+
+    private String finishWindow() throws IOException {
+        String id = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date(windowStartTime));
+        File file = new File(directory, id + WINDOW_FILE_SUFFIX);
+        profiler.execute("stop,file=" + file.getAbsolutePath() + ",collapsed");
+        prune();
+        return id;
+    }
+
+    /**
+     * @return 保存的窗口，按时间从旧到新排序
+     */
+    public synchronized List<ProfilerWindowVO> list() {
+        List<ProfilerWindowVO> windows = new ArrayList<ProfilerWindowVO>();
+        for (File file : prune()) {
+            String name = file.getName();
+            windows.add(new ProfilerWindowVO(name.substring(0, name.length() - WINDOW_FILE_SUFFIX.length()),
+                    file.getAbsolutePath(), file.lastModified(), file.length()));
+        }
+        return windows;
+    }
+
+    /**
+     * @param id 窗口的 id ，或者 latest
+     * @return 找不到时返回 null
+     */
+    public synchronized ProfilerWindowVO find(String id) {
+        List<ProfilerWindowVO> windows = list();
+        if (windows.isEmpty()) {
+            return null;
+        }
+        if (LATEST.equals(id)) {
+            return windows.get(windows.size() - 1);
+        }
+        for (ProfilerWindowVO window : windows) {
+            if (window.getId().equals(id)) {
+                return window;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 删除多余的旧窗口
+     *
+     * @return 剩下的窗口文件，按时间从旧到新排序
+     */
+    synchronized List<File> prune() {
+        if (directory == null) {
+            return Collections.emptyList();
+        }
+        List<File> files = windowFiles(directory);
+        int remove = files.size() - keep;
+        for (int i = 0; i < remove; i++) {
+            if (!files.get(i).delete()) {
+                logger.warn("can not delete profiler window file: {}", files.get(i));
+            }
+        }
+        return remove > 0 ? files.subList(remove, files.size()) : files;
+    }
+
+    private static List<File> windowFiles(File directory) {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(WINDOW_FILE_SUFFIX);
+            }
+        });
+        if (files == null) {
+            return new ArrayList<File>();
+        }
+        // 文件名是 yyyyMMdd-HHmmss ，按名字排序就是按时间排序
+        Arrays.sort(files);
+        return new ArrayList<File>(Arrays.asList(files));
+    }
+}
@@ -0,0 +1,296 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.alibaba.arthas.deps.org.slf4j.Logger;
+import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
+
+/**
+ * <pre>
+ * slowprofile 的慢调用采样器。
+ *
+ * 1. 被增强的方法开始执行时，enter 把当前线程登记为正在执行的调用，同一个线程里嵌套的调用只算最外层的一次
+ * 2. 采样线程每隔 intervalMillis 毫秒，用一次 getThreadInfo 批量抓取所有正在执行调用的线程的栈，
+ *    栈按调用去重计数，只保存在这次调用里
+ * 3. 最外层的调用结束时，exit 计算耗时：超过阈值的调用，把它的栈从入口方法开始截断，
+ *    合并到 collapsed 格式（frame1;frame2;...;frameN count）的结果里；没有超过阈值的调用直接丢弃
+ *
+ * 栈帧的名字和 async-profiler 的 collapsed 格式一样是 pkg/Class.method ，结果可以交给 profiler diff 对比。
+ * getThreadInfo 需要进入 safepoint ，采样结果有 safepoint bias ，采样间隔不宜太小。
+ * </pre>
+ */
+class SlowInvocationProfiler {
+    private static final Logger logger = LoggerFactory.getLogger(SlowInvocationProfiler.class);
+    private static ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final long intervalMillis;
+    private final int maxDepth;
+    // 线程 id -> 正在执行的最外层调用
+    private final ConcurrentHashMap<Long, Invocation> invocations = new ConcurrentHashMap<Long, Invocation>();
+
+    // 以下字段由 this 保护
+    private final Map<String, long[]> profile = new HashMap<String, long[]>();
+    private long slowInvocations;
+    private long discardedInvocations;
+    private long samples;
+
+    private volatile Thread samplerThread;
+
+    SlowInvocationProfiler(long intervalMillis, int maxDepth) {
+        this.intervalMillis = intervalMillis;
+        this.maxDepth = maxDepth;
+    }
+
+    synchronized void start(String threadName) {
+        if (samplerThread != null) {
+            return;
+        }
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (samplerThread == Thread.currentThread()) {
+                    try {
+                        Thread.sleep(intervalMillis);
+                        sample();
+                    } catch (InterruptedException e) {
+                        break;
+                    } catch (Throwable e) {
+                        logger.error("slowprofile sample error", e);
+                    }
+                }
+            }
+        }, threadName);
+        thread.setDaemon(true);
+        samplerThread = thread;
+        thread.start();
+    }
+
+    synchronized void stop() {
+        Thread thread = samplerThread;
+        samplerThread = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        invocations.clear();
+    }
+
+    /**
+     * 被增强的方法开始执行，由业务线程调用
+     */
+    void enter(String className, String methodName) {
+        Thread thread = Thread.currentThread();
+        Invocation invocation = invocations.get(thread.getId());
+        if (invocation != null) {
+            invocation.depth++;
+            return;
+        }
+        invocations.put(thread.getId(), new Invocation(className, methodName, System.nanoTime()));
+    }
+
+    /**
+     * 被增强的方法执行结束，由业务线程调用
+     *
+     * @return 最外层调用的耗时（纳秒），嵌套的调用返回 -1
+     */
+    long exit(long thresholdNanos) {
+        Long threadId = Thread.currentThread().getId();
+        Invocation invocation = invocations.get(threadId);
+        if (invocation == null || --invocation.depth > 0) {
+            return -1;
+        }
+        invocations.remove(threadId);
+        long cost = System.nanoTime() - invocation.startTime;
+        Map<List<StackTraceElement>, int[]> stacks = invocation.finish();
+        if (cost < thresholdNanos) {
+            synchronized (this) {
+                discardedInvocations++;
+            }
+            return cost;
+        }
+        // 慢调用很少，在业务线程里直接合并
+        Map<String, Integer> folded = new HashMap<String, Integer>();
+        if (stacks != null) {
+            for (Map.Entry<List<StackTraceElement>, int[]> entry : stacks.entrySet()) {
+                String stack = collapse(entry.getKey(), invocation.className, invocation.methodName, maxDepth);
+                if (stack != null) {
+                    Integer count = folded.get(stack);
+                    folded.put(stack, count == null ? entry.getValue()[0] : count + entry.getValue()[0]);
+                }
+            }
+        }
+        synchronized (this) {
+            slowInvocations++;
+            for (Map.Entry<String, Integer> entry : folded.entrySet()) {
+                long[] count = profile.get(entry.getKey());
+                if (count == null) {
+                    profile.put(entry.getKey(), new long[] { entry.getValue() });
+                } else {
+                    count[0] += entry.getValue();
+                }
+                samples += entry.getValue();
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * 采样一次所有正在执行的调用
+     */
+    void sample() {
+        if (invocations.isEmpty()) {
+            return;
+        }
+        List<Long> threadIds = new ArrayList<Long>(invocations.keySet());
+        long[] ids = new long[threadIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = threadIds.get(i);
+        }
+        ThreadInfo[] infos = threadMXBean.getThreadInfo(ids, maxDepth);
+        for (int i = 0; i < infos.length; i++) {
+            if (infos[i] == null) {
+                continue;
+            }
+            Invocation invocation = invocations.get(ids[i]);
+            if (invocation != null) {
+                invocation.addSample(infos[i].getStackTrace());
+            }
+        }
+    }
+
+    /**
+     * 把栈转换成 collapsed 格式，从最外层的入口方法开始，到栈顶结束
+     *
+     * @param stack 栈顶在前
+     * @return 采样时调用已经结束（栈里找不到入口方法，并且栈没有被截断）时返回 null
+     */
+    static String collapse(List<StackTraceElement> stack, String className, String methodName, int maxDepth) {
+        int entry = -1;
+        for (int i = stack.size() - 1; i >= 0; i--) {
+            StackTraceElement frame = stack.get(i);
+            if (frame.getClassName().equals(className) && frame.getMethodName().equals(methodName)) {
+                entry = i;
+                break;
+            }
+        }
+        if (entry < 0) {
+            if (stack.size() < maxDepth || stack.isEmpty()) {
+                return null;
+            }
+            // 栈太深被截断了，保留抓到的部分
+            entry = stack.size() - 1;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = entry; i >= 0; i--) {
+            StackTraceElement frame = stack.get(i);
+            if (sb.length() > 0) {
+                sb.append(';');
+            }
+            sb.append(frame.getClassName().replace('.', '/')).append('.').append(frame.getMethodName());
+        }
+        return sb.toString();
+    }
+
+    synchronized long getSlowInvocations() {
+        return slowInvocations;
+    }
+
+    synchronized long getDiscardedInvocations() {
+        return discardedInvocations;
+    }
+
+    synchronized long getSamples() {
+        return samples;
+    }
+
+    /**
+     * 输出 collapsed 格式的结果，每个调用路径一行
+     */
+    synchronized void writeCollapsed(Writer writer) throws IOException {
+        List<String> stacks = new ArrayList<String>(profile.keySet());
+        Collections.sort(stacks);
+        for (String stack : stacks) {
+            writer.write(stack);
+            writer.write(' ');
+            writer.write(Long.toString(profile.get(stack)[0]));
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * @return 栈顶方法 -> self 样本数，按样本数从高到低排序
+     */
+    synchronized Map<String, Long> topFrames(int topN) {
+        final Map<String, Long> self = new HashMap<String, Long>();
+        for (Map.Entry<String, long[]> entry : profile.entrySet()) {
+            String stack = entry.getKey();
+            String frame = stack.substring(stack.lastIndexOf(';') + 1);
+            Long count = self.get(frame);
+            self.put(frame, count == null ? entry.getValue()[0] : count + entry.getValue()[0]);
+        }
+        List<String> frames = new ArrayList<String>(self.keySet());
+        Collections.sort(frames, new Comparator<String>() {
+            @Override
+            public int compare(String o1, String o2) {
+                return Long.compare(self.get(o2), self.get(o1));
+            }
+        });
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < frames.size() && i < topN; i++) {
+            result.put(frames.get(i), self.get(frames.get(i)));
+        }
+        return result;
+    }
+
+    private static class Invocation {
+        private final String className;
+        private final String methodName;
+        private final long startTime;
+        // 嵌套深度，只由业务线程自己修改
+        private int depth = 1;
+
+        // 以下字段由 this 保护，采样线程写入，业务线程在调用结束时取走
+        private Map<List<StackTraceElement>, int[]> stacks;
+        private boolean finished;
+
+        Invocation(String className, String methodName, long startTime) {
+            this.className = className;
+            this.methodName = methodName;
+            this.startTime = startTime;
+        }
+
+        synchronized void addSample(StackTraceElement[] stackTrace) {
+            if (finished) {
+                return;
+            }
+            if (stacks == null) {
+                stacks = new HashMap<List<StackTraceElement>, int[]>();
+            }
+            List<StackTraceElement> key = Arrays.asList(stackTrace);
+            int[] count = stacks.get(key);
+            if (count == null) {
+                stacks.put(key, new int[] { 1 });
+            } else {
+                count[0]++;
+            }
+        }
+
+        synchronized Map<List<StackTraceElement>, int[]> finish() {
+            finished = true;
+            return stacks;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import com.alibaba.arthas.deps.org.slf4j.Logger;
+import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
+import com.taobao.arthas.common.IOUtils;
+import com.taobao.arthas.core.advisor.AdviceListenerAdapter;
+import com.taobao.arthas.core.advisor.ArthasMethod;
+import com.taobao.arthas.core.command.model.SlowProfileModel;
+import com.taobao.arthas.core.shell.command.CommandProcess;
+
+/**
+ * slowprofile 的监听器：调用开始时登记到 {@link SlowInvocationProfiler} ，结束时按耗时决定保留还是丢弃样本，
+ * 每个统计周期把结果写到 collapsed 文件并输出一次
+ */
+class SlowProfileAdviceListener extends AdviceListenerAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(SlowProfileAdviceListener.class);
+    private static final int TOP_FRAMES = 10;
+
+    private final SlowProfileCommand command;
+    private final CommandProcess process;
+    private final SlowInvocationProfiler profiler;
+    private final long thresholdNanos;
+    private final File outputFile;
+    private Timer timer;
+
+    SlowProfileAdviceListener(SlowProfileCommand command, CommandProcess process, File outputFile, boolean verbose) {
+        this.command = command;
+        this.process = process;
+        this.outputFile = outputFile;
+        this.thresholdNanos = command.getThreshold() * 1000000L;
+        this.profiler = new SlowInvocationProfiler(command.getInterval(), command.getDepth());
+        super.setVerbose(verbose);
+    }
+
+    @Override
+    public synchronized void create() {
+        if (timer == null) {
+            String suffix = "-" + process.session().getSessionId();
+            profiler.start("arthas-slowprofile-sampler" + suffix);
+            timer = new Timer("Timer-for-arthas-slowprofile" + suffix, true);
+            timer.scheduleAtFixedRate(new SlowProfileTimer(), command.getCycle() * 1000L, command.getCycle() * 1000L);
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (null != timer) {
+            timer.cancel();
+            timer = null;
+            profiler.stop();
+            // 命令被中断时，保留最后的结果
+            writeOutputFile();
+        }
+    }
+
+    @Override
+    public void before(ClassLoader loader, Class<?> clazz, ArthasMethod method, Object target, Object[] args)
+            throws Throwable {
+        profiler.enter(clazz.getName(), method.getName());
+    }
+
+    @Override
+    public void afterReturning(ClassLoader loader, Class<?> clazz, ArthasMethod method, Object target,
+            Object[] args, Object returnObject) throws Throwable {
+        profiler.exit(thresholdNanos);
+    }
+
+    @Override
+    public void afterThrowing(ClassLoader loader, Class<?> clazz, ArthasMethod method, Object target,
+            Object[] args, Throwable throwable) throws Throwable {
+        profiler.exit(thresholdNanos);
+    }
+
+    private boolean writeOutputFile() {
+        if (profiler.getSlowInvocations() == 0) {
+            return false;
+        }
+        Writer writer = null;
+        try {
+            outputFile.getParentFile().mkdirs();
+            writer = new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8");
+            profiler.writeCollapsed(writer);
+            return true;
+        } catch (IOException e) {
+            logger.error("write slowprofile result error, file: {}", outputFile, e);
+            return false;
+        } finally {
+            IOUtils.close(writer);
+        }
+    }
+
+    private class SlowProfileTimer extends TimerTask {
+        private long lastSlowInvocations = 0;
+        private long lastDiscardedInvocations = 0;
+
+        @Override
+        public void run() {
+            long slowInvocations = profiler.getSlowInvocations();
+            long discardedInvocations = profiler.getDiscardedInvocations();
+            if (slowInvocations == lastSlowInvocations && discardedInvocations == lastDiscardedInvocations) {
+                return;
+            }
+            lastSlowInvocations = slowInvocations;
+            lastDiscardedInvocations = discardedInvocations;
+
+            SlowProfileModel model = new SlowProfileModel();
+            model.setTs(LocalDateTime.now());
+            model.setSlowInvocations(slowInvocations);
+            model.setDiscardedInvocations(discardedInvocations);
+            model.setSamples(profiler.getSamples());
+            if (writeOutputFile()) {
+                model.setOutputFile(outputFile.getAbsolutePath());
+            }
+            model.setTopFrames(profiler.topFrames(TOP_FRAMES));
+            process.appendResult(model);
+
+            // 保留的慢调用次数超过上限，命令终止
+            if (isLimitExceeded(command.getNumberOfLimit(), (int) Math.min(slowInvocations, Integer.MAX_VALUE))) {
+                this.cancel();
+                abortProcess(process, command.getNumberOfLimit());
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import com.taobao.arthas.core.GlobalOptions;
+import com.taobao.arthas.core.advisor.AdviceListener;
+import com.taobao.arthas.core.command.Constants;
+import com.taobao.arthas.core.server.ArthasBootstrap;
+import com.taobao.arthas.core.shell.command.CommandProcess;
+import com.taobao.arthas.core.shell.handlers.Handler;
+import com.taobao.arthas.core.util.SearchUtils;
+import com.taobao.arthas.core.util.matcher.Matcher;
+import com.taobao.middleware.cli.annotations.Argument;
+import com.taobao.middleware.cli.annotations.DefaultValue;
+import com.taobao.middleware.cli.annotations.Description;
+import com.taobao.middleware.cli.annotations.Name;
+import com.taobao.middleware.cli.annotations.Option;
+import com.taobao.middleware.cli.annotations.Summary;
+
+/**
+ * 慢调用采样命令：方法执行期间对执行线程采样，只保留耗时超过阈值的调用的样本，输出 collapsed 格式的结果
+ */
+@Name("slowprofile")
+@Summary("Sample the stacks of slow invocations of the specified method, and aggregate them into a collapsed profile")
+@Description(Constants.EXAMPLE +
+        "  slowprofile demo.MathGame primeFactors\n" +
+        "  slowprofile demo.MathGame primeFactors --threshold 200 -i 100\n" +
+        "  slowprofile demo.MathGame primeFactors -f /tmp/slow.collapsed -c 30\n" +
+        "  slowprofile -E org\\.apache\\.commons\\.lang\\.StringUtils isBlank\n" +
+        Constants.WIKI + Constants.WIKI_HOME + "slowprofile")
+public class SlowProfileCommand extends EnhancerCommand {
+
+    private String classPattern;
+    private String methodPattern;
+    private boolean isRegEx = false;
+    private long threshold;
+    private long interval;
+    private int cycle;
+    private int depth;
+    private int numberOfLimit = 100;
+    private String file;
+
+    @Argument(argName = "class-pattern", index = 0)
+    @Description("Path and classname of Pattern Matching")
+    public void setClassPattern(String classPattern) {
+        this.classPattern = classPattern;
+    }
+
+    @Argument(argName = "method-pattern", index = 1)
+    @Description("Method of Pattern Matching")
+    public void setMethodPattern(String methodPattern) {
+        this.methodPattern = methodPattern;
+    }
+
+    @Option(shortName = "E", longName = "regex", flag = true)
+    @Description("Enable regular expression to match (wildcard matching by default)")
+    public void setRegEx(boolean regEx) {
+        isRegEx = regEx;
+    }
+
+    @Option(shortName = "t", longName = "threshold")
+    @DefaultValue("500")
+    @Description("Only keep the samples of invocations which cost more than threshold (in ms), 500 by default")
+    public void setThreshold(long threshold) {
+        this.threshold = threshold;
+    }
+
+    @Option(shortName = "i", longName = "interval")
+    @DefaultValue("50")
+    @Description("The sample interval (in ms), 50 by default. Every sample brings the JVM to a safepoint, "
+            + "a small interval pauses the application frequently")
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    @Option(shortName = "c", longName = "cycle")
+    @DefaultValue("10")
+    @Description("The output interval (in seconds), 10 by default")
+    public void setCycle(int cycle) {
+        this.cycle = cycle;
+    }
+
+    @Option(shortName = "d", longName = "depth")
+    @DefaultValue("128")
+    @Description("The max depth of sampled stacks, 128 by default")
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    @Option(shortName = "n", longName = "limits")
+    @Description("Threshold of slow invocations, 100 by default")
+    public void setNumberOfLimit(int numberOfLimit) {
+        this.numberOfLimit = numberOfLimit;
+    }
+
+    @Option(shortName = "f", longName = "file")
+    @Description("The collapsed output file, default is arthas-output/slowprofile-yyyyMMdd-HHmmss.collapsed")
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public String getClassPattern() {
+        return classPattern;
+    }
+
+    public String getMethodPattern() {
+        return methodPattern;
+    }
+
+    public boolean isRegEx() {
+        return isRegEx;
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public int getCycle() {
+        return cycle;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getNumberOfLimit() {
+        return numberOfLimit;
+    }
+
+    @Override
+    public void process(CommandProcess process) {
+        if (threshold < 0 || interval <= 0 || cycle <= 0 || depth <= 0) {
+            process.end(-1, "threshold must not be negative, interval/cycle/depth must be positive.");
+            return;
+        }
+        super.process(process);
+    }
+
+    @Override
+    protected Matcher getClassNameMatcher() {
+        if (classNameMatcher == null) {
+            classNameMatcher = SearchUtils.classNameMatcher(getClassPattern(), isRegEx());
+        }
+        return classNameMatcher;
+    }
+
+    @Override
+    protected Matcher getClassNameExcludeMatcher() {
+        if (classNameExcludeMatcher == null && getExcludeClassPattern() != null) {
+            classNameExcludeMatcher = SearchUtils.classNameMatcher(getExcludeClassPattern(), isRegEx());
+        }
+        return classNameExcludeMatcher;
+    }
+
+    @Override
+    protected Matcher getMethodNameMatcher() {
+        if (methodNameMatcher == null) {
+            methodNameMatcher = SearchUtils.classNameMatcher(getMethodPattern(), isRegEx());
+        }
+        return methodNameMatcher;
+    }
+
+    @Override
+    protected AdviceListener getAdviceListener(CommandProcess process) {
+        final AdviceListener listener = new SlowProfileAdviceListener(this, process, outputFile(),
+                GlobalOptions.verbose || this.verbose);
+        /*
+         * 通过handle回调，在suspend时停止采样，resume时重新开始
+         */
+        process.suspendHandler(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                listener.destroy();
+            }
+        });
+        process.resumeHandler(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                listener.create();
+            }
+        });
+        return listener;
+    }
+
+    private File outputFile() {
+        if (file != null) {
+            return new File(file).getAbsoluteFile();
+        }
+        File outputPath = ArthasBootstrap.getInstance().getOutputPath();
+        String name = "slowprofile-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())
+                + ProfilerWindowStore.WINDOW_FILE_SUFFIX;
+        return outputPath != null ? new File(outputPath, name) : new File(name).getAbsoluteFile();
+    }
+}
@@ -1,5 +1,6 @@
 package com.taobao.arthas.core.command.monitor200;
 
+import com.taobao.arthas.core.GlobalOptions;
 import com.taobao.arthas.core.command.Constants;
 import com.taobao.arthas.core.command.model.BlockingLockInfo;
 import com.taobao.arthas.core.command.model.BusyThreadInfo;
@@ -8,6 +9,7 @@ import com.taobao.arthas.core.command.model.ThreadVO;
 import com.taobao.arthas.core.shell.command.AnnotatedCommand;
 import com.taobao.arthas.core.shell.command.CommandProcess;
 import com.taobao.arthas.core.shell.command.ExitStatus;
+import com.taobao.arthas.core.shell.handlers.Handler;
 import com.taobao.arthas.core.util.ArrayUtils;
 import com.taobao.arthas.core.util.CommandUtils;
 import com.taobao.arthas.core.util.StringUtils;
@@ -24,11 +26,13 @@ import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author hengyunabc 2015年12月7日 下午2:06:21
@@ -43,16 +47,25 @@ import java.util.Set;
         "  thread -b\n" +
         "  thread -i 2000\n" +
         "  thread --state BLOCKED\n" +
+        "  thread --since 5m -n 10\n" +
+        "  thread --contention --duration 10000 -i 50\n" +
         Constants.WIKI + Constants.WIKI_HOME + "thread")
 public class ThreadCommand extends AnnotatedCommand {
     private static Set<String> states = null;
     private static ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    // thread --since/--contention 没有指定 -n 时显示的个数
+    private static final int DEFAULT_TOP_N = 5;
+    // thread --contention 抓锁持有者的栈的深度
+    private static final int CONTENTION_OWNER_STACK_DEPTH = 16;
 
     private long id = -1;
     private Integer topNBusy = null;
     private boolean findMostBlockingThread = false;
     private int sampleInterval = 200;
     private String state;
+    private String since;
+    private boolean contention = false;
+    private long duration = 5000;
 
     private boolean lockedMonitors = false;
     private boolean lockedSynchronizers = false;
@@ -101,6 +114,26 @@ public class ThreadCommand extends AnnotatedCommand {
         this.state = state;
     }
 
+    @Option(longName = "since")
+    @Description("Show the busiest threads of the past period from the background thread cpu history, e.g. 30s, 5m, 1h. "
+            + "Requires `options thread-cpu-history true`.")
+    public void setSince(String since) {
+        this.since = since;
+    }
+
+    @Option(longName = "contention", flag = true)
+    @Description("Sample blocked/waiting threads every sample-interval ms for a period, "
+            + "and show the most contended monitors and AbstractOwnableSynchronizers with their owner stacks.")
+    public void setContention(boolean contention) {
+        this.contention = contention;
+    }
+
+    @Option(longName = "duration")
+    @Description("The sampling period (in ms) of --contention, default value is 5000.")
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
     @Option(longName = "lockedMonitors", flag = true)
     @Description("Find the thread info with lockedMonitors flag, default value is false.")
     public void setLockedMonitors(boolean lockedMonitors) {
@@ -118,7 +151,9 @@ public class ThreadCommand extends AnnotatedCommand {
         ExitStatus exitStatus;
         if (id > 0) {
             exitStatus = processThread(process);
-        } else if (topNBusy != null) {
+        } else if (contention) {
+            exitStatus = processLockContention(process);
+        } else if (topNBusy != null || since != null) {
             exitStatus = processTopBusyThreads(process);
         } else if (findMostBlockingThread) {
             exitStatus = processBlockingThread(process);
@@ -182,10 +217,32 @@ public class ThreadCommand extends AnnotatedCommand {
     }
 
     private ExitStatus processTopBusyThreads(CommandProcess process) {
-        ThreadSampler threadSampler = new ThreadSampler();
-        threadSampler.sample(ThreadUtil.getThreads());
-        threadSampler.pause(sampleInterval);
-        List<ThreadVO> threadStats = threadSampler.sample(ThreadUtil.getThreads());
+        if (topNBusy == null) {
+            topNBusy = DEFAULT_TOP_N;
+        }
+        List<ThreadVO> threadStats;
+        if (since != null) {
+            if (!ThreadCpuHistory.isEnabled()) {
+                return ExitStatus.failure(1, "Thread cpu history is disabled, please enable it by `options thread-cpu-history true` first.");
+            }
+            long sinceMillis = parseDurationMillis(since);
+            if (sinceMillis <= 0) {
+                return ExitStatus.failure(1, "Illegal argument, since should be like 30s, 5m, 1h: " + since);
+            }
+            ThreadCpuHistory history = ThreadCpuHistory.getInstance();
+            if (history.size() == 0) {
+                return ExitStatus.failure(1, "No thread cpu history yet, please try again after "
+                        + GlobalOptions.threadCpuHistoryInterval + " ms.");
+            }
+            threadStats = history.top(System.currentTimeMillis() - sinceMillis, topNBusy > 0 ? topNBusy : -1);
+            fillThreadState(threadStats);
+        } else {
+            ThreadSampler threadSampler = new ThreadSampler();
+            threadSampler.sample(ThreadUtil.getThreads(), 0);
+            threadSampler.pause(sampleInterval);
+            // 只需要 topNBusy 个线程，不需要对所有线程排序
+            threadStats = threadSampler.sample(ThreadUtil.getThreads(), topNBusy > 0 ? topNBusy : -1);
+        }
 
         int limit = Math.min(threadStats.size(), topNBusy);
 
@@ -219,6 +276,100 @@ public class ThreadCommand extends AnnotatedCommand {
         return ExitStatus.success();
     }
 
+    private ExitStatus processLockContention(CommandProcess process) {
+        if (sampleInterval <= 0 || duration <= 0) {
+            return ExitStatus.failure(1, "Illegal argument, sample-interval and duration should be greater than 0.");
+        }
+        int topN = topNBusy != null ? topNBusy : DEFAULT_TOP_N;
+        LockContentionSampler sampler = new LockContentionSampler(CONTENTION_OWNER_STACK_DEPTH);
+        // ctrl+c 时提前结束采样，输出已经采样到的结果
+        final Thread samplingThread = Thread.currentThread();
+        process.interruptHandler(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                samplingThread.interrupt();
+            }
+        });
+        long start = System.currentTimeMillis();
+        long last = start;
+        try {
+            while (process.isRunning()) {
+                Thread.sleep(sampleInterval);
+                long now = System.currentTimeMillis();
+                sampler.sample(now - last);
+                last = now;
+                if (now - start >= duration) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            // interrupted by ctrl+c
+        } finally {
+            process.interruptHandler(null);
+            // 清除中断标记，避免影响执行命令的线程池
+            Thread.interrupted();
+        }
+        if (!process.isRunning()) {
+            return ExitStatus.success();
+        }
+
+        ThreadModel threadModel = new ThreadModel();
+        threadModel.setLockContentions(sampler.top(topN));
+        threadModel.setContentionSamples(sampler.getSamples());
+        threadModel.setContentionDuration(last - start);
+        process.appendResult(threadModel);
+        return ExitStatus.success();
+    }
+
+    /**
+     * cpu 历史里只有线程 id 和名字，补上还存活的线程的状态
+     */
+    private static void fillThreadState(List<ThreadVO> threadStats) {
+        Map<Long, ThreadVO> liveThreads = new HashMap<Long, ThreadVO>();
+        for (ThreadVO thread : ThreadUtil.getThreads()) {
+            liveThreads.put(thread.getId(), thread);
+        }
+        for (ThreadVO thread : threadStats) {
+            ThreadVO live = liveThreads.get(thread.getId());
+            if (live != null) {
+                thread.setGroup(live.getGroup());
+                thread.setPriority(live.getPriority());
+                thread.setState(live.getState());
+                thread.setInterrupted(live.isInterrupted());
+                thread.setDaemon(live.isDaemon());
+            }
+        }
+    }
+
+    /**
+     * @param duration 比如 30s, 5m, 1h, 1d ，没有单位时是秒
+     * @return 毫秒，格式错误时返回 -1
+     */
+    static long parseDurationMillis(String duration) {
+        String value = duration.trim();
+        if (value.isEmpty()) {
+            return -1;
+        }
+        try {
+            char unit = value.charAt(value.length() - 1);
+            String number = value.substring(0, value.length() - 1);
+            switch (unit) {
+            case 'd':
+                return TimeUnit.DAYS.toMillis(Long.parseLong(number));
+            case 'h':
+                return TimeUnit.HOURS.toMillis(Long.parseLong(number));
+            case 'm':
+                return TimeUnit.MINUTES.toMillis(Long.parseLong(number));
+            case 's':
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(number));
+            default:
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+            }
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     private ThreadInfo findThreadInfoById(ThreadInfo[] threadInfos, long id) {
         for (int i = 0; i < threadInfos.length; i++) {
             ThreadInfo threadInfo = threadInfos[i];
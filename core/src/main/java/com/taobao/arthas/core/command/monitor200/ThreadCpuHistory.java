@@ -0,0 +1,290 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.alibaba.arthas.deps.org.slf4j.Logger;
+import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
+import com.taobao.arthas.core.GlobalOptions;
+import com.taobao.arthas.core.command.model.ThreadVO;
+import com.taobao.arthas.core.util.ThreadUtil;
+
+/**
+ * <pre>
+ * 后台低频采样的线程 cpu 历史，所有 session 共享。
+ *
+ * 通过 options thread-cpu-history true 打开，每隔 thread-cpu-history-interval 毫秒采样一次，
+ * 每次采样只保存 cpu 时间有增长的线程，保存在固定大小的环里，最多保存 {@link #CAPACITY} 次采样。
+ * thread --since 5m 从这里统计之前一段时间里 cpu 占用最高的线程， dashboard 用它画每个线程的 cpu 趋势。
+ * </pre>
+ */
+public class ThreadCpuHistory {
+    private static final Logger logger = LoggerFactory.getLogger(ThreadCpuHistory.class);
+
+    /**
+     * 保存的采样次数，默认 5 秒采样一次时可以保存 1 小时
+     */
+    static final int CAPACITY = 720;
+
+    private static final ThreadCpuHistory INSTANCE = new ThreadCpuHistory();
+
+    // 每个槽位是一次采样，和 slot 下标一一对应
+    private final long[] timestamps = new long[CAPACITY];
+    private final long[] intervalNanos = new long[CAPACITY];
+    private final long[][] tids = new long[CAPACITY][];
+    private final String[][] names = new String[CAPACITY][];
+    private final long[][] deltaNanos = new long[CAPACITY][];
+    // 下一次写入的槽位，以及已经写入的采样次数
+    private int next = 0;
+    private int size = 0;
+
+    // 上一次采样的 cpu 时间
+    private ThreadSampler.CpuTimeTable lastCpuTimes;
+    private Map<String, Long> lastInternalCpuTimes;
+    private long lastSampleNanos;
+    private long lastSampleMillis;
+
+    private ScheduledFuture<?> future;
+
+    ThreadCpuHistory() {
+    }
+
+    public static ThreadCpuHistory getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 每秒检查一次是否打开以及是否到了采样时间，关闭时清空历史
+     */
+    public synchronized void start(ScheduledExecutorService executorService) {
+        if (future != null) {
+            return;
+        }
+        future = executorService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick(System.currentTimeMillis());
+                } catch (Throwable e) {
+                    logger.error("sample thread cpu history error", e);
+                }
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+        clear();
+    }
+
+    public static boolean isEnabled() {
+        return GlobalOptions.threadCpuHistory;
+    }
+
+    void tick(long nowMillis) {
+        if (!isEnabled()) {
+            synchronized (this) {
+                if (lastCpuTimes != null) {
+                    clear();
+                }
+            }
+            return;
+        }
+        if (lastCpuTimes != null && nowMillis - lastSampleMillis < GlobalOptions.threadCpuHistoryInterval) {
+            return;
+        }
+        List<Thread> threads = ThreadUtil.getThreadList();
+        long[] ids = new long[threads.size()];
+        String[] threadNames = new String[threads.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = threads.get(i).getId();
+            threadNames[i] = threads.get(i).getName();
+        }
+        sample(nowMillis, System.nanoTime(), ids, threadNames, ThreadSampler.threadCpuTimes(ids),
+                ThreadSampler.internalThreadCpuTimes());
+    }
+
+    /**
+     * 记录一次采样，第一次只记录 cpu 时间作为基准
+     *
+     * @param cpuTimes 和 ids 一一对应的 cpu 时间，单位纳秒
+     * @param internalCpuTimes jvm 内部线程的 cpu 时间，可以为 null
+     */
+    synchronized void sample(long nowMillis, long nowNanos, long[] ids, String[] threadNames, long[] cpuTimes,
+            Map<String, Long> internalCpuTimes) {
+        ThreadSampler.CpuTimeTable newCpuTimes = new ThreadSampler.CpuTimeTable(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] > 0 && cpuTimes[i] >= 0) {
+                newCpuTimes.put(ids[i], cpuTimes[i]);
+            }
+        }
+
+        if (lastCpuTimes != null) {
+            int internalCount = internalCpuTimes == null ? 0 : internalCpuTimes.size();
+            long[] slotTids = new long[ids.length + internalCount];
+            String[] slotNames = new String[slotTids.length];
+            long[] slotDeltas = new long[slotTids.length];
+            int count = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (cpuTimes[i] < 0) {
+                    continue;
+                }
+                // 新创建的线程，上一次采样之后的 cpu 时间都算在这次
+                long delta = cpuTimes[i] - lastCpuTimes.get(ids[i], 0);
+                if (delta > 0) {
+                    slotTids[count] = ids[i];
+                    slotNames[count] = threadNames[i];
+                    slotDeltas[count++] = delta;
+                }
+            }
+            if (internalCpuTimes != null) {
+                for (Map.Entry<String, Long> entry : internalCpuTimes.entrySet()) {
+                    Long last = lastInternalCpuTimes == null ? null : lastInternalCpuTimes.get(entry.getKey());
+                    long delta = entry.getValue() - (last == null ? 0 : last);
+                    if (delta > 0) {
+                        slotTids[count] = -1;
+                        slotNames[count] = entry.getKey();
+                        slotDeltas[count++] = delta;
+                    }
+                }
+            }
+
+            timestamps[next] = nowMillis;
+            intervalNanos[next] = nowNanos - lastSampleNanos;
+            tids[next] = trim(slotTids, count);
+            names[next] = count == slotNames.length ? slotNames : Arrays.copyOf(slotNames, count);
+            deltaNanos[next] = trim(slotDeltas, count);
+            next = (next + 1) % CAPACITY;
+            if (size < CAPACITY) {
+                size++;
+            }
+        }
+
+        lastCpuTimes = newCpuTimes;
+        lastInternalCpuTimes = internalCpuTimes;
+        lastSampleNanos = nowNanos;
+        lastSampleMillis = nowMillis;
+    }
+
+    /**
+     * 统计 sinceMillis 之后的采样里 cpu 占用最高的线程
+     *
+     * @param topN 小于 0 时返回所有线程
+     * @return 按 cpu 时间从高到低排序， cpu 是相对统计时间段的占用百分比， deltaTime 是这段时间的 cpu 时间
+     */
+    public synchronized List<ThreadVO> top(long sinceMillis, int topN) {
+        // tid > 0 的线程按 tid 合并，内部线程按名字合并
+        Map<Object, Integer> indexes = new HashMap<Object, Integer>();
+        List<ThreadVO> threads = new ArrayList<ThreadVO>();
+        long[] sums = new long[16];
+        long coveredNanos = 0;
+        for (int n = 0; n < size; n++) {
+            int slot = (next - 1 - n + CAPACITY) % CAPACITY;
+            if (timestamps[slot] < sinceMillis) {
+                break;
+            }
+            coveredNanos += intervalNanos[slot];
+            long[] slotTids = tids[slot];
+            for (int i = 0; i < slotTids.length; i++) {
+                Object key = slotTids[i] > 0 ? (Object) slotTids[i] : names[slot][i];
+                Integer index = indexes.get(key);
+                if (index == null) {
+                    index = threads.size();
+                    indexes.put(key, index);
+                    threads.add(createThreadVO(slotTids[i], names[slot][i]));
+                    if (index == sums.length) {
+                        sums = Arrays.copyOf(sums, sums.length * 2);
+                    }
+                }
+                sums[index] += deltaNanos[slot][i];
+            }
+        }
+
+        long[] values = trim(sums, threads.size());
+        int[] top = ThreadSampler.topIndexes(values, topN < 0 ? values.length : Math.min(topN, values.length));
+        List<ThreadVO> result = new ArrayList<ThreadVO>(top.length);
+        for (int index : top) {
+            ThreadVO thread = threads.get(index);
+            thread.setDeltaTime(values[index] / 1000000);
+            thread.setCpu(coveredNanos == 0 ? 0 : Math.rint(values[index] * 10000.0 / coveredNanos) / 100.0);
+            if (thread.getId() > 0 && lastCpuTimes != null) {
+                thread.setTime(lastCpuTimes.get(thread.getId(), -1000000) / 1000000);
+            }
+            result.add(thread);
+        }
+        return result;
+    }
+
+    /**
+     * @return 最近 points 次采样里每个 java 线程的 cpu 占用百分比，按时间从旧到新排列，没有采样到的位置是 0
+     */
+    public synchronized Map<Long, double[]> recentCpuUsages(int points) {
+        Map<Long, double[]> result = new HashMap<Long, double[]>();
+        int count = Math.min(points, size);
+        for (int n = 0; n < count; n++) {
+            int slot = (next - 1 - n + CAPACITY) % CAPACITY;
+            int position = points - 1 - n;
+            long[] slotTids = tids[slot];
+            for (int i = 0; i < slotTids.length; i++) {
+                if (slotTids[i] <= 0) {
+                    continue;
+                }
+                double[] usages = result.get(slotTids[i]);
+                if (usages == null) {
+                    usages = new double[points];
+                    result.put(slotTids[i], usages);
+                }
+                usages[position] = intervalNanos[slot] == 0 ? 0 : deltaNanos[slot][i] * 100.0 / intervalNanos[slot];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return 最早的采样时间，还没有采样时返回 -1
+     */
+    public synchronized long getOldestTimestamp() {
+        if (size == 0) {
+            return -1;
+        }
+        return timestamps[(next - size + CAPACITY) % CAPACITY];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            tids[i] = null;
+            names[i] = null;
+            deltaNanos[i] = null;
+        }
+        next = 0;
+        size = 0;
+        lastCpuTimes = null;
+        lastInternalCpuTimes = null;
+    }
+
+    private static ThreadVO createThreadVO(long id, String name) {
+        ThreadVO thread = new ThreadVO();
+        thread.setId(id);
+        thread.setName(name);
+        thread.setPriority(-1);
+        thread.setTime(-1);
+        return thread;
+    }
+
+    private static long[] trim(long[] array, int length) {
+        return array.length == length ? array : Arrays.copyOf(array, length);
+    }
+}
@@ -8,15 +8,19 @@ import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
+ * <pre>
  * Thread cpu sampler
  *
+ * 1. 优先通过 com.sun.management.ThreadMXBean#getThreadCpuTime(long[]) 一次获取所有线程的 cpu 时间
+ * 2. 上一次采样的 cpu 时间保存在以 tid 为 key 的 long 数组里，不需要为每个线程创建 HashMap 的 entry
+ * 3. 只需要 cpu 占用最高的 N 个线程时，用大小为 N 的堆选出来，不对所有线程排序
+ * </pre>
+ *
  * @author gongdewei 2020/4/23
  */
 public class ThreadSampler {
@@ -24,138 +28,209 @@ public class ThreadSampler {
     private static ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
     private static HotspotThreadMBean hotspotThreadMBean;
     private static boolean hotspotThreadMBeanEnable = true;
+    private static boolean bulkCpuTimeEnable = true;
 
-    private Map<ThreadVO, Long> lastCpuTimes = new HashMap<ThreadVO, Long>();
+    // 上一次采样的 java 线程 cpu 时间，第一次采样前为 null
+    private CpuTimeTable lastCpuTimes;
+    // 上一次采样的 jvm 内部线程 cpu 时间，内部线程没有 tid ，按线程名保存
+    private Map<String, Long> lastInternalCpuTimes = new HashMap<String, Long>();
 
     private long lastSampleTimeNanos;
     private boolean includeInternalThreads = true;
 
 
     public List<ThreadVO> sample(Collection<ThreadVO> originThreads) {
+        return sample(originThreads, -1);
+    }
 
+    /**
+     * @param topN 只返回 cpu 占用最高的 topN 个线程，小于 0 时返回所有线程
+     * @return 按 cpu 占用从高到低排序的线程，第一次采样时按总 cpu 时间排序
+     */
+    public List<ThreadVO> sample(Collection<ThreadVO> originThreads, int topN) {
         List<ThreadVO> threads = new ArrayList<ThreadVO>(originThreads);
-
-        // Sample CPU
-        if (lastCpuTimes.isEmpty()) {
-            lastSampleTimeNanos = System.nanoTime();
-            for (ThreadVO thread : threads) {
-                if (thread.getId() > 0) {
-                    long cpu = threadMXBean.getThreadCpuTime(thread.getId());
-                    lastCpuTimes.put(thread, cpu);
-                    thread.setTime(cpu / 1000000);
-                }
-            }
-
-            // add internal threads
-            Map<String, Long> internalThreadCpuTimes = getInternalThreadCpuTimes();
-            if (internalThreadCpuTimes != null) {
-                for (Map.Entry<String, Long> entry : internalThreadCpuTimes.entrySet()) {
-                    String key = entry.getKey();
-                    ThreadVO thread = createThreadVO(key);
-                    thread.setTime(entry.getValue() / 1000000);
-                    threads.add(thread);
-                    lastCpuTimes.put(thread, entry.getValue());
-                }
-            }
-
-            //sort by time
-            Collections.sort(threads, new Comparator<ThreadVO>() {
-                @Override
-                public int compare(ThreadVO o1, ThreadVO o2) {
-                    long l1 = o1.getTime();
-                    long l2 = o2.getTime();
-                    if (l1 < l2) {
-                        return 1;
-                    } else if (l1 > l2) {
-                        return -1;
-                    } else {
-                        return 0;
-                    }
-                }
-            });
-            return threads;
+        int javaThreadCount = threads.size();
+        long[] ids = new long[javaThreadCount];
+        for (int i = 0; i < javaThreadCount; i++) {
+            ids[i] = threads.get(i).getId();
         }
+        long[] javaCpuTimes = threadCpuTimes(ids);
 
-        // Resample
-        long newSampleTimeNanos = System.nanoTime();
-        Map<ThreadVO, Long> newCpuTimes = new HashMap<ThreadVO, Long>(threads.size());
-        for (ThreadVO thread : threads) {
-            if (thread.getId() > 0) {
-                long cpu = threadMXBean.getThreadCpuTime(thread.getId());
-                newCpuTimes.put(thread, cpu);
-            }
-        }
         // internal threads
-        Map<String, Long> newInternalThreadCpuTimes = getInternalThreadCpuTimes();
-        if (newInternalThreadCpuTimes != null) {
-            for (Map.Entry<String, Long> entry : newInternalThreadCpuTimes.entrySet()) {
-                ThreadVO threadVO = createThreadVO(entry.getKey());
-                threads.add(threadVO);
-                newCpuTimes.put(threadVO, entry.getValue());
+        Map<String, Long> internalThreadCpuTimes = getInternalThreadCpuTimes();
+        int internalThreadCount = internalThreadCpuTimes == null ? 0 : internalThreadCpuTimes.size();
+        long[] cpuTimes = new long[javaThreadCount + internalThreadCount];
+        System.arraycopy(javaCpuTimes, 0, cpuTimes, 0, javaThreadCount);
+        if (internalThreadCpuTimes != null) {
+            int index = javaThreadCount;
+            for (Map.Entry<String, Long> entry : internalThreadCpuTimes.entrySet()) {
+                threads.add(createThreadVO(entry.getKey()));
+                cpuTimes[index++] = entry.getValue();
             }
         }
 
-        // Compute delta time
-        final Map<ThreadVO, Long> deltas = new HashMap<ThreadVO, Long>(threads.size());
-        for (ThreadVO thread : newCpuTimes.keySet()) {
-            Long t = lastCpuTimes.get(thread);
-            if (t == null) {
-                t = 0L;
+        long newSampleTimeNanos = System.nanoTime();
+        boolean firstSample = lastCpuTimes == null;
+        long sampleIntervalNanos = newSampleTimeNanos - lastSampleTimeNanos;
+
+        // Compute delta time, 第一次采样时按总 cpu 时间排序
+        long[] deltas = new long[threads.size()];
+        for (int i = 0; i < threads.size(); i++) {
+            if (firstSample) {
+                deltas[i] = cpuTimes[i];
+                continue;
+            }
+            long time1;
+            if (i < javaThreadCount) {
+                time1 = lastCpuTimes.get(ids[i], 0);
+            } else {
+                Long t = lastInternalCpuTimes.get(threads.get(i).getName());
+                time1 = t == null ? 0 : t;
             }
-            long time1 = t;
-            long time2 = newCpuTimes.get(thread);
+            long time2 = cpuTimes[i];
             if (time1 == -1) {
                 time1 = time2;
             } else if (time2 == -1) {
                 time2 = time1;
             }
-            long delta = time2 - time1;
-            deltas.put(thread, delta);
+            deltas[i] = time2 - time1;
         }
 
-        long sampleIntervalNanos = newSampleTimeNanos - lastSampleTimeNanos;
-
-        // Compute cpu usage
-        final HashMap<ThreadVO, Double> cpuUsages = new HashMap<ThreadVO, Double>(threads.size());
-        for (ThreadVO thread : threads) {
-            double cpu = sampleIntervalNanos == 0 ? 0 : (Math.rint(deltas.get(thread) * 10000.0 / sampleIntervalNanos) / 100.0);
-            cpuUsages.put(thread, cpu);
+        // 保存这次采样的结果
+        CpuTimeTable newCpuTimes = new CpuTimeTable(javaThreadCount);
+        for (int i = 0; i < javaThreadCount; i++) {
+            if (ids[i] > 0) {
+                newCpuTimes.put(ids[i], cpuTimes[i]);
+            }
+        }
+        Map<String, Long> newInternalCpuTimes = new HashMap<String, Long>(internalThreadCount * 2);
+        for (int i = javaThreadCount; i < threads.size(); i++) {
+            newInternalCpuTimes.put(threads.get(i).getName(), cpuTimes[i]);
         }
+        lastCpuTimes = newCpuTimes;
+        lastInternalCpuTimes = newInternalCpuTimes;
+        lastSampleTimeNanos = newSampleTimeNanos;
 
         // Sort by CPU time : should be a rendering hint...
-        Collections.sort(threads, new Comparator<ThreadVO>() {
-            @Override
-            public int compare(ThreadVO o1, ThreadVO o2) {
-                long l1 = deltas.get(o1);
-                long l2 = deltas.get(o2);
-                if (l1 < l2) {
-                    return 1;
-                } else if (l1 > l2) {
-                    return -1;
-                } else {
-                    return 0;
-                }
+        int[] top = topIndexes(deltas, topN < 0 ? deltas.length : Math.min(topN, deltas.length));
+        List<ThreadVO> result = new ArrayList<ThreadVO>(top.length);
+        for (int index : top) {
+            ThreadVO thread = threads.get(index);
+            //nanos to mills
+            thread.setTime(cpuTimes[index] / 1000000);
+            if (!firstSample) {
+                double cpu = sampleIntervalNanos == 0 ? 0 : (Math.rint(deltas[index] * 10000.0 / sampleIntervalNanos) / 100.0);
+                thread.setCpu(cpu);
+                thread.setDeltaTime(deltas[index] / 1000000);
             }
-        });
+            result.add(thread);
+        }
+        return result;
+    }
 
-        for (ThreadVO thread : threads) {
-            //nanos to mills
-            long timeMills = newCpuTimes.get(thread) / 1000000;
-            long deltaTime = deltas.get(thread) / 1000000;
-            double cpu = cpuUsages.get(thread);
+    /**
+     * 用大小为 n 的最小堆选出 values 最大的 n 个下标，按 values 从大到小排序，相等时按下标从小到大排序
+     */
+    static int[] topIndexes(long[] values, int n) {
+        int[] heap = new int[n];
+        int size = 0;
+        for (int i = 0; i < values.length && n > 0; i++) {
+            if (size < n) {
+                heap[size] = i;
+                siftUp(heap, size++, values);
+            } else if (before(i, heap[0], values)) {
+                heap[0] = i;
+                siftDown(heap, size, values);
+            }
+        }
+        // 依次取出堆顶（最小的）放到末尾
+        int[] result = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size, values);
+        }
+        return result;
+    }
+
+    /**
+     * @return a 是否排在 b 前面
+     */
+    private static boolean before(int a, int b, long[] values) {
+        return values[a] > values[b] || (values[a] == values[b] && a < b);
+    }
 
-            thread.setCpu(cpu);
-            thread.setTime(timeMills);
-            thread.setDeltaTime(deltaTime);
+    private static void siftUp(int[] heap, int index, long[] values) {
+        int node = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(heap[parent], node, values)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
         }
-        lastCpuTimes = newCpuTimes;
-        lastSampleTimeNanos = newSampleTimeNanos;
+        heap[index] = node;
+    }
 
-        return threads;
+    private static void siftDown(int[] heap, int size, long[] values) {
+        if (size == 0) {
+            return;
+        }
+        int node = heap[0];
+        int index = 0;
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && before(heap[child], heap[right], values)) {
+                child = right;
+            }
+            if (!before(node, heap[child], values)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = node;
+    }
+
+    /**
+     * @return 和 ids 一一对应的 cpu 时间，单位纳秒，id 不合法或者线程已经结束时是 -1
+     */
+    static long[] threadCpuTimes(long[] ids) {
+        // getThreadCpuTime(long[]) 不允许 id <= 0
+        long[] validIds = ids;
+        for (long id : ids) {
+            if (id <= 0) {
+                validIds = null;
+                break;
+            }
+        }
+        if (bulkCpuTimeEnable && validIds != null && threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            try {
+                return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadCpuTime(validIds);
+            } catch (Throwable e) {
+                //ignore ex, fallback to get cpu time one by one
+                bulkCpuTimeEnable = false;
+            }
+        }
+        long[] cpuTimes = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            cpuTimes[i] = ids[i] > 0 ? threadMXBean.getThreadCpuTime(ids[i]) : -1;
+        }
+        return cpuTimes;
     }
 
     private Map<String, Long> getInternalThreadCpuTimes() {
-        if (hotspotThreadMBeanEnable && includeInternalThreads) {
+        return includeInternalThreads ? internalThreadCpuTimes() : null;
+    }
+
+    /**
+     * @return jvm 内部线程（GC 、 JIT 编译线程等）的 cpu 时间，不支持时返回 null
+     */
+    static Map<String, Long> internalThreadCpuTimes() {
+        if (hotspotThreadMBeanEnable) {
             try {
                 if (hotspotThreadMBean == null) {
                     hotspotThreadMBean = ManagementFactoryHelper.getHotspotThreadMBean();
@@ -195,4 +270,47 @@ public class ThreadSampler {
         this.includeInternalThreads = includeInternalThreads;
     }
 
+    /**
+     * tid -> cpu time 的开放寻址表，tid 总是大于 0 ，用 0 表示空位
+     */
+    static class CpuTimeTable {
+        private final long[] keys;
+        private final long[] values;
+        private final int mask;
+
+        CpuTimeTable(int expectedSize) {
+            int capacity = 16;
+            while (capacity < expectedSize * 2) {
+                capacity <<= 1;
+            }
+            keys = new long[capacity];
+            values = new long[capacity];
+            mask = capacity - 1;
+        }
+
+        void put(long key, long value) {
+            int index = indexOf(key);
+            while (keys[index] != 0 && keys[index] != key) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            values[index] = value;
+        }
+
+        long get(long key, long defaultValue) {
+            int index = indexOf(key);
+            while (keys[index] != 0) {
+                if (keys[index] == key) {
+                    return values[index];
+                }
+                index = (index + 1) & mask;
+            }
+            return defaultValue;
+        }
+
+        private int indexOf(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
 }
@@ -1,7 +1,11 @@
 package com.taobao.arthas.core.command.monitor200;
 
 import com.taobao.arthas.core.advisor.Advice;
+import com.taobao.arthas.core.advisor.ArthasMethod;
 
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
 import java.time.LocalDateTime;
 
 /**
@@ -9,18 +13,110 @@ import java.time.LocalDateTime;
  */
 class TimeFragment {
 
+    /**
+     * 时间碎片持有入参、返回值、异常和 target 的引用类型，soft/weak 引用的对象可能会被 GC 回收，
+     * 类、方法等元信息总是强引用
+     */
+    enum ReferenceType {
+        STRONG, SOFT, WEAK;
+
+        static ReferenceType of(String name) {
+            for (ReferenceType type : values()) {
+                if (type.name().equalsIgnoreCase(name)) {
+                    return type;
+                }
+            }
+            return STRONG;
+        }
+    }
+
     public TimeFragment(Advice advice, LocalDateTime gmtCreate, double cost) {
-        this.advice = advice;
+        this(advice, gmtCreate, cost, ReferenceType.STRONG);
+    }
+
+    public TimeFragment(Advice advice, LocalDateTime gmtCreate, double cost, ReferenceType referenceType) {
+        if (referenceType == ReferenceType.STRONG) {
+            this.advice = advice;
+            this.captured = null;
+        } else {
+            // Advice 只被这条记录持有，不能直接引用它，否则下一次 GC 整条记录就没了
+            this.advice = null;
+            this.captured = new CapturedObjects(advice, referenceType);
+        }
+        this.className = advice.getClazz().getName();
+        this.methodName = advice.getMethod().getName();
+        this.isReturn = advice.isAfterReturning();
+        this.isThrow = advice.isAfterThrowing();
         this.gmtCreate = gmtCreate;
         this.cost = cost;
     }
 
+    /**
+     * off-heap 的记录，只保留元信息，快照保存在 {@link TimeFragmentSpillFile} 里
+     */
+    public TimeFragment(TimeFragmentSnapshot snapshot, LocalDateTime gmtCreate) {
+        this.advice = null;
+        this.captured = null;
+        this.className = snapshot.getClassName();
+        this.methodName = snapshot.getMethodName();
+        this.isReturn = snapshot.isAfterReturning();
+        this.isThrow = snapshot.isAfterThrowing();
+        this.gmtCreate = gmtCreate;
+        this.cost = snapshot.getCost();
+        this.spilled = true;
+        this.object = snapshot.getObject();
+    }
+
     private final Advice advice;
+    private final CapturedObjects captured;
+    private final String className;
+    private final String methodName;
+    private final boolean isReturn;
+    private final boolean isThrow;
     private final LocalDateTime gmtCreate;
     private final double cost;
+    // 估算的内存占用，在放入 TimeFragmentStore 前计算
+    private long estimatedSize;
+    // 是否是 off-heap 的记录，以及在 spill 文件里的位置
+    private boolean spilled;
+    private long spillOffset = -1;
+    private String object;
 
+    /**
+     * @return off-heap 的记录返回 null ；soft/weak 引用的记录返回新的 Advice ，已经被回收的对象是 null
+     */
     public Advice getAdvice() {
-        return advice;
+        return captured == null ? advice : captured.toAdvice();
+    }
+
+    /**
+     * @return soft/weak 引用的入参、返回值、异常或者 target 是否有被回收的
+     */
+    public boolean isCollected() {
+        return captured != null && captured.isCollected();
+    }
+
+    /**
+     * @return soft/weak 引用的 target 是否已经被回收
+     */
+    public boolean isTargetCollected() {
+        return captured != null && captured.target != null && captured.target.get() == null;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public boolean isReturn() {
+        return isReturn;
+    }
+
+    public boolean isThrow() {
+        return isThrow;
     }
 
     public LocalDateTime getGmtCreate() {
@@ -30,4 +126,114 @@ class TimeFragment {
     public double getCost() {
         return cost;
     }
+
+    public long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    public void setEstimatedSize(long estimatedSize) {
+        this.estimatedSize = estimatedSize;
+    }
+
+    public boolean isSpilled() {
+        return spilled;
+    }
+
+    /**
+     * @return off-heap 记录的 target 地址，list 时不需要读取快照
+     */
+    String getObject() {
+        return object;
+    }
+
+    long getSpillOffset() {
+        return spillOffset;
+    }
+
+    void setSpillOffset(long spillOffset) {
+        this.spillOffset = spillOffset;
+    }
+
+    /**
+     * soft/weak 模式下记录的 Advice 外壳：类、方法等元信息强引用，捕获的对象用 soft/weak 引用
+     */
+    private static class CapturedObjects {
+        private final ClassLoader loader;
+        private final Class<?> clazz;
+        private final ArthasMethod method;
+        private final boolean isReturn;
+        private final boolean isThrow;
+        // 原来是 null 的对象不创建引用
+        private final Reference<Object> target;
+        private final Reference<Object>[] params;
+        private final Reference<Object> returnObj;
+        private final Reference<Throwable> throwExp;
+
+        @SuppressWarnings("unchecked")
+        CapturedObjects(Advice advice, ReferenceType referenceType) {
+            this.loader = advice.getLoader();
+            this.clazz = advice.getClazz();
+            this.method = advice.getMethod();
+            this.isReturn = advice.isAfterReturning();
+            this.isThrow = advice.isAfterThrowing();
+            this.target = reference(advice.getTarget(), referenceType);
+            Object[] adviceParams = advice.getParams();
+            if (adviceParams == null) {
+                this.params = null;
+            } else {
+                this.params = new Reference[adviceParams.length];
+                for (int i = 0; i < adviceParams.length; i++) {
+                    this.params[i] = reference(adviceParams[i], referenceType);
+                }
+            }
+            this.returnObj = reference(advice.getReturnObj(), referenceType);
+            this.throwExp = reference(advice.getThrowExp(), referenceType);
+        }
+
+        private static <T> Reference<T> reference(T object, ReferenceType referenceType) {
+            if (object == null) {
+                return null;
+            }
+            return referenceType == ReferenceType.SOFT ? new SoftReference<T>(object) : new WeakReference<T>(object);
+        }
+
+        private static <T> T get(Reference<T> reference) {
+            return reference == null ? null : reference.get();
+        }
+
+        private static boolean isCleared(Reference<?> reference) {
+            return reference != null && reference.get() == null;
+        }
+
+        boolean isCollected() {
+            if (isCleared(target) || isCleared(returnObj) || isCleared(throwExp)) {
+                return true;
+            }
+            if (params != null) {
+                for (Reference<Object> param : params) {
+                    if (isCleared(param)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        Advice toAdvice() {
+            Object[] adviceParams = null;
+            if (params != null) {
+                adviceParams = new Object[params.length];
+                for (int i = 0; i < params.length; i++) {
+                    adviceParams[i] = get(params[i]);
+                }
+            }
+            if (isThrow) {
+                return Advice.newForAfterThrowing(loader, clazz, method, get(target), adviceParams, get(throwExp));
+            }
+            if (isReturn) {
+                return Advice.newForAfterReturning(loader, clazz, method, get(target), adviceParams, get(returnObj));
+            }
+            return Advice.newForBefore(loader, clazz, method, get(target), adviceParams);
+        }
+    }
 }
@@ -0,0 +1,143 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <pre>
+ * tt --off-heap 记录下来的调用快照，入参/返回值/异常在记录时就按 -x 展开成字符串，不再持有原对象。
+ * 快照序列化后保存在 {@link TimeFragmentSpillFile} 里，读取时再反序列化出来。
+ *
+ * tt -s/-w 的表达式对快照求值时，可以使用和 Advice 类似的属性：
+ * params, returnObj, throwExp, className, methodName, isAfterReturning, isAfterThrowing, cost
+ * </pre>
+ */
+public class TimeFragmentSnapshot {
+    private final String className;
+    private final String methodName;
+    private final String object;
+    private final String[] params;
+    private final String returnObj;
+    private final String throwExp;
+    private final boolean isAfterReturning;
+    private final boolean isAfterThrowing;
+    private final double cost;
+
+    public TimeFragmentSnapshot(String className, String methodName, String object, String[] params,
+                                String returnObj, String throwExp, boolean isAfterReturning,
+                                boolean isAfterThrowing, double cost) {
+        this.className = className;
+        this.methodName = methodName;
+        this.object = object;
+        this.params = params;
+        this.returnObj = returnObj;
+        this.throwExp = throwExp;
+        this.isAfterReturning = isAfterReturning;
+        this.isAfterThrowing = isAfterThrowing;
+        this.cost = cost;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public String getObject() {
+        return object;
+    }
+
+    public String[] getParams() {
+        return params;
+    }
+
+    public String getReturnObj() {
+        return returnObj;
+    }
+
+    public String getThrowExp() {
+        return throwExp;
+    }
+
+    public boolean isAfterReturning() {
+        return isAfterReturning;
+    }
+
+    public boolean isAfterThrowing() {
+        return isAfterThrowing;
+    }
+
+    public double getCost() {
+        return cost;
+    }
+
+    byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeString(out, className);
+        writeString(out, methodName);
+        writeString(out, object);
+        out.writeInt(params == null ? -1 : params.length);
+        if (params != null) {
+            for (String param : params) {
+                writeString(out, param);
+            }
+        }
+        writeString(out, returnObj);
+        writeString(out, throwExp);
+        out.writeBoolean(isAfterReturning);
+        out.writeBoolean(isAfterThrowing);
+        out.writeDouble(cost);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static TimeFragmentSnapshot fromBytes(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        String className = readString(in);
+        String methodName = readString(in);
+        String object = readString(in);
+        int paramCount = in.readInt();
+        String[] params = null;
+        if (paramCount >= 0) {
+            params = new String[paramCount];
+            for (int i = 0; i < paramCount; ++i) {
+                params[i] = readString(in);
+            }
+        }
+        String returnObj = readString(in);
+        String throwExp = readString(in);
+        boolean isAfterReturning = in.readBoolean();
+        boolean isAfterThrowing = in.readBoolean();
+        double cost = in.readDouble();
+        return new TimeFragmentSnapshot(className, methodName, object, params, returnObj, throwExp,
+                isAfterReturning, isAfterThrowing, cost);
+    }
+
+    // writeUTF 最长只支持 64K ，这里用 int 保存长度，-1 表示 null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
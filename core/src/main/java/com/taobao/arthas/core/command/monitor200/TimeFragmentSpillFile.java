@@ -0,0 +1,177 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * <pre>
+ * 保存 tt 快照的环形文件，通过 mmap 读写，不占用堆内存。
+ *
+ * 每条记录的格式是： int 记录总长度 | int index | 快照数据
+ * 写到文件末尾放不下时从头开始写，被覆盖的旧记录通过 write 的 evicted 参数通知调用者删除。
+ * 读取时校验记录头里的 index ，已经被覆盖的记录返回 null 。
+ *
+ * 非线程安全，由 {@link TimeFragmentStore} 加锁访问。
+ * </pre>
+ */
+class TimeFragmentSpillFile {
+    private static final int HEADER_LENGTH = 8;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private int position = 0;
+
+    // 按写入顺序保存的存活记录，队头是最旧的记录
+    private final ArrayDeque<Record> records = new ArrayDeque<Record>();
+
+    TimeFragmentSpillFile(File file, int capacity) throws IOException {
+        this.file = file;
+        this.capacity = capacity;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            this.randomAccessFile.setLength(capacity);
+            this.buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return 写入的位置，数据太大放不下时返回 -1
+     */
+    long write(int index, byte[] data, List<Integer> evicted) {
+        int length = HEADER_LENGTH + data.length;
+        if (length > capacity) {
+            return -1;
+        }
+        if (position + length > capacity) {
+            // 文件末尾剩下的空间放不下，末尾的记录都是最旧的，一起淘汰后从头开始写
+            while (!records.isEmpty() && records.peekFirst().offset >= position) {
+                evicted.add(records.pollFirst().index);
+            }
+            position = 0;
+        }
+        int end = position + length;
+        while (!records.isEmpty()) {
+            Record eldest = records.peekFirst();
+            if (eldest.offset < end && eldest.offset + eldest.length > position) {
+                evicted.add(records.pollFirst().index);
+            } else {
+                break;
+            }
+        }
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.putInt(length);
+        view.putInt(index);
+        view.put(data);
+
+        Record record = new Record(index, position, length);
+        records.addLast(record);
+        position = end;
+        return record.offset;
+    }
+
+    /**
+     * @return 快照数据，记录已经被覆盖时返回 null
+     */
+    byte[] read(int index, long offset) {
+        if (offset < 0 || offset + HEADER_LENGTH > capacity) {
+            return null;
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) offset);
+        int length = view.getInt();
+        int recordIndex = view.getInt();
+        if (recordIndex != index || length < HEADER_LENGTH || offset + length > capacity) {
+            return null;
+        }
+        byte[] data = new byte[length - HEADER_LENGTH];
+        view.get(data);
+        return data;
+    }
+
+    /**
+     * 删除单条记录只是不再引用它，空间等到环形覆盖时回收
+     */
+    void remove(int index) {
+        for (Record record : records) {
+            if (record.index == index) {
+                records.remove(record);
+                break;
+            }
+        }
+    }
+
+    /**
+     * 关闭并删除文件。调用之后不能再访问这个对象
+     */
+    void close() {
+        records.clear();
+        try {
+            randomAccessFile.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        // mmap 的内存要等 buffer 被 GC 才释放，在 windows 上映射没有释放时文件也删除不掉，这里主动释放
+        unmap(buffer);
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                // java 9+
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                // java 8
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (Throwable e) {
+            // ignore, 等 GC 释放
+        }
+    }
+
+    private static class Record {
+        final int index;
+        final int offset;
+        final int length;
+
+        Record(int index, int offset, int length) {
+            this.index = index;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
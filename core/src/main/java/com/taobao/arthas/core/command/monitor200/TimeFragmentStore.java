@@ -0,0 +1,269 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import com.taobao.arthas.core.util.matcher.Matcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <pre>
+ * tt 命令的记录存储，有容量和估算内存两个上限，超过时按 FIFO 或者 LRU 淘汰最旧的记录。
+ * 同时按 className/methodName 建立索引，tt -s 指定了类名/方法名时只需要检查匹配的记录。
+ * tt --off-heap 的记录只在堆上保留元信息，快照保存在 {@link TimeFragmentSpillFile} 里，
+ * spill 文件写满后覆盖最旧的快照，对应的记录同时被删除。
+ * off-heap 的记录单独计数，由 spillCapacity 限制，不受堆上记录的 capacity 限制。
+ * clear/close 会关闭并删除 spill 文件，下一次 off-heap 记录时重新创建。
+ *
+ * 所有方法都加锁，记录的写入来自业务线程，读取来自 tt 命令的执行线程。
+ * </pre>
+ */
+class TimeFragmentStore {
+    // 时间碎片序列生成器
+    private final AtomicInteger sequence = new AtomicInteger(1000);
+
+    private LinkedHashMap<Integer, TimeFragment> fragments = new LinkedHashMap<Integer, TimeFragment>();
+    private LinkedHashMap<Integer, TimeFragment> spilledFragments = new LinkedHashMap<Integer, TimeFragment>();
+    // className -> methodName -> index -> TimeFragment
+    private final Map<String, Map<String, TreeMap<Integer, TimeFragment>>> classIndex = new HashMap<String, Map<String, TreeMap<Integer, TimeFragment>>>();
+
+    private int capacity = Integer.MAX_VALUE;
+    private int spillCapacity = Integer.MAX_VALUE;
+    private long maxBytes = 0;
+    private boolean lru = false;
+
+    private long totalBytes = 0;
+    private long evictedCount = 0;
+
+    private TimeFragmentSpillFile spillFile;
+
+    /**
+     * @param capacity 最多保存的记录数，小于等于0表示不限制
+     * @param maxBytes 估算内存的上限，小于等于0表示不限制
+     * @param lru      true 表示按最近访问的顺序淘汰，false 表示按写入顺序淘汰
+     */
+    synchronized void configure(int capacity, long maxBytes, boolean lru) {
+        this.capacity = capacity > 0 ? capacity : Integer.MAX_VALUE;
+        this.maxBytes = maxBytes;
+        if (this.lru != lru) {
+            this.lru = lru;
+            fragments = reorder(fragments, lru);
+            spilledFragments = reorder(spilledFragments, lru);
+        }
+        evictIfNecessary();
+    }
+
+    /**
+     * @param spillCapacity 最多保存的 off-heap 记录数，小于等于0表示只受 spill 文件大小限制
+     */
+    synchronized void configureSpill(int spillCapacity) {
+        this.spillCapacity = spillCapacity > 0 ? spillCapacity : Integer.MAX_VALUE;
+        evictIfNecessary();
+    }
+
+    private static LinkedHashMap<Integer, TimeFragment> reorder(LinkedHashMap<Integer, TimeFragment> map, boolean lru) {
+        LinkedHashMap<Integer, TimeFragment> newMap = new LinkedHashMap<Integer, TimeFragment>(
+                Math.max(16, map.size() * 2), 0.75f, lru);
+        newMap.putAll(map);
+        return newMap;
+    }
+
+    synchronized int put(TimeFragment tf) {
+        int index = sequence.getAndIncrement();
+        fragments.put(index, tf);
+        link(index, tf);
+        evictIfNecessary();
+        return index;
+    }
+
+    synchronized boolean hasSpillFile() {
+        return spillFile != null;
+    }
+
+    /**
+     * spill 文件在第一次使用时创建，clear 之后才会按新的大小重新创建
+     */
+    synchronized void openSpillFile(File file, int capacity) throws IOException {
+        if (spillFile == null) {
+            spillFile = new TimeFragmentSpillFile(file, capacity);
+        }
+    }
+
+    /**
+     * 保存 off-heap 的记录，需要先调用 {@link #openSpillFile(File, int)}
+     *
+     * @return index ，快照比整个 spill 文件还大时返回 -1
+     */
+    synchronized int putSpilled(TimeFragment tf, byte[] snapshot) {
+        int index = sequence.getAndIncrement();
+        List<Integer> overwritten = new ArrayList<Integer>();
+        long offset = spillFile.write(index, snapshot, overwritten);
+        if (offset < 0) {
+            return -1;
+        }
+        for (Integer overwrittenIndex : overwritten) {
+            TimeFragment old = spilledFragments.remove(overwrittenIndex);
+            if (old != null) {
+                unlink(overwrittenIndex, old);
+                evictedCount++;
+            }
+        }
+        tf.setSpillOffset(offset);
+        spilledFragments.put(index, tf);
+        link(index, tf);
+        evictIfNecessary();
+        return index;
+    }
+
+    /**
+     * @return off-heap 记录的快照数据，已经被覆盖时返回 null
+     */
+    synchronized byte[] readSpilled(int index, TimeFragment tf) {
+        if (spillFile == null || !tf.isSpilled()) {
+            return null;
+        }
+        return spillFile.read(index, tf.getSpillOffset());
+    }
+
+    synchronized TimeFragment get(int index) {
+        TimeFragment tf = fragments.get(index);
+        return tf != null ? tf : spilledFragments.get(index);
+    }
+
+    synchronized boolean remove(int index) {
+        TimeFragment tf = fragments.remove(index);
+        if (tf == null) {
+            tf = spilledFragments.remove(index);
+        }
+        if (tf == null) {
+            return false;
+        }
+        unlink(index, tf);
+        if (tf.isSpilled()) {
+            spillFile.remove(index);
+        }
+        return true;
+    }
+
+    /**
+     * 删除所有记录，并且关闭、删除 spill 文件
+     */
+    synchronized int clear() {
+        int count = size();
+        fragments.clear();
+        spilledFragments.clear();
+        classIndex.clear();
+        totalBytes = 0;
+        if (spillFile != null) {
+            spillFile.close();
+            spillFile = null;
+        }
+        return count;
+    }
+
+    /**
+     * @return 按编号排序的所有记录
+     */
+    synchronized Map<Integer, TimeFragment> list() {
+        TreeMap<Integer, TimeFragment> result = new TreeMap<Integer, TimeFragment>(fragments);
+        result.putAll(spilledFragments);
+        return result;
+    }
+
+    /**
+     * 按索引查找类名/方法名匹配的记录，matcher 为 null 表示不过滤
+     *
+     * @return 按编号排序的记录
+     */
+    synchronized Map<Integer, TimeFragment> find(Matcher<String> classNameMatcher, Matcher<String> methodNameMatcher) {
+        if (classNameMatcher == null && methodNameMatcher == null) {
+            return list();
+        }
+        TreeMap<Integer, TimeFragment> result = new TreeMap<Integer, TimeFragment>();
+        for (Map.Entry<String, Map<String, TreeMap<Integer, TimeFragment>>> classEntry : classIndex.entrySet()) {
+            if (classNameMatcher != null && !classNameMatcher.matching(classEntry.getKey())) {
+                continue;
+            }
+            for (Map.Entry<String, TreeMap<Integer, TimeFragment>> methodEntry : classEntry.getValue().entrySet()) {
+                if (methodNameMatcher != null && !methodNameMatcher.matching(methodEntry.getKey())) {
+                    continue;
+                }
+                // 直接从索引里取，不改变 LRU 顺序
+                result.putAll(methodEntry.getValue());
+            }
+        }
+        return result;
+    }
+
+    synchronized int size() {
+        return fragments.size() + spilledFragments.size();
+    }
+
+    synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    synchronized long getEvictedCount() {
+        return evictedCount;
+    }
+
+    private void evictIfNecessary() {
+        // 至少保留最新的一条记录
+        Iterator<Map.Entry<Integer, TimeFragment>> it = fragments.entrySet().iterator();
+        while (fragments.size() > 1 && (fragments.size() > capacity || (maxBytes > 0 && totalBytes > maxBytes))) {
+            Map.Entry<Integer, TimeFragment> eldest = it.next();
+            it.remove();
+            unlink(eldest.getKey(), eldest.getValue());
+            evictedCount++;
+        }
+        it = spilledFragments.entrySet().iterator();
+        while (spilledFragments.size() > spillCapacity) {
+            Map.Entry<Integer, TimeFragment> eldest = it.next();
+            it.remove();
+            unlink(eldest.getKey(), eldest.getValue());
+            spillFile.remove(eldest.getKey());
+            evictedCount++;
+        }
+    }
+
+    private void link(int index, TimeFragment tf) {
+        totalBytes += tf.getEstimatedSize();
+
+        Map<String, TreeMap<Integer, TimeFragment>> methodIndex = classIndex.get(tf.getClassName());
+        if (methodIndex == null) {
+            methodIndex = new HashMap<String, TreeMap<Integer, TimeFragment>>();
+            classIndex.put(tf.getClassName(), methodIndex);
+        }
+        TreeMap<Integer, TimeFragment> indexes = methodIndex.get(tf.getMethodName());
+        if (indexes == null) {
+            indexes = new TreeMap<Integer, TimeFragment>();
+            methodIndex.put(tf.getMethodName(), indexes);
+        }
+        indexes.put(index, tf);
+    }
+
+    private void unlink(Integer index, TimeFragment tf) {
+        totalBytes -= tf.getEstimatedSize();
+        Map<String, TreeMap<Integer, TimeFragment>> methodIndex = classIndex.get(tf.getClassName());
+        if (methodIndex == null) {
+            return;
+        }
+        TreeMap<Integer, TimeFragment> indexes = methodIndex.get(tf.getMethodName());
+        if (indexes != null) {
+            indexes.remove(index);
+            if (indexes.isEmpty()) {
+                methodIndex.remove(tf.getMethodName());
+            }
+        }
+        if (methodIndex.isEmpty()) {
+            classIndex.remove(tf.getClassName());
+        }
+    }
+}
@@ -12,6 +12,7 @@ import com.taobao.arthas.core.shell.command.CommandProcess;
 import com.taobao.arthas.core.util.LogUtil;
 import com.taobao.arthas.core.util.ThreadLocalWatch;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.Collections;
 
@@ -68,7 +69,6 @@ public class TimeTunnelAdviceListener extends AdviceListenerAdapter {
 
     private void afterFinishing(Advice advice) {
         double cost = threadLocalWatch.costInMillis();
-        TimeFragment timeTunnel = new TimeFragment(advice, LocalDateTime.now(), cost);
 
         boolean match = false;
         try {
@@ -86,7 +86,29 @@ public class TimeTunnelAdviceListener extends AdviceListenerAdapter {
             return;
         }
 
-        int index = command.putTimeTunnel(timeTunnel);
+        TimeFragment timeTunnel;
+        int index;
+        if (command.isOffHeap()) {
+            TimeFragmentSnapshot snapshot = TimeTunnelCommand.createSnapshot(advice, cost, command.getExpand(),
+                    command.getSizeLimit());
+            timeTunnel = new TimeFragment(snapshot, LocalDateTime.now());
+            try {
+                index = command.putTimeTunnelSnapshot(timeTunnel, snapshot);
+            } catch (IOException e) {
+                logger.warn("tt failed.", e);
+                process.end(-1, "tt failed, can not write off-heap snapshot, " + e.getMessage()
+                              + ", visit " + LogUtil.loggingFile() + " for more details.");
+                return;
+            }
+            if (index < 0) {
+                process.write("Snapshot of " + advice.getClazz().getName() + "." + advice.getMethod().getName()
+                        + " is larger than the off-heap file, skipped.\n");
+                return;
+            }
+        } else {
+            timeTunnel = new TimeFragment(advice, LocalDateTime.now(), cost, command.getReferenceType());
+            index = command.putTimeTunnel(timeTunnel, advice);
+        }
 
         TimeFragmentVO timeFragmentVO = TimeTunnelCommand.createTimeFragmentVO(index, timeTunnel, command.getExpand());
         TimeTunnelModel timeTunnelModel = new TimeTunnelModel()
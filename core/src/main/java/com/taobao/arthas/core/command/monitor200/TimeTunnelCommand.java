@@ -2,6 +2,7 @@ package com.taobao.arthas.core.command.monitor200;
 
 import com.alibaba.arthas.deps.org.slf4j.Logger;
 import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
+import com.taobao.arthas.common.PidUtils;
 import com.taobao.arthas.core.GlobalOptions;
 import com.taobao.arthas.core.advisor.Advice;
 import com.taobao.arthas.core.advisor.AdviceListener;
@@ -10,22 +11,28 @@ import com.taobao.arthas.core.command.Constants;
 import com.taobao.arthas.core.command.express.ExpressException;
 import com.taobao.arthas.core.command.express.ExpressFactory;
 import com.taobao.arthas.core.command.model.*;
+import com.taobao.arthas.core.server.ArthasBootstrap;
 import com.taobao.arthas.core.shell.command.CommandProcess;
 import com.taobao.arthas.core.shell.handlers.command.CommandInterruptHandler;
 import com.taobao.arthas.core.shell.handlers.shell.QExitHandler;
 import com.taobao.arthas.core.util.LogUtil;
+import com.taobao.arthas.core.util.ObjectSizeEstimator;
 import com.taobao.arthas.core.util.SearchUtils;
 import com.taobao.arthas.core.util.StringUtils;
 import com.taobao.arthas.core.util.affect.RowAffect;
 import com.taobao.arthas.core.util.matcher.Matcher;
+import com.taobao.arthas.core.view.ObjectView;
 import com.taobao.middleware.cli.annotations.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.Integer.toHexString;
 import static java.lang.String.format;
@@ -41,20 +48,26 @@ import static java.lang.String.format;
 @Description(Constants.EXPRESS_DESCRIPTION + Constants.EXAMPLE +
         "  tt -t *StringUtils isEmpty\n" +
         "  tt -t *StringUtils isEmpty params[0].length==1\n" +
+        "  tt -t --off-heap *StringUtils isEmpty\n" +
         "  tt -l\n" +
         "  tt -i 1000\n" +
         "  tt -i 1000 -w params[0]\n" +
         "  tt -i 1000 -p \n" +
         "  tt -i 1000 -p --replay-times 3 --replay-interval 3000\n" +
         "  tt -s '{params[0] > 1}' -w '{params}' \n" +
+        "  tt -s '{params[0] > 1}' *StringUtils isEmpty\n" +
         "  tt --delete-all\n" +
         Constants.WIKI + Constants.WIKI_HOME + "tt")
 public class TimeTunnelCommand extends EnhancerCommand {
-    // 时间隧道(时间碎片的集合)
-    // TODO 并非线程安全？
-    private static final Map<Integer, TimeFragment> timeFragmentMap = new LinkedHashMap<Integer, TimeFragment>();
-    // 时间碎片序列生成器
-    private static final AtomicInteger sequence = new AtomicInteger(1000);
+    // 时间隧道(时间碎片的集合)，容量和内存上限由 tt-capacity/tt-max-bytes 等全局选项控制
+    private static final TimeFragmentStore timeFragmentStore = new TimeFragmentStore();
+    // 估算每条记录的入参/返回值/异常占用的内存
+    private static volatile ObjectSizeEstimator sizeEstimator;
+    // 已经应用到 timeFragmentStore 的全局选项，选项修改后在下一次记录时重新应用
+    private static volatile int appliedCapacity = -1;
+    private static volatile long appliedMaxBytes = -1;
+    private static volatile boolean appliedLru = false;
+    private static volatile int appliedOffHeapCapacity = -1;
     // TimeTunnel the method call
     private boolean isTimeTunnel = false;
     private String classPattern;
@@ -80,7 +93,13 @@ public class TimeTunnelCommand extends EnhancerCommand {
     private int numberOfLimit = 100;
     private int replayTimes = 1;
     private long replayInterval = 1000L;
+    // 记录 off-heap 的快照，不持有对象
+    private boolean isOffHeap = false;
     private static final Logger logger = LoggerFactory.getLogger(TimeTunnelCommand.class);
+    // 估算内存时的最大遍历深度和对象个数，避免在业务线程里遍历太大的对象图
+    private static final int ESTIMATE_MAX_DEPTH = 8;
+    private static final int ESTIMATE_MAX_OBJECTS = 1024;
+    private static final long MIN_SPILL_FILE_BYTES = 1024 * 1024;
 
     @Argument(index = 0, argName = "class-pattern", required = false)
     @Description("Path and classname of Pattern Matching")
@@ -106,6 +125,13 @@ public class TimeTunnelCommand extends EnhancerCommand {
         isTimeTunnel = timeTunnel;
     }
 
+    @Option(longName = "off-heap", flag = true)
+    @Description("Record snapshots of params/return object/exception into an off-heap file instead of holding the objects, " +
+            "the snapshots are expanded by -x when recording and can not be replayed")
+    public void setOffHeap(boolean offHeap) {
+        isOffHeap = offHeap;
+    }
+
     @Option(shortName = "l", longName = "list", flag = true)
     @Description("List all the time fragments")
     public void setList(boolean list) {
@@ -219,6 +245,14 @@ public class TimeTunnelCommand extends EnhancerCommand {
         return expand;
     }
 
+    public Integer getSizeLimit() {
+        return sizeLimit;
+    }
+
+    public boolean isOffHeap() {
+        return isOffHeap;
+    }
+
     private boolean hasWatchExpress() {
         return !StringUtils.isEmpty(watchExpress);
     }
@@ -256,10 +290,78 @@ public class TimeTunnelCommand extends EnhancerCommand {
     /*
      * 记录时间片段
      */
-    int putTimeTunnel(TimeFragment tt) {
-        int indexOfSeq = sequence.getAndIncrement();
-        timeFragmentMap.put(indexOfSeq, tt);
-        return indexOfSeq;
+    int putTimeTunnel(TimeFragment tt, Advice advice) {
+        if (GlobalOptions.ttMaxBytes > 0) {
+            tt.setEstimatedSize(getSizeEstimator().estimate(advice.getParams(), advice.getReturnObj(),
+                    advice.getThrowExp()));
+        }
+        applyOptions();
+        return timeFragmentStore.put(tt);
+    }
+
+    /*
+     * 记录 off-heap 的时间片段
+     */
+    int putTimeTunnelSnapshot(TimeFragment tt, TimeFragmentSnapshot snapshot) throws IOException {
+        byte[] data = snapshot.toBytes();
+        if (!timeFragmentStore.hasSpillFile()) {
+            timeFragmentStore.openSpillFile(spillFile(), (int) Math.min(Integer.MAX_VALUE,
+                    Math.max(GlobalOptions.ttOffHeapBytes, MIN_SPILL_FILE_BYTES)));
+        }
+        applyOptions();
+        return timeFragmentStore.putSpilled(tt, data);
+    }
+
+    /**
+     * tt-capacity/tt-max-bytes/tt-eviction/tt-off-heap-capacity 修改之后才重新配置 timeFragmentStore
+     */
+    private static void applyOptions() {
+        int capacity = GlobalOptions.ttCapacity;
+        long maxBytes = GlobalOptions.ttMaxBytes;
+        boolean lru = "lru".equalsIgnoreCase(GlobalOptions.ttEviction);
+        if (capacity != appliedCapacity || maxBytes != appliedMaxBytes || lru != appliedLru) {
+            timeFragmentStore.configure(capacity, maxBytes, lru);
+            appliedCapacity = capacity;
+            appliedMaxBytes = maxBytes;
+            appliedLru = lru;
+        }
+        int offHeapCapacity = GlobalOptions.ttOffHeapCapacity;
+        if (offHeapCapacity != appliedOffHeapCapacity) {
+            timeFragmentStore.configureSpill(offHeapCapacity);
+            appliedOffHeapCapacity = offHeapCapacity;
+        }
+    }
+
+    /**
+     * arthas 退出时删除所有记录和 spill 文件
+     */
+    public static void destroy() {
+        timeFragmentStore.clear();
+    }
+
+    private static File spillFile() throws IOException {
+        ArthasBootstrap bootstrap = ArthasBootstrap.getInstance();
+        File file;
+        if (bootstrap != null && bootstrap.getOutputPath() != null) {
+            file = new File(bootstrap.getOutputPath(), "tt-off-heap-" + PidUtils.currentPid() + ".data");
+        } else {
+            file = File.createTempFile("arthas-tt-off-heap", ".data");
+        }
+        file.deleteOnExit();
+        return file;
+    }
+
+    TimeFragment.ReferenceType getReferenceType() {
+        return TimeFragment.ReferenceType.of(GlobalOptions.ttReference);
+    }
+
+    private static ObjectSizeEstimator getSizeEstimator() {
+        if (sizeEstimator == null) {
+            ArthasBootstrap bootstrap = ArthasBootstrap.getInstance();
+            sizeEstimator = new ObjectSizeEstimator(bootstrap == null ? null : bootstrap.getInstrumentation(),
+                    ESTIMATE_MAX_DEPTH, ESTIMATE_MAX_OBJECTS);
+        }
+        return sizeEstimator;
     }
 
     @Override
@@ -326,13 +428,23 @@ public class TimeTunnelCommand extends EnhancerCommand {
     private void processShow(CommandProcess process) {
         RowAffect affect = new RowAffect();
         try {
-            TimeFragment tf = timeFragmentMap.get(index);
+            TimeFragment tf = timeFragmentStore.get(index);
             if (null == tf) {
                 process.end(1, format("Time fragment[%d] does not exist.", index));
                 return;
             }
 
-            TimeFragmentVO timeFragmentVO = createTimeFragmentVO(index, tf, expand);
+            TimeFragmentVO timeFragmentVO;
+            if (tf.isSpilled()) {
+                TimeFragmentSnapshot snapshot = readSnapshot(index, tf);
+                if (null == snapshot) {
+                    process.end(1, format("Time fragment[%d] has been overwritten.", index));
+                    return;
+                }
+                timeFragmentVO = createTimeFragmentVO(index, tf, snapshot);
+            } else {
+                timeFragmentVO = createTimeFragmentVO(index, tf, expand);
+            }
             TimeTunnelModel timeTunnelModel = new TimeTunnelModel()
                     .setTimeFragment(timeFragmentVO)
                     .setExpand(expand)
@@ -351,15 +463,25 @@ public class TimeTunnelCommand extends EnhancerCommand {
     private void processWatch(CommandProcess process) {
         RowAffect affect = new RowAffect();
         try {
-            final TimeFragment tf = timeFragmentMap.get(index);
+            final TimeFragment tf = timeFragmentStore.get(index);
             if (null == tf) {
                 process.end(1, format("Time fragment[%d] does not exist.", index));
                 return;
             }
 
-            Advice advice = tf.getAdvice();
-
-			Object value = ExpressFactory.unpooledExpress(advice.getLoader()).bind(advice).get(watchExpress);
+            Object value;
+            if (tf.isSpilled()) {
+                TimeFragmentSnapshot snapshot = readSnapshot(index, tf);
+                if (null == snapshot) {
+                    process.end(1, format("Time fragment[%d] has been overwritten.", index));
+                    return;
+                }
+                value = ExpressFactory.threadLocalExpress(snapshot).get(watchExpress);
+            } else {
+                // soft/weak 引用的对象被回收后是 null
+                Advice advice = tf.getAdvice();
+                value = ExpressFactory.unpooledExpress(advice.getLoader()).bind(advice).get(watchExpress);
+            }
             TimeTunnelModel timeTunnelModel = new TimeTunnelModel()
                     .setWatchValue(new ObjectVO(value, expand))
                     .setExpand(expand)
@@ -381,13 +503,20 @@ public class TimeTunnelCommand extends EnhancerCommand {
         try {
             // 匹配的时间片段
             Map<Integer, TimeFragment> matchingTimeSegmentMap = new LinkedHashMap<Integer, TimeFragment>();
-            for (Map.Entry<Integer, TimeFragment> entry : timeFragmentMap.entrySet()) {
+            // 指定了 class-pattern/method-pattern 时通过索引只检查匹配的记录
+            Map<Integer, TimeFragment> candidates = timeFragmentStore.find(
+                    StringUtils.isEmpty(classPattern) ? null : getClassNameMatcher(),
+                    StringUtils.isEmpty(methodPattern) ? null : getMethodNameMatcher());
+            for (Map.Entry<Integer, TimeFragment> entry : candidates.entrySet()) {
                 int index = entry.getKey();
                 TimeFragment tf = entry.getValue();
-                Advice advice = tf.getAdvice();
+                Object bindObject = tf.isSpilled() ? readSnapshot(index, tf) : tf.getAdvice();
+                if (null == bindObject) {
+                    continue;
+                }
 
                 // 搜索出匹配的时间片段
-                if ((ExpressFactory.threadLocalExpress(advice)).is(searchExpress)) {
+                if ((ExpressFactory.threadLocalExpress(bindObject)).is(searchExpress)) {
                     matchingTimeSegmentMap.put(index, tf);
                 }
             }
@@ -396,7 +525,12 @@ public class TimeTunnelCommand extends EnhancerCommand {
                 // 执行watchExpress
                 Map<Integer, ObjectVO> searchResults = new LinkedHashMap<Integer, ObjectVO>();
                 for (Map.Entry<Integer, TimeFragment> entry : matchingTimeSegmentMap.entrySet()) {
-                    Object value = ExpressFactory.threadLocalExpress(entry.getValue().getAdvice()).get(watchExpress);
+                    TimeFragment tf = entry.getValue();
+                    Object bindObject = tf.isSpilled() ? readSnapshot(entry.getKey(), tf) : tf.getAdvice();
+                    if (null == bindObject) {
+                        continue;
+                    }
+                    Object value = ExpressFactory.threadLocalExpress(bindObject).get(watchExpress);
                     searchResults.put(entry.getKey(), new ObjectVO(value, expand));
                 }
 
@@ -423,7 +557,7 @@ public class TimeTunnelCommand extends EnhancerCommand {
     // 删除指定记录
     private void processDelete(CommandProcess process) {
         RowAffect affect = new RowAffect();
-        if (timeFragmentMap.remove(index) != null) {
+        if (timeFragmentStore.remove(index)) {
             affect.rCnt(1);
         }
         process.appendResult(new MessageModel(format("Time fragment[%d] successfully deleted.", index)));
@@ -432,9 +566,8 @@ public class TimeTunnelCommand extends EnhancerCommand {
     }
 
     private void processDeleteAll(CommandProcess process) {
-        int count = timeFragmentMap.size();
+        int count = timeFragmentStore.clear();
         RowAffect affect = new RowAffect(count);
-        timeFragmentMap.clear();
         process.appendResult(new MessageModel("Time fragments are cleaned."));
         process.appendResult(new RowAffectModel(affect));
         process.end();
@@ -442,6 +575,7 @@ public class TimeTunnelCommand extends EnhancerCommand {
 
     private void processList(CommandProcess process) {
         RowAffect affect = new RowAffect();
+        Map<Integer, TimeFragment> timeFragmentMap = timeFragmentStore.list();
         List<TimeFragmentVO> timeFragmentList = createTimeTunnelVOList(timeFragmentMap);
         process.appendResult(new TimeTunnelModel().setTimeFragmentList(timeFragmentList).setFirst(true));
         affect.rCnt(timeFragmentMap.size());
@@ -459,7 +593,23 @@ public class TimeTunnelCommand extends EnhancerCommand {
 
     public static TimeFragmentVO createTimeFragmentVO(Integer index, TimeFragment tf, Integer expand) {
         Advice advice = tf.getAdvice();
-        String object = advice.getTarget() == null
+        if (advice == null) {
+            // off-heap 的记录，只展示元信息
+            return new TimeFragmentVO()
+                    .setIndex(index)
+                    .setTimestamp(tf.getGmtCreate())
+                    .setCost(tf.getCost())
+                    .setReturn(tf.isReturn())
+                    .setReturnObj(new ObjectVO(null, expand))
+                    .setThrow(tf.isThrow())
+                    .setThrowExp(new ObjectVO(null, expand))
+                    .setObject(tf.getObject())
+                    .setClassName(tf.getClassName())
+                    .setMethodName(tf.getMethodName());
+        }
+        String object = tf.isTargetCollected()
+                ? "COLLECTED"
+                : advice.getTarget() == null
                 ? "NULL"
                 : "0x" + toHexString(advice.getTarget().hashCode());
 
@@ -477,15 +627,93 @@ public class TimeTunnelCommand extends EnhancerCommand {
                 .setMethodName(advice.getMethod().getName());
     }
 
+    /**
+     * off-heap 记录的快照在记录时已经展开成字符串，这里不再展开
+     */
+    static TimeFragmentVO createTimeFragmentVO(Integer index, TimeFragment tf, TimeFragmentSnapshot snapshot) {
+        String[] params = snapshot.getParams();
+        ObjectVO[] paramVOs = null;
+        if (params != null) {
+            paramVOs = new ObjectVO[params.length];
+            for (int i = 0; i < params.length; ++i) {
+                paramVOs[i] = new ObjectVO(params[i], 0);
+            }
+        }
+        return new TimeFragmentVO()
+                .setIndex(index)
+                .setTimestamp(tf.getGmtCreate())
+                .setCost(snapshot.getCost())
+                .setParams(paramVOs)
+                .setReturn(snapshot.isAfterReturning())
+                .setReturnObj(new ObjectVO(snapshot.getReturnObj(), 0))
+                .setThrow(snapshot.isAfterThrowing())
+                .setThrowExp(new ObjectVO(snapshot.getThrowExp(), 0))
+                .setObject(snapshot.getObject())
+                .setClassName(snapshot.getClassName())
+                .setMethodName(snapshot.getMethodName());
+    }
+
+    /**
+     * 在业务线程里按 -x 展开入参/返回值，异常保存完整的堆栈
+     */
+    static TimeFragmentSnapshot createSnapshot(Advice advice, double cost, int expand, int sizeLimit) {
+        Object[] args = advice.getParams();
+        String[] params = null;
+        if (args != null) {
+            params = new String[args.length];
+            for (int i = 0; i < args.length; ++i) {
+                params[i] = new ObjectView(args[i], expand, sizeLimit).draw();
+            }
+        }
+        String returnObj = advice.isAfterReturning() ? new ObjectView(advice.getReturnObj(), expand, sizeLimit).draw() : null;
+        String throwExp = null;
+        if (advice.isAfterThrowing() && advice.getThrowExp() != null) {
+            StringWriter stringWriter = new StringWriter();
+            PrintWriter printWriter = new PrintWriter(stringWriter);
+            try {
+                advice.getThrowExp().printStackTrace(printWriter);
+            } finally {
+                printWriter.close();
+            }
+            throwExp = stringWriter.toString();
+        }
+        String object = advice.getTarget() == null
+                ? "NULL"
+                : "0x" + toHexString(advice.getTarget().hashCode());
+        return new TimeFragmentSnapshot(advice.getClazz().getName(), advice.getMethod().getName(), object, params,
+                returnObj, throwExp, advice.isAfterReturning(), advice.isAfterThrowing(), cost);
+    }
+
+    private static TimeFragmentSnapshot readSnapshot(int index, TimeFragment tf) {
+        byte[] data = timeFragmentStore.readSpilled(index, tf);
+        if (data == null) {
+            return null;
+        }
+        try {
+            return TimeFragmentSnapshot.fromBytes(data);
+        } catch (IOException e) {
+            logger.warn("read tt snapshot failed, index: {}", index, e);
+            return null;
+        }
+    }
+
     /**
      * 重放指定记录
      */
     private void processPlay(CommandProcess process) {
-        TimeFragment tf = timeFragmentMap.get(index);
+        TimeFragment tf = timeFragmentStore.get(index);
         if (null == tf) {
             process.end(1, format("Time fragment[%d] does not exist.", index));
             return;
         }
+        if (tf.isSpilled()) {
+            process.end(1, format("Time fragment[%d] is an off-heap snapshot and can not be replayed.", index));
+            return;
+        }
+        if (tf.isCollected()) {
+            process.end(1, format("Time fragment[%d] has been garbage collected.", index));
+            return;
+        }
         Advice advice = tf.getAdvice();
         ArthasMethod method = advice.getMethod();
         boolean accessible = advice.getMethod().isAccessible();
@@ -108,6 +108,9 @@ public class TimeTunnelTable {
             ObjectVO throwableVO = tf.getThrowExp();
             if (throwableVO.needExpand()) {
                 table.row("THROW-EXCEPTION", new ObjectView(throwableVO).draw());
+            } else if (!(throwableVO.getObject() instanceof Throwable)) {
+                // tt --off-heap 的快照里保存的是异常堆栈字符串
+                table.row("THROW-EXCEPTION", StringUtils.objectToString(throwableVO.getObject()));
             } else {
                 StringWriter stringWriter = new StringWriter();
                 PrintWriter printWriter = new PrintWriter(stringWriter);
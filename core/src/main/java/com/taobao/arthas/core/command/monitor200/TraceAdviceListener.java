@@ -22,6 +22,9 @@ public class TraceAdviceListener extends AbstractTraceAdviceListener implements
     @Override
     public void invokeBeforeTracing(ClassLoader classLoader, String tracingClassName, String tracingMethodName, String tracingMethodDesc, int tracingLineNumber)
             throws Throwable {
+        if (isSampledOut()) {
+            return;
+        }
         // normalize className later
         threadLocalTraceEntity(classLoader).tree.begin(tracingClassName, tracingMethodName, tracingLineNumber, true);
     }
@@ -29,12 +32,18 @@ public class TraceAdviceListener extends AbstractTraceAdviceListener implements
     @Override
     public void invokeAfterTracing(ClassLoader classLoader, String tracingClassName, String tracingMethodName, String tracingMethodDesc, int tracingLineNumber)
             throws Throwable {
+        if (isSampledOut()) {
+            return;
+        }
         threadLocalTraceEntity(classLoader).tree.end();
     }
 
     @Override
     public void invokeThrowTracing(ClassLoader classLoader, String tracingClassName, String tracingMethodName, String tracingMethodDesc, int tracingLineNumber)
             throws Throwable {
+        if (isSampledOut()) {
+            return;
+        }
         threadLocalTraceEntity(classLoader).tree.end(true);
     }
 
@@ -1,6 +1,8 @@
 package com.taobao.arthas.core.command.monitor200;
 
+import com.taobao.arthas.core.GlobalOptions;
 import com.taobao.arthas.core.command.model.TraceModel;
+import com.taobao.arthas.core.command.model.TraceNodePool;
 import com.taobao.arthas.core.command.model.TraceTree;
 import com.taobao.arthas.core.util.ThreadUtil;
 
@@ -14,12 +16,23 @@ public class TraceEntity {
     protected int deep;
 
     public TraceEntity(ClassLoader loader) {
-        this.tree = createTraceTree(loader);
+        this(loader, null);
+    }
+
+    public TraceEntity(ClassLoader loader, TraceNodePool pool) {
+        this.tree = createTraceTree(loader, pool);
         this.deep = 0;
     }
 
-    private TraceTree createTraceTree(ClassLoader loader) {
-        return new TraceTree(ThreadUtil.getThreadNode(loader, Thread.currentThread()));
+    private TraceTree createTraceTree(ClassLoader loader, TraceNodePool pool) {
+        return new TraceTree(ThreadUtil.getThreadNode(loader, Thread.currentThread()), pool, GlobalOptions.traceMaxNode);
+    }
+
+    /**
+     * 不输出这次 trace 的结果时，回收节点
+     */
+    public void recycle() {
+        tree.recycle();
     }
 
     public TraceModel getModel() {
@@ -7,9 +7,15 @@ import java.lang.instrument.Instrumentation;
 import java.security.CodeSource;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import com.alibaba.arthas.deps.org.slf4j.Logger;
 import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
@@ -19,23 +25,33 @@ import com.taobao.arthas.core.command.Constants;
 import com.taobao.arthas.core.command.express.Express;
 import com.taobao.arthas.core.command.express.ExpressException;
 import com.taobao.arthas.core.command.express.ExpressFactory;
+import com.taobao.arthas.core.command.model.ClassHistogramVO;
 import com.taobao.arthas.core.command.model.ClassLoaderVO;
+import com.taobao.arthas.core.command.model.HeapDiffVO;
 import com.taobao.arthas.core.command.model.ObjectVO;
+import com.taobao.arthas.core.command.model.ReferencePathVO;
 import com.taobao.arthas.core.command.model.VmToolModel;
 import com.taobao.arthas.core.shell.cli.Completion;
 import com.taobao.arthas.core.shell.cli.CompletionUtils;
 import com.taobao.arthas.core.shell.cli.OptionCompleteHandler;
 import com.taobao.arthas.core.shell.command.AnnotatedCommand;
 import com.taobao.arthas.core.shell.command.CommandProcess;
+import com.taobao.arthas.core.shell.handlers.Handler;
+import com.taobao.arthas.core.shell.handlers.command.CommandInterruptHandler;
+import com.taobao.arthas.core.shell.handlers.shell.QExitHandler;
 import com.taobao.arthas.core.util.ClassLoaderUtils;
 import com.taobao.arthas.core.util.ClassUtils;
 import com.taobao.arthas.core.util.SearchUtils;
+import com.taobao.arthas.core.util.StringUtils;
+import com.taobao.arthas.core.util.matcher.Matcher;
+import com.taobao.arthas.core.util.matcher.WildcardMatcher;
 import com.taobao.middleware.cli.annotations.DefaultValue;
 import com.taobao.middleware.cli.annotations.Description;
 import com.taobao.middleware.cli.annotations.Name;
 import com.taobao.middleware.cli.annotations.Option;
 import com.taobao.middleware.cli.annotations.Summary;
 
+import arthas.ReferenceAnalysis;
 import arthas.VmTool;
 
 /**
@@ -54,6 +70,14 @@ import arthas.VmTool;
         + "  vmtool --action getInstances --className demo.MathGame -x 2\n"
         + "  vmtool --action getInstances --className java.lang.String --limit 10\n"
         + "  vmtool --action getInstances --classLoaderClass org.springframework.boot.loader.LaunchedURLClassLoader --className org.springframework.context.ApplicationContext\n"
+        + "  vmtool --action getInstances --className javax.sql.DataSource --includeSubclasses\n"
+        + "  vmtool --action classHistogram --limit 20\n"
+        + "  vmtool --action classHistogram --classLoaderClass org.springframework.boot.loader.LaunchedURLClassLoader\n"
+        + "  vmtool --action classHistogram --className java.util.*\n"
+        + "  vmtool --action heapDiff -i 60000 -n 10\n"
+        + "  vmtool --action heapDiff --className demo.* --limit 20\n"
+        + "  vmtool --action referenceAnalysis --className demo.MathGame\n"
+        + "  vmtool --action referenceAnalysis --className java.lang.String --limit 1000 --maxObjects 100000 --timeout 5000\n"
         + "  vmtool --action forceGc\n"
         + "  vmtool --action interruptThread -t 1\n"
         + Constants.WIKI + Constants.WIKI_HOME + "vmtool")
@@ -77,6 +101,30 @@ public class VmToolCommand extends AnnotatedCommand {
      */
     private int limit;
 
+    /**
+     * default value 1000000
+     */
+    private int maxObjects;
+
+    /**
+     * default value 1000 ms
+     */
+    private long timeout;
+
+    /**
+     * default value 60000 ms
+     */
+    private long interval;
+
+    /**
+     * default value Integer.MAX_VALUE
+     */
+    private int numOfExecutions;
+
+    private volatile Timer timer;
+
+    private boolean includeSubclasses = false;
+
     private String libPath;
     private static String defaultLibPath;
     private static VmTool vmTool = null;
@@ -132,12 +180,47 @@ public class VmToolCommand extends AnnotatedCommand {
     }
 
     @Option(shortName = "l", longName = "limit")
-    @Description("Set the limit value of the getInstances action, default value is 10, set to -1 is unlimited")
+    @Description("Set the limit value of the getInstances/classHistogram/heapDiff/referenceAnalysis action, default value is 10, set to -1 is unlimited")
     @DefaultValue("10")
     public void setLimit(int limit) {
         this.limit = limit;
     }
 
+    @Option(longName = "maxObjects")
+    @Description("The max number of objects recorded by the referenceAnalysis action, default value is 1000000")
+    @DefaultValue("1000000")
+    public void setMaxObjects(int maxObjects) {
+        this.maxObjects = maxObjects;
+    }
+
+    @Option(longName = "timeout")
+    @Description("The time budget in ms of the heap walks of the referenceAnalysis action, default value is 1000. "
+            + "All application threads are paused (stop-the-world) during the heap walks, up to this budget")
+    @DefaultValue("1000")
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    @Option(shortName = "i", longName = "interval")
+    @Description("The interval (in ms) between two class histograms of the heapDiff action, default value is 60000")
+    @DefaultValue("60000")
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    @Option(shortName = "n", longName = "number-of-execution")
+    @Description("The number of diffs printed by the heapDiff action, default value is unlimited")
+    @DefaultValue("2147483647")
+    public void setNumOfExecutions(int numOfExecutions) {
+        this.numOfExecutions = numOfExecutions;
+    }
+
+    @Option(longName = "includeSubclasses", flag = true)
+    @Description("Get the instances of all the subclasses/implementations of the matched classes in one heap walk, grouped by class")
+    public void setIncludeSubclasses(boolean includeSubclasses) {
+        this.includeSubclasses = includeSubclasses;
+    }
+
     @Option(longName = "libPath")
     @Description("The specify lib path.")
     public void setLibPath(String path) {
@@ -157,7 +240,7 @@ public class VmToolCommand extends AnnotatedCommand {
     }
 
     public enum VmToolAction {
-        getInstances, forceGc, interruptThread
+        getInstances, classHistogram, heapDiff, referenceAnalysis, forceGc, interruptThread
     }
 
     @Override
@@ -170,64 +253,74 @@ public class VmToolCommand extends AnnotatedCommand {
                     process.end(-1, "The className option cannot be empty!");
                     return;
                 }
+                ClassLoader classLoader = findClassLoader(process, inst);
+                if (classLoader == null) {
+                    return;
+                }
+
+                Object instances;
+                if (includeSubclasses) {
+                    instances = subclassInstances(process, inst);
+                    if (instances == null) {
+                        return;
+                    }
+                } else {
+                    Class<?> matchedClass = findClass(process, inst);
+                    if (matchedClass == null) {
+                        return;
+                    }
+                    instances = vmToolInstance().getInstances(matchedClass, limit);
+                }
+
+                Object value = instances;
+                if (express != null) {
+                    Express unpooledExpress = ExpressFactory.unpooledExpress(classLoader);
+                    try {
+                        value = unpooledExpress.bind(new InstancesWrapper(instances)).get(express);
+                    } catch (ExpressException e) {
+                        logger.warn("ognl: failed execute express: " + express, e);
+                        process.end(-1, "Failed to execute ognl, exception message: " + e.getMessage()
+                                + ", please check $HOME/logs/arthas/arthas.log for more details. ");
+                    }
+                }
+
+                VmToolModel vmToolModel = new VmToolModel().setValue(new ObjectVO(value, expand));
+                process.appendResult(vmToolModel);
+                process.end();
+            } else if (VmToolAction.classHistogram.equals(action)) {
                 ClassLoader classLoader = null;
-                if (hashCode != null) {
-                    classLoader = ClassLoaderUtils.getClassLoader(inst, hashCode);
+                if (hashCode != null || classLoaderClass != null) {
+                    classLoader = findClassLoader(process, inst);
                     if (classLoader == null) {
-                        process.end(-1, "Can not find classloader with hashCode: " + hashCode + ".");
                         return;
                     }
-                }else if ( classLoaderClass != null) {
-                    List<ClassLoader> matchedClassLoaders = ClassLoaderUtils.getClassLoaderByClassName(inst,
-                            classLoaderClass);
-                    if (matchedClassLoaders.size() == 1) {
-                        classLoader = matchedClassLoaders.get(0);
-                        hashCode = Integer.toHexString(matchedClassLoaders.get(0).hashCode());
-                    } else if (matchedClassLoaders.size() > 1) {
-                        Collection<ClassLoaderVO> classLoaderVOList = ClassUtils
-                                .createClassLoaderVOList(matchedClassLoaders);
-
-                        VmToolModel vmToolModel = new VmToolModel().setClassLoaderClass(classLoaderClass)
-                                .setMatchedClassLoaders(classLoaderVOList);
-                        process.appendResult(vmToolModel);
-                        process.end(-1,
-                                "Found more than one classloader by class name, please specify classloader with '-c <classloader hash>'");
-                        return;
-                    } else {
-                        process.end(-1, "Can not find classloader by class name: " + classLoaderClass + ".");
+                }
+                classHistogram(process, inst, classLoader);
+                return;
+            } else if (VmToolAction.heapDiff.equals(action)) {
+                ClassLoader classLoader = null;
+                if (hashCode != null || classLoaderClass != null) {
+                    classLoader = findClassLoader(process, inst);
+                    if (classLoader == null) {
                         return;
                     }
-                }else {
-                    classLoader = ClassLoader.getSystemClassLoader();
                 }
-
-                List<Class<?>> matchedClasses = new ArrayList<Class<?>>(
-                        SearchUtils.searchClassOnly(inst, className, false, hashCode));
-                int matchedClassSize = matchedClasses.size();
-                if (matchedClassSize == 0) {
-                    process.end(-1, "Can not find class by class name: " + className + ".");
+                heapDiff(process, inst, classLoader);
+                return;
+            } else if (VmToolAction.referenceAnalysis.equals(action)) {
+                if (className == null) {
+                    process.end(-1, "The className option cannot be empty!");
                     return;
-                } else if (matchedClassSize > 1) {
-                    process.end(-1, "Found more than one class: " + matchedClasses + ", please specify classloader with '-c <classloader hash>'");
+                }
+                if (findClassLoader(process, inst) == null) {
+                    return;
+                }
+                Class<?> matchedClass = findClass(process, inst);
+                if (matchedClass == null) {
                     return;
-                } else {
-                    Object[] instances = vmToolInstance().getInstances(matchedClasses.get(0), limit);
-                    Object value = instances;
-                    if (express != null) {
-                        Express unpooledExpress = ExpressFactory.unpooledExpress(classLoader);
-                        try {
-                            value = unpooledExpress.bind(new InstancesWrapper(instances)).get(express);
-                        } catch (ExpressException e) {
-                            logger.warn("ognl: failed execute express: " + express, e);
-                            process.end(-1, "Failed to execute ognl, exception message: " + e.getMessage()
-                                    + ", please check $HOME/logs/arthas/arthas.log for more details. ");
-                        }
-                    }
-
-                    VmToolModel vmToolModel = new VmToolModel().setValue(new ObjectVO(value, expand));
-                    process.appendResult(vmToolModel);
-                    process.end();
                 }
+                referenceAnalysis(process, matchedClass);
+                return;
             } else if (VmToolAction.forceGc.equals(action)) {
                 vmToolInstance().forceGc();
                 process.write("\n");
@@ -248,6 +341,282 @@ public class VmToolCommand extends AnnotatedCommand {
         }
     }
 
+    /**
+     * 根据 -c/--classLoaderClass 参数查找 classloader ，没有指定时返回 SystemClassLoader
+     * @return 找不到或者找到多个 classloader 时结束 process 并返回 null
+     */
+    private ClassLoader findClassLoader(CommandProcess process, Instrumentation inst) {
+        if (hashCode != null) {
+            ClassLoader classLoader = ClassLoaderUtils.getClassLoader(inst, hashCode);
+            if (classLoader == null) {
+                process.end(-1, "Can not find classloader with hashCode: " + hashCode + ".");
+            }
+            return classLoader;
+        } else if (classLoaderClass != null) {
+            List<ClassLoader> matchedClassLoaders = ClassLoaderUtils.getClassLoaderByClassName(inst,
+                    classLoaderClass);
+            if (matchedClassLoaders.size() == 1) {
+                hashCode = Integer.toHexString(matchedClassLoaders.get(0).hashCode());
+                return matchedClassLoaders.get(0);
+            } else if (matchedClassLoaders.size() > 1) {
+                Collection<ClassLoaderVO> classLoaderVOList = ClassUtils
+                        .createClassLoaderVOList(matchedClassLoaders);
+
+                VmToolModel vmToolModel = new VmToolModel().setClassLoaderClass(classLoaderClass)
+                        .setMatchedClassLoaders(classLoaderVOList);
+                process.appendResult(vmToolModel);
+                process.end(-1,
+                        "Found more than one classloader by class name, please specify classloader with '-c <classloader hash>'");
+                return null;
+            } else {
+                process.end(-1, "Can not find classloader by class name: " + classLoaderClass + ".");
+                return null;
+            }
+        }
+        return ClassLoader.getSystemClassLoader();
+    }
+
+    /**
+     * 查找 className 对应的类
+     * @return 找不到或者找到多个类时结束 process 并返回 null
+     */
+    private Class<?> findClass(CommandProcess process, Instrumentation inst) {
+        List<Class<?>> matchedClasses = new ArrayList<Class<?>>(
+                SearchUtils.searchClassOnly(inst, className, false, hashCode));
+        int matchedClassSize = matchedClasses.size();
+        if (matchedClassSize == 0) {
+            process.end(-1, "Can not find class by class name: " + className + ".");
+            return null;
+        } else if (matchedClassSize > 1) {
+            process.end(-1, "Found more than one class: " + matchedClasses + ", please specify classloader with '-c <classloader hash>'");
+            return null;
+        }
+        return matchedClasses.get(0);
+    }
+
+    /**
+     * className 匹配的所有类以及它们的子类/实现类，遍历一次堆获取实例，按实际的类分组
+     * @return 类名到实例数组的 map ，没有实例的类不返回。找不到类时结束 process 并返回 null
+     */
+    private Map<String, Object[]> subclassInstances(CommandProcess process, Instrumentation inst) {
+        Set<Class<?>> matchedClasses = SearchUtils.searchClassOnly(inst, className, false, hashCode);
+        if (matchedClasses.isEmpty()) {
+            process.end(-1, "Can not find class by class name: " + className + ".");
+            return null;
+        }
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        for (Class<?> clazz : SearchUtils.searchSubClass(inst, matchedClasses)) {
+            if (!clazz.isPrimitive()) {
+                classes.add(clazz);
+            }
+        }
+        Class<?>[] classArray = classes.toArray(new Class<?>[0]);
+        Object[][] instances = vmToolInstance().getInstances(classArray, false, limit);
+
+        Map<String, Object[]> result = new LinkedHashMap<String, Object[]>();
+        for (int i = 0; i < classArray.length; i++) {
+            if (instances[i].length == 0) {
+                continue;
+            }
+            String name = StringUtils.classname(classArray[i]);
+            if (result.containsKey(name)) {
+                // 不同 classloader 加载的同名类
+                name = name + "@" + ClassUtils.classLoaderHash(classArray[i]);
+            }
+            result.put(name, instances[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 分析 limit 个实例的 retained size 和到 GC root 的路径，路径相同的实例合并输出
+     */
+    private void referenceAnalysis(CommandProcess process, Class<?> matchedClass) {
+        int instanceLimit = limit;
+        if (instanceLimit < 0) {
+            instanceLimit = (int) Math.min(vmToolInstance().countInstances(matchedClass), maxObjects);
+            if (instanceLimit == 0) {
+                instanceLimit = 1;
+            }
+        }
+        ReferenceAnalysis analysis = vmToolInstance().referenceAnalysis(matchedClass, instanceLimit, maxObjects, timeout);
+
+        Map<List<String>, ReferencePathVO> pathMap = new LinkedHashMap<List<String>, ReferencePathVO>();
+        for (int i = 0; i < analysis.size(); i++) {
+            String rootKind = ReferenceAnalysis.rootKindName(analysis.getRootKind(i));
+            Class<?>[] referrers = analysis.getReferrerClasses(i);
+            List<String> path = new ArrayList<String>(referrers.length + 2);
+            path.add(rootKind);
+            for (int j = referrers.length - 1; j >= 0; j--) {
+                String name = referrers[j] == null ? "?" : StringUtils.classname(referrers[j]);
+                path.add(analysis.isClassReferrer(i, j) ? name + ".class" : name);
+            }
+            Class<?> instanceClass = analysis.getInstanceClass(i);
+            path.add(instanceClass == null ? "?" : StringUtils.classname(instanceClass));
+
+            ReferencePathVO vo = pathMap.get(path);
+            if (vo == null) {
+                vo = new ReferencePathVO(rootKind, new ArrayList<String>(path.subList(1, path.size())));
+                pathMap.put(path, vo);
+            }
+            vo.add(analysis.getRetainedSize(i));
+        }
+        List<ReferencePathVO> referencePaths = new ArrayList<ReferencePathVO>(pathMap.values());
+        Collections.sort(referencePaths, new Comparator<ReferencePathVO>() {
+            @Override
+            public int compare(ReferencePathVO o1, ReferencePathVO o2) {
+                if (o1.getInstances() != o2.getInstances()) {
+                    return o2.getInstances() - o1.getInstances();
+                }
+                return Long.compare(o2.getRetainedSize(), o1.getRetainedSize());
+            }
+        });
+
+        process.appendResult(new VmToolModel().setReferencePaths(referencePaths).setTotalInstances(analysis.size())
+                .setTotalBytes(analysis.getTotalRetainedSize())
+                .setRetainedSizeTruncated(analysis.isRetainedSizeTruncated()).setTimeout(analysis.isTimeout()));
+        process.end();
+    }
+
+    /**
+     * 遍历一次堆统计所有类的实例个数和占用内存，按占用内存从大到小输出前 limit 个类
+     *
+     * @param classLoader 只统计这个 classloader 加载的类，为 null 时统计所有类
+     */
+    private void classHistogram(CommandProcess process, Instrumentation inst, ClassLoader classLoader) {
+        Class<?>[] classArray = histogramClasses(inst, classLoader);
+        long[][] histogram = vmToolInstance().classHistogram(classArray);
+        long[] counts = histogram[0];
+        long[] sizes = histogram[1];
+
+        List<ClassHistogramVO> result = new ArrayList<ClassHistogramVO>();
+        long totalInstances = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < classArray.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            totalInstances += counts[i];
+            totalBytes += sizes[i];
+            result.add(new ClassHistogramVO(StringUtils.classname(classArray[i]), ClassUtils.classLoaderHash(classArray[i]),
+                    counts[i], sizes[i]));
+        }
+        Collections.sort(result, new Comparator<ClassHistogramVO>() {
+            @Override
+            public int compare(ClassHistogramVO o1, ClassHistogramVO o2) {
+                return Long.compare(o2.getBytes(), o1.getBytes());
+            }
+        });
+        if (limit >= 0 && result.size() > limit) {
+            result = new ArrayList<ClassHistogramVO>(result.subList(0, limit));
+        }
+
+        process.appendResult(new VmToolModel().setClassHistogram(result).setTotalInstances(totalInstances)
+                .setTotalBytes(totalBytes));
+        process.end();
+    }
+
+    /**
+     * 每隔 interval 毫秒统计一次类直方图，第一次的结果作为基线，之后每次输出相对基线增长最多的 limit 个类
+     *
+     * @param classLoader 只统计这个 classloader 加载的类，为 null 时统计所有类
+     */
+    private void heapDiff(final CommandProcess process, final Instrumentation inst, final ClassLoader classLoader) {
+        if (interval <= 0) {
+            process.end(-1, "The interval option must be greater than 0!");
+            return;
+        }
+        final VmTool tool = vmToolInstance();
+        final HeapHistogramDiffer differ = new HeapHistogramDiffer();
+        final long startTime = System.currentTimeMillis();
+
+        timer = new Timer("Timer-for-arthas-vmtool-heapDiff-" + process.session().getSessionId(), true);
+        process.interruptHandler(new HeapDiffInterruptHandler(process, timer));
+        process.endHandler(new Handler<Void>() {
+            @Override
+            public void handle(Void event) {
+                stopTimer();
+            }
+        });
+        process.stdinHandler(new QExitHandler(process));
+
+        timer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    Class<?>[] classes = histogramClasses(inst, classLoader);
+                    long[][] histogram = tool.classHistogram(classes);
+                    List<HeapDiffVO> heapDiff = differ.update(classes, histogram[0], histogram[1], limit);
+                    long totalInstances = 0;
+                    long totalBytes = 0;
+                    for (int i = 0; i < classes.length; i++) {
+                        totalInstances += histogram[0][i];
+                        totalBytes += histogram[1][i];
+                    }
+
+                    process.appendResult(new VmToolModel()
+                            .setHeapDiff(heapDiff == null ? new ArrayList<HeapDiffVO>() : heapDiff)
+                            .setCycle(differ.getCycles()).setElapsed(System.currentTimeMillis() - startTime)
+                            .setTotalInstances(totalInstances).setTotalBytes(totalBytes));
+
+                    if (differ.getCycles() >= numOfExecutions) {
+                        stopTimer();
+                        process.end(0, "Process ends after " + numOfExecutions + " time(s).");
+                    }
+                } catch (Throwable e) {
+                    logger.error("vmtool heapDiff error", e);
+                    stopTimer();
+                    process.end(1, "vmtool error: " + e.getMessage());
+                }
+            }
+        }, 0, interval);
+    }
+
+    private synchronized void stopTimer() {
+        if (timer != null) {
+            timer.cancel();
+            timer.purge();
+            timer = null;
+        }
+    }
+
+    /**
+     * classHistogram/heapDiff 统计的类，按 classloader 和 --className 过滤
+     */
+    private Class<?>[] histogramClasses(Instrumentation inst, ClassLoader classLoader) {
+        Matcher<String> classNameMatcher = className == null ? null : new WildcardMatcher(className);
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        for (Class<?> clazz : inst.getAllLoadedClasses()) {
+            if (clazz == null || clazz.isPrimitive()) {
+                continue;
+            }
+            if (classLoader != null && clazz.getClassLoader() != classLoader) {
+                continue;
+            }
+            if (classNameMatcher != null && !classNameMatcher.matching(StringUtils.classname(clazz))) {
+                continue;
+            }
+            classes.add(clazz);
+        }
+        return classes.toArray(new Class<?>[0]);
+    }
+
+    private static class HeapDiffInterruptHandler extends CommandInterruptHandler {
+
+        private volatile Timer timer;
+
+        public HeapDiffInterruptHandler(CommandProcess process, Timer timer) {
+            super(process);
+            this.timer = timer;
+        }
+
+        @Override
+        public void handle(Void event) {
+            timer.cancel();
+            super.handle(event);
+        }
+    }
+
     static class InstancesWrapper {
         Object instances;
 
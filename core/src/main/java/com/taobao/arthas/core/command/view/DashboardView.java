@@ -63,7 +63,7 @@ public class DashboardView extends ResultView<DashboardModel> {
         memoryInfoHeight = Math.min(memoryInfoHeight, maxMemoryInfoHeight);
         threadTopHeight = totalHeight - memoryInfoHeight - runtimeInfoHeight;
 
-        String threadInfo = ViewRenderUtil.drawThreadInfo(result.getThreads(), width, threadTopHeight);
+        String threadInfo = ViewRenderUtil.drawThreadInfo(result.getThreads(), result.getThreadCpuHistory(), width, threadTopHeight);
         String memoryAndGc = drawMemoryInfoAndGcInfo(result.getMemoryInfo(), result.getGcInfos(), width, memoryInfoHeight);
         String runTimeAndTomcat = drawRuntimeInfoAndTomcatInfo(runtimeInfoTable, tomcatInfoTable, width, runtimeInfoHeight);
 
@@ -145,7 +145,7 @@ public class DashboardView extends ResultView<DashboardModel> {
 
         //header
         TableElement table = new TableElement(1, 1).rightCellPadding(1);
-        table.add(new RowElement().style(Decoration.bold.fg(Color.black).bg(Color.white)).add("Tomcat", ""));
+        table.add(new RowElement().style(Decoration.bold.fg(Color.black).bg(Color.white)).add(tomcatInfo.getServer() == null ? "Tomcat" : tomcatInfo.getServer(), ""));
 
         if (tomcatInfo.getConnectorStats() != null) {
             for (TomcatInfoVO.ConnectorStats connectorStat : tomcatInfo.getConnectorStats()) {
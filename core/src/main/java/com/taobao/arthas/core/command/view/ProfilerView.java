@@ -1,8 +1,15 @@
 package com.taobao.arthas.core.command.view;
 
+import com.taobao.arthas.core.command.model.FrameDeltaVO;
 import com.taobao.arthas.core.command.model.ProfilerModel;
+import com.taobao.arthas.core.command.model.ProfilerWindowVO;
 import com.taobao.arthas.core.command.monitor200.ProfilerCommand.ProfilerAction;
 import com.taobao.arthas.core.shell.command.CommandProcess;
+import com.taobao.text.Decoration;
+import com.taobao.text.ui.TableElement;
+import com.taobao.text.util.RenderUtil;
+
+import static com.taobao.text.ui.Element.label;
 
 
 /**
@@ -18,6 +25,16 @@ public class ProfilerView extends ResultView<ProfilerModel> {
             return;
         }
 
+        if (model.getWindows() != null) {
+            drawWindows(process, model);
+            return;
+        }
+
+        if (model.getFrameDeltas() != null) {
+            drawFrameDeltas(process, model);
+            return;
+        }
+
         drawExecuteResult(process, model);
 
         if (ProfilerAction.start.name().equals(model.getAction())) {
@@ -27,10 +44,50 @@ public class ProfilerView extends ResultView<ProfilerModel> {
             }
         } else if (ProfilerAction.stop.name().equals(model.getAction())) {
             process.write("profiler output file: " + model.getOutputFile() + "\n");
+        } else if (ProfilerAction.continuous.name().equals(model.getAction())) {
+            process.write("profiler windows will be saved to: " + model.getOutputFile() + "\n");
+        } else if (ProfilerAction.window.name().equals(model.getAction())) {
+            process.write("profiler window file: " + model.getOutputFile() + "\n");
         }
 
     }
 
+    private void drawFrameDeltas(CommandProcess process, ProfilerModel model) {
+        TableElement table = new TableElement(1, 1, 1, 1, 1, 6).leftCellPadding(1).rightCellPadding(1);
+        table.row(true, label("DELTA").style(Decoration.bold.bold()),
+                label("BASE%").style(Decoration.bold.bold()),
+                label("TARGET%").style(Decoration.bold.bold()),
+                label("BASE").style(Decoration.bold.bold()),
+                label("TARGET").style(Decoration.bold.bold()),
+                label("FRAME").style(Decoration.bold.bold()));
+        for (FrameDeltaVO frameDelta : model.getFrameDeltas()) {
+            table.row(String.format("%+.2f%%", frameDelta.getDeltaPercent()),
+                    String.format("%.2f%%", frameDelta.getBasePercent()),
+                    String.format("%.2f%%", frameDelta.getTargetPercent()),
+                    "" + frameDelta.getBaseSamples(),
+                    "" + frameDelta.getTargetSamples(),
+                    frameDelta.getFrame());
+        }
+        process.write(RenderUtil.render(table, process.width()) + "\n");
+        process.write("differential flame graph: " + model.getOutputFile() + "\n");
+        process.write("diff folded file: " + model.getDiffFoldedFile() + "\n");
+    }
+
+    private void drawWindows(CommandProcess process, ProfilerModel model) {
+        if (model.getWindows().isEmpty()) {
+            process.write("No profiler window found.\n");
+            return;
+        }
+        TableElement table = new TableElement(1, 1, 4).leftCellPadding(1).rightCellPadding(1);
+        table.row(true, label("ID").style(Decoration.bold.bold()),
+                label("SIZE").style(Decoration.bold.bold()),
+                label("FILE").style(Decoration.bold.bold()));
+        for (ProfilerWindowVO window : model.getWindows()) {
+            table.row(window.getId(), "" + window.getSize(), window.getFile());
+        }
+        process.write(RenderUtil.render(table, process.width()) + "\n");
+    }
+
     private void drawExecuteResult(CommandProcess process, ProfilerModel model) {
         if (model.getExecuteResult() != null) {
             process.write(model.getExecuteResult());
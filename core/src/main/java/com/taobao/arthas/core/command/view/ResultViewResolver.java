@@ -76,6 +76,7 @@ public class ResultViewResolver {
             registerView(EnhancerView.class);
             registerView(MonitorView.class);
             registerView(StackView.class);
+            registerView(SlowProfileView.class);
             registerView(TimeTunnelView.class);
             registerView(TraceView.class);
             registerView(WatchView.class);
@@ -0,0 +1,38 @@
+package com.taobao.arthas.core.command.view;
+
+import java.util.Map;
+
+import com.taobao.arthas.core.command.model.SlowProfileModel;
+import com.taobao.arthas.core.shell.command.CommandProcess;
+import com.taobao.arthas.core.util.DateUtils;
+import com.taobao.text.Decoration;
+import com.taobao.text.ui.TableElement;
+import com.taobao.text.util.RenderUtil;
+
+import static com.taobao.text.ui.Element.label;
+
+/**
+ * Term view for SlowProfileModel
+ */
+public class SlowProfileView extends ResultView<SlowProfileModel> {
+    @Override
+    public void draw(CommandProcess process, SlowProfileModel result) {
+        process.write("ts=" + DateUtils.formatDateTime(result.getTs()) + "; slow-invocations="
+                + result.getSlowInvocations() + "; discarded=" + result.getDiscardedInvocations() + "; samples="
+                + result.getSamples() + "\n");
+        if (result.getOutputFile() != null) {
+            process.write("OK\n" + result.getOutputFile() + "\n");
+        }
+        Map<String, Long> topFrames = result.getTopFrames();
+        if (topFrames == null || topFrames.isEmpty()) {
+            return;
+        }
+        TableElement table = new TableElement(1, 6).leftCellPadding(1).rightCellPadding(1);
+        table.row(true, label("samples").style(Decoration.bold.bold()),
+                label("frame").style(Decoration.bold.bold()));
+        for (Map.Entry<String, Long> entry : topFrames.entrySet()) {
+            table.row("" + entry.getValue(), entry.getKey());
+        }
+        process.write(RenderUtil.render(table, process.width()) + "\n");
+    }
+}
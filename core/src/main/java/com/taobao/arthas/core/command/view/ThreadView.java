@@ -1,6 +1,7 @@
 package com.taobao.arthas.core.command.view;
 
 import com.taobao.arthas.core.command.model.BusyThreadInfo;
+import com.taobao.arthas.core.command.model.LockContentionVO;
 import com.taobao.arthas.core.command.model.ThreadModel;
 import com.taobao.arthas.core.command.model.ThreadVO;
 import com.taobao.arthas.core.shell.command.CommandProcess;
@@ -35,6 +36,8 @@ public class ThreadView extends ResultView<ThreadModel> {
             String stacktrace = ThreadUtil.getFullStacktrace(result.getBlockingLockInfo());
             process.write(stacktrace);
 
+        } else if (result.getLockContentions() != null) {
+            process.write(drawLockContentions(result));
         } else if (result.getThreadStateCount() != null) {
             Map<Thread.State, Integer> threadStateCount = result.getThreadStateCount();
             List<ThreadVO> threadStats = result.getThreadStats();
@@ -78,4 +81,34 @@ public class ThreadView extends ResultView<ThreadModel> {
             process.write(stat + content);
         }
     }
+
+    private static String drawLockContentions(ThreadModel result) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Sampled ").append(result.getContentionSamples()).append(" times in ")
+                .append(result.getContentionDuration()).append("ms");
+        List<LockContentionVO> contentions = result.getLockContentions();
+        if (contentions.isEmpty()) {
+            sb.append(", no lock contention found.\n");
+            return sb.toString();
+        }
+        sb.append("\n\n");
+        for (LockContentionVO contention : contentions) {
+            sb.append(contention.isSynchronizer() ? "<synchronizer> " : "<monitor> ")
+                    .append(contention.getLockClassName()).append('@')
+                    .append(Integer.toHexString(contention.getLockIdentityHashCode()))
+                    .append(" waitTime=").append(contention.getWaitTime()).append("ms")
+                    .append(" waitSamples=").append(contention.getWaitSamples())
+                    .append(" maxWaiters=").append(contention.getMaxWaiters()).append('\n');
+            if (contention.getOwnerStackTrace() != null) {
+                sb.append("    owned by \"").append(contention.getOwnerThreadName()).append("\" Id=")
+                        .append(contention.getOwnerThreadId()).append(" in ").append(contention.getOwnerSamples())
+                        .append(" samples\n");
+                for (StackTraceElement element : contention.getOwnerStackTrace()) {
+                    sb.append("\tat ").append(element).append('\n');
+                }
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
 }
@@ -1,5 +1,6 @@
 package com.taobao.arthas.core.command.view;
 
+import com.taobao.arthas.core.command.model.AggregateNode;
 import com.taobao.arthas.core.command.model.MethodNode;
 import com.taobao.arthas.core.command.model.ThreadNode;
 import com.taobao.arthas.core.command.model.ThrowNode;
@@ -77,7 +78,9 @@ public class TraceView extends ResultView<TraceModel> {
         }
 
         //render method name
-        if (node instanceof MethodNode) {
+        if (node instanceof AggregateNode) {
+            sb.append("... (trace-max-node exceeded, other calls are collapsed)");
+        } else if (node instanceof MethodNode) {
             MethodNode methodNode = (MethodNode) node;
             //clazz.getName() + ":" + method.getName() + "()"
             sb.append(methodNode.getClassName()).append(":").append(methodNode.getMethodName()).append("()");
@@ -37,6 +37,9 @@ public class ViewRenderUtil {
         colorMapping.put(Thread.State.TERMINATED, Color.blue);
     }
 
+    /** cpu 趋势的字符，从低到高 */
+    private static final char[] SPARKLINE_CHARS = { '\u2581', '\u2582', '\u2583', '\u2584', '\u2585', '\u2586', '\u2587', '\u2588' };
+
     /**
      * Render key-value table
      * @param map
@@ -107,23 +110,26 @@ public class ViewRenderUtil {
     }
 
     public static String drawThreadInfo(List<ThreadVO> threads, int width, int height) {
-        TableElement table = new TableElement(1, 6, 3, 2, 2, 2, 2, 2, 2, 2).overflow(Overflow.HIDDEN).rightCellPadding(1);
+        return drawThreadInfo(threads, null, width, height);
+    }
+
+    /**
+     * @param cpuHistory 线程 id 到最近几次采样的 cpu 占用，不为 null 时增加一列显示 cpu 趋势
+     */
+    public static String drawThreadInfo(List<ThreadVO> threads, Map<Long, double[]> cpuHistory, int width, int height) {
+        TableElement table;
+        RowElement header = new RowElement().style(Decoration.bold.fg(Color.black).bg(Color.white));
+        if (cpuHistory == null) {
+            table = new TableElement(1, 6, 3, 2, 2, 2, 2, 2, 2, 2).overflow(Overflow.HIDDEN).rightCellPadding(1);
+            header.add("ID", "NAME", "GROUP", "PRIORITY", "STATE", "%CPU", "DELTA_TIME", "TIME", "INTERRUPTED", "DAEMON");
+        } else {
+            table = new TableElement(1, 6, 3, 2, 2, 2, 3, 2, 2, 2, 2).overflow(Overflow.HIDDEN).rightCellPadding(1);
+            header.add("ID", "NAME", "GROUP", "PRIORITY", "STATE", "%CPU", "CPU_HISTORY", "DELTA_TIME", "TIME",
+                    "INTERRUPTED", "DAEMON");
+        }
 
         // Header
-        table.add(
-                new RowElement().style(Decoration.bold.fg(Color.black).bg(Color.white)).add(
-                        "ID",
-                        "NAME",
-                        "GROUP",
-                        "PRIORITY",
-                        "STATE",
-                        "%CPU",
-                        "DELTA_TIME",
-                        "TIME",
-                        "INTERRUPTED",
-                        "DAEMON"
-                )
-        );
+        table.add(header);
 
         int count = 0;
         for (ThreadVO thread : threads) {
@@ -142,18 +148,34 @@ public class ViewRenderUtil {
             } else {
                 stateElement = new LabelElement("-");
             }
-            table.row(
-                    new LabelElement(thread.getId()),
-                    new LabelElement(thread.getName()),
-                    new LabelElement(thread.getGroup() != null ? thread.getGroup() : "-"),
-                    new LabelElement(thread.getPriority()),
-                    stateElement,
-                    new LabelElement(cpu),
-                    new LabelElement(deltaTime),
-                    new LabelElement(time),
-                    new LabelElement(thread.isInterrupted()),
-                    daemonLabel
-            );
+            if (cpuHistory == null) {
+                table.row(
+                        new LabelElement(thread.getId()),
+                        new LabelElement(thread.getName()),
+                        new LabelElement(thread.getGroup() != null ? thread.getGroup() : "-"),
+                        new LabelElement(thread.getPriority()),
+                        stateElement,
+                        new LabelElement(cpu),
+                        new LabelElement(deltaTime),
+                        new LabelElement(time),
+                        new LabelElement(thread.isInterrupted()),
+                        daemonLabel
+                );
+            } else {
+                table.row(
+                        new LabelElement(thread.getId()),
+                        new LabelElement(thread.getName()),
+                        new LabelElement(thread.getGroup() != null ? thread.getGroup() : "-"),
+                        new LabelElement(thread.getPriority()),
+                        stateElement,
+                        new LabelElement(cpu),
+                        new LabelElement(sparkline(cpuHistory.get(thread.getId()))),
+                        new LabelElement(deltaTime),
+                        new LabelElement(time),
+                        new LabelElement(thread.isInterrupted()),
+                        daemonLabel
+                );
+            }
             if (++count >= height) {
                 break;
             }
@@ -161,6 +183,21 @@ public class ViewRenderUtil {
         return RenderUtil.render(table, width, height);
     }
 
+    /**
+     * 用高度不同的方块字符画 cpu 占用的趋势，每个字符是一次采样，0 ~ 100%
+     */
+    static String sparkline(double[] usages) {
+        if (usages == null) {
+            return "-";
+        }
+        StringBuilder sb = new StringBuilder(usages.length);
+        for (double usage : usages) {
+            int level = (int) Math.round(Math.min(Math.max(usage, 0), 100) / 100 * (SPARKLINE_CHARS.length - 1));
+            sb.append(SPARKLINE_CHARS[level]);
+        }
+        return sb.toString();
+    }
+
     private static String formatTimeMills(long timeMills) {
         long seconds = timeMills / 1000;
         long mills = timeMills % 1000;
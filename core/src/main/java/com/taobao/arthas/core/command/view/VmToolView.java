@@ -1,10 +1,19 @@
 package com.taobao.arthas.core.command.view;
 
+import com.taobao.arthas.core.command.model.ClassHistogramVO;
+import com.taobao.arthas.core.command.model.HeapDiffVO;
 import com.taobao.arthas.core.command.model.ObjectVO;
+import com.taobao.arthas.core.command.model.ReferencePathVO;
 import com.taobao.arthas.core.command.model.VmToolModel;
 import com.taobao.arthas.core.shell.command.CommandProcess;
 import com.taobao.arthas.core.util.StringUtils;
 import com.taobao.arthas.core.view.ObjectView;
+import com.taobao.text.Decoration;
+import com.taobao.text.ui.RowElement;
+import com.taobao.text.ui.TableElement;
+import com.taobao.text.util.RenderUtil;
+
+import java.util.List;
 
 /**
  * 
@@ -21,8 +30,82 @@ public class VmToolView extends ResultView<VmToolModel> {
             return;
         }
 
+        if (model.getClassHistogram() != null) {
+            drawClassHistogram(process, model);
+            return;
+        }
+
+        if (model.getReferencePaths() != null) {
+            drawReferencePaths(process, model);
+            return;
+        }
+
+        if (model.getHeapDiff() != null) {
+            drawHeapDiff(process, model);
+            return;
+        }
+
         ObjectVO objectVO = model.getValue();
         String resultStr = StringUtils.objectToString(objectVO.needExpand() ? new ObjectView(objectVO).draw() : objectVO.getObject());
         process.write(resultStr).write("\n");
     }
+
+    private static void drawClassHistogram(CommandProcess process, VmToolModel model) {
+        TableElement table = new TableElement().leftCellPadding(1).rightCellPadding(1);
+        table.add(new RowElement().style(Decoration.bold.bold()).add("#", "instances", "bytes", "classLoaderHash", "className"));
+        List<ClassHistogramVO> classHistogram = model.getClassHistogram();
+        for (int i = 0; i < classHistogram.size(); i++) {
+            ClassHistogramVO vo = classHistogram.get(i);
+            table.row("" + (i + 1), "" + vo.getInstances(), "" + vo.getBytes(), vo.getClassLoaderHash(), vo.getClassName());
+        }
+        table.row("Total", "" + model.getTotalInstances(), "" + model.getTotalBytes(), "", "");
+        process.write(RenderUtil.render(table, process.width())).write("\n");
+    }
+
+    private static void drawReferencePaths(CommandProcess process, VmToolModel model) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Analyzed instances: ").append(model.getTotalInstances())
+                .append(", retained size: ").append(model.getTotalBytes()).append(" bytes\n");
+        if (model.isRetainedSizeTruncated()) {
+            sb.append("WARN: reached maxObjects, retained size is underestimated.\n");
+        }
+        if (model.isTimeout()) {
+            sb.append("WARN: heap walk timed out, retained size is inaccurate and some paths are missing.\n");
+        }
+        for (ReferencePathVO vo : model.getReferencePaths()) {
+            sb.append("\ninstances: ").append(vo.getInstances()).append(", retained size: ")
+                    .append(vo.getRetainedSize()).append(" bytes\n");
+            sb.append("  [").append(vo.getRootKind()).append("] ");
+            List<String> path = vo.getPath();
+            for (int i = 0; i < path.size(); i++) {
+                if (i > 0) {
+                    sb.append(" -> ");
+                }
+                sb.append(path.get(i));
+            }
+            sb.append('\n');
+        }
+        process.write(sb.toString());
+    }
+
+    private static void drawHeapDiff(CommandProcess process, VmToolModel model) {
+        if (model.getCycle() == 0) {
+            process.write("Baseline histogram taken, instances: " + model.getTotalInstances() + ", bytes: "
+                    + model.getTotalBytes() + "\n");
+            return;
+        }
+        process.write("Cycle: " + model.getCycle() + ", elapsed: " + model.getElapsed() / 1000 + "s, instances: "
+                + model.getTotalInstances() + ", bytes: " + model.getTotalBytes() + "\n");
+        TableElement table = new TableElement().leftCellPadding(1).rightCellPadding(1);
+        table.add(new RowElement().style(Decoration.bold.bold()).add("#", "instances", "bytes", "+instances", "+bytes",
+                "delta-instances", "delta-bytes", "growing", "classLoaderHash", "className"));
+        List<HeapDiffVO> heapDiff = model.getHeapDiff();
+        for (int i = 0; i < heapDiff.size(); i++) {
+            HeapDiffVO vo = heapDiff.get(i);
+            table.row("" + (i + 1), "" + vo.getInstances(), "" + vo.getBytes(), "" + vo.getInstancesGrowth(),
+                    "" + vo.getBytesGrowth(), "" + vo.getInstancesDelta(), "" + vo.getBytesDelta(),
+                    "" + vo.getGrowingCycles(), vo.getClassLoaderHash(), vo.getClassName());
+        }
+        process.write(RenderUtil.render(table, process.width())).write("\n");
+    }
 }
@@ -0,0 +1,258 @@
+package com.taobao.arthas.core.distribution;
+
+import com.taobao.arthas.core.GlobalOptions;
+import com.taobao.arthas.core.command.model.CommandRequestModel;
+import com.taobao.arthas.core.command.model.InputStatusModel;
+import com.taobao.arthas.core.command.model.MessageModel;
+import com.taobao.arthas.core.command.model.MonitorModel;
+import com.taobao.arthas.core.command.model.ResultModel;
+import com.taobao.arthas.core.command.model.StatusModel;
+import com.taobao.arthas.core.command.monitor200.MonitorData;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <pre>
+ * 每个 ResultConsumer 自己的有界结果队列，写入永远不会堵塞，队列满时按 result-overflow-policy 处理：
+ *
+ * 1. drop ：丢弃最旧的结果
+ * 2. sample ：每 N 条结果只保留一条，N 从 2 开始，队列一直是满的时候每丢弃 capacity 条结果翻倍，
+ *    队列降到一半以下后恢复全部保留
+ * 3. coalesce ：新的 monitor 周期合并到队尾的 monitor 结果里，其它结果按 drop 处理
+ *
+ * status/input_status/command/message 这些控制结果不会被 sample 丢弃，也不会被合并，
+ * 丢弃旧结果时跳过队列里的控制结果。只有队列里全是控制结果时，新的普通结果被丢弃，新的控制结果替换最旧的控制结果。
+ * </pre>
+ *
+ * @see GlobalOptions#resultOverflowPolicy
+ */
+public class BoundedResultQueue {
+    public static final String DROP = "drop";
+    public static final String SAMPLE = "sample";
+    public static final String COALESCE = "coalesce";
+
+    private static final int MAX_SAMPLE_STRIDE = 1024;
+
+    private final int capacity;
+    private final ArrayDeque<ResultModel> queue;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    // 以下字段由 lock 保护
+    private int sampleStride = 1;
+    private long overflowCount;
+    private long discardCount;
+
+    public BoundedResultQueue(int capacity) {
+        this.capacity = capacity;
+        this.queue = new ArrayDeque<ResultModel>(capacity);
+    }
+
+    /**
+     * 加入一条结果，不会堵塞
+     *
+     * @return 没有丢弃任何结果时返回 true ，合并也算没有丢弃
+     */
+    public boolean offer(ResultModel result) {
+        lock.lock();
+        try {
+            if (queue.size() < capacity) {
+                if (queue.size() < capacity / 2) {
+                    sampleStride = 1;
+                }
+                queue.offerLast(result);
+                notEmpty.signal();
+                return true;
+            }
+            return overflow(result, GlobalOptions.resultOverflowPolicy);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean overflow(ResultModel result, String policy) {
+        overflowCount++;
+        if (!isControlResult(result)) {
+            if (COALESCE.equalsIgnoreCase(policy) && result instanceof MonitorModel
+                    && queue.peekLast() instanceof MonitorModel) {
+                queue.offerLast(merge((MonitorModel) queue.pollLast(), (MonitorModel) result));
+                return true;
+            }
+            if (SAMPLE.equalsIgnoreCase(policy)) {
+                if (sampleStride == 1) {
+                    sampleStride = 2;
+                }
+                if (overflowCount % sampleStride != 0) {
+                    discard();
+                    return false;
+                }
+            }
+        }
+        if (!pollOldestData()) {
+            if (!isControlResult(result)) {
+                discard();
+                return false;
+            }
+            queue.pollFirst();
+        }
+        discard();
+        queue.offerLast(result);
+        notEmpty.signal();
+        return false;
+    }
+
+    /**
+     * 丢弃最旧的一条普通结果，控制结果留在队列里
+     */
+    private boolean pollOldestData() {
+        Iterator<ResultModel> it = queue.iterator();
+        while (it.hasNext()) {
+            if (!isControlResult(it.next())) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void discard() {
+        discardCount++;
+        if (sampleStride > 1 && discardCount % capacity == 0 && sampleStride < MAX_SAMPLE_STRIDE) {
+            sampleStride *= 2;
+        }
+    }
+
+    public ResultModel poll() {
+        lock.lock();
+        try {
+            return queue.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public ResultModel poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (queue.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return queue.pollFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return 因为队列满丢弃的结果数量
+     */
+    public long getDiscardCount() {
+        lock.lock();
+        try {
+            return discardCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static boolean isControlResult(ResultModel result) {
+        return result instanceof StatusModel || result instanceof InputStatusModel
+                || result instanceof CommandRequestModel || result instanceof MessageModel;
+    }
+
+    /**
+     * 把两个 monitor 周期合并成一个：次数和耗时累加，百分位和最大值取两者中较大的（上界），时间取后一个周期的。
+     * 结果会被多个 consumer 共享，这里只创建新的对象，不修改原来的结果。
+     */
+    static MonitorModel merge(MonitorModel first, MonitorModel second) {
+        List<MonitorData> merged = new ArrayList<MonitorData>();
+        if (first.getMonitorDataList() != null) {
+            for (MonitorData data : first.getMonitorDataList()) {
+                merged.add(copy(data));
+            }
+        }
+        if (second.getMonitorDataList() != null) {
+            for (MonitorData data : second.getMonitorDataList()) {
+                MonitorData target = find(merged, data);
+                if (target == null) {
+                    merged.add(copy(data));
+                    continue;
+                }
+                target.setTotal(target.getTotal() + data.getTotal());
+                target.setSuccess(target.getSuccess() + data.getSuccess());
+                target.setFailed(target.getFailed() + data.getFailed());
+                target.setCost(target.getCost() + data.getCost());
+                target.setP50(Math.max(target.getP50(), data.getP50()));
+                target.setP90(Math.max(target.getP90(), data.getP90()));
+                target.setP99(Math.max(target.getP99(), data.getP99()));
+                target.setP999(Math.max(target.getP999(), data.getP999()));
+                target.setMax(Math.max(target.getMax(), data.getMax()));
+                target.setTimestamp(data.getTimestamp());
+            }
+        }
+        MonitorModel model = new MonitorModel(merged);
+        model.setJobId(second.getJobId());
+        return model;
+    }
+
+    private static MonitorData find(List<MonitorData> list, MonitorData data) {
+        for (MonitorData item : list) {
+            if (equals(item.getClassName(), data.getClassName()) && equals(item.getMethodName(), data.getMethodName())) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static MonitorData copy(MonitorData data) {
+        MonitorData copy = new MonitorData();
+        copy.setClassName(data.getClassName());
+        copy.setMethodName(data.getMethodName());
+        copy.setTotal(data.getTotal());
+        copy.setSuccess(data.getSuccess());
+        copy.setFailed(data.getFailed());
+        copy.setCost(data.getCost());
+        copy.setP50(data.getP50());
+        copy.setP90(data.getP90());
+        copy.setP99(data.getP99());
+        copy.setP999(data.getP999());
+        copy.setMax(data.getMax());
+        copy.setTimestamp(data.getTimestamp());
+        return copy;
+    }
+}
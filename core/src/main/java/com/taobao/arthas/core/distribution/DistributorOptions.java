@@ -11,4 +11,9 @@ public class DistributorOptions {
      */
     public static int resultQueueSize = 50;
 
+    /**
+     * 分发线程待分发的结果队列长度，业务线程写入时不会堵塞
+     */
+    public static int pendingResultQueueSize = 1000;
+
 }
@@ -4,6 +4,7 @@ import com.alibaba.arthas.deps.org.slf4j.Logger;
 import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
 import com.alibaba.fastjson2.JSON;
 import com.taobao.arthas.core.command.model.ResultModel;
+import com.taobao.arthas.core.distribution.BoundedResultQueue;
 import com.taobao.arthas.core.distribution.DistributorOptions;
 import com.taobao.arthas.core.distribution.ResultConsumer;
 import com.taobao.arthas.core.distribution.ResultConsumerHelper;
@@ -11,21 +12,29 @@ import com.taobao.arthas.core.distribution.ResultConsumerHelper;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * <pre>
+ * 拉取（pull_results 长轮询）方式的结果消费者。
+ *
+ * 每批结果的数量根据消费速度自适应：一次拉取之后队列里还积压着不少于一批的结果，说明客户端拉取得比结果产生得慢，
+ * 批次大小和 item 数量上限翻倍；队列已经拉空并且这一批很小时减半，恢复低延迟的小批次。
+ * </pre>
  * @author gongdewei 2020/3/27
  */
 public class ResultConsumerImpl implements ResultConsumer {
     private static final Logger logger = LoggerFactory.getLogger(ResultConsumerImpl.class);
-    private BlockingQueue<ResultModel> resultQueue;
+    private static final int MIN_BATCH_SIZE = 20;
+    private static final int MIN_BATCH_ITEM_COUNT = 100;
+    private static final int MAX_BATCH_ITEM_COUNT = 1000;
+    private BoundedResultQueue resultQueue;
     private volatile long lastAccessTime;
     private volatile boolean polling;
     private ReentrantLock lock = new ReentrantLock();
-    private int resultBatchSizeLimit = 20;
+    private int resultBatchSizeLimit = MIN_BATCH_SIZE;
+    private int resultBatchItemLimit = MIN_BATCH_ITEM_COUNT;
     private int resultQueueSize = DistributorOptions.resultQueueSize;
     private long pollTimeLimit = 2 * 1000;
     private String consumerId;
@@ -34,18 +43,13 @@ public class ResultConsumerImpl implements ResultConsumer {
 
     public ResultConsumerImpl() {
         lastAccessTime = System.currentTimeMillis();
-        resultQueue = new ArrayBlockingQueue<ResultModel>(resultQueueSize);
+        resultQueue = new BoundedResultQueue(resultQueueSize);
     }
 
     @Override
     public boolean appendResult(ResultModel result) {
         //可能某些Consumer已经断开，不会再读取，这里不能堵塞！
-        boolean discard = false;
-        while (!resultQueue.offer(result)) {
-            ResultModel discardResult = resultQueue.poll();
-            discard = true;
-        }
-        return !discard;
+        return resultQueue.offer(result);
     }
 
     @Override
@@ -88,7 +92,7 @@ public class ResultConsumerImpl implements ResultConsumer {
                     }
                 }
 
-                //resultQueue.drainTo(sendingResults, resultSizeLimit-sendingResults.size());
+                adjustBatchSize(sendingResults.size());
                 if(logger.isDebugEnabled()) {
                     logger.debug("pollResults: {}, results: {}", sendingResults.size(), JSON.toJSONString(sendingResults));
                 }
@@ -106,6 +110,20 @@ public class ResultConsumerImpl implements ResultConsumer {
         return Collections.emptyList();
     }
 
+    /**
+     * 根据拉取之后的积压调整下一批的大小
+     */
+    private void adjustBatchSize(int sentCount) {
+        int backlog = resultQueue.size();
+        if (backlog >= resultBatchSizeLimit) {
+            resultBatchSizeLimit = Math.min(resultBatchSizeLimit * 2, Math.max(resultQueueSize, MIN_BATCH_SIZE));
+            resultBatchItemLimit = Math.min(resultBatchItemLimit * 2, MAX_BATCH_ITEM_COUNT);
+        } else if (backlog == 0 && sentCount <= resultBatchSizeLimit / 4) {
+            resultBatchSizeLimit = Math.max(resultBatchSizeLimit / 2, MIN_BATCH_SIZE);
+            resultBatchItemLimit = Math.max(resultBatchItemLimit / 2, MIN_BATCH_ITEM_COUNT);
+        }
+    }
+
     /**
      * 估算对象数量及大小，判断是否需要立即发送出去
      * @param sendingResults
@@ -115,7 +133,7 @@ public class ResultConsumerImpl implements ResultConsumer {
     private boolean shouldFlush(List<ResultModel> sendingResults, ResultModel last) {
         //TODO 引入一个估算模型，每个model自统计对象数量
         sendingItemCount += ResultConsumerHelper.getItemCount(last);
-        return sendingItemCount >= 100;
+        return sendingItemCount >= resultBatchItemLimit;
     }
 
     @Override
@@ -2,14 +2,14 @@ package com.taobao.arthas.core.distribution.impl;
 
 import com.alibaba.arthas.deps.org.slf4j.Logger;
 import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
+import com.taobao.arthas.core.GlobalOptions;
 import com.taobao.arthas.core.command.model.InputStatusModel;
-import com.taobao.arthas.core.command.model.MessageModel;
 import com.taobao.arthas.core.command.model.ResultModel;
+import com.taobao.arthas.core.distribution.BoundedResultQueue;
 import com.taobao.arthas.core.distribution.DistributorOptions;
 import com.taobao.arthas.core.distribution.ResultConsumer;
 import com.taobao.arthas.core.distribution.SharingResultDistributor;
 import com.taobao.arthas.core.shell.session.Session;
-import com.taobao.arthas.core.shell.system.Job;
 
 import java.util.List;
 import java.util.UUID;
@@ -24,7 +24,7 @@ public class SharingResultDistributorImpl implements SharingResultDistributor {
     private static final Logger logger = LoggerFactory.getLogger(SharingResultDistributorImpl.class);
 
     private List<ResultConsumer> consumers = new CopyOnWriteArrayList<ResultConsumer>();
-    private BlockingQueue<ResultModel> pendingResultQueue = new ArrayBlockingQueue<ResultModel>(10);
+    private BoundedResultQueue pendingResultQueue = new BoundedResultQueue(DistributorOptions.pendingResultQueueSize);
     private final Session session;
     private Thread distributorThread;
     private volatile boolean running;
@@ -41,35 +41,18 @@ public class SharingResultDistributorImpl implements SharingResultDistributor {
 
     @Override
     public void appendResult(ResultModel result) {
-        //要避免阻塞影响业务线程执行
-        try {
-            if (!pendingResultQueue.offer(result, 100, TimeUnit.MILLISECONDS)) {
-                ResultModel discardResult = pendingResultQueue.poll();
-                // 正常情况走不到这里，除非distribute 循环堵塞或异常终止
-                // 输出队列满，终止当前执行的命令
-                interruptJob("result queue is full: "+ pendingResultQueue.size());
-            }
-        } catch (InterruptedException e) {
-            //ignore
-        }
-    }
-
-    private void interruptJob(String message) {
-        Job job = session.getForegroundJob();
-        if (job != null) {
-            logger.warn(message+", current job was interrupted.", job.id());
-            job.interrupt();
-            pendingResultQueue.offer(new MessageModel(message+", current job was interrupted."));
-        }
+        //不能阻塞业务线程，队列满时按 result-overflow-policy 丢弃或者合并结果
+        pendingResultQueue.offer(result);
     }
 
     private void distribute() {
+        boolean allUnhealthy = false;
         while (running) {
             try {
                 ResultModel result = pendingResultQueue.poll(100, TimeUnit.MILLISECONDS);
                 if (result != null) {
                     sharingResultConsumer.appendResult(result);
-                    //判断是否有至少一个consumer是健康的
+                    //每个consumer有自己的队列，慢的consumer只会丢弃自己的结果，不会影响其它consumer，也不会中断命令
                     int healthCount = 0;
                     for (int i = 0; i < consumers.size(); i++) {
                         ResultConsumer consumer = consumers.get(i);
@@ -78,10 +61,12 @@ public class SharingResultDistributorImpl implements SharingResultDistributor {
                         }
                         consumer.appendResult(result);
                     }
-                    //所有consumer都不是健康状态，终止当前执行的命令
-                    if (healthCount == 0) {
-                        interruptJob("all consumers are unhealthy");
+                    boolean unhealthy = healthCount == 0 && !consumers.isEmpty();
+                    if (unhealthy && !allUnhealthy) {
+                        logger.warn("all consumers of session {} are unhealthy, results will be discarded by policy: {}",
+                                session.getSessionId(), GlobalOptions.resultOverflowPolicy);
                     }
+                    allUnhealthy = unhealthy;
                 }
             } catch (Throwable e) {
                 logger.warn("distribute result failed: " + e.getMessage(), e);
@@ -92,6 +77,10 @@ public class SharingResultDistributorImpl implements SharingResultDistributor {
     @Override
     public void close() {
         this.running = false;
+        //关闭所有consumer，推送结果的长连接也会随之结束
+        for (ResultConsumer consumer : consumers) {
+            consumer.close();
+        }
     }
 
     @Override
@@ -43,6 +43,8 @@ import com.taobao.arthas.common.SocketUtils;
 import com.taobao.arthas.core.advisor.Enhancer;
 import com.taobao.arthas.core.advisor.TransformerManager;
 import com.taobao.arthas.core.command.BuiltinCommandPack;
+import com.taobao.arthas.core.command.monitor200.ThreadCpuHistory;
+import com.taobao.arthas.core.command.monitor200.TimeTunnelCommand;
 import com.taobao.arthas.core.command.view.ResultViewResolver;
 import com.taobao.arthas.core.config.BinderUtils;
 import com.taobao.arthas.core.config.Configure;
@@ -68,6 +70,7 @@ import com.taobao.arthas.core.shell.term.impl.http.api.HttpApiHandler;
 import com.taobao.arthas.core.shell.term.impl.http.session.HttpSessionManager;
 import com.taobao.arthas.core.shell.term.impl.httptelnet.HttpTelnetTermServer;
 import com.taobao.arthas.core.util.ArthasBanner;
+import com.taobao.arthas.core.util.ClassIndex;
 import com.taobao.arthas.core.util.FileUtils;
 import com.taobao.arthas.core.util.IPUtils;
 import com.taobao.arthas.core.util.InstrumentationUtils;
@@ -174,6 +177,8 @@ public class ArthasBootstrap {
         };
 
         transformerManager = new TransformerManager(instrumentation);
+        ClassIndex.init(instrumentation);
+        ThreadCpuHistory.getInstance().start(executorService);
         Runtime.getRuntime().addShutdownHook(shutdown);
     }
 
@@ -541,6 +546,9 @@ public class ArthasBootstrap {
         if (classLoaderInstrumentTransformer != null) {
             instrumentation.removeTransformer(classLoaderInstrumentTransformer);
         }
+        ClassIndex.destroy();
+        ThreadCpuHistory.getInstance().stop();
+        TimeTunnelCommand.destroy();
         // clear the reference in Spy class.
         cleanUpSpyReference();
         shutdownWorkGroup();
@@ -10,6 +10,8 @@ import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.*;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
 import io.termd.core.http.HttpTtyConnection;
 import io.termd.core.util.Logging;
 
@@ -59,6 +61,12 @@ public class HttpRequestHandler extends SimpleChannelInboundHandler<FullHttpRequ
                 send100Continue(ctx);
             }
 
+            //handle http restful api, the response is written when the request is completed
+            if ("/api".equals(path)) {
+                handleApiRequest(ctx, request);
+                return;
+            }
+
             HttpResponse response = null;
             if ("/".equals(path)) {
                 path = "/index.html";
@@ -66,11 +74,6 @@ public class HttpRequestHandler extends SimpleChannelInboundHandler<FullHttpRequ
 
             boolean isFileResponseFinished = false;
             try {
-                //handle http restful api
-                if ("/api".equals(path)) {
-                    response = httpApiHandler.handle(ctx, request);
-                }
-
                 //handle webui requests
                 if (path.equals("/ui")) {
                     response = createRedirectResponse(request, "/ui/");
@@ -109,6 +112,26 @@ public class HttpRequestHandler extends SimpleChannelInboundHandler<FullHttpRequ
         }
     }
 
+    private void handleApiRequest(final ChannelHandlerContext ctx, final FullHttpRequest request) {
+        final String uri = request.uri();
+        httpApiHandler.handle(ctx, request).addListener(new GenericFutureListener<Future<HttpResponse>>() {
+            @Override
+            public void operationComplete(Future<HttpResponse> future) {
+                HttpResponse response = future.getNow();
+                if (future.isSuccess() && response == null) {
+                    // stream_results writes the response itself
+                    return;
+                }
+                if (response == null) {
+                    logger.error("arthas process http api request error: " + uri, future.cause());
+                    // request 的 content 已经被释放，createResponse 只读取协议版本
+                    response = createResponse(request, HttpResponseStatus.INTERNAL_SERVER_ERROR, "Server error");
+                }
+                writeResponse(ctx, response).addListener(ChannelFutureListener.CLOSE);
+            }
+        });
+    }
+
     private ChannelFuture writeResponse(ChannelHandlerContext ctx, HttpResponse response) {
         // try to add content-length header for DefaultFullHttpResponse
         if (!HttpUtil.isTransferEncodingChunked(response)
@@ -26,6 +26,11 @@ public enum ApiAction {
      */
     PULL_RESULTS,
 
+    /**
+     * Push the results of the session over a long-lived chunked response (ndjson or sse)
+     */
+    STREAM_RESULTS,
+
     /**
      * Create a new session
      */
@@ -0,0 +1,154 @@
+package com.taobao.arthas.core.shell.term.impl.http.api;
+
+import com.alibaba.fastjson2.JSONFactory;
+import com.alibaba.fastjson2.JSONWriter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <pre>
+ * http api 的 json 序列化，结果写到 channel 的 ByteBufAllocator 分配的 ByteBuf 里（默认是池化的）。
+ *
+ * fastjson2 的 JSONWriter 总是先序列化到它自己的 byte[] 里，这个数组按需扩容，JSON.writeTo 也是整个对象序列化完才拷贝到
+ * OutputStream ，所以一个几十 MB 的响应在堆上仍然有一个同样大小的数组，ByteBuf 的 maxCapacity 也只能在序列化完之后才检查。
+ * 这里把 ApiResponse 拆开写：body 里的集合（比如 results）每写完一个元素就 flushTo 到 ByteBuf ，然后 JSONWriter 从头复用数组，
+ * 超过 maxCapacity 时立即抛出 {@link ResponseTooLargeException} ，不会继续序列化后面的结果。
+ *
+ * 堆上临时数组的大小因此是最大的单个结果的 json 大小，而不是整个响应的大小；单个结果本身（比如 sc -d 匹配了大量的类）
+ * 仍然会完整地序列化在 fastjson2 的数组里。
+ * </pre>
+ */
+final class ApiJsonEncoder {
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    private ApiJsonEncoder() {
+    }
+
+    /**
+     * 把对象序列化成 json 追加到 buf 里
+     *
+     * @throws ResponseTooLargeException 超过 buf 的 maxCapacity
+     */
+    static void writeJson(ByteBuf buf, Object value) {
+        JSONWriter.Context context = new JSONWriter.Context(JSONFactory.getDefaultObjectWriterProvider());
+        context.configFilter(HttpApiHandler.JSON_FILTERS);
+        OutputStream out = new ByteBufOutputStream(buf);
+        JSONWriter writer = JSONWriter.ofUTF8(context);
+        try {
+            if (value instanceof ApiResponse) {
+                writeResponse(writer, out, (ApiResponse<?>) value);
+            } else {
+                writer.writeAny(value);
+            }
+            flush(writer, out);
+        } catch (IndexOutOfBoundsException e) {
+            // 超过 maxCapacity 时 ByteBuf 抛出 IndexOutOfBoundsException
+            throw new ResponseTooLargeException(buf.maxCapacity());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * 和 fastjson2 序列化 ApiResponse 的结果一样：属性按名字排序，跳过 null
+     */
+    private static void writeResponse(JSONWriter writer, OutputStream out, ApiResponse<?> response) throws IOException {
+        writer.startObject();
+        if (response.getBody() != null) {
+            writer.writeName("body");
+            writer.writeColon();
+            writeChunked(writer, out, response.getBody());
+        }
+        writeField(writer, "consumerId", response.getConsumerId());
+        writeField(writer, "jobId", response.getJobId());
+        writeField(writer, "message", response.getMessage());
+        writeField(writer, "requestId", response.getRequestId());
+        writeField(writer, "sessionId", response.getSessionId());
+        writeField(writer, "state", response.getState());
+        writer.endObject();
+    }
+
+    /**
+     * Map 和集合逐个元素写，每个元素写完 flush 一次
+     */
+    private static void writeChunked(JSONWriter writer, OutputStream out, Object value) throws IOException {
+        if (value instanceof Map) {
+            writer.startObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (entry.getValue() == null) {
+                    continue;
+                }
+                writer.writeName(String.valueOf(entry.getKey()));
+                writer.writeColon();
+                writeChunked(writer, out, entry.getValue());
+            }
+            writer.endObject();
+        } else if (value instanceof Collection) {
+            writer.startArray();
+            boolean first = true;
+            for (Object item : (Collection<?>) value) {
+                if (!first) {
+                    writer.writeComma();
+                }
+                first = false;
+                writer.writeAny(item);
+                flush(writer, out);
+            }
+            writer.endArray();
+        } else {
+            writer.writeAny(value);
+        }
+    }
+
+    private static void writeField(JSONWriter writer, String name, Object value) {
+        if (value != null) {
+            writer.writeName(name);
+            writer.writeColon();
+            writer.writeAny(value);
+        }
+    }
+
+    /**
+     * 把 JSONWriter 里已经序列化的内容移到 ByteBuf 里，之后 JSONWriter 从头复用它的数组
+     */
+    private static void flush(JSONWriter writer, OutputStream out) throws IOException {
+        writer.flushTo(out);
+    }
+
+    /**
+     * 用 gzip 压缩 content ，content 会被释放
+     */
+    static ByteBuf gzip(ByteBufAllocator alloc, ByteBuf content) throws IOException {
+        ByteBuf compressed = alloc.buffer(content.readableBytes() / 4 + 64);
+        boolean success = false;
+        try {
+            GZIPOutputStream out = new GZIPOutputStream(new ByteBufOutputStream(compressed), GZIP_BUFFER_SIZE);
+            content.readBytes(out, content.readableBytes());
+            out.close();
+            success = true;
+            return compressed;
+        } finally {
+            content.release();
+            if (!success) {
+                compressed.release();
+            }
+        }
+    }
+
+    static class ResponseTooLargeException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ResponseTooLargeException(int maxLength) {
+            super("The response is too large, exceeds " + maxLength + " bytes");
+        }
+    }
+}
@@ -12,6 +12,7 @@ public class ApiRequest {
     private String sessionId;
     private String consumerId;
     private Integer execTimeout;
+    private String format;
 
     @Override
     public String toString() {
@@ -22,6 +23,7 @@ public class ApiRequest {
                 ", sessionId='" + sessionId + '\'' +
                 ", consumerId='" + consumerId + '\'' +
                 ", execTimeout=" + execTimeout +
+                ", format='" + format + '\'' +
                 '}';
     }
 
@@ -72,4 +74,12 @@ public class ApiRequest {
     public void setExecTimeout(Integer execTimeout) {
         this.execTimeout = execTimeout;
     }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
 }
@@ -33,15 +33,23 @@ import com.taobao.arthas.core.util.ArthasBanner;
 import com.taobao.arthas.core.util.DateUtils;
 import com.taobao.arthas.core.util.StringUtils;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.*;
 import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
 import io.termd.core.function.Function;
 
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
@@ -52,9 +60,22 @@ import java.util.TreeMap;
 public class HttpApiHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(HttpApiHandler.class);
-    private static final ValueFilter[] JSON_FILTERS = new ValueFilter[] { new ObjectVOFilter() };
+    static final ValueFilter[] JSON_FILTERS = new ValueFilter[] { new ObjectVOFilter() };
     private static final String ONETIME_SESSION_KEY = "oneTimeSession";
     public static final int DEFAULT_EXEC_TIMEOUT = 30000;
+    /**
+     * json 响应的最大长度，超过时返回 FAILED
+     */
+    public static final int MAX_RESPONSE_LENGTH = 1024 * 1024 * 64;
+    /**
+     * json 响应超过这个长度，并且客户端支持 gzip 时压缩
+     */
+    public static final int COMPRESS_THRESHOLD = 1024 * 16;
+    private static final int INITIAL_RESPONSE_CAPACITY = 1024 * 4;
+    /**
+     * stream_results 已经在 channel 上写出了响应，不需要再生成 json 响应
+     */
+    private static final ApiResponse STREAMING_RESPONSE = new ApiResponse();
     private final SessionManager sessionManager;
     private final InternalCommandManager commandManager;
     private final JobController jobController;
@@ -67,37 +88,98 @@ public class HttpApiHandler {
         jobController = this.sessionManager.getJobController();
     }
 
-    public HttpResponse handle(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
-
-        ApiResponse result;
+    /**
+     * 处理 api 请求。exec 请求在命令结束（或者超时）时由命令的线程完成，不会占用 netty 的 worker 线程，
+     * 其它请求在返回之前就已经完成。
+     * stream_results 请求的响应直接写到 channel 上，返回的 future 的结果是 null 。
+     */
+    public Future<HttpResponse> handle(ChannelHandlerContext ctx, FullHttpRequest request) {
+        final Promise<HttpResponse> promise = ctx.executor().newPromise();
+        final ByteBufAllocator alloc = ctx.alloc();
+        final HttpVersion protocolVersion = request.protocolVersion();
+        final boolean acceptGzip = acceptGzip(request);
         String requestBody = null;
-        String requestId = null;
         try {
             HttpMethod method = request.method();
             if (HttpMethod.POST.equals(method)) {
                 requestBody = getBody(request);
                 ApiRequest apiRequest = parseRequest(requestBody);
-                requestId = apiRequest.getRequestId();
-                result = processRequest(ctx, apiRequest);
+                final String requestId = apiRequest.getRequestId();
+                processRequest(ctx, apiRequest, new Handler<ApiResponse>() {
+                    @Override
+                    public void handle(ApiResponse result) {
+                        completeResponse(promise, alloc, protocolVersion, acceptGzip, requestId, result);
+                    }
+                });
             } else {
-                result = createResponse(ApiState.REFUSED, "Unsupported http method: " + method.name());
+                completeResponse(promise, alloc, protocolVersion, acceptGzip, null,
+                        createResponse(ApiState.REFUSED, "Unsupported http method: " + method.name()));
             }
         } catch (Throwable e) {
-            result = createResponse(ApiState.FAILED, "Process request error: " + e.getMessage());
             logger.error("arthas process http api request error: " + request.uri() + ", request body: " + requestBody, e);
+            completeResponse(promise, alloc, protocolVersion, acceptGzip, null,
+                    createResponse(ApiState.FAILED, "Process request error: " + e.getMessage()));
         }
-        if (result == null) {
-            result = createResponse(ApiState.FAILED, "The request was not processed");
-        }
-        result.setRequestId(requestId);
+        return promise;
+    }
 
-        byte[] jsonBytes = JSON.toJSONBytes(result, JSON_FILTERS);
+    private void completeResponse(Promise<HttpResponse> promise, ByteBufAllocator alloc, HttpVersion protocolVersion,
+            boolean acceptGzip, String requestId, ApiResponse result) {
+        ByteBuf content = null;
+        try {
+            if (result == STREAMING_RESPONSE) {
+                promise.trySuccess(null);
+                return;
+            }
+            if (result == null) {
+                result = createResponse(ApiState.FAILED, "The request was not processed");
+            }
+            result.setRequestId(requestId);
 
-        // create http response
-        DefaultFullHttpResponse response = new DefaultFullHttpResponse(request.protocolVersion(),
-                HttpResponseStatus.OK, Unpooled.wrappedBuffer(jsonBytes));
-        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json; charset=utf-8");
-        return response;
+            // serialize into a pooled buffer, the size is limited by maxCapacity
+            content = alloc.buffer(INITIAL_RESPONSE_CAPACITY, MAX_RESPONSE_LENGTH);
+            try {
+                ApiJsonEncoder.writeJson(content, result);
+            } catch (ApiJsonEncoder.ResponseTooLargeException e) {
+                logger.warn("http api response is too large, requestId: {}, sessionId: {}", requestId, result.getSessionId());
+                ApiResponse tooLarge = createResponse(ApiState.FAILED,
+                        e.getMessage() + ", please reduce the results, e.g. decrease the expand level or add conditions");
+                tooLarge.setSessionId(result.getSessionId());
+                tooLarge.setRequestId(requestId);
+                content.clear();
+                ApiJsonEncoder.writeJson(content, tooLarge);
+            }
+
+            boolean gzip = acceptGzip && content.readableBytes() >= COMPRESS_THRESHOLD;
+            if (gzip) {
+                // gzip 总是会释放原来的 buffer
+                ByteBuf json = content;
+                content = null;
+                content = ApiJsonEncoder.gzip(alloc, json);
+            }
+
+            // create http response
+            DefaultFullHttpResponse response = new DefaultFullHttpResponse(protocolVersion,
+                    HttpResponseStatus.OK, content);
+            content = null;
+            response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json; charset=utf-8");
+            if (gzip) {
+                response.headers().set(HttpHeaderNames.CONTENT_ENCODING, HttpHeaderValues.GZIP);
+            }
+            if (!promise.trySuccess(response)) {
+                response.release();
+            }
+        } catch (Throwable e) {
+            if (content != null) {
+                content.release();
+            }
+            promise.tryFailure(e);
+        }
+    }
+
+    private static boolean acceptGzip(FullHttpRequest request) {
+        String acceptEncoding = request.headers().get(HttpHeaderNames.ACCEPT_ENCODING);
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains(HttpHeaderValues.GZIP.toString());
     }
 
     private ApiRequest parseRequest(String requestBody) throws ApiException {
@@ -113,7 +195,7 @@ public class HttpApiHandler {
         }
     }
 
-    private ApiResponse processRequest(ChannelHandlerContext ctx, ApiRequest apiRequest) {
+    private void processRequest(ChannelHandlerContext ctx, ApiRequest apiRequest, Handler<ApiResponse> callback) {
 
         String actionStr = apiRequest.getAction();
         try {
@@ -129,7 +211,8 @@ public class HttpApiHandler {
 
             //no session required
             if (ApiAction.INIT_SESSION.equals(action)) {
-                return processInitSessionRequest(apiRequest);
+                callback.handle(processInitSessionRequest(apiRequest));
+                return;
             }
 
             //required session
@@ -164,27 +247,41 @@ public class HttpApiHandler {
                 }
             }
 
+            //exec request is completed when the job is finished
+            if (ApiAction.EXEC.equals(action)) {
+                processExecRequest(apiRequest, session, ctx.executor(), callback);
+                return;
+            }
+
+            //stream results over this connection until it is closed
+            if (ApiAction.STREAM_RESULTS.equals(action)) {
+                processStreamResultsRequest(ctx, apiRequest, session);
+                callback.handle(STREAMING_RESPONSE);
+                return;
+            }
+
             //dispatch requests
             ApiResponse response = dispatchRequest(action, apiRequest, session);
             if (response != null) {
-                return response;
+                callback.handle(response);
+                return;
             }
 
         } catch (ApiException e) {
             logger.info("process http api request failed: {}", e.getMessage());
-            return createResponse(ApiState.FAILED, e.getMessage());
+            callback.handle(createResponse(ApiState.FAILED, e.getMessage()));
+            return;
         } catch (Throwable e) {
             logger.error("process http api request failed: " + e.getMessage(), e);
-            return createResponse(ApiState.FAILED, "process http api request failed: " + e.getMessage());
+            callback.handle(createResponse(ApiState.FAILED, "process http api request failed: " + e.getMessage()));
+            return;
         }
 
-        return createResponse(ApiState.REFUSED, "Unsupported action: " + actionStr);
+        callback.handle(createResponse(ApiState.REFUSED, "Unsupported action: " + actionStr));
     }
 
     private ApiResponse dispatchRequest(ApiAction action, ApiRequest apiRequest, Session session) throws ApiException {
         switch (action) {
-            case EXEC:
-                return processExecRequest(apiRequest, session);
             case ASYNC_EXEC:
                 return processAsyncExecRequest(apiRequest, session);
             case INTERRUPT_JOB:
@@ -197,6 +294,8 @@ public class HttpApiHandler {
                 return processJoinSessionRequest(apiRequest, session);
             case CLOSE_SESSION:
                 return processCloseSessionRequest(apiRequest, session);
+            case EXEC:
+            case STREAM_RESULTS:
             case INIT_SESSION:
                 break;
         }
@@ -294,94 +393,70 @@ public class HttpApiHandler {
     }
 
     /**
-     * Execute command sync, wait for job finish or timeout, sending results immediately
+     * Execute command sync, complete the request when the job is finished or timeout, sending results immediately.
+     * The netty worker thread is not blocked while waiting for the job.
      *
      * @param apiRequest
      * @param session
-     * @return
+     * @param timer      connection 的 EventLoop ，用来计算超时，不能用执行命令的线程池，命令阻塞时超时也会被推迟
+     * @param callback
      */
-    private ApiResponse processExecRequest(ApiRequest apiRequest, Session session) {
+    private void processExecRequest(ApiRequest apiRequest, Session session, ScheduledExecutorService timer,
+                                    Handler<ApiResponse> callback) {
         boolean oneTimeAccess = false;
         if (session.get(ONETIME_SESSION_KEY) != null) {
             oneTimeAccess = true;
         }
 
-        try {
-            String commandLine = apiRequest.getCommand();
-            Map<String, Object> body = new TreeMap<String, Object>();
-            body.put("command", commandLine);
-
-            ApiResponse response = new ApiResponse();
-            response.setSessionId(session.getSessionId())
-                    .setBody(body);
-
-            if (!session.tryLock()) {
-                response.setState(ApiState.REFUSED)
-                        .setMessage("Another command is executing.");
-                return response;
-            }
+        String commandLine = apiRequest.getCommand();
+        Map<String, Object> body = new TreeMap<String, Object>();
+        body.put("command", commandLine);
 
-            int lock = session.getLock();
-            PackingResultDistributor packingResultDistributor = null;
-            Job job = null;
-            try {
-                Job foregroundJob = session.getForegroundJob();
-                if (foregroundJob != null) {
-                    response.setState(ApiState.REFUSED)
-                            .setMessage("Another job is running.");
-                    logger.info("Another job is running, jobId: {}", foregroundJob.id());
-                    return response;
-                }
+        ApiResponse response = new ApiResponse();
+        response.setSessionId(session.getSessionId())
+                .setBody(body);
 
-                packingResultDistributor = new PackingResultDistributorImpl(session);
-                //distribute result message both to origin session channel and request channel by CompositeResultDistributor
-                //ResultDistributor resultDistributor = new CompositeResultDistributorImpl(packingResultDistributor, session.getResultDistributor());
-                job = this.createJob(commandLine, session, packingResultDistributor);
-                session.setForegroundJob(job);
-                updateSessionInputStatus(session, InputStatus.ALLOW_INTERRUPT);
+        Integer timeout = apiRequest.getExecTimeout();
+        if (timeout == null || timeout <= 0) {
+            timeout = DEFAULT_EXEC_TIMEOUT;
+        }
+        ExecCompletion completion = new ExecCompletion(session, oneTimeAccess, response, body, timeout, timer, callback);
 
-                job.run();
+        if (!session.tryLock()) {
+            response.setState(ApiState.REFUSED)
+                    .setMessage("Another command is executing.");
+            completion.completeNow();
+            return;
+        }
 
-            } catch (Throwable e) {
-                logger.error("Exec command failed:" + e.getMessage() + ", command:" + commandLine, e);
-                response.setState(ApiState.FAILED).setMessage("Exec command failed:" + e.getMessage());
-                return response;
-            } finally {
-                if (session.getLock() == lock) {
-                    session.unLock();
-                }
+        int lock = session.getLock();
+        try {
+            Job foregroundJob = session.getForegroundJob();
+            if (foregroundJob != null) {
+                response.setState(ApiState.REFUSED)
+                        .setMessage("Another job is running.");
+                logger.info("Another job is running, jobId: {}", foregroundJob.id());
+                completion.completeNow();
+                return;
             }
 
-            //wait for job completed or timeout
-            Integer timeout = apiRequest.getExecTimeout();
-            if (timeout == null || timeout <= 0) {
-                timeout = DEFAULT_EXEC_TIMEOUT;
-            }
-            boolean timeExpired = !waitForJob(job, timeout);
-            if (timeExpired) {
-                logger.warn("Job is exceeded time limit, force interrupt it, jobId: {}", job.id());
-                job.interrupt();
-                response.setState(ApiState.INTERRUPTED).setMessage("The job is exceeded time limit, force interrupt");
-            } else {
-                response.setState(ApiState.SUCCEEDED);
-            }
+            PackingResultDistributor packingResultDistributor = new PackingResultDistributorImpl(session);
+            //distribute result message both to origin session channel and request channel by CompositeResultDistributor
+            //ResultDistributor resultDistributor = new CompositeResultDistributorImpl(packingResultDistributor, session.getResultDistributor());
+            Job job = this.createJob(commandLine, session, packingResultDistributor, completion);
+            completion.start(job, packingResultDistributor);
+            session.setForegroundJob(job);
+            updateSessionInputStatus(session, InputStatus.ALLOW_INTERRUPT);
 
-            //packing results
-            body.put("jobId", job.id());
-            body.put("jobStatus", job.status());
-            body.put("timeExpired", timeExpired);
-            if (timeExpired) {
-                body.put("timeout", timeout);
-            }
-            body.put("results", packingResultDistributor.getResults());
+            job.run();
 
-            response.setSessionId(session.getSessionId())
-                    //.setConsumerId(consumerId)
-                    .setBody(body);
-            return response;
+        } catch (Throwable e) {
+            logger.error("Exec command failed:" + e.getMessage() + ", command:" + commandLine, e);
+            response.setState(ApiState.FAILED).setMessage("Exec command failed:" + e.getMessage());
+            completion.completeNow();
         } finally {
-            if (oneTimeAccess) {
-                sessionManager.removeSession(session.getSessionId());
+            if (session.getLock() == lock) {
+                session.unLock();
             }
         }
     }
@@ -499,32 +574,59 @@ public class HttpApiHandler {
         return response;
     }
 
-    private boolean waitForJob(Job job, int timeout) {
-        long startTime = System.currentTimeMillis();
-        while (true) {
-            switch (job.status()) {
-                case STOPPED:
-                case TERMINATED:
-                    return true;
-            }
-            if (System.currentTimeMillis() - startTime > timeout) {
-                return false;
-            }
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
+    /**
+     * Push results of the session over a long-lived chunked response, one json per line (ndjson) or server-sent events
+     *
+     * @param ctx
+     * @param apiRequest
+     * @param session
+     */
+    private void processStreamResultsRequest(ChannelHandlerContext ctx, ApiRequest apiRequest, Session session) throws ApiException {
+        final SharingResultDistributor resultDistributor = session.getResultDistributor();
+        if (resultDistributor == null) {
+            throw new ApiException("result distributor not found, please init session first");
+        }
+        String format = apiRequest.getFormat();
+        boolean sse;
+        if (StringUtils.isBlank(format) || "ndjson".equalsIgnoreCase(format)) {
+            sse = false;
+        } else if ("sse".equalsIgnoreCase(format)) {
+            sse = true;
+        } else {
+            throw new ApiException("unsupported stream format: " + format + ", should be ndjson or sse");
+        }
+
+        DefaultHttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        HttpUtil.setTransferEncodingChunked(response, true);
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE,
+                sse ? "text/event-stream; charset=utf-8" : "application/x-ndjson; charset=utf-8");
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, HttpHeaderValues.NO_CACHE);
+        ctx.writeAndFlush(response);
+
+        //the consumer is removed when the connection is closed
+        final StreamResultConsumer consumer = new StreamResultConsumer(ctx, sse, session, sessionManager);
+        resultDistributor.addConsumer(consumer);
+        ctx.channel().closeFuture().addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                resultDistributor.removeConsumer(consumer);
             }
-        }
+        });
     }
 
-    private synchronized Job createJob(List<CliToken> args, Session session, ResultDistributor resultDistributor) {
-        Job job = jobController.createJob(commandManager, args, session, new ApiJobHandler(session), new ApiTerm(session), resultDistributor);
+    private synchronized Job createJob(List<CliToken> args, Session session, ResultDistributor resultDistributor,
+                                       ExecCompletion completion) {
+        Job job = jobController.createJob(commandManager, args, session, new ApiJobHandler(session, completion), new ApiTerm(session), resultDistributor);
         return job;
     }
 
     private Job createJob(String line, Session session, ResultDistributor resultDistributor) {
+        return createJob(line, session, resultDistributor, null);
+    }
+
+    private Job createJob(String line, Session session, ResultDistributor resultDistributor, ExecCompletion completion) {
         historyManager.addHistory(line);
-        return createJob(CliTokens.tokenize(line), session, resultDistributor);
+        return createJob(CliTokens.tokenize(line), session, resultDistributor, completion);
     }
 
     private ApiResponse createResponse(ApiState apiState, String message) {
@@ -539,12 +641,122 @@ public class HttpApiHandler {
         return buf.toString(CharsetUtil.UTF_8);
     }
 
+    /**
+     * exec 请求的完成：job 结束（终止或者被挂起）或者超时，谁先发生就由谁完成，只完成一次
+     */
+    private class ExecCompletion implements Runnable {
+        private final Session session;
+        private final boolean oneTimeAccess;
+        private final ApiResponse response;
+        private final Map<String, Object> body;
+        private final int timeout;
+        private final ScheduledExecutorService timer;
+        private final Handler<ApiResponse> callback;
+        private final AtomicBoolean completed = new AtomicBoolean(false);
+        private volatile Job job;
+        private volatile PackingResultDistributor resultDistributor;
+        private volatile ScheduledFuture<?> timeoutFuture;
+
+        ExecCompletion(Session session, boolean oneTimeAccess, ApiResponse response, Map<String, Object> body,
+                       int timeout, ScheduledExecutorService timer, Handler<ApiResponse> callback) {
+            this.session = session;
+            this.oneTimeAccess = oneTimeAccess;
+            this.response = response;
+            this.body = body;
+            this.timeout = timeout;
+            this.timer = timer;
+            this.callback = callback;
+        }
+
+        /**
+         * job 已经创建，开始计算超时
+         */
+        void start(Job job, PackingResultDistributor resultDistributor) {
+            this.job = job;
+            this.resultDistributor = resultDistributor;
+            timeoutFuture = timer.schedule(this, timeout, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 超时
+         */
+        @Override
+        public void run() {
+            complete(true);
+        }
+
+        /**
+         * job 终止或者被挂起
+         */
+        void onJobFinished() {
+            complete(false);
+        }
+
+        /**
+         * job 没有运行起来，直接返回 response 里已经设置的结果
+         */
+        void completeNow() {
+            if (completed.compareAndSet(false, true)) {
+                finish();
+            }
+        }
+
+        private void complete(boolean timeExpired) {
+            if (job == null || !completed.compareAndSet(false, true)) {
+                return;
+            }
+            ScheduledFuture<?> future = timeoutFuture;
+            if (future != null) {
+                future.cancel(false);
+            }
+            try {
+                if (timeExpired) {
+                    logger.warn("Job is exceeded time limit, force interrupt it, jobId: {}", job.id());
+                    job.interrupt();
+                    response.setState(ApiState.INTERRUPTED).setMessage("The job is exceeded time limit, force interrupt");
+                } else {
+                    response.setState(ApiState.SUCCEEDED);
+                }
+
+                //packing results
+                body.put("jobId", job.id());
+                body.put("jobStatus", job.status());
+                body.put("timeExpired", timeExpired);
+                if (timeExpired) {
+                    body.put("timeout", timeout);
+                }
+                body.put("results", resultDistributor.getResults());
+
+                response.setSessionId(session.getSessionId())
+                        //.setConsumerId(consumerId)
+                        .setBody(body);
+            } catch (Throwable e) {
+                logger.error("Complete exec request failed: " + e.getMessage(), e);
+                response.setState(ApiState.FAILED).setMessage("Exec command failed:" + e.getMessage());
+            } finally {
+                finish();
+            }
+        }
+
+        private void finish() {
+            try {
+                if (oneTimeAccess) {
+                    sessionManager.removeSession(session.getSessionId());
+                }
+            } finally {
+                callback.handle(response);
+            }
+        }
+    }
+
     private class ApiJobHandler implements JobListener {
 
         private Session session;
+        private ExecCompletion completion;
 
-        public ApiJobHandler(Session session) {
+        public ApiJobHandler(Session session, ExecCompletion completion) {
             this.session = session;
+            this.completion = completion;
         }
 
         @Override
@@ -566,6 +778,9 @@ public class HttpApiHandler {
                 session.setForegroundJob(null);
                 updateSessionInputStatus(session, InputStatus.ALLOW_INPUT);
             }
+            if (completion != null) {
+                completion.onJobFinished();
+            }
         }
 
         @Override
@@ -574,6 +789,9 @@ public class HttpApiHandler {
                 session.setForegroundJob(null);
                 updateSessionInputStatus(session, InputStatus.ALLOW_INPUT);
             }
+            if (completion != null) {
+                completion.onJobFinished();
+            }
         }
     }
 
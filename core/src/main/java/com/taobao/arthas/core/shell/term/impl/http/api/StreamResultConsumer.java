@@ -0,0 +1,199 @@
+package com.taobao.arthas.core.shell.term.impl.http.api;
+
+import com.alibaba.arthas.deps.org.slf4j.Logger;
+import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
+import com.taobao.arthas.core.command.model.ResultModel;
+import com.taobao.arthas.core.distribution.BoundedResultQueue;
+import com.taobao.arthas.core.distribution.DistributorOptions;
+import com.taobao.arthas.core.distribution.ResultConsumer;
+import com.taobao.arthas.core.shell.session.Session;
+import com.taobao.arthas.core.shell.session.SessionManager;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.CharsetUtil;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <pre>
+ * stream_results 的结果消费者，把命令结果逐条推送到一个长连接的 chunked 响应里。
+ *
+ * 1. 分发线程调用 appendResult 只是把结果放进队列，不会堵塞
+ * 2. 在 channel 的 executor 里把队列里的结果序列化成 ndjson（一行一个 json）或者 sse（event/data）写出，一批只 flush 一次
+ * 3. channel 不可写（写缓冲超过高水位）时暂停写出，等已经写出的数据 flush 之后再继续；
+ *    这期间队列满了按 result-overflow-policy 丢弃或者合并结果，并且报告为不健康
+ * </pre>
+ */
+class StreamResultConsumer implements ResultConsumer {
+    private static final Logger logger = LoggerFactory.getLogger(StreamResultConsumer.class);
+    private static final byte[] NEW_LINE = "\n".getBytes(CharsetUtil.UTF_8);
+    private static final long RETRY_DRAIN_MILLIS = 10;
+    private static final int ENCODE_INITIAL_CAPACITY = 1024;
+
+    private final ChannelHandlerContext ctx;
+    private final boolean sse;
+    private final Session session;
+    private final SessionManager sessionManager;
+    private final BoundedResultQueue resultQueue = new BoundedResultQueue(DistributorOptions.resultQueueSize);
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+    private final Runnable scheduleDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            scheduleDrain();
+        }
+    };
+    private volatile long lastAccessTime;
+    private volatile boolean closed;
+    private String consumerId;
+
+    StreamResultConsumer(ChannelHandlerContext ctx, boolean sse, Session session, SessionManager sessionManager) {
+        this.ctx = ctx;
+        this.sse = sse;
+        this.session = session;
+        this.sessionManager = sessionManager;
+        this.lastAccessTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public boolean appendResult(ResultModel result) {
+        if (closed) {
+            return false;
+        }
+        //客户端读得慢时按 result-overflow-policy 丢弃或者合并结果，这里不能堵塞分发线程
+        boolean appended = resultQueue.offer(result);
+        scheduleDrain();
+        return appended;
+    }
+
+    private void scheduleDrain() {
+        if (!closed && drainScheduled.compareAndSet(false, true)) {
+            ctx.executor().execute(drainTask);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        if (closed) {
+            return;
+        }
+        ChannelFuture lastWrite = null;
+        ResultModel result;
+        while (ctx.channel().isWritable() && (result = resultQueue.poll()) != null) {
+            ByteBuf content;
+            try {
+                content = encode(result);
+            } catch (ApiJsonEncoder.ResponseTooLargeException e) {
+                logger.warn("skip stream result, type: {}, {}", result.getType(), e.getMessage());
+                continue;
+            }
+            lastWrite = ctx.write(new DefaultHttpContent(content));
+        }
+        if (lastWrite != null) {
+            ctx.flush();
+            lastAccessTime = System.currentTimeMillis();
+            sessionManager.updateAccessTime(session);
+        }
+        if (!resultQueue.isEmpty()) {
+            // channel 不可写，等写出的数据 flush 之后再继续
+            if (lastWrite != null) {
+                lastWrite.addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) {
+                        scheduleDrain();
+                    }
+                });
+            } else {
+                ctx.executor().schedule(scheduleDrainTask, RETRY_DRAIN_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private ByteBuf encode(ResultModel result) {
+        ByteBuf buf = ctx.alloc().buffer(ENCODE_INITIAL_CAPACITY, HttpApiHandler.MAX_RESPONSE_LENGTH);
+        try {
+            if (sse) {
+                buf.writeCharSequence("event: " + result.getType() + "\ndata: ", CharsetUtil.UTF_8);
+            }
+            ApiJsonEncoder.writeJson(buf, result);
+            buf.writeBytes(NEW_LINE);
+            if (sse) {
+                buf.writeBytes(NEW_LINE);
+            }
+            return buf;
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 推送的结果不能再拉取
+     */
+    @Override
+    public List<ResultModel> pollResults() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * 连接没有断开时一直是活跃的，不会被当作不活跃的 consumer 移除
+     */
+    @Override
+    public long getLastAccessTime() {
+        return closed ? lastAccessTime : System.currentTimeMillis();
+    }
+
+    /**
+     * 结束 chunked 响应并且关闭连接
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        ctx.executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT).addListener(ChannelFutureListener.CLOSE);
+            }
+        });
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public boolean isPolling() {
+        return !closed;
+    }
+
+    @Override
+    public String getConsumerId() {
+        return consumerId;
+    }
+
+    @Override
+    public void setConsumerId(String consumerId) {
+        this.consumerId = consumerId;
+    }
+
+    @Override
+    public boolean isHealthy() {
+        return !closed && resultQueue.remainingCapacity() > 0;
+    }
+}
@@ -0,0 +1,479 @@
+package com.taobao.arthas.core.util;
+
+import com.alibaba.arthas.deps.org.slf4j.Logger;
+import com.alibaba.arthas.deps.org.slf4j.LoggerFactory;
+import com.alibaba.deps.org.objectweb.asm.ClassReader;
+import com.taobao.arthas.core.util.matcher.EqualsMatcher;
+import com.taobao.arthas.core.util.matcher.Matcher;
+import com.taobao.arthas.core.util.matcher.WildcardMatcher;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.lang.instrument.Instrumentation;
+import java.lang.ref.WeakReference;
+import java.security.ProtectionDomain;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <pre>
+ * 已加载类的索引，避免每次搜索类都调用 Instrumentation#getAllLoadedClasses 并对所有类做匹配。
+ *
+ * 1. 第一次搜索时用 getAllLoadedClasses 建立索引
+ * 2. 之后通过 ClassFileTransformer 记录新加载的类名、 ClassLoader 以及 class 文件里的父类/接口名，先不解析成 Class
+ * 3. 搜索时只解析类名匹配的，或者父类/接口在搜索范围内的新类：按 ClassLoader 分组，每个涉及到的 ClassLoader 调用一次
+ *    getInitiatedClasses 。这一次调用的开销和这个 ClassLoader 加载的类数量成正比（应用 ClassLoader 通常有上万个类，几毫秒），
+ *    和搜索无关的新类（比如动态代理、反射生成的类）不会触发这个调用。只查找已经定义好的类，不会触发类加载
+ * 4. 没有解析的新类超过 MAX_PENDING_CLASSES 时，下次搜索重建索引
+ * 5. 保存 父类/接口 到直接子类的关系，搜索子类时不需要遍历所有类
+ *
+ * 所有的类都是弱引用，不影响类的卸载。
+ * lambda 等 hidden class 和数组类不会经过 ClassFileTransformer ，只有完整类名的搜索才使用索引，
+ * 带通配符/正则的搜索，以及搜索接口/Object 的子类时仍然遍历 getAllLoadedClasses 。
+ * </pre>
+ *
+ * @see SearchUtils
+ */
+public class ClassIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ClassIndex.class);
+
+    // 积压的新加载类超过这个数量时不再逐个解析，下次搜索时重建索引
+    private static final int MAX_PENDING_CLASSES = 10000;
+
+    private static volatile ClassIndex instance;
+
+    private final Instrumentation instrumentation;
+    private final ClassFileTransformer transformer;
+
+    // transformer 收到的新类，搜索时再移到 pendingByName/pendingBySuperName 里
+    private final ConcurrentLinkedQueue<PendingClass> pendingClasses = new ConcurrentLinkedQueue<PendingClass>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private volatile boolean built = false;
+    private volatile boolean needRebuild = false;
+
+    // className -> 不同 ClassLoader 加载的同名类
+    private final TreeMap<String, List<WeakReference<Class<?>>>> classesByName = new TreeMap<String, List<WeakReference<Class<?>>>>();
+    // 父类/接口 -> 直接子类
+    private final Map<Class<?>, List<WeakReference<Class<?>>>> directSubClasses = new WeakHashMap<Class<?>, List<WeakReference<Class<?>>>>();
+
+    // 还没有解析成 Class 的新类： className -> 新类， 父类/接口名 -> 新类
+    private final TreeMap<String, List<PendingClass>> pendingByName = new TreeMap<String, List<PendingClass>>();
+    private final Map<String, List<PendingClass>> pendingBySuperName = new HashMap<String, List<PendingClass>>();
+
+    ClassIndex(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+        this.transformer = new ClassFileTransformer() {
+            @Override
+            public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                    ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
+                if (classBeingRedefined == null && className != null) {
+                    onClassLoad(loader, className, classfileBuffer);
+                }
+                return null;
+            }
+        };
+    }
+
+    public static synchronized void init(Instrumentation instrumentation) {
+        if (instance == null) {
+            instance = new ClassIndex(instrumentation);
+            instrumentation.addTransformer(instance.transformer);
+        }
+    }
+
+    public static synchronized void destroy() {
+        if (instance != null) {
+            instance.instrumentation.removeTransformer(instance.transformer);
+            instance = null;
+        }
+    }
+
+    /**
+     * @return 没有初始化时返回 null
+     */
+    public static ClassIndex getInstance() {
+        return instance;
+    }
+
+    public Instrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    /**
+     * 只有完整类名的搜索才能用索引。 hidden class 和数组类不在索引里，而任何通配符/正则都可能匹配到之后创建的 lambda 类，
+     * 比如 demo.* 会匹配 demo.MathGame$$Lambda/0x0000000800c01234
+     */
+    public static boolean isSupported(Matcher<String> classNameMatcher) {
+        String className;
+        if (classNameMatcher instanceof EqualsMatcher) {
+            Object pattern = ((EqualsMatcher<?>) classNameMatcher).getPattern();
+            className = pattern instanceof String ? (String) pattern : null;
+        } else if (classNameMatcher instanceof WildcardMatcher) {
+            String pattern = ((WildcardMatcher) classNameMatcher).getPattern();
+            className = pattern != null && pattern.equals(literalPrefix(classNameMatcher)) ? pattern : null;
+        } else {
+            return false;
+        }
+        return className != null && !className.contains("/") && !className.startsWith("[");
+    }
+
+    /**
+     * lambda 等 hidden class 实现的是接口，父类是 Object ，数组类实现了 Cloneable/Serializable ，
+     * 这些类都不在索引里，搜索接口或者 Object 的子类时不能用索引
+     */
+    public static boolean isSupported(Set<Class<?>> classSet) {
+        for (Class<?> clazz : classSet) {
+            if (clazz.isInterface() || clazz == Object.class) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param classfileBuffer 用来读取父类/接口名，为 null 时只能按类名找到这个类
+     */
+    void onClassLoad(ClassLoader loader, String className, byte[] classfileBuffer) {
+        if (!built || needRebuild) {
+            return;
+        }
+        if (pendingCount.incrementAndGet() > MAX_PENDING_CLASSES) {
+            needRebuild = true;
+            return;
+        }
+        String[] superNames = null;
+        if (classfileBuffer != null) {
+            try {
+                ClassReader reader = new ClassReader(classfileBuffer);
+                String superName = reader.getSuperName();
+                String[] interfaces = reader.getInterfaces();
+                superNames = new String[interfaces.length + (superName == null ? 0 : 1)];
+                for (int i = 0; i < interfaces.length; ++i) {
+                    superNames[i] = interfaces[i].replace('/', '.');
+                }
+                if (superName != null) {
+                    superNames[interfaces.length] = superName.replace('/', '.');
+                }
+            } catch (Throwable e) {
+                // ignore
+            }
+        }
+        pendingClasses.add(new PendingClass(loader, className.replace('/', '.'), superNames));
+    }
+
+    public synchronized Set<Class<?>> searchClass(Matcher<String> classNameMatcher, int limit) {
+        String prefix = literalPrefix(classNameMatcher);
+        if (!refresh()) {
+            NavigableMap<String, List<PendingClass>> pendingCandidates = pendingByName;
+            if (!prefix.isEmpty()) {
+                pendingCandidates = pendingByName.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+            }
+            List<PendingClass> toResolve = new ArrayList<PendingClass>();
+            for (Map.Entry<String, List<PendingClass>> entry : pendingCandidates.entrySet()) {
+                if (classNameMatcher.matching(entry.getKey())) {
+                    toResolve.addAll(entry.getValue());
+                }
+            }
+            resolve(toResolve);
+        }
+
+        NavigableMap<String, List<WeakReference<Class<?>>>> candidates = classesByName;
+        if (!prefix.isEmpty()) {
+            candidates = classesByName.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+        }
+
+        Set<Class<?>> matches = new HashSet<Class<?>>();
+        Iterator<Map.Entry<String, List<WeakReference<Class<?>>>>> it = candidates.entrySet().iterator();
+        while (it.hasNext() && matches.size() < limit) {
+            Map.Entry<String, List<WeakReference<Class<?>>>> entry = it.next();
+            if (!classNameMatcher.matching(entry.getKey())) {
+                continue;
+            }
+            List<WeakReference<Class<?>>> classes = entry.getValue();
+            collect(classes, matches, limit);
+            if (classes.isEmpty()) {
+                it.remove();
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return classSet 里的类以及它们的所有子类/实现类
+     */
+    public synchronized Set<Class<?>> searchSubClass(Set<Class<?>> classSet) {
+        if (!refresh()) {
+            // 先按 父类/接口名 找出所有可能是子类的新类，再一起解析
+            Set<PendingClass> toResolve = new HashSet<PendingClass>();
+            ArrayDeque<String> superNames = new ArrayDeque<String>();
+            for (Class<?> clazz : classSet) {
+                superNames.add(clazz.getName());
+            }
+            Set<String> visited = new HashSet<String>();
+            while (!superNames.isEmpty()) {
+                String superName = superNames.poll();
+                List<PendingClass> subClasses = visited.add(superName) ? pendingBySuperName.get(superName) : null;
+                if (subClasses == null) {
+                    continue;
+                }
+                for (PendingClass subClass : subClasses) {
+                    if (toResolve.add(subClass)) {
+                        superNames.add(subClass.className);
+                    }
+                }
+            }
+            resolve(toResolve);
+        }
+
+        Set<Class<?>> matches = new HashSet<Class<?>>();
+        ArrayDeque<Class<?>> queue = new ArrayDeque<Class<?>>();
+        for (Class<?> clazz : classSet) {
+            if (matches.add(clazz)) {
+                queue.add(clazz);
+            }
+        }
+        List<Class<?>> subClasses = new ArrayList<Class<?>>();
+        while (!queue.isEmpty()) {
+            List<WeakReference<Class<?>>> children = directSubClasses.get(queue.poll());
+            if (children == null) {
+                continue;
+            }
+            subClasses.clear();
+            collect(children, subClasses, Integer.MAX_VALUE);
+            for (Class<?> subClass : subClasses) {
+                if (matches.add(subClass)) {
+                    queue.add(subClass);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * 把 transformer 收到的新类按类名和 父类/接口名 记录下来，这时还不解析
+     *
+     * @return 是否重建了索引，重建之后没有待解析的类
+     */
+    private boolean refresh() {
+        if (!built || needRebuild) {
+            rebuild();
+            return true;
+        }
+        PendingClass pending;
+        while ((pending = pendingClasses.poll()) != null) {
+            if (!pending.isLoaderAlive()) {
+                pendingCount.decrementAndGet();
+                continue;
+            }
+            addPending(pendingByName, pending.className, pending);
+            for (String superName : pending.superNames) {
+                addPending(pendingBySuperName, superName, pending);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按 ClassLoader 分组，每个 ClassLoader 只调用一次 getInitiatedClasses 。
+     * transform 之后类还没有定义完成的，下次搜索时再找一次；定义失败的类不会再出现，第二次找不到就丢掉
+     */
+    private void resolve(Collection<PendingClass> candidates) {
+        if (candidates.isEmpty()) {
+            return;
+        }
+        Map<ClassLoader, Map<String, PendingClass>> pendingByLoader = new IdentityHashMap<ClassLoader, Map<String, PendingClass>>();
+        for (PendingClass pending : candidates) {
+            if (!pending.isLoaderAlive()) {
+                // ClassLoader 已经被回收
+                removePending(pending);
+                continue;
+            }
+            ClassLoader loader = pending.getLoader();
+            Map<String, PendingClass> classNames = pendingByLoader.get(loader);
+            if (classNames == null) {
+                classNames = new HashMap<String, PendingClass>();
+                pendingByLoader.put(loader, classNames);
+            }
+            classNames.put(pending.className, pending);
+        }
+
+        for (Map.Entry<ClassLoader, Map<String, PendingClass>> entry : pendingByLoader.entrySet()) {
+            ClassLoader loader = entry.getKey();
+            Map<String, PendingClass> classNames = entry.getValue();
+            for (Class<?> clazz : instrumentation.getInitiatedClasses(loader)) {
+                // transformer 收到的 loader 是定义类的 ClassLoader ，委托给父 ClassLoader 加载的同名类不是要找的
+                if (clazz == null || clazz.getClassLoader() != loader) {
+                    continue;
+                }
+                PendingClass pending = classNames.remove(clazz.getName());
+                if (pending != null) {
+                    removePending(pending);
+                    add(clazz);
+                }
+            }
+            for (PendingClass notDefined : classNames.values()) {
+                if (notDefined.retried) {
+                    removePending(notDefined);
+                } else {
+                    notDefined.retried = true;
+                }
+            }
+        }
+    }
+
+    private void removePending(PendingClass pending) {
+        removePending(pendingByName, pending.className, pending);
+        for (String superName : pending.superNames) {
+            removePending(pendingBySuperName, superName, pending);
+        }
+        pendingCount.decrementAndGet();
+    }
+
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        // 先打开 transformer 的记录，再取所有类，避免漏掉中间加载的类
+        built = true;
+        needRebuild = false;
+        pendingClasses.clear();
+        pendingByName.clear();
+        pendingBySuperName.clear();
+        pendingCount.set(0);
+        classesByName.clear();
+        directSubClasses.clear();
+        Class<?>[] classes = instrumentation.getAllLoadedClasses();
+        for (Class<?> clazz : classes) {
+            add(clazz);
+        }
+        logger.info("build class index, classes: {}, cost: {} ms", classes.length, System.currentTimeMillis() - start);
+    }
+
+    private void add(Class<?> clazz) {
+        if (clazz == null || clazz.isArray() || clazz.isPrimitive()) {
+            return;
+        }
+        if (!addTo(classesByName, clazz.getName(), clazz)) {
+            // 已经在索引里了
+            return;
+        }
+        try {
+            Class<?> superClass = clazz.getSuperclass();
+            if (superClass != null) {
+                addTo(directSubClasses, superClass, clazz);
+            }
+            for (Class<?> interfaceClass : clazz.getInterfaces()) {
+                addTo(directSubClasses, interfaceClass, clazz);
+            }
+        } catch (Throwable e) {
+            // ignore, NoClassDefFoundError etc.
+        }
+    }
+
+    private static <K> boolean addTo(Map<K, List<WeakReference<Class<?>>>> map, K key, Class<?> clazz) {
+        List<WeakReference<Class<?>>> classes = map.get(key);
+        if (classes == null) {
+            classes = new ArrayList<WeakReference<Class<?>>>(1);
+            map.put(key, classes);
+        }
+        for (WeakReference<Class<?>> ref : classes) {
+            if (ref.get() == clazz) {
+                return false;
+            }
+        }
+        classes.add(new WeakReference<Class<?>>(clazz));
+        return true;
+    }
+
+    private static void addPending(Map<String, List<PendingClass>> map, String key, PendingClass pending) {
+        List<PendingClass> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<PendingClass>(1);
+            map.put(key, list);
+        }
+        list.add(pending);
+    }
+
+    private static void removePending(Map<String, List<PendingClass>> map, String key, PendingClass pending) {
+        List<PendingClass> list = map.get(key);
+        if (list != null && list.remove(pending) && list.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    /**
+     * 取出存活的类，顺便清理已经被卸载的类
+     */
+    private static void collect(List<WeakReference<Class<?>>> classes, Collection<Class<?>> result, int limit) {
+        Iterator<WeakReference<Class<?>>> it = classes.iterator();
+        while (it.hasNext() && result.size() < limit) {
+            Class<?> clazz = it.next().get();
+            if (clazz == null) {
+                it.remove();
+            } else {
+                result.add(clazz);
+            }
+        }
+    }
+
+    /**
+     * pattern 开头不含通配符的部分，只有这个前缀的类名才可能匹配
+     */
+    static String literalPrefix(Matcher<String> classNameMatcher) {
+        if (classNameMatcher instanceof EqualsMatcher) {
+            Object pattern = ((EqualsMatcher<?>) classNameMatcher).getPattern();
+            return pattern instanceof String ? (String) pattern : "";
+        }
+        if (!(classNameMatcher instanceof WildcardMatcher)) {
+            return "";
+        }
+        String pattern = ((WildcardMatcher) classNameMatcher).getPattern();
+        if (pattern == null) {
+            return "";
+        }
+        for (int i = 0; i < pattern.length(); ++i) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?' || c == '\\') {
+                return pattern.substring(0, i);
+            }
+        }
+        return pattern;
+    }
+
+    private static class PendingClass {
+        private static final String[] NO_SUPER_NAMES = new String[0];
+
+        private final WeakReference<ClassLoader> loaderRef;
+        private final boolean bootstrap;
+        private final String className;
+        // 父类和接口名
+        private final String[] superNames;
+        private boolean retried;
+
+        PendingClass(ClassLoader loader, String className, String[] superNames) {
+            this.loaderRef = loader == null ? null : new WeakReference<ClassLoader>(loader);
+            this.bootstrap = loader == null;
+            this.className = className;
+            this.superNames = superNames == null ? NO_SUPER_NAMES : superNames;
+        }
+
+        boolean isLoaderAlive() {
+            return bootstrap || loaderRef.get() != null;
+        }
+
+        ClassLoader getLoader() {
+            return bootstrap ? null : loaderRef.get();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.taobao.arthas.core.util;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <pre>
+ * 估算对象图占用的内存大小，用于 tt 等需要长时间持有对象的命令做内存预算。
+ *
+ * 只是估算，不是精确的 retained size ：
+ * 1. 按广度优先遍历，限制遍历深度和对象个数，超过的部分不再统计
+ * 2. 同一个对象只统计一次，不统计 Class/ClassLoader/Thread 这类共享对象
+ * 3. 有 Instrumentation 时用 getObjectSize 取 shallow size ，否则按字段类型粗略计算
+ * 4. 无法反射访问的字段（比如高版本JDK里没有 open 的模块）直接跳过，String/集合类单独处理
+ * </pre>
+ */
+public class ObjectSizeEstimator {
+    private static final int OBJECT_HEADER = 16;
+    private static final int REFERENCE_SIZE = 8;
+
+    private static final ClassValue<Field[]> REFERENCE_FIELDS = new ClassValue<Field[]>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            List<Field> fields = new ArrayList<Field>();
+            for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+                        continue;
+                    }
+                    try {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    } catch (RuntimeException e) {
+                        // ignore, InaccessibleObjectException in java 9+
+                    }
+                }
+            }
+            return fields.toArray(new Field[0]);
+        }
+    };
+
+    private final Instrumentation instrumentation;
+    private final int maxDepth;
+    private final int maxObjects;
+
+    /**
+     * @param instrumentation 可以为 null
+     * @param maxDepth        最大遍历深度，根对象的深度是0
+     * @param maxObjects      最多统计的对象个数
+     */
+    public ObjectSizeEstimator(Instrumentation instrumentation, int maxDepth, int maxObjects) {
+        this.instrumentation = instrumentation;
+        this.maxDepth = maxDepth;
+        this.maxObjects = maxObjects;
+    }
+
+    public long estimate(Object... roots) {
+        if (roots == null) {
+            return 0;
+        }
+        IdentityHashMap<Object, Boolean> visited = new IdentityHashMap<Object, Boolean>();
+        ArrayDeque<Object> queue = new ArrayDeque<Object>();
+        for (Object root : roots) {
+            if (root != null && !isShared(root) && visited.put(root, Boolean.TRUE) == null) {
+                queue.add(root);
+            }
+        }
+
+        long size = 0;
+        int depth = 0;
+        int count = 0;
+        while (!queue.isEmpty() && depth <= maxDepth) {
+            // 一次处理一层
+            for (int levelSize = queue.size(); levelSize > 0; --levelSize) {
+                Object object = queue.poll();
+                size += shallowSize(object);
+                if (++count >= maxObjects) {
+                    return size;
+                }
+                if (depth < maxDepth) {
+                    addChildren(object, visited, queue);
+                }
+            }
+            depth++;
+        }
+        return size;
+    }
+
+    private void addChildren(Object object, IdentityHashMap<Object, Boolean> visited, ArrayDeque<Object> queue) {
+        Class<?> clazz = object.getClass();
+        try {
+            if (clazz.isArray()) {
+                if (!clazz.getComponentType().isPrimitive()) {
+                    for (Object element : (Object[]) object) {
+                        offer(element, visited, queue);
+                    }
+                }
+            } else if (object instanceof String) {
+                // String 的 value 数组在 shallowSize 里已经算过
+            } else if (object instanceof Collection && clazz.getName().startsWith("java.")) {
+                for (Object element : (Collection<?>) object) {
+                    offer(element, visited, queue);
+                }
+            } else if (object instanceof Map && clazz.getName().startsWith("java.")) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+                    offer(entry.getKey(), visited, queue);
+                    offer(entry.getValue(), visited, queue);
+                }
+            } else {
+                for (Field field : REFERENCE_FIELDS.get(clazz)) {
+                    offer(field.get(object), visited, queue);
+                }
+            }
+        } catch (Throwable e) {
+            // 并发修改的集合等，忽略剩下的部分
+        }
+    }
+
+    private void offer(Object object, IdentityHashMap<Object, Boolean> visited, ArrayDeque<Object> queue) {
+        if (object != null && !isShared(object) && visited.put(object, Boolean.TRUE) == null) {
+            queue.add(object);
+        }
+    }
+
+    private static boolean isShared(Object object) {
+        return object instanceof Class || object instanceof ClassLoader || object instanceof Thread;
+    }
+
+    long shallowSize(Object object) {
+        long size;
+        if (instrumentation != null) {
+            size = instrumentation.getObjectSize(object);
+        } else if (object.getClass().isArray()) {
+            size = align(OBJECT_HEADER + (long) Array.getLength(object)
+                    * primitiveSize(object.getClass().getComponentType()));
+        } else {
+            size = align(OBJECT_HEADER + (long) REFERENCE_FIELDS.get(object.getClass()).length * REFERENCE_SIZE);
+        }
+        if (object instanceof String) {
+            // 按 char[] 计算，高版本JDK压缩字符串时会偏大
+            size += align(OBJECT_HEADER + ((String) object).length() * 2L);
+        }
+        return size;
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        return REFERENCE_SIZE;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -29,6 +29,10 @@ public class SearchUtils {
         if (classNameMatcher == null) {
             return Collections.emptySet();
         }
+        ClassIndex classIndex = classIndex(inst);
+        if (classIndex != null && ClassIndex.isSupported(classNameMatcher)) {
+            return classIndex.searchClass(classNameMatcher, limit);
+        }
         final Set<Class<?>> matches = new HashSet<Class<?>>();
         for (Class<?> clazz : inst.getAllLoadedClasses()) {
             if (clazz == null) {
@@ -108,6 +112,10 @@ public class SearchUtils {
      * @return 匹配的子类集合
      */
     public static Set<Class<?>> searchSubClass(Instrumentation inst, Set<Class<?>> classSet) {
+        ClassIndex classIndex = classIndex(inst);
+        if (classIndex != null && ClassIndex.isSupported(classSet)) {
+            return classIndex.searchSubClass(classSet);
+        }
         final Set<Class<?>> matches = new HashSet<Class<?>>();
         for (Class<?> clazz : inst.getAllLoadedClasses()) {
             if (clazz == null) {
@@ -123,6 +131,20 @@ public class SearchUtils {
         return matches;
     }
 
+    /**
+     * @return 打开了 class-index 选项并且已经初始化时返回索引，否则返回 null
+     */
+    private static ClassIndex classIndex(Instrumentation inst) {
+        if (!GlobalOptions.isUsingClassIndex) {
+            return null;
+        }
+        ClassIndex classIndex = ClassIndex.getInstance();
+        if (classIndex == null || classIndex.getInstrumentation() != inst) {
+            return null;
+        }
+        return classIndex;
+    }
+
     /**
      * 搜索目标类的内部类
      *
@@ -14,6 +14,10 @@ public class EqualsMatcher<T> implements Matcher<T> {
         this.pattern = pattern;
     }
 
+    public T getPattern() {
+        return pattern;
+    }
+
     @Override
     public boolean matching(T target) {
         return ArthasCheckUtils.isEquals(target, pattern);
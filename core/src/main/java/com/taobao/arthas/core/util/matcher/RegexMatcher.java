@@ -12,6 +12,10 @@ public class RegexMatcher implements Matcher<String> {
         this.pattern = pattern;
     }
 
+    public String getPattern() {
+        return pattern;
+    }
+
     @Override
     public boolean matching(String target) {
         return null != target
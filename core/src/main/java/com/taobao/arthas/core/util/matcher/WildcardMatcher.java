@@ -19,6 +19,10 @@ public class WildcardMatcher implements Matcher<String> {
     }
 
 
+    public String getPattern() {
+        return pattern;
+    }
+
     @Override
     public boolean matching(String target) {
         return match(target, pattern, 0, 0);
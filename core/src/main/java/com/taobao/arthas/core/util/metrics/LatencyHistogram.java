@@ -0,0 +1,123 @@
+package com.taobao.arthas.core.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <pre>
+ * 固定内存的耗时直方图，按 HdrHistogram 的方式做对数分桶：
+ * 小于 32ns 的值每 1ns 一个桶，之后每个 2 的幂区间再均分为 16 个桶，相对误差不超过 1/16 。
+ * 最大记录到 2^42 ns（约73分钟），超过的值记到最后一个桶里。
+ *
+ * 记录时只做一次原子自增，不加锁，不创建对象。
+ * 统计周期结束时调用 {@link #snapshotAndReset()} 取出数据并清零，再从快照里计算百分位。
+ * </pre>
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_COUNT = SUB_BUCKET_HALF_COUNT << 1;
+    private static final int MAX_VALUE_BITS = 42;
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+    static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value 耗时，单位是 ns ，小于0的值按0记录
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        buckets.incrementAndGet(bucketIndex(value));
+
+        long currentMax = max.get();
+        while (value > currentMax) {
+            if (max.compareAndSet(currentMax, value)) {
+                break;
+            }
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * 取出当前数据并清零。和记录并发执行时，正在记录的值可能会被计入下一个周期。
+     */
+    public Snapshot snapshotAndReset() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            long count = buckets.getAndSet(i, 0);
+            counts[i] = count;
+            total += count;
+        }
+        return new Snapshot(counts, total, max.getAndSet(0));
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * 桶内的最大值，百分位按这个值返回
+     */
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = (index & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public static class Snapshot {
+        private final long[] counts;
+        private final long total;
+        private final long max;
+
+        Snapshot(long[] counts, long total, long max) {
+            this.counts = counts;
+            this.total = total;
+            this.max = max;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile 百分位，比如 99.9
+         * @return 不小于该百分位的耗时，单位是 ns ，没有数据时返回0
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long countAtPercentile = (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total);
+            if (countAtPercentile < 1) {
+                countAtPercentile = 1;
+            }
+            long count = 0;
+            for (int i = 0; i < counts.length; ++i) {
+                count += counts[i];
+                if (count >= countAtPercentile) {
+                    return Math.min(highestEquivalentValue(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
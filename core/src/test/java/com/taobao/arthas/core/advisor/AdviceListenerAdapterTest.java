@@ -0,0 +1,85 @@
+package com.taobao.arthas.core.advisor;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class AdviceListenerAdapterTest {
+
+    @Test
+    public void testSampleEvery() throws Throwable {
+        CountAdviceListener listener = new CountAdviceListener();
+        listener.setSample(1.0, 3);
+
+        for (int i = 0; i < 9; ++i) {
+            listener.before(AdviceListenerAdapterTest.class, "test", "()V", null, null);
+            listener.afterReturning(AdviceListenerAdapterTest.class, "test", "()V", null, null, null);
+        }
+        Assertions.assertThat(listener.beforeCount).isEqualTo(3);
+        Assertions.assertThat(listener.afterCount).isEqualTo(3);
+    }
+
+    @Test
+    public void testNestedInvocationFollowOutermost() throws Throwable {
+        CountAdviceListener listener = new CountAdviceListener();
+        listener.setSample(1.0, 2);
+
+        for (int i = 0; i < 4; ++i) {
+            listener.before(AdviceListenerAdapterTest.class, "outer", "()V", null, null);
+            listener.before(AdviceListenerAdapterTest.class, "inner", "()V", null, null);
+            Assertions.assertThat(listener.isSampledOut()).isEqualTo(i % 2 == 0);
+            listener.afterThrowing(AdviceListenerAdapterTest.class, "inner", "()V", null, null, new Exception());
+            listener.afterReturning(AdviceListenerAdapterTest.class, "outer", "()V", null, null, null);
+        }
+        Assertions.assertThat(listener.beforeCount).isEqualTo(4);
+        Assertions.assertThat(listener.afterCount).isEqualTo(4);
+        Assertions.assertThat(listener.isSampledOut()).isFalse();
+    }
+
+    @Test
+    public void testExitSkippedWhileSuspended() throws Throwable {
+        CountAdviceListener listener = new CountAdviceListener();
+        listener.setSample(1.0, 2);
+
+        // before 之后进程被挂起，after 被 SpyImpl 跳过
+        listener.before(AdviceListenerAdapterTest.class, "test", "()V", null, null);
+        listener.onSkipped();
+        Assertions.assertThat(listener.isSampledOut()).isFalse();
+
+        // 恢复之后重新从最外层开始采样，不会一直跟随挂起前的结果
+        listener.before(AdviceListenerAdapterTest.class, "test", "()V", null, null);
+        listener.afterReturning(AdviceListenerAdapterTest.class, "test", "()V", null, null, null);
+        Assertions.assertThat(listener.beforeCount).isEqualTo(1);
+        Assertions.assertThat(listener.afterCount).isEqualTo(1);
+    }
+
+    @Test
+    public void testNoSample() throws Throwable {
+        CountAdviceListener listener = new CountAdviceListener();
+        // after without before is still processed when sampling is off
+        listener.afterReturning(AdviceListenerAdapterTest.class, "test", "()V", null, null, null);
+        Assertions.assertThat(listener.afterCount).isEqualTo(1);
+    }
+
+    static class CountAdviceListener extends AdviceListenerAdapter {
+        int beforeCount;
+        int afterCount;
+
+        @Override
+        public void before(ClassLoader loader, Class<?> clazz, ArthasMethod method, Object target, Object[] args)
+                throws Throwable {
+            beforeCount++;
+        }
+
+        @Override
+        public void afterReturning(ClassLoader loader, Class<?> clazz, ArthasMethod method, Object target,
+                Object[] args, Object returnObject) throws Throwable {
+            afterCount++;
+        }
+
+        @Override
+        public void afterThrowing(ClassLoader loader, Class<?> clazz, ArthasMethod method, Object target,
+                Object[] args, Throwable throwable) throws Throwable {
+            afterCount++;
+        }
+    }
+}
@@ -87,6 +87,14 @@ public class EnhancerTest {
                         .findMethodInsnNode(resultMethodNode2, Type.getInternalName(SpyAPI.class), "atInvokeException")
                         .size());
 
+        // 同一个函数总是分配到同一个 adviceId，listener 已经预先放到 MethodAdvice 里
+        int adviceId = AdviceListenerManager.adviceId(inClassLoader, className, resultMethodNode1.name,
+                resultMethodNode1.desc);
+        Assertions.assertThat(AdviceListenerManager.adviceId(inClassLoader, className, resultMethodNode2.name,
+                resultMethodNode2.desc)).isEqualTo(adviceId);
+        Assertions.assertThat(AdviceListenerManager.queryMethodAdvice(adviceId).getListeners()).containsExactly(listener);
+        Assertions.assertThat(AdviceListenerManager.queryMethodAdvice(adviceId).getMethodName()).isEqualTo("print");
+
         String string = Decompiler.decompile(result);
 
         System.err.println(string);
@@ -40,6 +40,17 @@ public class OgnlExpressTest {
         System.clearProperty("arthas.ognl.test2");
     }
 
+    @Test
+    public void testParsedExpressionCache() throws Exception {
+        String express = "params[0] + 1";
+        Assert.assertSame(OgnlExpress.parseExpression(express), OgnlExpress.parseExpression(express));
+
+        Express express1 = ExpressFactory.unpooledExpress(OgnlExpressTest.class.getClassLoader());
+        Express express2 = ExpressFactory.unpooledExpress(OgnlExpressTest.class.getClassLoader());
+        Assert.assertEquals(express1.bind("params", new Object[] { 1 }).get("#params[0] + 1"), 2);
+        Assert.assertEquals(express2.bind("params", new Object[] { 41 }).get("#params[0] + 1"), 42);
+    }
+
     @Test
     public void testInvalidOgnlExpr() {
         try {
@@ -0,0 +1,84 @@
+package com.taobao.arthas.core.command.model;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class TraceTreeTest {
+
+    @Test
+    public void testFindChildWithIndex() {
+        TraceTree tree = new TraceTree(new ThreadNode());
+        for (int round = 0; round < 3; ++round) {
+            for (int i = 0; i < 100; ++i) {
+                tree.begin("demo.MathGame", "run" + i, i, true);
+                tree.end();
+            }
+        }
+        Assertions.assertThat(tree.getRoot().getChildren()).hasSize(100);
+        Assertions.assertThat(tree.getMethodNodeCount()).isEqualTo(100);
+        Assertions.assertThat(tree.getNodeCount()).isEqualTo(300);
+        MethodNode node = tree.getRoot().findChild("demo.MathGame", "run42", 42);
+        Assertions.assertThat(node.getTimes()).isEqualTo(3);
+        Assertions.assertThat(tree.getRoot().findChild("demo.MathGame", "run42", 43)).isNull();
+    }
+
+    @Test
+    public void testChildIndexResize() {
+        ThreadNode root = new ThreadNode();
+        // 第 9 个子节点时建立 32 个槽的索引，第 17 个子节点时扩容到 64 ，第 33 个时扩容到 128
+        for (int i = 0; i < 40; ++i) {
+            root.addChild(new MethodNode("demo.MathGame", "run" + i, i, true));
+            if (i >= 8) {
+                Assertions.assertThat(root.childIndexSize()).isEqualTo(i + 1);
+            }
+        }
+        for (int i = 0; i < 40; ++i) {
+            Assertions.assertThat(root.findChild("demo.MathGame", "run" + i, i).getMethodName()).isEqualTo("run" + i);
+        }
+    }
+
+    @Test
+    public void testMaxNodes() {
+        TraceTree tree = new TraceTree(new ThreadNode(), null, 10);
+        tree.begin("demo.MathGame", "run", -1, false);
+        for (int i = 0; i < 100; ++i) {
+            tree.begin("demo.MathGame", "call" + i, i, true);
+            // 合并节点内部的调用不再展开
+            tree.begin("demo.MathGame", "inner", 1, true);
+            tree.end();
+            tree.end();
+        }
+        tree.end();
+
+        MethodNode run = (MethodNode) tree.getRoot().getChildren().get(0);
+        Assertions.assertThat(tree.getMethodNodeCount()).isEqualTo(10);
+        Assertions.assertThat(tree.current()).isSameAs(tree.getRoot());
+        TraceNode last = run.getChildren().get(run.getChildren().size() - 1);
+        Assertions.assertThat(last).isInstanceOf(AggregateNode.class);
+        Assertions.assertThat(((AggregateNode) last).getTimes()).isEqualTo(100 - 5);
+        Assertions.assertThat(last.getChildren()).isNull();
+    }
+
+    @Test
+    public void testRecycle() {
+        TraceNodePool pool = new TraceNodePool();
+        TraceTree tree = new TraceTree(new ThreadNode(), pool, 0);
+        tree.begin("demo.MathGame", "run", -1, false);
+        tree.begin("demo.MathGame", "primeFactors", 24, true);
+        tree.end(true);
+        tree.end();
+        tree.recycle();
+        Assertions.assertThat(pool.size()).isEqualTo(2);
+
+        TraceTree next = new TraceTree(new ThreadNode(), pool, 0);
+        next.begin("demo.MathGame", "print", 25, true);
+        next.end();
+        Assertions.assertThat(pool.size()).isEqualTo(1);
+        MethodNode node = (MethodNode) next.getRoot().getChildren().get(0);
+        Assertions.assertThat(node.getMethodName()).isEqualTo("print");
+        Assertions.assertThat(node.getTimes()).isEqualTo(1);
+        Assertions.assertThat(node.getThrow()).isNull();
+        Assertions.assertThat(node.getChildren()).isNullOrEmpty();
+        Assertions.assertThat(node.parent()).isSameAs(next.getRoot());
+    }
+}
@@ -0,0 +1,108 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import com.taobao.arthas.core.command.model.TomcatInfoVO;
+
+public class ContainerMetricsTest {
+
+    @Test
+    public void testNoContainer() {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        Assertions.assertThat(new ContainerMetrics(server, ContainerMetrics.defaultProviders()).sample()).isNull();
+    }
+
+    @Test
+    public void testTomcat() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        MapMBean processor = new MapMBean().set("requestCount", 100L).set("errorCount", 1L).set("processingTime", 500L)
+                .set("bytesReceived", 1024L).set("bytesSent", 2048L);
+        server.registerMBean(processor, new ObjectName("Tomcat:type=GlobalRequestProcessor,name=\"http-nio-8080\""));
+        server.registerMBean(new MapMBean().set("currentThreadsBusy", 3).set("currentThreadCount", 10),
+                new ObjectName("Tomcat:type=ThreadPool,name=\"http-nio-8080\""));
+        server.registerMBean(new MapMBean().set("selectorTimeout", 1000L),
+                new ObjectName("Tomcat:type=ThreadPool,name=\"http-nio-8080\",subType=SocketProperties"));
+
+        ContainerMetrics metrics = new ContainerMetrics(server, ContainerMetrics.defaultProviders());
+        TomcatInfoVO first = metrics.sample();
+        Assertions.assertThat(first.getServer()).isEqualTo("Tomcat");
+        Assertions.assertThat(first.getConnectorStats()).hasSize(1);
+        Assertions.assertThat(first.getConnectorStats().get(0).getName()).isEqualTo("http-nio-8080");
+        Assertions.assertThat(first.getConnectorStats().get(0).getRt()).isEqualTo(5.0);
+        Assertions.assertThat(first.getThreadPools()).hasSize(1);
+        Assertions.assertThat(first.getThreadPools().get(0).getBusy()).isEqualTo(3);
+        Assertions.assertThat(first.getThreadPools().get(0).getTotal()).isEqualTo(10);
+
+        Thread.sleep(100);
+        processor.set("requestCount", 110L).set("processingTime", 700L);
+        TomcatInfoVO second = metrics.sample();
+        Assertions.assertThat(second.getConnectorStats().get(0).getQps()).isGreaterThan(0);
+        Assertions.assertThat(second.getConnectorStats().get(0).getRt()).isEqualTo(20.0);
+        Assertions.assertThat(second.getConnectorStats().get(0).getError()).isEqualTo(0.0);
+    }
+
+    /**
+     * Tomcat 的 MBean 属性名是小写开头的，standard MBean 做不到，这里用 DynamicMBean
+     */
+    public static class MapMBean implements DynamicMBean {
+        final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+
+        MapMBean set(String name, Object value) {
+            attributes.put(name, value);
+            return this;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object value = attributes.get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            attributes.put(attribute.getName(), attribute.getValue());
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                if (attributes.containsKey(name)) {
+                    list.add(new Attribute(name, attributes.get(name)));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList list) {
+            return list;
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            return null;
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            return new MBeanInfo(MapMBean.class.getName(), null, null, null, null, null);
+        }
+    }
+}
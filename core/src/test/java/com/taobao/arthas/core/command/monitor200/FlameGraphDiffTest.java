@@ -0,0 +1,56 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import com.taobao.arthas.core.command.model.FrameDeltaVO;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+public class FlameGraphDiffTest {
+
+    private FlameGraphDiff diff() throws Exception {
+        FlameGraphDiff diff = new FlameGraphDiff();
+        diff.add(new StringReader("main;a;b 60\nmain;c 40\n"), FlameGraphDiff.BASE);
+        diff.add(new StringReader("main;a;b 20\nmain;c 70\nmain;c;<d> 10\nnot a collapsed line\n"),
+                FlameGraphDiff.TARGET);
+        return diff;
+    }
+
+    @Test
+    public void testTopFrames() throws Exception {
+        FlameGraphDiff diff = diff();
+        Assertions.assertThat(diff.getTotal(FlameGraphDiff.BASE)).isEqualTo(100);
+        Assertions.assertThat(diff.getTotal(FlameGraphDiff.TARGET)).isEqualTo(100);
+
+        List<FrameDeltaVO> frames = diff.topFrames(-1);
+        Assertions.assertThat(frames).extracting("frame").containsExactly("b", "c", "<d>");
+        Assertions.assertThat(frames.get(0).getDeltaPercent()).isEqualTo(-40.0);
+        Assertions.assertThat(frames.get(1).getBaseSamples()).isEqualTo(40);
+        Assertions.assertThat(frames.get(1).getTargetSamples()).isEqualTo(70);
+        Assertions.assertThat(frames.get(2).getBasePercent()).isEqualTo(0.0);
+
+        Assertions.assertThat(diff.topFrames(1)).hasSize(1);
+    }
+
+    @Test
+    public void testWriteFolded() throws Exception {
+        StringWriter writer = new StringWriter();
+        diff().writeFolded(writer);
+        Assertions.assertThat(writer.toString().split("\n")).containsExactlyInAnyOrder("main;a;b 60 20", "main;c 40 70",
+                "main;c;<d> 0 10");
+    }
+
+    @Test
+    public void testWriteSvg() throws Exception {
+        StringWriter writer = new StringWriter();
+        diff().writeSvg(writer, "test", 0);
+        String svg = writer.toString();
+        Assertions.assertThat(svg).startsWith("<?xml").endsWith("</svg>\n");
+        Assertions.assertThat(svg).contains("&lt;d&gt;").doesNotContain("<d>");
+        // b 的占比减少是蓝色，c 的占比增加是红色
+        Assertions.assertThat(svg).contains("<title>b (base 60 samples 60.00%, target 20 samples 20.00%, -40.00%)");
+        Assertions.assertThat(svg).contains("fill=\"rgb(55,55,255)\"");
+    }
+}
@@ -0,0 +1,51 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import com.taobao.arthas.core.command.model.HeapDiffVO;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.List;
+
+public class HeapHistogramDifferTest {
+
+    @Test
+    public void testDiff() {
+        HeapHistogramDiffer differ = new HeapHistogramDiffer();
+        Class<?>[] classes = new Class<?>[] { String.class, Integer.class, Long.class };
+
+        // 第一次是基线
+        Assertions.assertThat(differ.update(classes, new long[] { 10, 10, 10 }, new long[] { 240, 160, 240 }, -1))
+                .isNull();
+        Assertions.assertThat(differ.getCycles()).isEqualTo(0);
+
+        List<HeapDiffVO> diff = differ.update(classes, new long[] { 20, 5, 11 }, new long[] { 480, 80, 264 }, -1);
+        Assertions.assertThat(diff).extracting("className").containsExactly("java.lang.String", "java.lang.Long");
+        Assertions.assertThat(diff.get(0).getInstancesGrowth()).isEqualTo(10);
+        Assertions.assertThat(diff.get(0).getBytesGrowth()).isEqualTo(240);
+        Assertions.assertThat(diff.get(0).getGrowingCycles()).isEqualTo(1);
+
+        diff = differ.update(classes, new long[] { 20, 5, 12 }, new long[] { 480, 80, 288 }, 1);
+        Assertions.assertThat(differ.getCycles()).isEqualTo(2);
+        Assertions.assertThat(diff).hasSize(1);
+        HeapDiffVO string = diff.get(0);
+        Assertions.assertThat(string.getClassName()).isEqualTo("java.lang.String");
+        // 相对上一次没有变化，连续增长次数归零，但是相对基线仍然是增长的
+        Assertions.assertThat(string.getBytesDelta()).isEqualTo(0);
+        Assertions.assertThat(string.getGrowingCycles()).isEqualTo(0);
+        Assertions.assertThat(string.getBytesGrowth()).isEqualTo(240);
+    }
+
+    @Test
+    public void testNewClasses() {
+        HeapHistogramDiffer differ = new HeapHistogramDiffer();
+        differ.update(new Class<?>[] { String.class }, new long[] { 1 }, new long[] { 24 }, -1);
+
+        // 基线之后出现的类，在基线里当作 0
+        Class<?>[] classes = new Class<?>[] { String.class, Integer.class };
+        List<HeapDiffVO> diff = differ.update(classes, new long[] { 1, 3 }, new long[] { 24, 48 }, -1);
+        Assertions.assertThat(diff).hasSize(1);
+        Assertions.assertThat(diff.get(0).getClassName()).isEqualTo("java.lang.Integer");
+        Assertions.assertThat(diff.get(0).getInstancesGrowth()).isEqualTo(3);
+        Assertions.assertThat(diff.get(0).getInstancesDelta()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,117 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import com.taobao.arthas.core.command.model.LockContentionVO;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class LockContentionSamplerTest {
+
+    @Test
+    public void testMonitorAndSynchronizer() throws Exception {
+        final Object monitor = new Object();
+        final ReentrantLock lock = new ReentrantLock();
+        final CountDownLatch locked = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        threads.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (monitor) {
+                    locked.countDown();
+                    await(release);
+                }
+            }
+        }, "monitor-owner"));
+        threads.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                lock.lock();
+                try {
+                    locked.countDown();
+                    await(release);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }, "lock-owner"));
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        locked.await();
+
+        List<Thread> waiters = new ArrayList<Thread>();
+        for (int i = 0; i < 2; i++) {
+            waiters.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (monitor) {
+                    }
+                }
+            }));
+        }
+        waiters.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                lock.lock();
+                lock.unlock();
+            }
+        }));
+        for (Thread waiter : waiters) {
+            waiter.start();
+        }
+        for (Thread waiter : waiters) {
+            while (waiter.getState() != Thread.State.BLOCKED && waiter.getState() != Thread.State.WAITING) {
+                Thread.sleep(10);
+            }
+        }
+
+        try {
+            LockContentionSampler sampler = new LockContentionSampler(8);
+            sampler.sample(100);
+            sampler.sample(100);
+            Assertions.assertThat(sampler.getSamples()).isEqualTo(2);
+
+            List<LockContentionVO> contentions = sampler.top(-1);
+            Assertions.assertThat(contentions).hasSize(2);
+
+            LockContentionVO monitorContention = contentions.get(0);
+            Assertions.assertThat(monitorContention.getLockIdentityHashCode()).isEqualTo(System.identityHashCode(monitor));
+            Assertions.assertThat(monitorContention.isSynchronizer()).isFalse();
+            Assertions.assertThat(monitorContention.getWaitTime()).isEqualTo(400);
+            Assertions.assertThat(monitorContention.getMaxWaiters()).isEqualTo(2);
+            Assertions.assertThat(monitorContention.getOwnerThreadName()).isEqualTo("monitor-owner");
+            Assertions.assertThat(monitorContention.getOwnerSamples()).isEqualTo(2);
+            Assertions.assertThat(monitorContention.getOwnerStackTrace()).isNotEmpty();
+
+            LockContentionVO lockContention = contentions.get(1);
+            Assertions.assertThat(lockContention.isSynchronizer()).isTrue();
+            Assertions.assertThat(lockContention.getLockClassName()).startsWith(ReentrantLock.class.getName());
+            Assertions.assertThat(lockContention.getWaitTime()).isEqualTo(200);
+            Assertions.assertThat(lockContention.getOwnerThreadName()).isEqualTo("lock-owner");
+
+            Assertions.assertThat(sampler.top(1)).hasSize(1);
+        } finally {
+            release.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            for (Thread waiter : waiters) {
+                waiter.join();
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class MonitorStatsTest {
+
+    @Test
+    public void testSnapshotAndReset() {
+        MonitorStats stats = new MonitorStats("demo.MathGame", "primeFactors");
+        stats.record(false, 1500000);
+        stats.record(false, 2500000);
+        stats.record(true, 4000000);
+
+        MonitorData data = stats.snapshotAndReset();
+        Assertions.assertThat(data.getClassName()).isEqualTo("demo.MathGame");
+        Assertions.assertThat(data.getMethodName()).isEqualTo("primeFactors");
+        Assertions.assertThat(data.getTotal()).isEqualTo(3);
+        Assertions.assertThat(data.getSuccess()).isEqualTo(2);
+        Assertions.assertThat(data.getFailed()).isEqualTo(1);
+        Assertions.assertThat(data.getCost()).isEqualTo(8.0);
+        Assertions.assertThat(data.getMax()).isEqualTo(4.0);
+        Assertions.assertThat(data.getP50()).isBetween(2.5, 2.5 * 17 / 16);
+
+        MonitorData empty = stats.snapshotAndReset();
+        Assertions.assertThat(empty.getTotal()).isEqualTo(0);
+        Assertions.assertThat(empty.getCost()).isEqualTo(0.0);
+        Assertions.assertThat(empty.getP99()).isEqualTo(0.0);
+    }
+
+    @Test
+    public void testConcurrentRecord() throws Exception {
+        final MonitorStats stats = new MonitorStats("demo.MathGame", "run");
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; ++j) {
+                        stats.record(j % 10 == 0, 1000000);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        MonitorData data = stats.snapshotAndReset();
+        Assertions.assertThat(data.getTotal()).isEqualTo(80000);
+        Assertions.assertThat(data.getFailed()).isEqualTo(8000);
+        Assertions.assertThat(data.getCost()).isEqualTo(80000.0);
+    }
+}
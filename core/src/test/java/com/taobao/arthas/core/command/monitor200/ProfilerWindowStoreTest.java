@@ -0,0 +1,47 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import com.taobao.arthas.core.command.model.ProfilerWindowVO;
+import org.assertj.core.api.Assertions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+public class ProfilerWindowStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPrune() throws Exception {
+        File directory = folder.newFolder();
+        String[] ids = new String[] { "20240101-100200", "20240101-100000", "20240101-100100" };
+        for (String id : ids) {
+            new File(directory, id + ProfilerWindowStore.WINDOW_FILE_SUFFIX).createNewFile();
+        }
+        new File(directory, "other.txt").createNewFile();
+
+        ProfilerWindowStore store = new ProfilerWindowStore();
+        store.init(directory, 2);
+        List<ProfilerWindowVO> windows = store.list();
+        Assertions.assertThat(windows).extracting("id").containsExactly("20240101-100100", "20240101-100200");
+        Assertions.assertThat(new File(directory, "20240101-100000" + ProfilerWindowStore.WINDOW_FILE_SUFFIX))
+                .doesNotExist();
+        Assertions.assertThat(new File(directory, "other.txt")).exists();
+
+        Assertions.assertThat(store.find(ProfilerWindowStore.LATEST).getId()).isEqualTo("20240101-100200");
+        Assertions.assertThat(store.find("20240101-100100").getFile())
+                .isEqualTo(new File(directory, "20240101-100100.collapsed").getAbsolutePath());
+        Assertions.assertThat(store.find("20240101-100000")).isNull();
+        Assertions.assertThat(store.isRunning()).isFalse();
+    }
+
+    @Test
+    public void testEmpty() {
+        ProfilerWindowStore store = new ProfilerWindowStore();
+        Assertions.assertThat(store.list()).isEmpty();
+        Assertions.assertThat(store.find(ProfilerWindowStore.LATEST)).isNull();
+    }
+}
@@ -0,0 +1,62 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class SlowInvocationProfilerTest {
+
+    @Test
+    public void testCollapse() {
+        List<StackTraceElement> stack = Arrays.asList(
+                new StackTraceElement("java.lang.Thread", "sleep", null, -1),
+                new StackTraceElement("demo.MathGame", "primeFactors", null, 10),
+                new StackTraceElement("demo.MathGame", "run", null, 20),
+                new StackTraceElement("demo.MathGame", "main", null, 30));
+
+        Assertions.assertThat(SlowInvocationProfiler.collapse(stack, "demo.MathGame", "run", 128))
+                .isEqualTo("demo/MathGame.run;demo/MathGame.primeFactors;java/lang/Thread.sleep");
+        // 调用已经结束
+        Assertions.assertThat(SlowInvocationProfiler.collapse(stack, "demo.MathGame", "other", 128)).isNull();
+        // 栈被截断，保留抓到的部分
+        Assertions.assertThat(SlowInvocationProfiler.collapse(stack, "demo.MathGame", "other", 4))
+                .isEqualTo("demo/MathGame.main;demo/MathGame.run;demo/MathGame.primeFactors;java/lang/Thread.sleep");
+    }
+
+    @Test
+    public void testKeepSlowInvocations() throws Exception {
+        String className = SlowInvocationProfilerTest.class.getName();
+        SlowInvocationProfiler profiler = new SlowInvocationProfiler(10, 128);
+
+        profiler.enter(className, "testKeepSlowInvocations");
+        // 嵌套的调用只算最外层
+        profiler.enter(className, "testKeepSlowInvocations");
+        profiler.sample();
+        Assertions.assertThat(profiler.exit(Long.MAX_VALUE)).isEqualTo(-1);
+        profiler.sample();
+        Assertions.assertThat(profiler.exit(Long.MAX_VALUE)).isGreaterThanOrEqualTo(0);
+        Assertions.assertThat(profiler.getDiscardedInvocations()).isEqualTo(1);
+        Assertions.assertThat(profiler.getSamples()).isEqualTo(0);
+
+        profiler.enter(className, "testKeepSlowInvocations");
+        profiler.sample();
+        profiler.sample();
+        profiler.exit(0);
+        // 调用结束之后的采样不会计入
+        profiler.sample();
+        Assertions.assertThat(profiler.getSlowInvocations()).isEqualTo(1);
+        Assertions.assertThat(profiler.getSamples()).isEqualTo(2);
+
+        StringWriter writer = new StringWriter();
+        profiler.writeCollapsed(writer);
+        String collapsed = writer.toString();
+        Assertions.assertThat(collapsed)
+                .startsWith(className.replace('.', '/') + ".testKeepSlowInvocations;")
+                .contains("SlowInvocationProfiler.sample;")
+                .endsWith(" 2\n");
+        Assertions.assertThat(profiler.topFrames(10)).hasSize(1);
+    }
+}
@@ -0,0 +1,83 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import com.taobao.arthas.core.command.model.ThreadVO;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class ThreadCpuHistoryTest {
+    private static final long SECOND_NANOS = 1000000000L;
+
+    @Test
+    public void testTop() {
+        ThreadCpuHistory history = new ThreadCpuHistory();
+        long[] ids = new long[] { 1, 2, 3 };
+        String[] names = new String[] { "a", "b", "c" };
+
+        // 第一次只是基准
+        history.sample(1000, 0, ids, names, new long[] { 0, 0, 0 }, Collections.singletonMap("GC", 0L));
+        Assertions.assertThat(history.size()).isEqualTo(0);
+
+        history.sample(2000, SECOND_NANOS, ids, names, new long[] { SECOND_NANOS / 2, 0, SECOND_NANOS / 10 },
+                Collections.singletonMap("GC", SECOND_NANOS / 5));
+        history.sample(3000, 2 * SECOND_NANOS, ids, names, new long[] { SECOND_NANOS / 2, SECOND_NANOS, SECOND_NANOS / 10 },
+                Collections.singletonMap("GC", SECOND_NANOS / 5));
+        Assertions.assertThat(history.size()).isEqualTo(2);
+        Assertions.assertThat(history.getOldestTimestamp()).isEqualTo(2000);
+
+        List<ThreadVO> top = history.top(0, 2);
+        Assertions.assertThat(top).extracting("id").containsExactly(2L, 1L);
+        Assertions.assertThat(top.get(0).getCpu()).isEqualTo(50.0);
+        Assertions.assertThat(top.get(0).getDeltaTime()).isEqualTo(1000);
+        Assertions.assertThat(top.get(1).getCpu()).isEqualTo(25.0);
+
+        // 只统计最后一次采样
+        top = history.top(3000, -1);
+        Assertions.assertThat(top).extracting("name").containsExactly("b");
+        Assertions.assertThat(top.get(0).getCpu()).isEqualTo(100.0);
+
+        // jvm 内部线程按名字统计
+        top = history.top(2000, -1);
+        Assertions.assertThat(top).extracting("name").containsExactly("b", "a", "GC", "c");
+        Assertions.assertThat(top.get(2).getId()).isEqualTo(-1);
+    }
+
+    @Test
+    public void testRecentCpuUsages() {
+        ThreadCpuHistory history = new ThreadCpuHistory();
+        long[] ids = new long[] { 1 };
+        String[] names = new String[] { "a" };
+        history.sample(1000, 0, ids, names, new long[] { 0 }, null);
+        history.sample(2000, SECOND_NANOS, ids, names, new long[] { SECOND_NANOS }, null);
+        history.sample(3000, 2 * SECOND_NANOS, ids, names, new long[] { SECOND_NANOS }, null);
+        history.sample(4000, 3 * SECOND_NANOS, ids, names, new long[] { SECOND_NANOS * 3 / 2 }, null);
+
+        Map<Long, double[]> usages = history.recentCpuUsages(4);
+        Assertions.assertThat(usages.get(1L)).containsExactly(0, 100, 0, 50);
+    }
+
+    @Test
+    public void testRingOverflow() {
+        ThreadCpuHistory history = new ThreadCpuHistory();
+        long[] ids = new long[] { 1 };
+        String[] names = new String[] { "a" };
+        for (int i = 0; i <= ThreadCpuHistory.CAPACITY + 10; i++) {
+            history.sample(i * 1000L, i * SECOND_NANOS, ids, names, new long[] { i * SECOND_NANOS / 10 }, null);
+        }
+        Assertions.assertThat(history.size()).isEqualTo(ThreadCpuHistory.CAPACITY);
+        Assertions.assertThat(history.getOldestTimestamp()).isEqualTo(11000);
+        Assertions.assertThat(history.top(0, 1).get(0).getCpu()).isEqualTo(10.0);
+    }
+
+    @Test
+    public void testParseDuration() {
+        Assertions.assertThat(ThreadCommand.parseDurationMillis("30s")).isEqualTo(30000);
+        Assertions.assertThat(ThreadCommand.parseDurationMillis("5m")).isEqualTo(300000);
+        Assertions.assertThat(ThreadCommand.parseDurationMillis("1h")).isEqualTo(3600000);
+        Assertions.assertThat(ThreadCommand.parseDurationMillis("10")).isEqualTo(10000);
+        Assertions.assertThat(ThreadCommand.parseDurationMillis("abc")).isEqualTo(-1);
+    }
+}
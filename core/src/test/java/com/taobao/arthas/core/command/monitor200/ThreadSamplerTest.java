@@ -0,0 +1,49 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import com.taobao.arthas.core.command.model.ThreadVO;
+import com.taobao.arthas.core.util.ThreadUtil;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.util.List;
+
+public class ThreadSamplerTest {
+
+    @Test
+    public void testTopIndexes() {
+        long[] values = new long[] { 5, 1, 9, 5, 7, 0 };
+        Assertions.assertThat(ThreadSampler.topIndexes(values, 3)).containsExactly(2, 4, 0);
+        // 相等时按下标排序
+        Assertions.assertThat(ThreadSampler.topIndexes(values, values.length)).containsExactly(2, 4, 0, 3, 1, 5);
+        Assertions.assertThat(ThreadSampler.topIndexes(values, 0)).isEmpty();
+    }
+
+    @Test
+    public void testCpuTimeTable() {
+        ThreadSampler.CpuTimeTable table = new ThreadSampler.CpuTimeTable(100);
+        for (long tid = 1; tid <= 100; tid++) {
+            table.put(tid * 16, tid);
+        }
+        table.put(32, 1000);
+        Assertions.assertThat(table.get(16, -1)).isEqualTo(1);
+        Assertions.assertThat(table.get(32, -1)).isEqualTo(1000);
+        Assertions.assertThat(table.get(1600, -1)).isEqualTo(100);
+        Assertions.assertThat(table.get(17, -1)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testSampleTopN() {
+        ThreadSampler sampler = new ThreadSampler();
+        sampler.setIncludeInternalThreads(false);
+        List<ThreadVO> threads = ThreadUtil.getThreads();
+        sampler.sample(threads, 0);
+        List<ThreadVO> top = sampler.sample(threads, 2);
+
+        Assertions.assertThat(top).hasSize(Math.min(2, threads.size()));
+        List<ThreadVO> all = sampler.sample(threads);
+        Assertions.assertThat(all).hasSameSizeAs(threads);
+        for (int i = 1; i < all.size(); i++) {
+            Assertions.assertThat(all.get(i - 1).getDeltaTime()).isGreaterThanOrEqualTo(all.get(i).getDeltaTime());
+        }
+    }
+}
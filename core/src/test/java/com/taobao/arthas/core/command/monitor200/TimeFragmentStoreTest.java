@@ -0,0 +1,160 @@
+package com.taobao.arthas.core.command.monitor200;
+
+import com.taobao.arthas.core.advisor.Advice;
+import com.taobao.arthas.core.advisor.ArthasMethod;
+import com.taobao.arthas.core.util.matcher.EqualsMatcher;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+public class TimeFragmentStoreTest {
+
+    private static TimeFragment newTimeFragment(String methodName, long estimatedSize) {
+        ArthasMethod method = new ArthasMethod(TimeFragmentStoreTest.class, methodName, "()V");
+        Advice advice = Advice.newForAfterReturning(TimeFragmentStoreTest.class.getClassLoader(),
+                TimeFragmentStoreTest.class, method, null, new Object[0], null);
+        TimeFragment tf = new TimeFragment(advice, LocalDateTime.now(), 1.0);
+        tf.setEstimatedSize(estimatedSize);
+        return tf;
+    }
+
+    @Test
+    public void testFifoEviction() {
+        TimeFragmentStore store = new TimeFragmentStore();
+        store.configure(3, 0, false);
+        int first = store.put(newTimeFragment("a", 10));
+        for (int i = 0; i < 4; ++i) {
+            store.put(newTimeFragment("a", 10));
+        }
+
+        Assertions.assertThat(store.size()).isEqualTo(3);
+        Assertions.assertThat(store.getEvictedCount()).isEqualTo(2);
+        Assertions.assertThat(store.getTotalBytes()).isEqualTo(30);
+        Assertions.assertThat(store.list().keySet()).containsExactly(first + 2, first + 3, first + 4);
+    }
+
+    @Test
+    public void testLruEviction() {
+        TimeFragmentStore store = new TimeFragmentStore();
+        store.configure(3, 0, true);
+        int first = store.put(newTimeFragment("a", 10));
+        store.put(newTimeFragment("a", 10));
+        store.put(newTimeFragment("a", 10));
+
+        store.get(first);
+        store.put(newTimeFragment("a", 10));
+
+        Assertions.assertThat(store.list().keySet()).containsExactly(first, first + 2, first + 3);
+    }
+
+    @Test
+    public void testMaxBytes() {
+        TimeFragmentStore store = new TimeFragmentStore();
+        store.configure(100, 25, false);
+        store.put(newTimeFragment("a", 10));
+        store.put(newTimeFragment("a", 10));
+        int last = store.put(newTimeFragment("a", 10));
+
+        Assertions.assertThat(store.size()).isEqualTo(2);
+        Assertions.assertThat(store.getTotalBytes()).isEqualTo(20);
+
+        // 单条超过上限时也保留最新的一条
+        int big = store.put(newTimeFragment("a", 100));
+        Assertions.assertThat(store.list().keySet()).containsExactly(big);
+        Assertions.assertThat(store.get(last)).isNull();
+    }
+
+    @Test
+    public void testFindByIndex() {
+        TimeFragmentStore store = new TimeFragmentStore();
+        store.configure(100, 0, false);
+        int a1 = store.put(newTimeFragment("a", 0));
+        int b1 = store.put(newTimeFragment("b", 0));
+        int a2 = store.put(newTimeFragment("a", 0));
+
+        Assertions.assertThat(store.find(null, new EqualsMatcher<String>("a")).keySet()).containsExactly(a1, a2);
+        Assertions.assertThat(store.find(new EqualsMatcher<String>(TimeFragmentStoreTest.class.getName()), null)
+                .keySet()).containsExactly(a1, b1, a2);
+
+        store.remove(a1);
+        Assertions.assertThat(store.find(null, new EqualsMatcher<String>("a")).keySet()).containsExactly(a2);
+        Assertions.assertThat(store.clear()).isEqualTo(2);
+        Assertions.assertThat(store.find(null, new EqualsMatcher<String>("b"))).isEmpty();
+    }
+
+    @Test
+    public void testSpilledRingFile() throws Exception {
+        File file = File.createTempFile("arthas-tt-test", ".data");
+        file.deleteOnExit();
+        TimeFragmentStore store = new TimeFragmentStore();
+        store.configure(1000, 0, false);
+        store.openSpillFile(file, 1024);
+
+        for (int i = 0; i < 50; ++i) {
+            TimeFragmentSnapshot snapshot = new TimeFragmentSnapshot("demo.MathGame", "primeFactors", "0x1",
+                    new String[] { "@Integer[" + i + "]" }, "@Integer[" + i + "]", null, true, false, i);
+            store.putSpilled(new TimeFragment(snapshot, LocalDateTime.now()), snapshot.toBytes());
+        }
+
+        // 写满之后覆盖最旧的快照，被覆盖的记录同时删除
+        Assertions.assertThat(store.size()).isLessThan(50);
+        Assertions.assertThat(store.getEvictedCount()).isEqualTo(50 - store.size());
+        for (Map.Entry<Integer, TimeFragment> entry : store.list().entrySet()) {
+            TimeFragmentSnapshot snapshot = TimeFragmentSnapshot.fromBytes(store.readSpilled(entry.getKey(), entry.getValue()));
+            Assertions.assertThat(snapshot.getParams()).containsExactly(snapshot.getReturnObj());
+            Assertions.assertThat(snapshot.getReturnObj()).isEqualTo("@Integer[" + (int) snapshot.getCost() + "]");
+            Assertions.assertThat(entry.getValue().isSpilled()).isTrue();
+            Assertions.assertThat(entry.getValue().getAdvice()).isNull();
+        }
+    }
+
+    @Test
+    public void testSpilledCapacityAndClear() throws Exception {
+        File file = File.createTempFile("arthas-tt-test", ".data");
+        file.deleteOnExit();
+        TimeFragmentStore store = new TimeFragmentStore();
+        store.configure(2, 0, false);
+        store.configureSpill(5);
+        store.openSpillFile(file, 64 * 1024);
+
+        store.put(newTimeFragment("a", 10));
+        for (int i = 0; i < 8; ++i) {
+            TimeFragmentSnapshot snapshot = new TimeFragmentSnapshot("demo.MathGame", "primeFactors", "0x1",
+                    new String[0], null, null, true, false, i);
+            store.putSpilled(new TimeFragment(snapshot, LocalDateTime.now()), snapshot.toBytes());
+        }
+        store.put(newTimeFragment("a", 10));
+
+        // off-heap 的记录只受 spillCapacity 限制，也不会挤掉堆上的记录
+        Assertions.assertThat(store.size()).isEqualTo(7);
+        Assertions.assertThat(store.getEvictedCount()).isEqualTo(3);
+
+        // clear 关闭并删除 spill 文件，下一次使用时重新创建
+        Assertions.assertThat(store.clear()).isEqualTo(7);
+        Assertions.assertThat(store.hasSpillFile()).isFalse();
+        Assertions.assertThat(file).doesNotExist();
+    }
+
+    @Test
+    public void testWeakReferenceKeepsLiveObjects() {
+        ArthasMethod method = new ArthasMethod(TimeFragmentStoreTest.class, "a", "(Ljava/lang/Object;)V");
+        Object param = new Object();
+        Object target = new Object();
+        Advice advice = Advice.newForAfterReturning(TimeFragmentStoreTest.class.getClassLoader(),
+                TimeFragmentStoreTest.class, method, target, new Object[] { param }, null);
+        TimeFragment tf = new TimeFragment(advice, LocalDateTime.now(), 1.0, TimeFragment.ReferenceType.WEAK);
+        advice = null;
+
+        // 只有 Advice 本身不再被引用，仍然存活的入参和 target 不会被回收
+        System.gc();
+        Advice restored = tf.getAdvice();
+        Assertions.assertThat(restored).isNotNull();
+        Assertions.assertThat(restored.getParams()).containsExactly(param);
+        Assertions.assertThat(restored.getTarget()).isSameAs(target);
+        Assertions.assertThat(restored.isAfterReturning()).isTrue();
+        Assertions.assertThat(tf.isCollected()).isFalse();
+    }
+}
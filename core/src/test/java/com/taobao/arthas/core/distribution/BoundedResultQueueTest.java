@@ -0,0 +1,112 @@
+package com.taobao.arthas.core.distribution;
+
+import java.util.Arrays;
+
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+
+import com.taobao.arthas.core.GlobalOptions;
+import com.taobao.arthas.core.command.model.InputStatus;
+import com.taobao.arthas.core.command.model.InputStatusModel;
+import com.taobao.arthas.core.command.model.MessageModel;
+import com.taobao.arthas.core.command.model.MonitorModel;
+import com.taobao.arthas.core.command.model.ResultModel;
+import com.taobao.arthas.core.command.model.StatusModel;
+import com.taobao.arthas.core.command.monitor200.MonitorData;
+
+public class BoundedResultQueueTest {
+
+    @After
+    public void reset() {
+        GlobalOptions.resultOverflowPolicy = BoundedResultQueue.DROP;
+    }
+
+    @Test
+    public void testDropOldest() {
+        BoundedResultQueue queue = new BoundedResultQueue(3);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(new MessageModel("m" + i));
+        }
+        Assertions.assertThat(queue.size()).isEqualTo(3);
+        Assertions.assertThat(queue.getDiscardCount()).isEqualTo(2);
+        Assertions.assertThat(((MessageModel) queue.poll()).getMessage()).isEqualTo("m2");
+    }
+
+    @Test
+    public void testDropSkipsControlResults() {
+        BoundedResultQueue queue = new BoundedResultQueue(3);
+        InputStatusModel inputStatus = new InputStatusModel(InputStatus.ALLOW_INTERRUPT);
+        queue.offer(inputStatus);
+        for (int i = 0; i < 4; i++) {
+            queue.offer(monitor(i));
+        }
+        Assertions.assertThat(queue.getDiscardCount()).isEqualTo(2);
+        Assertions.assertThat(queue.poll()).isSameAs(inputStatus);
+        Assertions.assertThat(((MonitorModel) queue.poll()).getMonitorDataList().get(0).getTotal()).isEqualTo(2);
+
+        // 队列里都是控制结果时，丢弃新的普通结果
+        queue = new BoundedResultQueue(2);
+        StatusModel status = new StatusModel(0);
+        queue.offer(inputStatus);
+        queue.offer(status);
+        Assertions.assertThat(queue.offer(monitor(1))).isFalse();
+        Assertions.assertThat(queue.poll()).isSameAs(inputStatus);
+        Assertions.assertThat(queue.poll()).isSameAs(status);
+        Assertions.assertThat(queue.poll()).isNull();
+    }
+
+    @Test
+    public void testSampleKeepsControlResults() {
+        GlobalOptions.resultOverflowPolicy = BoundedResultQueue.SAMPLE;
+        BoundedResultQueue queue = new BoundedResultQueue(4);
+        for (int i = 0; i < 4; i++) {
+            queue.offer(monitor(i));
+        }
+        int appended = 0;
+        for (int i = 0; i < 8; i++) {
+            if (queue.offer(monitor(10 + i))) {
+                appended++;
+            }
+        }
+        Assertions.assertThat(appended).isEqualTo(0);
+        Assertions.assertThat(queue.getDiscardCount()).isEqualTo(8);
+
+        StatusModel status = new StatusModel(0);
+        queue.offer(status);
+        ResultModel last = null;
+        ResultModel result;
+        while ((result = queue.poll()) != null) {
+            last = result;
+        }
+        Assertions.assertThat(last).isSameAs(status);
+    }
+
+    @Test
+    public void testCoalesceMonitorCycles() {
+        GlobalOptions.resultOverflowPolicy = BoundedResultQueue.COALESCE;
+        BoundedResultQueue queue = new BoundedResultQueue(2);
+        MonitorModel first = monitor(1);
+        queue.offer(first);
+        queue.offer(monitor(2));
+        Assertions.assertThat(queue.offer(monitor(3))).isTrue();
+        Assertions.assertThat(queue.offer(monitor(4))).isTrue();
+        Assertions.assertThat(queue.size()).isEqualTo(2);
+
+        Assertions.assertThat(queue.poll()).isSameAs(first);
+        MonitorData merged = ((MonitorModel) queue.poll()).getMonitorDataList().get(0);
+        Assertions.assertThat(merged.getTotal()).isEqualTo(2 + 3 + 4);
+        Assertions.assertThat(merged.getMax()).isEqualTo(4);
+    }
+
+    private static MonitorModel monitor(int total) {
+        MonitorData data = new MonitorData();
+        data.setClassName("demo.MathGame");
+        data.setMethodName("primeFactors");
+        data.setTotal(total);
+        data.setSuccess(total);
+        data.setCost(total);
+        data.setMax(total);
+        return new MonitorModel(Arrays.asList(data));
+    }
+}
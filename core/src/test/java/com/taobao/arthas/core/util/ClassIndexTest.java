@@ -0,0 +1,177 @@
+package com.taobao.arthas.core.util;
+
+import com.taobao.arthas.common.IOUtils;
+import com.taobao.arthas.core.GlobalOptions;
+import com.taobao.arthas.core.util.matcher.EqualsMatcher;
+import com.taobao.arthas.core.util.matcher.RegexMatcher;
+import com.taobao.arthas.core.util.matcher.WildcardMatcher;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ClassIndexTest {
+
+    private static Instrumentation newInstrumentation(Class<?>... loadedClasses) {
+        return newInstrumentation(new ArrayList<Class<?>>(Arrays.asList(loadedClasses)));
+    }
+
+    /**
+     * @param loadedClasses 之后加入的类也能被 getAllLoadedClasses/getInitiatedClasses 找到
+     */
+    private static Instrumentation newInstrumentation(final List<Class<?>> loadedClasses) {
+        return newInstrumentation(loadedClasses, new AtomicInteger());
+    }
+
+    /**
+     * @param initiatedCalls 记录 getInitiatedClasses 的调用次数
+     */
+    private static Instrumentation newInstrumentation(final List<Class<?>> loadedClasses,
+            final AtomicInteger initiatedCalls) {
+        return (Instrumentation) Proxy.newProxyInstance(ClassIndexTest.class.getClassLoader(),
+                new Class<?>[] { Instrumentation.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if ("getAllLoadedClasses".equals(method.getName())) {
+                            return loadedClasses.toArray(new Class<?>[0]);
+                        }
+                        if ("getInitiatedClasses".equals(method.getName())) {
+                            initiatedCalls.incrementAndGet();
+                            List<Class<?>> initiated = new ArrayList<Class<?>>();
+                            for (Class<?> clazz : loadedClasses) {
+                                if (clazz.getClassLoader() == args[0]) {
+                                    initiated.add(clazz);
+                                }
+                            }
+                            return initiated.toArray(new Class<?>[0]);
+                        }
+                        if (method.getReturnType() == boolean.class) {
+                            return false;
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private static byte[] classBytes(Class<?> clazz) throws IOException {
+        InputStream input = ClassLoader.getSystemResourceAsStream(clazz.getName().replace('.', '/') + ".class");
+        try {
+            return IOUtils.getBytes(input);
+        } finally {
+            IOUtils.close(input);
+        }
+    }
+
+    @Test
+    public void testLiteralPrefix() {
+        Assertions.assertThat(ClassIndex.literalPrefix(new WildcardMatcher("demo.*"))).isEqualTo("demo.");
+        Assertions.assertThat(ClassIndex.literalPrefix(new WildcardMatcher("*Game"))).isEmpty();
+        Assertions.assertThat(ClassIndex.literalPrefix(new WildcardMatcher("demo.MathGame"))).isEqualTo("demo.MathGame");
+        Assertions.assertThat(ClassIndex.literalPrefix(new EqualsMatcher<String>("demo.MathGame"))).isEqualTo("demo.MathGame");
+        Assertions.assertThat(ClassIndex.literalPrefix(new RegexMatcher("demo\\..*"))).isEmpty();
+    }
+
+    @Test
+    public void testIsSupported() {
+        Assertions.assertThat(ClassIndex.isSupported(new WildcardMatcher("demo.MathGame"))).isTrue();
+        Assertions.assertThat(ClassIndex.isSupported(new EqualsMatcher<String>("demo.MathGame"))).isTrue();
+        // 通配符/正则可能匹配到 lambda 类
+        Assertions.assertThat(ClassIndex.isSupported(new WildcardMatcher("demo.*"))).isFalse();
+        Assertions.assertThat(ClassIndex.isSupported(new WildcardMatcher("demo.MathGam?"))).isFalse();
+        Assertions.assertThat(ClassIndex.isSupported(new RegexMatcher("demo\\.MathGame"))).isFalse();
+        Assertions.assertThat(ClassIndex.isSupported(new EqualsMatcher<String>("[Ljava.lang.String;"))).isFalse();
+
+        // lambda 实现的是接口，接口和 Object 的子类要遍历所有类
+        Assertions.assertThat(ClassIndex.isSupported(Collections.<Class<?>>singleton(AbstractList.class))).isTrue();
+        Assertions.assertThat(ClassIndex.isSupported(Collections.<Class<?>>singleton(Runnable.class))).isFalse();
+        Assertions.assertThat(ClassIndex.isSupported(Collections.<Class<?>>singleton(Object.class))).isFalse();
+    }
+
+    @Test
+    public void testSearchClass() {
+        ClassIndex classIndex = new ClassIndex(newInstrumentation(String.class, StringBuilder.class, Integer.class,
+                String[].class, int.class));
+
+        Assertions.assertThat(classIndex.searchClass(new WildcardMatcher("java.lang.String*"), Integer.MAX_VALUE))
+                .containsOnly(String.class, StringBuilder.class);
+        Assertions.assertThat(classIndex.searchClass(new EqualsMatcher<String>("java.lang.Integer"), Integer.MAX_VALUE))
+                .containsOnly(Integer.class);
+        Assertions.assertThat(classIndex.searchClass(new RegexMatcher(".*Integer"), Integer.MAX_VALUE))
+                .containsOnly(Integer.class);
+        Assertions.assertThat(classIndex.searchClass(new WildcardMatcher("java.lang.*"), 1)).hasSize(1);
+        Assertions.assertThat(classIndex.searchClass(new WildcardMatcher("*int"), Integer.MAX_VALUE)).isEmpty();
+    }
+
+    @Test
+    public void testSearchSubClassAndNewClasses() throws IOException {
+        List<Class<?>> loadedClasses = new ArrayList<Class<?>>(
+                Arrays.<Class<?>>asList(List.class, AbstractList.class, ArrayList.class));
+        AtomicInteger initiatedCalls = new AtomicInteger();
+        ClassIndex classIndex = new ClassIndex(newInstrumentation(loadedClasses, initiatedCalls));
+
+        Assertions.assertThat(classIndex.searchSubClass(Collections.<Class<?>>singleton(List.class)))
+                .containsOnly(List.class, AbstractList.class, ArrayList.class);
+
+        // 建立索引之后加载的类，通过 transformer 通知加入索引；还没有定义完成的类下次搜索时再找
+        classIndex.onClassLoad(null, "java/util/LinkedList", classBytes(LinkedList.class));
+        Assertions.assertThat(classIndex.searchSubClass(new HashSet<Class<?>>(Collections.<Class<?>>singleton(List.class))))
+                .doesNotContain(LinkedList.class);
+        loadedClasses.add(LinkedList.class);
+        Assertions.assertThat(classIndex.searchSubClass(new HashSet<Class<?>>(Collections.<Class<?>>singleton(List.class))))
+                .contains(LinkedList.class);
+
+        // 和搜索无关的新类不会触发 getInitiatedClasses
+        loadedClasses.add(HashMap.class);
+        classIndex.onClassLoad(null, "java/util/HashMap", classBytes(HashMap.class));
+        initiatedCalls.set(0);
+        classIndex.searchSubClass(new HashSet<Class<?>>(Collections.<Class<?>>singleton(List.class)));
+        Assertions.assertThat(initiatedCalls.get()).isZero();
+        Assertions.assertThat(classIndex.searchClass(new EqualsMatcher<String>("java.util.HashMap"), Integer.MAX_VALUE))
+                .containsOnly(HashMap.class);
+        Assertions.assertThat(initiatedCalls.get()).isEqualTo(1);
+
+        // 类名相同，但不是通知里的 ClassLoader 定义的类不加入索引
+        loadedClasses.add(Vector.class);
+        classIndex.onClassLoad(ClassIndexTest.class.getClassLoader(), "java/util/Vector", classBytes(Vector.class));
+        Assertions.assertThat(classIndex.searchSubClass(new HashSet<Class<?>>(Collections.<Class<?>>singleton(List.class))))
+                .doesNotContain(Vector.class);
+    }
+
+    @Test
+    public void testSearchLambdaCreatedAfterBuild() {
+        List<Class<?>> loadedClasses = new ArrayList<Class<?>>(Arrays.<Class<?>>asList(ClassIndexTest.class));
+        Instrumentation inst = newInstrumentation(loadedClasses);
+        boolean usingClassIndex = GlobalOptions.isUsingClassIndex;
+        GlobalOptions.isUsingClassIndex = true;
+        ClassIndex.init(inst);
+        try {
+            Assertions.assertThat(SearchUtils.searchClass(inst, new EqualsMatcher<String>(ClassIndexTest.class.getName())))
+                    .containsOnly(ClassIndexTest.class);
+
+            // lambda 类不经过 ClassFileTransformer ，建立索引之后创建的也要能搜到
+            Runnable lambda = () -> {
+            };
+            loadedClasses.add(lambda.getClass());
+            Assertions.assertThat(SearchUtils.searchClass(inst, new WildcardMatcher(ClassIndexTest.class.getName() + "*")))
+                    .contains(ClassIndexTest.class, lambda.getClass());
+        } finally {
+            ClassIndex.destroy();
+            GlobalOptions.isUsingClassIndex = usingClassIndex;
+        }
+    }
+}
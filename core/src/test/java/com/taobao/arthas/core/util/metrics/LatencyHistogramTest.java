@@ -0,0 +1,48 @@
+package com.taobao.arthas.core.util.metrics;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketIndex() {
+        for (long value = 0; value < 1000000; ++value) {
+            int index = LatencyHistogram.bucketIndex(value);
+            Assertions.assertThat(LatencyHistogram.highestEquivalentValue(index)).isGreaterThanOrEqualTo(value);
+            if (index > 0) {
+                Assertions.assertThat(LatencyHistogram.highestEquivalentValue(index - 1)).isLessThan(value);
+            }
+        }
+    }
+
+    @Test
+    public void testPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; ++i) {
+            histogram.record(i * 1000000L);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+        Assertions.assertThat(snapshot.getTotal()).isEqualTo(1000);
+        Assertions.assertThat(snapshot.getMax()).isEqualTo(1000000000L);
+        Assertions.assertThat(snapshot.getValueAtPercentile(50)).isBetween(500000000L, 500000000L * 17 / 16);
+        Assertions.assertThat(snapshot.getValueAtPercentile(90)).isBetween(900000000L, 900000000L * 17 / 16);
+        Assertions.assertThat(snapshot.getValueAtPercentile(99.9)).isEqualTo(1000000000L);
+
+        LatencyHistogram.Snapshot empty = histogram.snapshotAndReset();
+        Assertions.assertThat(empty.getTotal()).isEqualTo(0);
+        Assertions.assertThat(empty.getValueAtPercentile(99)).isEqualTo(0);
+    }
+
+    @Test
+    public void testOutOfRange() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1);
+        histogram.record(Long.MAX_VALUE);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+        Assertions.assertThat(snapshot.getTotal()).isEqualTo(2);
+        Assertions.assertThat(snapshot.getValueAtPercentile(50)).isEqualTo(0);
+    }
+}
@@ -46,6 +46,7 @@ export const sidebarEN = {
             "/en/doc/retransform.md",
             "/en/doc/sc.md",
             "/en/doc/session.md",
+            "/en/doc/slowprofile.md",
             "/en/doc/sm.md",
             "/en/doc/stack.md",
             "/en/doc/stop.md",
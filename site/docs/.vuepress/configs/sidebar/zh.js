@@ -46,6 +46,7 @@ export const sidebarZH = {
             "/doc/retransform.md",
             "/doc/sc.md",
             "/doc/session.md",
+            "/doc/slowprofile.md",
             "/doc/sm.md",
             "/doc/stack.md",
             "/doc/stop.md",
@@ -69,6 +69,19 @@ public class SpyAPI {
         spyInstance.atExceptionExit(clazz, methodInfo, target, args, throwable);
     }
 
+    public static void atEnter(Class<?> clazz, int adviceId, Object target, Object[] args) {
+        spyInstance.atEnter(clazz, adviceId, target, args);
+    }
+
+    public static void atExit(Class<?> clazz, int adviceId, Object target, Object[] args, Object returnObject) {
+        spyInstance.atExit(clazz, adviceId, target, args, returnObject);
+    }
+
+    public static void atExceptionExit(Class<?> clazz, int adviceId, Object target, Object[] args,
+            Throwable throwable) {
+        spyInstance.atExceptionExit(clazz, adviceId, target, args, throwable);
+    }
+
     public static void atBeforeInvoke(Class<?> clazz, String invokeInfo, Object target) {
         spyInstance.atBeforeInvoke(clazz, invokeInfo, target);
     }
@@ -96,6 +109,20 @@ public class SpyAPI {
         public abstract void atAfterInvoke(Class<?> clazz, String invokeInfo, Object target);
 
         public abstract void atInvokeException(Class<?> clazz, String invokeInfo, Object target, Throwable throwable);
+
+        /**
+         * adviceId 由增强时分配，直接对应到预先解析好的 listener 数组，避免每次调用都解析 methodInfo 和查表。
+         * 不使用 adviceId 增强的 spy 实现可以不覆盖以下函数。
+         */
+        public void atEnter(Class<?> clazz, int adviceId, Object target, Object[] args) {
+        }
+
+        public void atExit(Class<?> clazz, int adviceId, Object target, Object[] args, Object returnObject) {
+        }
+
+        public void atExceptionExit(Class<?> clazz, int adviceId, Object target, Object[] args,
+                Throwable throwable) {
+        }
     }
 
     static class NopSpy extends AbstractSpy {
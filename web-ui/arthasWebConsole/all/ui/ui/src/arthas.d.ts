@@ -378,6 +378,11 @@ type MonitorData = {
   success: number;
   total: number;
   timestamp: string;
+  p50: number;
+  p90: number;
+  p99: number;
+  p999: number;
+  max: number;
 };
 type GlobalOptions = {
   "description": string;